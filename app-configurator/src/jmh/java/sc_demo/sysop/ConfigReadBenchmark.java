@@ -0,0 +1,44 @@
+package sc_demo.sysop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import sc_demo.sysop.data.ConfigDto;
+import se.arkalix.dto.binary.ByteArrayReader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time required to parse configuration files describing
+ * topologies of various sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigReadBenchmark {
+    @Param({"10", "100", "1000"})
+    public int systems;
+
+    @Param({"4"})
+    public int servicesPerSystem;
+
+    @Param({"3"})
+    public int fanOut;
+
+    private byte[] config;
+
+    @Setup
+    public void setup() {
+        config = new SyntheticTopology(systems, servicesPerSystem, fanOut).config();
+    }
+
+    @Benchmark
+    public ConfigDto readJson() throws Exception {
+        return ConfigDto.readJson(new ByteArrayReader(config));
+    }
+}
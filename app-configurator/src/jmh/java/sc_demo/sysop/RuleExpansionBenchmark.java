@@ -0,0 +1,91 @@
+package sc_demo.sysop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import sc_demo.sysop.data.ConfigDto;
+import sc_demo.sysop.data.SrMgmtQueryResultDto;
+import se.arkalix.dto.binary.ByteArrayReader;
+import se.arkalix.net.http.client.HttpClient;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures expanding configured consumption rules into the authorization
+ * and orchestration rules sent to the core systems, excluding the time
+ * spent sending them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RuleExpansionBenchmark {
+    @Param({"10", "100", "1000"})
+    public int systems;
+
+    @Param({"4"})
+    public int servicesPerSystem;
+
+    @Param({"3"})
+    public int fanOut;
+
+    @Param({"100"})
+    public int chunkSize;
+
+    private ScheduledExecutorService scheduler;
+    private ConfigDto config;
+    private AuthorizationMgmt authorization;
+    private OrchestratorMgmt orchestrator;
+
+    @Setup
+    public void setup() throws Exception {
+        final var topology = new SyntheticTopology(systems, servicesPerSystem, fanOut);
+        config = ConfigDto.readJson(new ByteArrayReader(topology.config()));
+
+        final var pool = new HttpConnectionPool(new HttpClient.Builder().insecure().build(), 1, Duration.ZERO);
+        final var registry = new ServiceRegistryCache(pool,
+            InetSocketAddress.createUnresolved("service-registry.p4sc", 8443));
+        registry.replace(SrMgmtQueryResultDto.readJson(new ByteArrayReader(topology.serviceRegistryEntries())).data());
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        final var executor = RegistrationExecutor.from(scheduler, null);
+        final var unused = InetSocketAddress.createUnresolved("localhost", 0);
+        authorization = new AuthorizationMgmt(pool, unused, registry, executor);
+        orchestrator = new OrchestratorMgmt(pool, unused, registry, executor, chunkSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public Object grants() {
+        return ConsumptionGrant.allOf(config.rules());
+    }
+
+    @Benchmark
+    public void authorizationRules(final Blackhole blackhole) {
+        for (final var rule : config.rules()) {
+            blackhole.consume(authorization.toRule(rule));
+        }
+    }
+
+    @Benchmark
+    public void orchestrationRuleChunks(final Blackhole blackhole) {
+        final var chunks = OrchestratorMgmt.chunksOf(ConsumptionGrant.iteratorOf(config.rules()), chunkSize);
+        while (chunks.hasNext()) {
+            blackhole.consume(orchestrator.rulesOf(chunks.next().items()));
+        }
+    }
+}
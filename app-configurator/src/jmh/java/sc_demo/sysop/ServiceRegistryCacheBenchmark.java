@@ -0,0 +1,100 @@
+package sc_demo.sysop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import sc_demo.sysop.data.SrMgmtEntry;
+import sc_demo.sysop.data.SrMgmtQueryResultDto;
+import se.arkalix.dto.binary.ByteArrayReader;
+import se.arkalix.net.http.client.HttpClient;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding service registry query results, building the {@link
+ * ServiceRegistryIndex} of a refreshed {@link ServiceRegistryCache}, and
+ * looking up services and systems in a populated cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceRegistryCacheBenchmark {
+    @Param({"10", "100", "1000"})
+    public int systems;
+
+    @Param({"4"})
+    public int servicesPerSystem;
+
+    private byte[] body;
+    private List<SrMgmtEntry> entries;
+    private ServiceRegistryCache cache;
+    private String[] serviceNames;
+    private String[] systemNames;
+
+    @Setup
+    public void setup() throws Exception {
+        body = new SyntheticTopology(systems, servicesPerSystem, 0).serviceRegistryEntries();
+        entries = new ArrayList<>(SrMgmtQueryResultDto.readJson(new ByteArrayReader(body)).data());
+
+        cache = new ServiceRegistryCache(new HttpConnectionPool(new HttpClient.Builder().insecure().build(), 1, Duration.ZERO),
+            InetSocketAddress.createUnresolved("service-registry.p4sc", 8443));
+        cache.replace(entries);
+
+        // Names are copied to prevent lookups from being resolved by
+        // reference comparison alone, as they are not when the names
+        // come from a parsed configuration file.
+        serviceNames = new String[systems * servicesPerSystem];
+        for (var i = 0; i < systems; ++i) {
+            for (var j = 0; j < servicesPerSystem; ++j) {
+                serviceNames[i * servicesPerSystem + j] = new String(SyntheticTopology.serviceNameOf(i, j));
+            }
+        }
+        systemNames = new String[systems];
+        for (var i = 0; i < systems; ++i) {
+            systemNames[i] = new String(SyntheticTopology.systemNameOf(i));
+        }
+    }
+
+    @Benchmark
+    public SrMgmtQueryResultDto decode() throws Exception {
+        return SrMgmtQueryResultDto.readJson(new ByteArrayReader(body));
+    }
+
+    @Benchmark
+    public ServiceRegistryIndex index() {
+        return ServiceRegistryIndex.of(entries);
+    }
+
+    @Benchmark
+    public void refreshDecode() throws Exception {
+        cache.replace(SrMgmtQueryResultDto.readJson(new ByteArrayReader(body)).data());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void lookupAllServices(final Blackhole blackhole) {
+        for (final var name : serviceNames) {
+            blackhole.consume(cache.getServiceIdByNameOrThrow(name));
+            blackhole.consume(cache.getInterfaceIdByServiceNameOrThrow(name));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void lookupAllSystems(final Blackhole blackhole) {
+        for (final var name : systemNames) {
+            blackhole.consume(cache.getSystemIdByNameOrThrow(name));
+            blackhole.consume(cache.getProviderByNameOrThrow(name));
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package sc_demo.sysop;
+
+import sc_demo.sysop.data.ConfigDto;
+import sc_demo.sysop.stub.CoreSystemStub;
+import se.arkalix.dto.binary.ByteArrayReader;
+import se.arkalix.net.http.client.HttpClient;
+import se.arkalix.util.concurrent.Future;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Runs the configurator bootstrap against a {@link CoreSystemStub}, using a
+ * {@link SyntheticTopology} of given size, and reports its duration,
+ * throughput, request latencies and memory use.
+ * <p>
+ * The topology is first configured using the given mode, after which it is
+ * reconciled the given number of times. As the stub retains all entries
+ * between runs, reconciliations measure the cost of determining that no
+ * changes are required.
+ * <p>
+ * Options are given as {@code --name=value}; see {@link #main(String[])}.
+ */
+public class BootstrapLoadTest {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 100.0};
+
+    /**
+     * Runs load test.
+     * <p>
+     * Supported options, with their default values, are:
+     * <ul>
+     *     <li>{@code --systems=200}</li>
+     *     <li>{@code --services-per-system=4}</li>
+     *     <li>{@code --fan-out=5}</li>
+     *     <li>{@code --mode=register}, or {@code reconcile}</li>
+     *     <li>{@code --reconcile-runs=1}</li>
+     *     <li>{@code --parallelism=8}</li>
+     *     <li>{@code --requests-per-second=1000}</li>
+     *     <li>{@code --max-attempts=5}</li>
+     *     <li>{@code --max-connections=8}</li>
+     *     <li>{@code --stub-threads=32}</li>
+     *     <li>{@code --stub-latency-millis=2}</li>
+     *     <li>{@code --stub-failure-rate=0.0}</li>
+     *     <li>{@code --log-level=WARNING}</li>
+     * </ul>
+     *
+     * @param args Options.
+     * @throws Exception If the load test could not be completed.
+     */
+    public static void main(final String[] args) throws Exception {
+        final var options = optionsOf(args);
+        final var systems = Integer.parseInt(options.getOrDefault("systems", "200"));
+        final var servicesPerSystem = Integer.parseInt(options.getOrDefault("services-per-system", "4"));
+        final var fanOut = Integer.parseInt(options.getOrDefault("fan-out", "5"));
+        final var mode = options.getOrDefault("mode", "register");
+        final var reconcileRuns = Integer.parseInt(options.getOrDefault("reconcile-runs", "1"));
+        final var parallelism = Integer.parseInt(options.getOrDefault("parallelism", "8"));
+        final var requestsPerSecond = Integer.parseInt(options.getOrDefault("requests-per-second", "1000"));
+        final var maxAttempts = Integer.parseInt(options.getOrDefault("max-attempts", "5"));
+        final var maxConnections = Integer.parseInt(options.getOrDefault("max-connections", "8"));
+        final var stubThreads = Integer.parseInt(options.getOrDefault("stub-threads", "32"));
+        final var stubLatency = Duration.ofMillis(Long.parseLong(options.getOrDefault("stub-latency-millis", "2")));
+        final var stubFailureRate = Double.parseDouble(options.getOrDefault("stub-failure-rate", "0.0"));
+        final var logLevel = Level.parse(options.getOrDefault("log-level", "WARNING"));
+
+        // Main sets the log level when initialized, which is why it must be
+        // initialized before the level is overridden.
+        Class.forName(Main.class.getName());
+        final var root = java.util.logging.Logger.getLogger("");
+        root.setLevel(logLevel);
+        for (final var handler : root.getHandlers()) {
+            handler.setLevel(logLevel);
+        }
+
+        final var topology = new SyntheticTopology(systems, servicesPerSystem, fanOut);
+        final var stub = CoreSystemStub.start(stubThreads, stubLatency, stubFailureRate);
+        try {
+            final var configBytes = topology.config(stub.host());
+            final var config = ConfigDto.readJson(new ByteArrayReader(configBytes));
+            System.out.printf("Topology: %d systems, %d services, %d rules, %d grants, %d bytes of configuration%n",
+                topology.systems(), topology.services(), topology.rules(), topology.grants(), configBytes.length);
+            System.out.printf("Stub: %d threads, %d ms latency, %.3f failure rate%n",
+                stubThreads, stubLatency.toMillis(), stubFailureRate);
+
+            final var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final var thread = new Thread(runnable, "sysop-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final var executor = new RegistrationExecutor(scheduler, parallelism, requestsPerSecond,
+                maxAttempts, Duration.ofMillis(200));
+            final var pool = new HttpConnectionPool(new HttpClient.Builder()
+                .insecure()
+                .build(), maxConnections, Duration.ofSeconds(30));
+
+            final var statusOfFirstRun = new BootstrapStatus();
+            statusOfFirstRun.connections(pool);
+            run(mode, stub, statusOfFirstRun, () -> mode.equals("reconcile")
+                ? new Reconciler(pool, executor, config, statusOfFirstRun).reconcile()
+                : Main.register(pool, executor, config, statusOfFirstRun));
+
+            for (var i = 0; i < reconcileRuns; ++i) {
+                final var status = new BootstrapStatus();
+                status.connections(pool);
+                run("reconcile", stub, status, () -> new Reconciler(pool, executor, config, status).reconcile());
+            }
+
+            final var isComplete = stub.serviceEntryCount() == topology.services() + 2
+                && stub.authorizationRuleCount() == topology.grants()
+                && stub.orchestrationRuleCount() == topology.grants();
+            System.out.printf("Stub state: %d service entries, %d authorization rules, %d orchestration rules (%s)%n",
+                stub.serviceEntryCount(), stub.authorizationRuleCount(), stub.orchestrationRuleCount(),
+                isComplete ? "as expected" : "NOT as expected");
+            if (!isComplete) {
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+        finally {
+            stub.stop();
+        }
+    }
+
+    private static void run(
+        final String name,
+        final CoreSystemStub stub,
+        final BootstrapStatus status,
+        final Supplier<Future<?>> bootstrap
+    ) throws Exception {
+        final var requestsBefore = requestCountOf(stub);
+        final var heapBefore = resetHeapPeakUsage();
+        final var startedAt = System.nanoTime();
+
+        final var completion = new CompletableFuture<Void>();
+        bootstrap.get().onResult(result -> {
+            if (result.isSuccess()) {
+                completion.complete(null);
+            }
+            else {
+                completion.completeExceptionally(result.fault());
+            }
+        });
+        try {
+            completion.get();
+            status.ready();
+        }
+        catch (final Exception exception) {
+            status.fail(exception.getCause() != null ? exception.getCause() : exception);
+        }
+
+        final var elapsedNanos = System.nanoTime() - startedAt;
+        final var requests = requestCountOf(stub) - requestsBefore;
+
+        System.out.printf("%nRun \"%s\": %s in %d ms%n", name, status.state(), elapsedNanos / 1_000_000);
+        System.out.printf("  Status: %s%n", status.toJson());
+        System.out.printf("  Requests: %d, %.1f requests/s%n", requests, requests * 1e9 / Math.max(elapsedNanos, 1));
+        System.out.printf("  Heap: %.1f MiB before, %.1f MiB peak%n", heapBefore / 1048576.0, heapPeakUsage() / 1048576.0);
+        System.out.println("  Stub latency (ms), cumulative since start:");
+        System.out.printf("    %-50s %8s %8s %8s %8s %8s%n", "operation", "count", "p50", "p90", "p99", "max");
+        for (final var entry : stub.recorders().entrySet()) {
+            final var recorder = entry.getValue();
+            final var percentiles = recorder.percentiles(PERCENTILES);
+            System.out.printf("    %-50s %8d %8.2f %8.2f %8.2f %8.2f%n", entry.getKey(), recorder.count(),
+                percentiles[0] / 1e6, percentiles[1] / 1e6, percentiles[2] / 1e6, percentiles[3] / 1e6);
+        }
+        if (status.state() != BootstrapPhase.State.DONE) {
+            System.exit(1);
+        }
+    }
+
+    private static long requestCountOf(final CoreSystemStub stub) {
+        var count = 0L;
+        for (final var recorder : stub.recorders().values()) {
+            count += recorder.count();
+        }
+        return count;
+    }
+
+    private static long resetHeapPeakUsage() {
+        System.gc();
+        var used = 0L;
+        for (final var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long heapPeakUsage() {
+        var peak = 0L;
+        for (final var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static Map<String, String> optionsOf(final String[] args) {
+        final var options = new HashMap<String, String>();
+        for (final var arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            final var equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            }
+            else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,193 @@
+package sc_demo.sysop;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates synthetic cloud topologies, both as configurator configuration
+ * files and as the service registry query results such configurations
+ * would lead to.
+ * <p>
+ * Every generated system provides {@code servicesPerSystem} services of
+ * its own, and consumes all services of the {@code fanOut} systems
+ * following it, which means that the number of generated consumption
+ * grants is {@code systems * fanOut * servicesPerSystem}. Generation is
+ * deterministic, making repeated runs with the same parameters comparable.
+ * <p>
+ * Running this class writes a configuration file to disk, which can be
+ * used as a drop-in replacement of {@code config/network-topology.json}.
+ */
+public class SyntheticTopology {
+    private static final String AUTHENTICATION_INFO = "MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA" +
+        "0DwXI7atPh3esIsllKECBztX8hk1Gbxbd+gknlIc5efShfLXAvXbMpFtNJ3kAqLyyuqP3mzlyaTuR03uSFtF9wZoN2fgzrHT" +
+        "snil9WqUxKDu39tASd/P/1D00nZEUpUcUTXMf1CdgFhIKKsMjskS9GT48TsJ/PcUKVv2XFg4PpW1eA/bsqu2j33Dm6TJLvhH" +
+        "R8JbMk00U6qhB6f9K9GZ96VAsllcx4tc7HqgWdVDnUtojn/wIBQTVNtXRee+EFFVgJODukGInZ3FSjyIdcp9y8GeF1KzIpws" +
+        "ILICHYHmcZgAjqC0VNis9Srac8vFsg2XLu8Bp52UH9tK5opcMydWPQIDAQAB";
+
+    private static final String TIMESTAMP = "2020-10-01 12:00:00";
+    private static final String SERVICE_REGISTRY_HOST = "service-registry.p4sc:8443";
+
+    /**
+     * Writes a synthetic configuration file.
+     *
+     * @param args Number of systems, services per system, fan-out and path
+     *             of configuration file to write, in that order.
+     * @throws IOException If the file could not be written.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: SyntheticTopology <systems> <services-per-system> <fan-out> <output-path>");
+            System.exit(1);
+        }
+        final var topology = new SyntheticTopology(
+            Integer.parseInt(args[0]),
+            Integer.parseInt(args[1]),
+            Integer.parseInt(args[2]));
+        final var path = Path.of(args[3]).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Files.write(path, topology.config());
+        System.out.println("Wrote " + topology.systems() + " systems, " + topology.services() +
+            " services and " + topology.rules() + " rules (" + topology.grants() + " grants) to " + args[3]);
+    }
+
+    private final int systems;
+    private final int servicesPerSystem;
+    private final int fanOut;
+
+    public SyntheticTopology(final int systems, final int servicesPerSystem, final int fanOut) {
+        if (systems < 1 || servicesPerSystem < 1 || fanOut < 0 || fanOut >= systems) {
+            throw new IllegalArgumentException("Expected systems >= 1, " +
+                "servicesPerSystem >= 1 and 0 <= fanOut < systems");
+        }
+        this.systems = systems;
+        this.servicesPerSystem = servicesPerSystem;
+        this.fanOut = fanOut;
+    }
+
+    public int systems() {
+        return systems;
+    }
+
+    public int services() {
+        return systems * servicesPerSystem;
+    }
+
+    public int rules() {
+        return systems * fanOut;
+    }
+
+    public int grants() {
+        return systems * fanOut * servicesPerSystem;
+    }
+
+    public static String systemNameOf(final int system) {
+        return "system-" + system;
+    }
+
+    public static String serviceNameOf(final int system, final int service) {
+        return "service-" + system + "-" + service;
+    }
+
+    /**
+     * @return Configuration file, as read by {@link Main}.
+     */
+    public byte[] config() {
+        return config(SERVICE_REGISTRY_HOST);
+    }
+
+    /**
+     * @param serviceRegistryHost Host and port of service registry.
+     * @return Configuration file, as read by {@link Main}.
+     */
+    public byte[] config(final String serviceRegistryHost) {
+        final var builder = new StringBuilder(services() * 256 + grants() * 32);
+        builder.append("{\"interfaces\":[\"HTTP-SECURE-JSON\"],")
+            .append("\"serviceRegistryHost\":\"").append(serviceRegistryHost).append("\",")
+            .append("\"providers\":[");
+        for (var i = 0; i < systems; ++i) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"address\":\"").append(systemNameOf(i)).append(".p4sc\",")
+                .append("\"authenticationInfo\":\"").append(AUTHENTICATION_INFO).append("\",")
+                .append("\"port\":").append(10000 + i).append(',')
+                .append("\"systemName\":\"").append(systemNameOf(i)).append("\"}");
+        }
+        builder.append("],\"services\":[");
+        for (var i = 0; i < systems; ++i) {
+            for (var j = 0; j < servicesPerSystem; ++j) {
+                if (i > 0 || j > 0) {
+                    builder.append(',');
+                }
+                builder.append("{\"serviceDefinition\":\"").append(serviceNameOf(i, j)).append("\",")
+                    .append("\"providerIndex\":").append(i).append(',')
+                    .append("\"serviceUri\":\"/").append(serviceNameOf(i, j)).append("\",")
+                    .append("\"secure\":\"CERTIFICATE\",")
+                    .append("\"metadata\":{\"owner\":\"").append(systemNameOf(i)).append("\"},")
+                    .append("\"interfaces\":[\"HTTP-SECURE-JSON\"]}");
+            }
+        }
+        builder.append("],\"rules\":[");
+        for (var i = 0; i < systems; ++i) {
+            for (var d = 1; d <= fanOut; ++d) {
+                final var provider = (i + d) % systems;
+                if (i > 0 || d > 1) {
+                    builder.append(',');
+                }
+                builder.append("{\"consumer\":\"").append(systemNameOf(i)).append("\",\"services\":[");
+                for (var j = 0; j < servicesPerSystem; ++j) {
+                    if (j > 0) {
+                        builder.append(',');
+                    }
+                    builder.append('"').append(serviceNameOf(provider, j)).append('"');
+                }
+                builder.append("],\"providers\":[\"").append(systemNameOf(provider)).append("\"]}");
+            }
+        }
+        builder.append("]}");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Response body of a service registry management query for all
+     * services of the topology, as decoded by {@link ServiceRegistryCache}.
+     */
+    public byte[] serviceRegistryEntries() {
+        final var count = services();
+        final var builder = new StringBuilder(count * 768);
+        builder.append("{\"data\":[");
+        for (var i = 0; i < systems; ++i) {
+            for (var j = 0; j < servicesPerSystem; ++j) {
+                final var id = i * servicesPerSystem + j + 1;
+                if (id > 1) {
+                    builder.append(',');
+                }
+                builder.append("{\"id\":").append(id).append(',')
+                    .append("\"serviceDefinition\":{\"id\":").append(id)
+                    .append(",\"serviceDefinition\":\"").append(serviceNameOf(i, j)).append("\",")
+                    .append("\"createdAt\":\"").append(TIMESTAMP).append("\",")
+                    .append("\"updatedAt\":\"").append(TIMESTAMP).append("\"},")
+                    .append("\"provider\":{\"id\":").append(i + 1)
+                    .append(",\"systemName\":\"").append(systemNameOf(i)).append("\",")
+                    .append("\"address\":\"").append(systemNameOf(i)).append(".p4sc\",")
+                    .append("\"port\":").append(10000 + i).append(',')
+                    .append("\"authenticationInfo\":\"").append(AUTHENTICATION_INFO).append("\",")
+                    .append("\"createdAt\":\"").append(TIMESTAMP).append("\",")
+                    .append("\"updatedAt\":\"").append(TIMESTAMP).append("\"},")
+                    .append("\"serviceUri\":\"/").append(serviceNameOf(i, j)).append("\",")
+                    .append("\"secure\":\"CERTIFICATE\",")
+                    .append("\"metadata\":{\"owner\":\"").append(systemNameOf(i)).append("\"},")
+                    .append("\"version\":1,")
+                    .append("\"interfaces\":[{\"id\":1,\"interfaceName\":\"HTTP-SECURE-JSON\",")
+                    .append("\"createdAt\":\"").append(TIMESTAMP).append("\",")
+                    .append("\"updatedAt\":\"").append(TIMESTAMP).append("\"}],")
+                    .append("\"createdAt\":\"").append(TIMESTAMP).append("\",")
+                    .append("\"updatedAt\":\"").append(TIMESTAMP).append("\"}");
+            }
+        }
+        builder.append("],\"count\":").append(count).append('}');
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
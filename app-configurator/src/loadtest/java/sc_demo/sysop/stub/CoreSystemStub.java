@@ -0,0 +1,650 @@
+package sc_demo.sysop.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import sc_demo.common.LatencyRecorder;
+import se.arkalix.dto.binary.ByteArrayReader;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * In-process stand-in for the management endpoints of the service registry,
+ * authorization and orchestrator core systems, as used by the configurator.
+ * <p>
+ * All three systems are served via plain HTTP on the same port. Entries are
+ * kept in memory, which means that a configurator can be run against the
+ * stub from an empty state as well as against the state left by a previous
+ * run. The service registry initially only contains the entries of the
+ * authorization and orchestrator systems, both of which point back to the
+ * stub itself.
+ * <p>
+ * Every request can be delayed and failed with a given probability, making
+ * it possible to observe how the configurator behaves when the core systems
+ * are slow or overloaded. The duration of handling every request, including
+ * any delay, is recorded per operation.
+ * <p>
+ * Unless the JVM is started with {@code -Dsun.net.httpserver.nodelay=true},
+ * as the {@code loadTest} task does, every response body is held back by
+ * Nagle's algorithm until the client acknowledges the response head, which
+ * it may delay by up to 40 ms.
+ */
+public class CoreSystemStub {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration latency;
+    private final double failureRate;
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+
+    private final Map<String, StubSystemEntry> systemsByName = new HashMap<>();
+    private final Map<Integer, StubSystemEntry> systemsById = new HashMap<>();
+    private final Map<String, Named> serviceDefinitionsByName = new HashMap<>();
+    private final Map<Integer, Named> serviceDefinitionsById = new HashMap<>();
+    private final Map<String, Named> interfacesByName = new HashMap<>();
+    private final Map<Integer, Named> interfacesById = new HashMap<>();
+    private final TreeMap<Integer, ServiceEntry> serviceEntries = new TreeMap<>();
+    private final TreeMap<Integer, RuleEntry> authorizationRules = new TreeMap<>();
+    private final TreeMap<Integer, RuleEntry> orchestrationRules = new TreeMap<>();
+
+    private int nextId = 1;
+
+    private CoreSystemStub(
+        final HttpServer server,
+        final ExecutorService executor,
+        final Duration latency,
+        final double failureRate
+    ) {
+        this.server = server;
+        this.executor = executor;
+        this.latency = Objects.requireNonNull(latency);
+        if (failureRate < 0.0 || failureRate >= 1.0) {
+            throw new IllegalArgumentException("Expected 0 <= failureRate < 1");
+        }
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Starts stub on an ephemeral loopback port.
+     *
+     * @param threads     Number of threads handling requests.
+     * @param latency     Time to delay every response.
+     * @param failureRate Probability of any request being responded to with
+     *                    503 Service Unavailable, in the range {@code [0, 1)}.
+     * @return Started stub.
+     * @throws IOException If the stub could not be bound to a port.
+     */
+    public static CoreSystemStub start(final int threads, final Duration latency, final double failureRate)
+        throws IOException
+    {
+        final var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        final var executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "core-system-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var stub = new CoreSystemStub(server, executor, latency, failureRate);
+        server.createContext("/", stub::handle);
+        server.setExecutor(executor);
+
+        final var address = server.getAddress();
+        stub.registerCoreSystem("authorization", "authorization-control-intra", address);
+        stub.registerCoreSystem("orchestrator", "orchestration-service", address);
+
+        server.start();
+        return stub;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return Host and port of the stub, formatted as in configuration
+     * files.
+     */
+    public String host() {
+        final var address = server.getAddress();
+        return address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * @return Durations of handled requests, by operation.
+     */
+    public Map<String, LatencyRecorder> recorders() {
+        return new TreeMap<>(recorders);
+    }
+
+    public synchronized int serviceEntryCount() {
+        return serviceEntries.size();
+    }
+
+    public synchronized int authorizationRuleCount() {
+        return authorizationRules.size();
+    }
+
+    public synchronized int orchestrationRuleCount() {
+        return orchestrationRules.size();
+    }
+
+    private synchronized void registerCoreSystem(final String systemName, final String serviceName, final InetSocketAddress address) {
+        final var system = systemOf(systemName, address.getAddress().getHostAddress(), address.getPort(), "");
+        final var id = nextId++;
+        serviceEntries.put(id, new ServiceEntry(id, serviceDefinitionOf(serviceName), system,
+            "/" + serviceName, "NOT_SECURE", Map.of(), 1, List.of(interfaceOf("HTTP-INSECURE-JSON"))));
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final var startedAt = System.nanoTime();
+        final var method = exchange.getRequestMethod();
+        final var path = exchange.getRequestURI().getPath();
+        final var operation = operationOf(method, path);
+        try {
+            if (!latency.isZero()) {
+                Thread.sleep(latency.toMillis());
+            }
+            if (failureRate > 0.0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                respond(exchange, 503, "{\"errorMessage\":\"Injected failure\"}");
+                return;
+            }
+            final var body = exchange.getRequestBody().readAllBytes();
+            final var query = queryOf(exchange.getRequestURI().getRawQuery());
+            respond(exchange, route(method, path, query, body));
+        }
+        catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{\"errorMessage\":\"Stopping\"}");
+        }
+        catch (final Throwable throwable) {
+            respond(exchange, 400, "{\"errorMessage\":" + stringOf(String.valueOf(throwable.getMessage())) + "}");
+        }
+        finally {
+            exchange.close();
+            recorders.computeIfAbsent(operation, ignored -> new LatencyRecorder())
+                .record(System.nanoTime() - startedAt);
+        }
+    }
+
+    private Response route(final String method, final String path, final Map<String, String> query, final byte[] body)
+        throws Exception
+    {
+        if (path.equals("/serviceregistry/mgmt")) {
+            switch (method) {
+            case "GET": return listServiceEntries(query, entry -> true);
+            case "POST": return createServiceEntry(StubServiceRegistrationDto.readJson(new ByteArrayReader(body)));
+            }
+        }
+        else if (path.startsWith("/serviceregistry/mgmt/servicedef/")) {
+            if (method.equals("GET")) {
+                final var name = path.substring("/serviceregistry/mgmt/servicedef/".length());
+                return listServiceEntries(query, entry -> entry.serviceDefinition.name.equals(name));
+            }
+        }
+        else if (path.startsWith("/serviceregistry/mgmt/")) {
+            if (method.equals("DELETE")) {
+                return delete(serviceEntries, idOf(path));
+            }
+        }
+        else if (path.equals("/authorization/mgmt/intracloud")) {
+            switch (method) {
+            case "GET": return listRules(authorizationRules);
+            case "POST": return createAuthorizationRules(StubAuthorizationRuleDto.readJson(new ByteArrayReader(body)));
+            }
+        }
+        else if (path.startsWith("/authorization/mgmt/intracloud/")) {
+            if (method.equals("DELETE")) {
+                return delete(authorizationRules, idOf(path));
+            }
+        }
+        else if (path.equals("/orchestrator/mgmt/store")) {
+            switch (method) {
+            case "GET": return listRules(orchestrationRules);
+            case "POST":
+                final var rules = new ArrayList<StubOrchestrationRuleDto>();
+                for (final var element : elementsOf(body)) {
+                    rules.add(StubOrchestrationRuleDto.readJson(new ByteArrayReader(element)));
+                }
+                return createOrchestrationRules(rules);
+            }
+        }
+        else if (path.startsWith("/orchestrator/mgmt/store/")) {
+            if (method.equals("DELETE")) {
+                return delete(orchestrationRules, idOf(path));
+            }
+        }
+        return new Response(404, "{\"errorMessage\":\"Not found\"}");
+    }
+
+    private synchronized Response createServiceEntry(final StubServiceRegistration registration) {
+        final var provider = registration.providerSystem();
+        final var system = systemOf(provider.systemName(), provider.address(), provider.port(),
+            provider.authenticationInfo().orElse(""));
+        final var serviceDefinition = serviceDefinitionOf(registration.serviceDefinition());
+        for (final var entry : serviceEntries.values()) {
+            if (entry.provider == system && entry.serviceDefinition == serviceDefinition) {
+                return new Response(400, "{\"errorMessage\":\"Service registry entry already exists\"}");
+            }
+        }
+        final var interfaces = new ArrayList<Named>(registration.interfaces().size());
+        for (final var name : registration.interfaces()) {
+            interfaces.add(interfaceOf(name));
+        }
+        final var id = nextId++;
+        final var entry = new ServiceEntry(id, serviceDefinition, system, registration.serviceUri(),
+            registration.secure().orElse("NOT_SECURE"), new TreeMap<>(registration.metadata()),
+            registration.version().orElse(1), interfaces);
+        serviceEntries.put(id, entry);
+
+        final var builder = new StringBuilder(512);
+        entry.writeJson(builder);
+        return new Response(201, builder.toString());
+    }
+
+    private synchronized Response listServiceEntries(final Map<String, String> query, final Predicate<ServiceEntry> filter) {
+        final var matching = new ArrayList<ServiceEntry>();
+        for (final var entry : serviceEntries.values()) {
+            if (filter.test(entry)) {
+                matching.add(entry);
+            }
+        }
+        final var page = Integer.parseInt(query.getOrDefault("page", "0"));
+        final var itemsPerPage = Integer.parseInt(query.getOrDefault("item_per_page", Integer.toString(Integer.MAX_VALUE)));
+        final var from = (int) Math.min((long) page * itemsPerPage, matching.size());
+        final var to = (int) Math.min((long) from + itemsPerPage, matching.size());
+
+        final var builder = new StringBuilder(512 * (to - from) + 32);
+        builder.append("{\"data\":[");
+        for (var i = from; i < to; ++i) {
+            if (i > from) {
+                builder.append(',');
+            }
+            matching.get(i).writeJson(builder);
+        }
+        builder.append("],\"count\":").append(matching.size()).append('}');
+        return new Response(200, builder.toString());
+    }
+
+    private synchronized Response createAuthorizationRules(final StubAuthorizationRule rule) {
+        final var consumer = systemById(rule.consumerId());
+        final var interfaceId = rule.interfaceIds().isEmpty() ? null : rule.interfaceIds().get(0);
+        final var builder = new StringBuilder(256);
+        builder.append("{\"data\":[");
+        var count = 0;
+        for (final var providerId : rule.providerIds()) {
+            final var provider = systemById(providerId);
+            for (final var serviceDefinitionId : rule.serviceDefinitionIds()) {
+                final var serviceDefinition = byId(serviceDefinitionsById, serviceDefinitionId, "service definition");
+                final var id = nextId++;
+                final var entry = new RuleEntry(id, consumer, provider, serviceDefinition,
+                    interfaceId != null ? byId(interfacesById, interfaceId, "interface") : null);
+                authorizationRules.put(id, entry);
+                if (count++ > 0) {
+                    builder.append(',');
+                }
+                entry.writeJson(builder);
+            }
+        }
+        builder.append("],\"count\":").append(count).append('}');
+        return new Response(201, builder.toString());
+    }
+
+    private synchronized Response createOrchestrationRules(final List<? extends StubOrchestrationRule> rules) {
+        final var builder = new StringBuilder(256 * rules.size() + 32);
+        builder.append("{\"data\":[");
+        for (var i = 0; i < rules.size(); ++i) {
+            final var rule = rules.get(i);
+            final var providerSystem = rule.providerSystem();
+            final var provider = systemsByName.get(providerSystem.systemName());
+            if (provider == null) {
+                throw new IllegalArgumentException("No system named \"" + providerSystem.systemName() + "\" exists");
+            }
+            final var id = nextId++;
+            final var entry = new RuleEntry(id, systemById(rule.consumerSystemId()), provider,
+                serviceDefinitionOf(rule.serviceDefinitionName()), interfaceOf(rule.serviceInterfaceName()));
+            orchestrationRules.put(id, entry);
+            if (i > 0) {
+                builder.append(',');
+            }
+            entry.writeJson(builder);
+        }
+        builder.append("],\"count\":").append(rules.size()).append('}');
+        return new Response(201, builder.toString());
+    }
+
+    private synchronized Response listRules(final TreeMap<Integer, RuleEntry> rules) {
+        final var builder = new StringBuilder(256 * rules.size() + 32);
+        builder.append("{\"data\":[");
+        var isFirst = true;
+        for (final var entry : rules.values()) {
+            if (!isFirst) {
+                builder.append(',');
+            }
+            isFirst = false;
+            entry.writeJson(builder);
+        }
+        builder.append("],\"count\":").append(rules.size()).append('}');
+        return new Response(200, builder.toString());
+    }
+
+    private synchronized Response delete(final TreeMap<Integer, ?> entries, final int id) {
+        if (entries.remove(id) == null) {
+            return new Response(400, "{\"errorMessage\":\"No entry with id " + id + " exists\"}");
+        }
+        return new Response(200, "");
+    }
+
+    private StubSystemEntry systemOf(final String name, final String address, final int port, final String authenticationInfo) {
+        var system = systemsByName.get(name);
+        if (system == null) {
+            system = new StubSystemEntry(nextId++, name, address, port, authenticationInfo);
+            systemsByName.put(name, system);
+            systemsById.put(system.id, system);
+        }
+        return system;
+    }
+
+    private StubSystemEntry systemById(final int id) {
+        return byId(systemsById, id, "system");
+    }
+
+    private Named serviceDefinitionOf(final String name) {
+        return namedOf(serviceDefinitionsByName, serviceDefinitionsById, name);
+    }
+
+    private Named interfaceOf(final String name) {
+        return namedOf(interfacesByName, interfacesById, name);
+    }
+
+    private Named namedOf(final Map<String, Named> byName, final Map<Integer, Named> byId, final String name) {
+        var named = byName.get(name);
+        if (named == null) {
+            named = new Named(nextId++, name);
+            byName.put(name, named);
+            byId.put(named.id, named);
+        }
+        return named;
+    }
+
+    private static <T> T byId(final Map<Integer, T> map, final int id, final String kind) {
+        final var value = map.get(id);
+        if (value == null) {
+            throw new IllegalArgumentException("No " + kind + " with id " + id + " exists");
+        }
+        return value;
+    }
+
+    private static int idOf(final String path) {
+        return Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+    }
+
+    private static String operationOf(final String method, final String path) {
+        if (path.startsWith("/serviceregistry/mgmt/servicedef/")) {
+            return method + " /serviceregistry/mgmt/servicedef/{name}";
+        }
+        final var lastSlash = path.lastIndexOf('/');
+        if (lastSlash > 0 && Character.isDigit(path.charAt(path.length() - 1))) {
+            return method + " " + path.substring(0, lastSlash) + "/{id}";
+        }
+        return method + " " + path;
+    }
+
+    private static Map<String, String> queryOf(final String rawQuery) {
+        final var query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (final var pair : rawQuery.split("&")) {
+            final var equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(pair.substring(0, equals), pair.substring(equals + 1));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Splits JSON array into its elements, without decoding them.
+     */
+    private static List<byte[]> elementsOf(final byte[] array) {
+        final var elements = new ArrayList<byte[]>();
+        var depth = 0;
+        var start = -1;
+        var isInString = false;
+        for (var i = 0; i < array.length; ++i) {
+            final var b = array[i];
+            if (isInString) {
+                if (b == '\\') {
+                    i += 1;
+                }
+                else if (b == '"') {
+                    isInString = false;
+                }
+                continue;
+            }
+            switch (b) {
+            case '"':
+                isInString = true;
+                break;
+            case '{':
+            case '[':
+                if (depth++ == 1 && b == '{') {
+                    start = i;
+                }
+                break;
+            case '}':
+            case ']':
+                if (--depth == 1 && b == '}') {
+                    final var element = new byte[i - start + 1];
+                    System.arraycopy(array, start, element, 0, element.length);
+                    elements.add(element);
+                }
+                break;
+            }
+        }
+        return elements;
+    }
+
+    private static void respond(final HttpExchange exchange, final Response response) throws IOException {
+        respond(exchange, response.status, response.body);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        final var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("content-type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    private static String stringOf(final String string) {
+        final var builder = new StringBuilder(string.length() + 2);
+        writeString(builder, string);
+        return builder.toString();
+    }
+
+    private static void writeString(final StringBuilder builder, final String string) {
+        builder.append('"');
+        for (var i = 0; i < string.length(); ++i) {
+            final var c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    private static class Response {
+        private final int status;
+        private final String body;
+
+        private Response(final int status, final String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static class Named {
+        private final int id;
+        private final String name;
+
+        private Named(final int id, final String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static class StubSystemEntry {
+        private final int id;
+        private final String name;
+        private final String address;
+        private final int port;
+        private final String authenticationInfo;
+
+        private StubSystemEntry(final int id, final String name, final String address, final int port, final String authenticationInfo) {
+            this.id = id;
+            this.name = name;
+            this.address = address;
+            this.port = port;
+            this.authenticationInfo = authenticationInfo;
+        }
+
+        private void writeJson(final StringBuilder builder) {
+            builder.append("{\"id\":").append(id).append(",\"systemName\":");
+            writeString(builder, name);
+            builder.append(",\"address\":");
+            writeString(builder, address);
+            builder.append(",\"port\":").append(port).append(",\"authenticationInfo\":");
+            writeString(builder, authenticationInfo);
+            builder.append(",\"createdAt\":\"2020-10-01 12:00:00\",\"updatedAt\":\"2020-10-01 12:00:00\"}");
+        }
+    }
+
+    private static class ServiceEntry {
+        private final int id;
+        private final Named serviceDefinition;
+        private final StubSystemEntry provider;
+        private final String serviceUri;
+        private final String secure;
+        private final Map<String, String> metadata;
+        private final int version;
+        private final List<Named> interfaces;
+
+        private ServiceEntry(
+            final int id,
+            final Named serviceDefinition,
+            final StubSystemEntry provider,
+            final String serviceUri,
+            final String secure,
+            final Map<String, String> metadata,
+            final int version,
+            final List<Named> interfaces
+        ) {
+            this.id = id;
+            this.serviceDefinition = serviceDefinition;
+            this.provider = provider;
+            this.serviceUri = serviceUri;
+            this.secure = secure;
+            this.metadata = metadata;
+            this.version = version;
+            this.interfaces = interfaces;
+        }
+
+        private void writeJson(final StringBuilder builder) {
+            builder.append("{\"id\":").append(id)
+                .append(",\"serviceDefinition\":{\"id\":").append(serviceDefinition.id)
+                .append(",\"serviceDefinition\":");
+            writeString(builder, serviceDefinition.name);
+            builder.append(",\"createdAt\":\"2020-10-01 12:00:00\",\"updatedAt\":\"2020-10-01 12:00:00\"}")
+                .append(",\"provider\":");
+            provider.writeJson(builder);
+            builder.append(",\"serviceUri\":");
+            writeString(builder, serviceUri);
+            builder.append(",\"secure\":");
+            writeString(builder, secure);
+            builder.append(",\"metadata\":{");
+            var isFirst = true;
+            for (final var pair : metadata.entrySet()) {
+                if (!isFirst) {
+                    builder.append(',');
+                }
+                isFirst = false;
+                writeString(builder, pair.getKey());
+                builder.append(':');
+                writeString(builder, pair.getValue());
+            }
+            builder.append("},\"version\":").append(version)
+                .append(",\"interfaces\":[");
+            for (var i = 0; i < interfaces.size(); ++i) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                final var anInterface = interfaces.get(i);
+                builder.append("{\"id\":").append(anInterface.id).append(",\"interfaceName\":");
+                writeString(builder, anInterface.name);
+                builder.append(",\"createdAt\":\"2020-10-01 12:00:00\",\"updatedAt\":\"2020-10-01 12:00:00\"}");
+            }
+            builder.append("],\"createdAt\":\"2020-10-01 12:00:00\",\"updatedAt\":\"2020-10-01 12:00:00\"}");
+        }
+    }
+
+    private static class RuleEntry {
+        private final int id;
+        private final StubSystemEntry consumer;
+        private final StubSystemEntry provider;
+        private final Named serviceDefinition;
+        private final Named serviceInterface;
+
+        private RuleEntry(
+            final int id,
+            final StubSystemEntry consumer,
+            final StubSystemEntry provider,
+            final Named serviceDefinition,
+            final Named serviceInterface
+        ) {
+            this.id = id;
+            this.consumer = consumer;
+            this.provider = provider;
+            this.serviceDefinition = serviceDefinition;
+            this.serviceInterface = serviceInterface;
+        }
+
+        private void writeJson(final StringBuilder builder) {
+            builder.append("{\"id\":").append(id).append(",\"consumerSystem\":");
+            consumer.writeJson(builder);
+            builder.append(",\"foreign\":false,\"providerSystem\":");
+            provider.writeJson(builder);
+            builder.append(",\"serviceDefinition\":{\"id\":").append(serviceDefinition.id)
+                .append(",\"serviceDefinition\":");
+            writeString(builder, serviceDefinition.name);
+            builder.append('}');
+            if (serviceInterface != null) {
+                builder.append(",\"interfaces\":[{\"id\":").append(serviceInterface.id)
+                    .append(",\"interfaceName\":");
+                writeString(builder, serviceInterface.name);
+                builder.append("}]");
+            }
+            builder.append(",\"priority\":0}");
+        }
+    }
+}
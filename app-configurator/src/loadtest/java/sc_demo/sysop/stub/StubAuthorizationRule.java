@@ -0,0 +1,22 @@
+package sc_demo.sysop.stub;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import java.util.List;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Intra-cloud authorization rule, as received by the authorization
+ * management endpoint of a {@link CoreSystemStub}.
+ */
+@DtoReadableAs(JSON)
+public interface StubAuthorizationRule {
+    int consumerId();
+
+    List<Integer> providerIds();
+
+    List<Integer> serviceDefinitionIds();
+
+    List<Integer> interfaceIds();
+}
@@ -0,0 +1,22 @@
+package sc_demo.sysop.stub;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Orchestration store rule, as received by the orchestrator management
+ * endpoint of a {@link CoreSystemStub}.
+ */
+@DtoReadableAs(JSON)
+public interface StubOrchestrationRule {
+    int consumerSystemId();
+
+    int priority();
+
+    StubSystem providerSystem();
+
+    String serviceDefinitionName();
+
+    String serviceInterfaceName();
+}
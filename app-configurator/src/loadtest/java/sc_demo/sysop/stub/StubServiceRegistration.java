@@ -0,0 +1,30 @@
+package sc_demo.sysop.stub;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Service registration, as received by the service registry management
+ * endpoint of a {@link CoreSystemStub}.
+ */
+@DtoReadableAs(JSON)
+public interface StubServiceRegistration {
+    String serviceDefinition();
+
+    StubSystem providerSystem();
+
+    String serviceUri();
+
+    Optional<String> secure();
+
+    Map<String, String> metadata();
+
+    Optional<Integer> version();
+
+    List<String> interfaces();
+}
@@ -0,0 +1,21 @@
+package sc_demo.sysop.stub;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * System, as described in requests received by a {@link CoreSystemStub}.
+ */
+@DtoReadableAs(JSON)
+public interface StubSystem {
+    String systemName();
+
+    String address();
+
+    int port();
+
+    Optional<String> authenticationInfo();
+}
@@ -2,62 +2,164 @@ package sc_demo.sysop;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import se.arkalix.net.MessageIncoming;
-import se.arkalix.net.http.client.HttpClient;
 import se.arkalix.net.http.client.HttpClientRequest;
 import se.arkalix.util.concurrent.Future;
-import se.arkalix.util.concurrent.Futures;
 import sc_demo.sysop.data.AuMgmtRuleIntraBuilder;
+import sc_demo.sysop.data.AuMgmtRuleIntraDto;
+import sc_demo.sysop.data.AuMgmtRuleIntraEntry;
+import sc_demo.sysop.data.AuMgmtRuleIntraQueryResultDto;
 import sc_demo.sysop.data.CfConsumptionRule;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import static se.arkalix.dto.DtoEncoding.JSON;
+import static se.arkalix.net.http.HttpMethod.DELETE;
+import static se.arkalix.net.http.HttpMethod.GET;
 import static se.arkalix.net.http.HttpMethod.POST;
 
 public class AuthorizationMgmt {
     private static final Logger logger = LoggerFactory.getLogger(AuthorizationMgmt.class);
 
-    private final HttpClient client;
+    private final HttpConnectionPool pool;
     private final InetSocketAddress authorizationHost;
     private final ServiceRegistryCache registry;
+    private final RegistrationExecutor executor;
 
-    public AuthorizationMgmt(final HttpClient client, final InetSocketAddress authorizationHost, final ServiceRegistryCache registry) {
-        this.client = Objects.requireNonNull(client);
+    public AuthorizationMgmt(
+        final HttpConnectionPool pool,
+        final InetSocketAddress authorizationHost,
+        final ServiceRegistryCache registry,
+        final RegistrationExecutor executor
+    ) {
+        this.pool = Objects.requireNonNull(pool);
         this.authorizationHost = Objects.requireNonNull(authorizationHost);
         this.registry = Objects.requireNonNull(registry);
+        this.executor = Objects.requireNonNull(executor);
     }
 
-    public Future<?> register(final List<CfConsumptionRule> rules) {
-        return Futures.serialize(rules.stream().map(rule -> client
+    public Future<Integer> register(final List<CfConsumptionRule> rules) {
+        return executor.execute("authorization rules", rules.iterator(), rule -> pool
             .send(authorizationHost, new HttpClientRequest()
                 .method(POST)
                 .uri("/authorization/mgmt/intracloud")
-                .body(JSON, new AuMgmtRuleIntraBuilder()
-                    .consumerId(registry.getSystemIdByNameOrThrow(rule.consumer()))
-                    .interfaceIds(rule.services()
-                        .stream()
-                        .map(registry::getInterfaceIdByServiceNameOrThrow)
-                        .distinct()
-                        .collect(Collectors.toUnmodifiableList()))
-                    .serviceDefinitionIds(rule.services()
-                        .stream()
-                        .map(registry::getServiceIdByNameOrThrow)
-                        .collect(Collectors.toList()))
-                    .providerIds(rule.providers()
-                        .stream()
-                        .map(registry::getSystemIdByNameOrThrow)
-                        .collect(Collectors.toList()))
-                    .build()))
-            .flatMap(MessageIncoming::bodyAsString)
+                .body(JSON, toRule(rule)))
+            .flatMap(RegistrationExecutor::bodyAsStringIfSuccess)
             .ifSuccess(body -> {
                 logger.info("Created authorization rule {}", rule);
                 logger.debug("Response: {}", body);
-            })
-            .ifFailure(Throwable.class, throwable ->
-                logger.warn("Failed to create authorization rule from " + rule, throwable))));
+            }));
+    }
+
+    AuMgmtRuleIntraDto toRule(final CfConsumptionRule rule) {
+        return toRule(rule.consumer(), rule.providers(), rule.services());
+    }
+
+    private AuMgmtRuleIntraDto toRule(final String consumer, final List<String> providers, final List<String> services) {
+        return new AuMgmtRuleIntraBuilder()
+            .consumerId(registry.getSystemIdByNameOrThrow(consumer))
+            .interfaceIds(services
+                .stream()
+                .map(registry::getInterfaceIdByServiceNameOrThrow)
+                .distinct()
+                .collect(Collectors.toUnmodifiableList()))
+            .serviceDefinitionIds(services
+                .stream()
+                .map(registry::getServiceIdByNameOrThrow)
+                .collect(Collectors.toList()))
+            .providerIds(providers
+                .stream()
+                .map(registry::getSystemIdByNameOrThrow)
+                .collect(Collectors.toList()))
+            .build();
+    }
+
+    public Future<List<AuMgmtRuleIntraEntry>> list() {
+        return pool.send(authorizationHost, new HttpClientRequest()
+            .method(GET)
+            .uri("/authorization/mgmt/intracloud"))
+            .flatMap(response -> response.bodyAsIfSuccess(JSON, AuMgmtRuleIntraQueryResultDto.class))
+            .map(result -> List.copyOf(result.data()));
+    }
+
+    /**
+     * Creates given grants, grouped into as few rules as possible without
+     * creating any grants not given.
+     *
+     * @param grants Grants to create.
+     * @return Future completed with the number of rules created.
+     */
+    public Future<Integer> create(final Collection<ConsumptionGrant> grants) {
+        return executor.execute("authorization grants", groupsOf(grants).iterator(), group -> pool
+            .send(authorizationHost, new HttpClientRequest()
+                .method(POST)
+                .uri("/authorization/mgmt/intracloud")
+                .body(JSON, toRule(group.consumer, group.providers, group.services)))
+            .flatMap(RegistrationExecutor::bodyAsStringIfSuccess)
+            .ifSuccess(body -> {
+                logger.info("Created authorization rule {} -> {}/{}", group.consumer, group.providers, group.services);
+                logger.debug("Response: {}", body);
+            }));
+    }
+
+    /**
+     * Groups given grants by consumer, and then by providers granted the
+     * same set of services, yielding groups that each correspond to one
+     * rule, as every rule grants its consumer every combination of its
+     * providers and services.
+     */
+    private static List<GrantGroup> groupsOf(final Collection<ConsumptionGrant> grants) {
+        final var servicesByProviderByConsumer = new LinkedHashMap<String, Map<String, Set<String>>>();
+        for (final var grant : grants) {
+            servicesByProviderByConsumer
+                .computeIfAbsent(grant.consumer(), ignored -> new LinkedHashMap<>())
+                .computeIfAbsent(grant.provider(), ignored -> new TreeSet<>())
+                .add(grant.service());
+        }
+        final var groups = new ArrayList<GrantGroup>();
+        for (final var consumerEntry : servicesByProviderByConsumer.entrySet()) {
+            final var providersByServices = new LinkedHashMap<Set<String>, List<String>>();
+            for (final var providerEntry : consumerEntry.getValue().entrySet()) {
+                providersByServices
+                    .computeIfAbsent(providerEntry.getValue(), ignored -> new ArrayList<>())
+                    .add(providerEntry.getKey());
+            }
+            for (final var entry : providersByServices.entrySet()) {
+                groups.add(new GrantGroup(consumerEntry.getKey(), entry.getValue(), List.copyOf(entry.getKey())));
+            }
+        }
+        return groups;
+    }
+
+    public Future<Integer> delete(final List<AuMgmtRuleIntraEntry> entries) {
+        return executor.execute("authorization rule removals", entries.iterator(), entry -> pool
+            .send(authorizationHost, new HttpClientRequest()
+                .method(DELETE)
+                .uri("/authorization/mgmt/intracloud/" + entry.id()))
+            .flatMap(RegistrationExecutor::bodyAsStringIfSuccess)
+            .ifSuccess(body -> logger.info("Removed authorization rule {} -> {}/{}",
+                entry.consumerSystem().systemName(),
+                entry.providerSystem().systemName(),
+                entry.serviceDefinition().serviceDefinition())));
+    }
+
+    private static class GrantGroup {
+        private final String consumer;
+        private final List<String> providers;
+        private final List<String> services;
+
+        private GrantGroup(final String consumer, final List<String> providers, final List<String> services) {
+            this.consumer = consumer;
+            this.providers = providers;
+            this.services = services;
+        }
     }
 }
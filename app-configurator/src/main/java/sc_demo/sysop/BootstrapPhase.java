@@ -0,0 +1,102 @@
+package sc_demo.sysop;
+
+import sc_demo.sysop.data.StatusPhaseBuilder;
+import sc_demo.sysop.data.StatusPhaseDto;
+import se.arkalix.util.concurrent.Future;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * One phase of configuring a cloud, such as registering services or
+ * creating authorization rules, with its state, duration and item counts.
+ */
+public class BootstrapPhase {
+    private final String name;
+
+    private State state = State.PENDING;
+    private long startedAt = 0;
+    private long finishedAt = 0;
+    private int items = 0;
+    private int failedItems = 0;
+    private String error = null;
+
+    public BootstrapPhase(final String name) {
+        this.name = Objects.requireNonNull(name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Starts this phase by calling {@code step}, and then records the
+     * outcome of the future it returns.
+     *
+     * @param step Function starting the work of this phase, returning a
+     *             future completed with the number of processed items.
+     * @return Future returned by {@code step}.
+     */
+    public Future<Integer> track(final Supplier<Future<Integer>> step) {
+        synchronized (this) {
+            state = State.RUNNING;
+            startedAt = System.nanoTime();
+        }
+        final Future<Integer> future;
+        try {
+            future = step.get();
+        }
+        catch (final Throwable throwable) {
+            fail(throwable);
+            throw throwable;
+        }
+        return future
+            .ifSuccess(count -> {
+                synchronized (this) {
+                    state = State.DONE;
+                    finishedAt = System.nanoTime();
+                    items += count;
+                }
+            })
+            .ifFailure(Throwable.class, this::fail);
+    }
+
+    private synchronized void fail(final Throwable throwable) {
+        state = State.FAILED;
+        finishedAt = System.nanoTime();
+        error = String.valueOf(throwable.getMessage());
+        if (throwable instanceof RegistrationException) {
+            final var exception = (RegistrationException) throwable;
+            items += exception.processed() - exception.failed();
+            failedItems += exception.failed();
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * @return Data transfer object describing the state, duration and item
+     * counts of this phase.
+     */
+    public synchronized StatusPhaseDto toDto() {
+        return new StatusPhaseBuilder()
+            .name(name)
+            .state(state)
+            .durationMillis(state != State.PENDING
+                ? ((state == State.RUNNING ? System.nanoTime() : finishedAt) - startedAt) / 1_000_000
+                : null)
+            .items(items)
+            .failedItems(failedItems)
+            .error(error)
+            .build();
+    }
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED,
+    }
+}
@@ -0,0 +1,108 @@
+package sc_demo.sysop;
+
+import sc_demo.common.JsonBuffer;
+import sc_demo.sysop.data.StatusPhaseDto;
+import sc_demo.sysop.data.StatusReportBuilder;
+import sc_demo.sysop.data.StatusReportDto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of configuring a cloud, consisting of one {@link BootstrapPhase}
+ * for each core system being configured.
+ */
+public class BootstrapStatus {
+    private final long startedAt = System.nanoTime();
+
+    private final BootstrapPhase registry = new BootstrapPhase("registry");
+    private final BootstrapPhase authorization = new BootstrapPhase("authorization");
+    private final BootstrapPhase orchestration = new BootstrapPhase("orchestration");
+    private final List<BootstrapPhase> phases = List.of(registry, authorization, orchestration);
+
+    private BootstrapPhase.State state = BootstrapPhase.State.RUNNING;
+    private long finishedAt = 0;
+    private String error = null;
+    private HttpConnectionPool connections = null;
+
+    public BootstrapPhase registry() {
+        return registry;
+    }
+
+    public BootstrapPhase authorization() {
+        return authorization;
+    }
+
+    public BootstrapPhase orchestration() {
+        return orchestration;
+    }
+
+    /**
+     * Sets connection pool whose counters are to be included in the data
+     * transfer object representation of this status.
+     *
+     * @param connections Connection pool.
+     */
+    public synchronized void connections(final HttpConnectionPool connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * Marks configuration as completed successfully.
+     */
+    public synchronized void ready() {
+        if (state == BootstrapPhase.State.RUNNING) {
+            state = BootstrapPhase.State.DONE;
+            finishedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Marks configuration as failed.
+     *
+     * @param throwable Cause of failure.
+     */
+    public synchronized void fail(final Throwable throwable) {
+        state = BootstrapPhase.State.FAILED;
+        finishedAt = System.nanoTime();
+        error = String.valueOf(throwable.getMessage());
+    }
+
+    public synchronized BootstrapPhase.State state() {
+        return state;
+    }
+
+    /**
+     * @return Data transfer object describing the overall state of
+     * configuration, as well as the state, duration and item counts of
+     * every phase and the counters of every pooled core system connection.
+     */
+    public StatusReportDto toDto() {
+        final var builder = new StatusReportBuilder();
+        final HttpConnectionPool connections;
+        synchronized (this) {
+            connections = this.connections;
+            final var end = state == BootstrapPhase.State.RUNNING ? System.nanoTime() : finishedAt;
+            builder
+                .state(state)
+                .durationMillis((end - startedAt) / 1_000_000)
+                .error(error);
+        }
+        final var phases = new ArrayList<StatusPhaseDto>(this.phases.size());
+        for (final var phase : this.phases) {
+            phases.add(phase.toDto());
+        }
+        return builder
+            .phases(phases)
+            .connections(connections != null ? connections.stats() : List.of())
+            .build();
+    }
+
+    /**
+     * @return JSON representation of {@link #toDto()}.
+     */
+    public String toJson() {
+        return new String(JsonBuffer.encode(toDto()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,199 @@
+package sc_demo.sysop;
+
+import sc_demo.sysop.data.CfProvider;
+import sc_demo.sysop.data.CfService;
+import sc_demo.sysop.data.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Differences between two {@link Config configurations}, expressed as the
+ * services and grants that must be removed and added in order for a cloud
+ * configured using the first configuration to match the second.
+ * <p>
+ * A service or grant whose provider has changed address, port or
+ * authentication information is considered to be both removed and added,
+ * as registry entries and orchestration rules embed those details.
+ */
+public class ConfigDelta {
+    private final List<String> removedServiceKeys;
+    private final List<CfService> addedServices;
+    private final Set<String> changedServiceNames;
+    private final List<ConsumptionGrant> removedGrants;
+    private final List<ConsumptionGrant> addedGrants;
+
+    private ConfigDelta(
+        final List<String> removedServiceKeys,
+        final List<CfService> addedServices,
+        final Set<String> changedServiceNames,
+        final List<ConsumptionGrant> removedGrants,
+        final List<ConsumptionGrant> addedGrants
+    ) {
+        this.removedServiceKeys = removedServiceKeys;
+        this.addedServices = addedServices;
+        this.changedServiceNames = changedServiceNames;
+        this.removedGrants = removedGrants;
+        this.addedGrants = addedGrants;
+    }
+
+    /**
+     * Computes differences between given configurations.
+     *
+     * @param previous Configuration currently applied.
+     * @param next     Configuration to apply.
+     * @return Differences between {@code previous} and {@code next}.
+     */
+    public static ConfigDelta between(final Config previous, final Config next) {
+        final var changedProviders = changedProvidersBetween(previous.providers(), next.providers());
+
+        final var previousServices = servicesByKeyOf(previous);
+        final var nextServices = servicesByKeyOf(next);
+
+        final var removedServiceKeys = new ArrayList<String>();
+        final var addedServices = new ArrayList<CfService>();
+        final var changedServiceNames = new LinkedHashSet<String>();
+
+        for (final var entry : previousServices.entrySet()) {
+            final var key = entry.getKey();
+            final var nextService = nextServices.get(key);
+            if (nextService == null
+                || !fingerprintOf(nextService).equals(fingerprintOf(entry.getValue()))
+                || changedProviders.contains(systemNameOf(key)))
+            {
+                removedServiceKeys.add(key);
+                changedServiceNames.add(entry.getValue().serviceDefinition());
+            }
+        }
+        for (final var entry : nextServices.entrySet()) {
+            final var key = entry.getKey();
+            final var previousService = previousServices.get(key);
+            if (previousService == null
+                || !fingerprintOf(previousService).equals(fingerprintOf(entry.getValue()))
+                || changedProviders.contains(systemNameOf(key)))
+            {
+                addedServices.add(entry.getValue());
+                changedServiceNames.add(entry.getValue().serviceDefinition());
+            }
+        }
+
+        final var previousGrants = ConsumptionGrant.allOf(previous.rules());
+        final var nextGrants = ConsumptionGrant.allOf(next.rules());
+
+        final var removedGrants = new ArrayList<ConsumptionGrant>();
+        for (final var grant : previousGrants) {
+            if (!nextGrants.contains(grant) || changedProviders.contains(grant.provider())) {
+                removedGrants.add(grant);
+            }
+        }
+        final var addedGrants = new ArrayList<ConsumptionGrant>();
+        for (final var grant : nextGrants) {
+            if (!previousGrants.contains(grant) || changedProviders.contains(grant.provider())) {
+                addedGrants.add(grant);
+            }
+        }
+
+        return new ConfigDelta(removedServiceKeys, addedServices, changedServiceNames, removedGrants, addedGrants);
+    }
+
+    /**
+     * Creates key identifying a service registry entry.
+     *
+     * @param systemName  Name of providing system.
+     * @param serviceName Name of provided service.
+     * @return Service key.
+     */
+    public static String serviceKeyOf(final String systemName, final String serviceName) {
+        return systemName + "/" + serviceName;
+    }
+
+    /**
+     * @return Keys, as produced by {@link #serviceKeyOf(String, String)}, of
+     * services to remove.
+     */
+    public List<String> removedServiceKeys() {
+        return removedServiceKeys;
+    }
+
+    public List<CfService> addedServices() {
+        return addedServices;
+    }
+
+    /**
+     * @return Names of all services with removed or added entries.
+     */
+    public Set<String> changedServiceNames() {
+        return changedServiceNames;
+    }
+
+    public List<ConsumptionGrant> removedGrants() {
+        return removedGrants;
+    }
+
+    public List<ConsumptionGrant> addedGrants() {
+        return addedGrants;
+    }
+
+    public boolean isEmpty() {
+        return removedServiceKeys.isEmpty() && addedServices.isEmpty()
+            && removedGrants.isEmpty() && addedGrants.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigDelta{" +
+            "removedServices=" + removedServiceKeys.size() +
+            ", addedServices=" + addedServices.size() +
+            ", removedGrants=" + removedGrants.size() +
+            ", addedGrants=" + addedGrants.size() +
+            '}';
+    }
+
+    private static Set<String> changedProvidersBetween(final List<CfProvider> previous, final List<CfProvider> next) {
+        final var previousByName = new HashMap<String, String>();
+        for (final var provider : previous) {
+            previousByName.put(provider.systemName(), fingerprintOf(provider));
+        }
+        final var changed = new HashSet<String>();
+        for (final var provider : next) {
+            final var fingerprint = previousByName.get(provider.systemName());
+            if (fingerprint != null && !fingerprint.equals(fingerprintOf(provider))) {
+                changed.add(provider.systemName());
+            }
+        }
+        return changed;
+    }
+
+    private static Map<String, CfService> servicesByKeyOf(final Config config) {
+        final var services = new LinkedHashMap<String, CfService>();
+        for (final var service : config.services()) {
+            final var systemName = config.providers().get(service.providerIndex()).systemName();
+            services.put(serviceKeyOf(systemName, service.serviceDefinition()), service);
+        }
+        return services;
+    }
+
+    private static String systemNameOf(final String serviceKey) {
+        return serviceKey.substring(0, serviceKey.lastIndexOf('/'));
+    }
+
+    private static String fingerprintOf(final CfProvider provider) {
+        return provider.address() + "|" + provider.port() + "|" + provider.authenticationInfo();
+    }
+
+    private static String fingerprintOf(final CfService service) {
+        return service.serviceUri() + "|" +
+            service.secure().map(Objects::toString).orElse("") + "|" +
+            service.version().map(Objects::toString).orElse("") + "|" +
+            new TreeMap<>(service.metadata()) + "|" +
+            service.interfaces();
+    }
+}
@@ -0,0 +1,202 @@
+package sc_demo.sysop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.sysop.data.ConfigDto;
+import se.arkalix.dto.binary.ByteArrayReader;
+import se.arkalix.util.concurrent.Future;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Watches a configuration file for changes, handing each new valid version
+ * of it to a function responsible for applying it.
+ * <p>
+ * Changes are detected via a {@link WatchService} on the directory of the
+ * file, as well as by comparing its modification time at a fixed interval,
+ * as file system events are not delivered reliably for files in mounted
+ * volumes. Bursts of changes are collapsed into one, files with unchanged
+ * contents are ignored and files that cannot be parsed are logged and
+ * otherwise ignored, leaving the previously applied configuration in place.
+ * A new configuration is never handed over before the previous one has
+ * been completely applied.
+ */
+public class ConfigWatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigWatcher.class);
+
+    private static final Duration DEBOUNCE_DELAY = Duration.ofMillis(200);
+
+    private final Path path;
+    private final Duration pollInterval;
+    private final Function<ConfigDto, Future<?>> apply;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private byte[] lastBytes;
+    private FileTime lastModifiedTime;
+
+    private ConfigWatcher(
+        final Path path,
+        final Duration pollInterval,
+        final Function<ConfigDto, Future<?>> apply
+    ) throws IOException {
+        this.path = path.toAbsolutePath();
+        this.pollInterval = Objects.requireNonNull(pollInterval);
+        this.apply = Objects.requireNonNull(apply);
+
+        lastBytes = Files.readAllBytes(this.path);
+        lastModifiedTime = Files.getLastModifiedTime(this.path);
+
+        watchService = this.path.getFileSystem().newWatchService();
+        this.path.getParent().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+
+        thread = new Thread(this::run, "config-watcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching given configuration file.
+     *
+     * @param path         Path to configuration file. Its current contents
+     *                     are assumed to already be applied.
+     * @param pollInterval Interval at which to compare the modification
+     *                     time of the file, in case no file system event
+     *                     is received.
+     * @param apply        Function applying a new configuration.
+     * @return Started watcher.
+     * @throws IOException If the file could not be read or watched.
+     */
+    public static ConfigWatcher start(
+        final Path path,
+        final Duration pollInterval,
+        final Function<ConfigDto, Future<?>> apply
+    ) throws IOException {
+        final var watcher = new ConfigWatcher(path, pollInterval, apply);
+        watcher.thread.start();
+        logger.info("Watching {} for changes", watcher.path);
+        return watcher;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (awaitChange()) {
+                    // Editors and volume mounts tend to write files in more
+                    // than one step; let them finish before reading.
+                    Thread.sleep(DEBOUNCE_DELAY.toMillis());
+                    drainEvents();
+                    reload();
+                }
+            }
+        }
+        catch (final InterruptedException | ClosedWatchServiceException exception) {
+            // Closed.
+        }
+        logger.info("Stopped watching {} for changes", path);
+    }
+
+    private boolean awaitChange() throws InterruptedException {
+        final var key = watchService.poll(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        if (key == null) {
+            return isModifiedSinceLastRead();
+        }
+        var isChanged = false;
+        for (final var event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                || path.getFileName().equals(event.context()))
+            {
+                isChanged = true;
+            }
+        }
+        key.reset();
+        return isChanged;
+    }
+
+    private void drainEvents() {
+        for (var key = watchService.poll(); key != null; key = watchService.poll()) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private boolean isModifiedSinceLastRead() {
+        try {
+            return !Files.getLastModifiedTime(path).equals(lastModifiedTime);
+        }
+        catch (final IOException exception) {
+            return false;
+        }
+    }
+
+    private void reload() throws InterruptedException {
+        final byte[] bytes;
+        try {
+            lastModifiedTime = Files.getLastModifiedTime(path);
+            bytes = Files.readAllBytes(path);
+        }
+        catch (final IOException exception) {
+            logger.warn("Failed to read {}; keeping current configuration", path, exception);
+            return;
+        }
+        if (Arrays.equals(bytes, lastBytes)) {
+            return;
+        }
+
+        final ConfigDto config;
+        try {
+            config = ConfigDto.readJson(new ByteArrayReader(bytes));
+        }
+        catch (final Throwable throwable) {
+            logger.warn("Failed to parse {}; keeping current configuration", path, throwable);
+            lastBytes = bytes;
+            return;
+        }
+
+        final var completion = new CompletableFuture<Void>();
+        try {
+            apply.apply(config)
+                .onResult(result -> {
+                    if (result.isSuccess()) {
+                        completion.complete(null);
+                    }
+                    else {
+                        completion.completeExceptionally(result.fault());
+                    }
+                });
+        }
+        catch (final Throwable throwable) {
+            completion.completeExceptionally(throwable);
+        }
+        try {
+            completion.get();
+            lastBytes = bytes;
+        }
+        catch (final ExecutionException exception) {
+            // The contents are not remembered, which means that the
+            // configuration is applied again the next time the file is
+            // touched.
+            logger.error("Failed to apply changes to {}", path, exception.getCause());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package sc_demo.sysop;
+
+import sc_demo.sysop.data.CfConsumptionRule;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Permission for one named consumer system to consume one named service
+ * from one named provider system.
+ * <p>
+ * Every {@link CfConsumptionRule} corresponds to one grant per combination
+ * of its providers and services, which is also how the authorization and
+ * orchestrator systems store them.
+ */
+public class ConsumptionGrant {
+    private final String consumer;
+    private final String provider;
+    private final String service;
+
+    public ConsumptionGrant(final String consumer, final String provider, final String service) {
+        this.consumer = Objects.requireNonNull(consumer);
+        this.provider = Objects.requireNonNull(provider);
+        this.service = Objects.requireNonNull(service);
+    }
+
+    /**
+     * Expands given consumption rules into the grants they consist of.
+     *
+     * @param rules Rules to expand.
+     * @return Set of grants, in rule order, without duplicates.
+     */
+    public static Set<ConsumptionGrant> allOf(final List<CfConsumptionRule> rules) {
+        final var grants = new LinkedHashSet<ConsumptionGrant>();
+        for (final var rule : rules) {
+            for (final var provider : rule.providers()) {
+                for (final var service : rule.services()) {
+                    grants.add(new ConsumptionGrant(rule.consumer(), provider, service));
+                }
+            }
+        }
+        return grants;
+    }
+
+    /**
+     * Expands given consumption rules into the grants they consist of,
+     * lazily, without removing duplicates.
+     *
+     * @param rules Rules to expand.
+     * @return Iterator producing grants, in rule order.
+     */
+    public static Iterator<ConsumptionGrant> iteratorOf(final List<CfConsumptionRule> rules) {
+        return new Iterator<>() {
+            private int ruleIndex = 0;
+            private int providerIndex = 0;
+            private int serviceIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (ruleIndex < rules.size()) {
+                    final var rule = rules.get(ruleIndex);
+                    if (providerIndex < rule.providers().size() && serviceIndex < rule.services().size()) {
+                        return true;
+                    }
+                    if (providerIndex < rule.providers().size() && !rule.services().isEmpty()) {
+                        providerIndex += 1;
+                        serviceIndex = 0;
+                        continue;
+                    }
+                    ruleIndex += 1;
+                    providerIndex = 0;
+                    serviceIndex = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public ConsumptionGrant next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final var rule = rules.get(ruleIndex);
+                return new ConsumptionGrant(
+                    rule.consumer(),
+                    rule.providers().get(providerIndex),
+                    rule.services().get(serviceIndex++));
+            }
+        };
+    }
+
+    public String consumer() {
+        return consumer;
+    }
+
+    public String provider() {
+        return provider;
+    }
+
+    public String service() {
+        return service;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+        final var grant = (ConsumptionGrant) other;
+        return consumer.equals(grant.consumer) &&
+            provider.equals(grant.provider) &&
+            service.equals(grant.service);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(consumer, provider, service);
+    }
+
+    @Override
+    public String toString() {
+        return consumer + " -> " + provider + "/" + service;
+    }
+}
@@ -0,0 +1,316 @@
+package sc_demo.sysop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.Completion;
+import sc_demo.sysop.data.CfSettings;
+import sc_demo.sysop.data.StatusConnectionsBuilder;
+import sc_demo.sysop.data.StatusConnectionsDto;
+import se.arkalix.net.http.client.HttpClient;
+import se.arkalix.net.http.client.HttpClientConnection;
+import se.arkalix.net.http.client.HttpClientRequest;
+import se.arkalix.net.http.client.HttpClientResponse;
+import se.arkalix.util.concurrent.Future;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of kept-alive HTTP connections, holding at most a fixed number of
+ * connections to each remote host.
+ * <p>
+ * Requests are sent via the most recently released idle connection to their
+ * host. If there is none, a new connection is established, unless the limit
+ * of the host is reached, in which case the request waits for a connection
+ * to be released. Connections are only ever closed when found to be dead,
+ * when idle for longer than the idle timeout, or when a request sent via
+ * them fails, which means that each host normally is subject to at most one
+ * full TLS handshake per pooled connection. Any handshakes that do occur
+ * may still be abbreviated via the TLS session cache of the JVM.
+ * <p>
+ * Connections are released as soon as the head of their responses arrive.
+ * Requests sent via a connection whose previous response body is not yet
+ * received are pipelined, which the HTTP client supports.
+ */
+public class HttpConnectionPool {
+    private static final Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+    private static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 30_000;
+
+    private final HttpClient client;
+    private final int maxConnectionsPerHost;
+    private final long idleTimeoutNanos;
+    private final Map<InetSocketAddress, Host> hosts = new ConcurrentHashMap<>();
+
+    public HttpConnectionPool(final HttpClient client, final int maxConnectionsPerHost, final Duration idleTimeout) {
+        this.client = Objects.requireNonNull(client);
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("Expected maxConnectionsPerHost >= 1");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * Creates connection pool from given settings, using default values for
+     * any settings not specified.
+     *
+     * @param client   Client used to establish connections.
+     * @param settings Settings, or {@code null}.
+     * @return New connection pool.
+     */
+    public static HttpConnectionPool from(final HttpClient client, final CfSettings settings) {
+        return new HttpConnectionPool(
+            client,
+            settings != null ? settings.maxConnectionsPerHost().orElse(DEFAULT_MAX_CONNECTIONS_PER_HOST) : DEFAULT_MAX_CONNECTIONS_PER_HOST,
+            Duration.ofMillis(settings != null ? settings.connectionIdleTimeoutMillis().orElse(DEFAULT_IDLE_TIMEOUT_MILLIS) : DEFAULT_IDLE_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Sends given request to given host via a pooled connection.
+     *
+     * @param remoteSocketAddress Host to send request to.
+     * @param request             Request to send.
+     * @return Future completed with response.
+     */
+    public Future<HttpClientResponse> send(final InetSocketAddress remoteSocketAddress, final HttpClientRequest request) {
+        final var host = hosts.computeIfAbsent(remoteSocketAddress, Host::new);
+        return host.acquire()
+            .flatMap(connection -> connection.send(request)
+                .ifSuccess(ignored -> host.release(connection, true))
+                .ifFailure(Throwable.class, ignored -> host.release(connection, false)));
+    }
+
+    /**
+     * Closes all connections not currently in use.
+     */
+    public void closeIdle() {
+        for (final var host : hosts.values()) {
+            host.closeIdle();
+        }
+    }
+
+    /**
+     * @return Connection counters of every host.
+     */
+    public List<StatusConnectionsDto> stats() {
+        final var stats = new ArrayList<StatusConnectionsDto>(hosts.size());
+        for (final var host : hosts.values()) {
+            stats.add(host.stats());
+        }
+        return stats;
+    }
+
+    private class Host {
+        private final InetSocketAddress address;
+        private final ArrayDeque<Idle> idle = new ArrayDeque<>();
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+        private int open = 0;
+        private int leased = 0;
+        private long connects = 0;
+        private long connectFailures = 0;
+        private long reuses = 0;
+        private long closes = 0;
+        private long waits = 0;
+        private long waitNanosTotal = 0;
+        private long waitNanosMax = 0;
+
+        private Host(final InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private Future<HttpClientConnection> acquire() {
+            final var now = System.nanoTime();
+            final var dead = new ArrayList<HttpClientConnection>(0);
+            final Future<HttpClientConnection> future;
+            synchronized (this) {
+                HttpClientConnection connection = null;
+                while (connection == null && !idle.isEmpty()) {
+                    final var candidate = idle.pollLast();
+                    if (candidate.connection.isLive() && now - candidate.idleSince < idleTimeoutNanos) {
+                        connection = candidate.connection;
+                    }
+                    else {
+                        open -= 1;
+                        closes += 1;
+                        dead.add(candidate.connection);
+                    }
+                }
+                if (connection != null) {
+                    leased += 1;
+                    reuses += 1;
+                    future = Future.success(connection);
+                }
+                else if (open < maxConnectionsPerHost) {
+                    open += 1;
+                    leased += 1;
+                    connects += 1;
+                    future = null;
+                }
+                else {
+                    final var waiter = new Waiter(now);
+                    waiters.addLast(waiter);
+                    waits += 1;
+                    future = waiter.completion.onCancel(() -> removeWaiter(waiter));
+                }
+            }
+            close(dead);
+            return future != null ? future : connect();
+        }
+
+        private void release(final HttpClientConnection connection, final boolean isReusable) {
+            final var now = System.nanoTime();
+            final Waiter waiter;
+            final boolean isClosing;
+            synchronized (this) {
+                leased -= 1;
+                waiter = waiters.pollFirst();
+                if (isReusable && connection.isLive()) {
+                    if (waiter == null) {
+                        idle.addLast(new Idle(connection, now));
+                        return;
+                    }
+                    reuses += 1;
+                    isClosing = false;
+                }
+                else {
+                    open -= 1;
+                    closes += 1;
+                    if (waiter != null) {
+                        open += 1;
+                        connects += 1;
+                    }
+                    isClosing = true;
+                }
+                if (waiter != null) {
+                    leased += 1;
+                    final var waitNanos = now - waiter.enqueuedAt;
+                    waitNanosTotal += waitNanos;
+                    waitNanosMax = Math.max(waitNanosMax, waitNanos);
+                }
+            }
+            if (isClosing) {
+                close(List.of(connection));
+                if (waiter != null) {
+                    connect().onResult(result -> {
+                        if (result.isSuccess()) {
+                            handOver(waiter, result.value());
+                        }
+                        else {
+                            waiter.completion.fail(result.fault());
+                        }
+                    });
+                }
+            }
+            else {
+                handOver(waiter, connection);
+            }
+        }
+
+        private void handOver(final Waiter waiter, final HttpClientConnection connection) {
+            if (!waiter.completion.complete(connection)) {
+                // The waiter was cancelled after being dequeued.
+                release(connection, true);
+            }
+        }
+
+        private Future<HttpClientConnection> connect() {
+            return client.connect(address)
+                .ifFailure(Throwable.class, fault -> {
+                    logger.warn("Failed to connect to {}", address, fault);
+                    final Waiter waiter;
+                    synchronized (this) {
+                        open -= 1;
+                        leased -= 1;
+                        connectFailures += 1;
+                        waiter = waiters.pollFirst();
+                        if (waiter == null) {
+                            return;
+                        }
+                        open += 1;
+                        leased += 1;
+                        connects += 1;
+                    }
+                    // Let the next waiter try again, as the waiter would
+                    // otherwise wait until some other connection is
+                    // released, of which there may be none.
+                    connect().onResult(result -> {
+                        if (result.isSuccess()) {
+                            handOver(waiter, result.value());
+                        }
+                        else {
+                            waiter.completion.fail(result.fault());
+                        }
+                    });
+                });
+        }
+
+        private void close(final List<HttpClientConnection> connections) {
+            for (final var connection : connections) {
+                connection.close()
+                    .onFailure(fault -> logger.debug("Failed to close connection to {}", address, fault));
+            }
+        }
+
+        private synchronized void removeWaiter(final Waiter waiter) {
+            waiters.remove(waiter);
+        }
+
+        private void closeIdle() {
+            final var connections = new ArrayList<HttpClientConnection>();
+            synchronized (this) {
+                for (final var entry : idle) {
+                    connections.add(entry.connection);
+                }
+                open -= idle.size();
+                closes += idle.size();
+                idle.clear();
+            }
+            close(connections);
+        }
+
+        private synchronized StatusConnectionsDto stats() {
+            return new StatusConnectionsBuilder()
+                .host(address.getHostString() + ":" + address.getPort())
+                .open(open)
+                .leased(leased)
+                .idle(idle.size())
+                .waiting(waiters.size())
+                .connects(connects)
+                .connectFailures(connectFailures)
+                .reuses(reuses)
+                .closes(closes)
+                .waits(waits)
+                .waitMillisTotal(waitNanosTotal / 1_000_000)
+                .waitMillisMax(waitNanosMax / 1_000_000)
+                .build();
+        }
+    }
+
+    private static class Idle {
+        private final HttpClientConnection connection;
+        private final long idleSince;
+
+        private Idle(final HttpClientConnection connection, final long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    private static class Waiter {
+        private final long enqueuedAt;
+        private final Completion<HttpClientConnection> completion = new Completion<>();
+
+        private Waiter(final long enqueuedAt) {
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
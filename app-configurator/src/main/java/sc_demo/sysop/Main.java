@@ -1,21 +1,36 @@
 package sc_demo.sysop;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.sysop.data.CfSettings;
 import sc_demo.sysop.data.ConfigDto;
 import se.arkalix.dto.binary.ByteArrayReader;
 import se.arkalix.net.http.client.HttpClient;
 import se.arkalix.security.identity.OwnedIdentity;
 import se.arkalix.security.identity.TrustStore;
+import se.arkalix.util.concurrent.Future;
 import se.arkalix.util.concurrent.Futures;
 
-import java.net.ServerSocket;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 
 public class Main {
+    private static final Logger logger = LoggerFactory.getLogger(Main.class);
+
+    private static final Duration WATCH_POLL_INTERVAL = Duration.ofSeconds(2);
+
     public static void main(final String[] args) {
+        final var status = new BootstrapStatus();
         try {
+            // Allow for other systems to determine if configuration is done
+            // by asking for the /status/ready resource at port 9999.
+            StatusServer.start(9999, status)
+                .onFailure(Main::panic);
+
             final var password = new char[]{'1', '2', '3', '4', '5', '6'};
             final var client = new HttpClient.Builder()
                 .identity(new OwnedIdentity.Loader()
@@ -26,59 +41,100 @@ public class Main {
                 .trustStore(TrustStore.read("truststore.p12", password))
                 .build();
 
-            final var configPath = "config.json";
+            // The configuration is read from config.json, unless another
+            // file is given via --config=<path>.
+            final var configPath = List.of(args)
+                .stream()
+                .filter(arg -> arg.startsWith("--config="))
+                .map(arg -> arg.substring("--config=".length()))
+                .reduce((first, second) -> second)
+                .orElse("config.json");
             final var bytes = Files.readAllBytes(Path.of(configPath));
             final var reader = new ByteArrayReader(bytes);
             final var config = ConfigDto.readJson(reader);
 
-            final var srSocketAddress = config.serviceRegistrySocketAddress();
+            final var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final var thread = new Thread(runnable, "sysop-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final var executor = RegistrationExecutor.from(scheduler, config.settings().orElse(null));
 
-            final var serviceRegistry = new ServiceRegistryMgmt(client, srSocketAddress);
+            // When reconciling, only the differences between the current
+            // state of the core systems and the configuration are sent.
+            // Otherwise, all configured entries are sent, as is.
+            final var isReconciling = List.of(args).contains("--reconcile");
 
-            serviceRegistry.register(config.services(), config.providers())
-                .flatMap(ignored -> {
-                    final var cache = new ServiceRegistryCache(client, srSocketAddress);
-                    return cache.refresh()
-                        .pass(cache);
-                })
-                .flatMap(cache -> {
-                    final var auSocketAddress = cache.getProviderByNameOrThrow("authorization").socketAddress();
-                    final var orSocketAddress = cache.getProviderByNameOrThrow("orchestrator").socketAddress();
+            // When watching, changes made to the configuration file after
+            // setup are applied as they are saved.
+            final var isWatching = List.of(args).contains("--watch");
 
-                    final var authorization = new AuthorizationMgmt(client, auSocketAddress, cache);
-                    final var orchestrator = new OrchestratorMgmt(client, orSocketAddress, cache);
+            final var pool = HttpConnectionPool.from(client, config.settings().orElse(null));
+            status.connections(pool);
 
-                    return Futures.serialize(List.of(
-                        authorization.register(config.rules()),
-                        orchestrator.register(config.rules())));
-                })
-                .fork(ignored -> {
-                    // Allow for other systems to determine if configuration is
-                    // done by connecting to port 9999 via TCP.
-                    try {
-                        final ServerSocket server;
-                        server = new ServerSocket(9999);
-                        while (!Thread.interrupted()) {
-                            try {
-                                server.accept().close();
-                            }
-                            catch (final Throwable throwable) {
-                                throwable.printStackTrace(System.err);
-                            }
-                        }
+            final var reconciler = new Reconciler(pool, executor, config, status);
+            final Future<?> setup;
+            if (isReconciling) {
+                setup = reconciler.reconcile();
+            }
+            else {
+                setup = register(pool, executor, config, status);
+            }
+
+            setup
+                .ifSuccess(ignored -> {
+                    status.ready();
+                    logger.info("Configuration completed: {}", status.toJson());
+                    if (isWatching) {
+                        reconciler.refreshRegistryPeriodically(scheduler);
+                        ConfigWatcher.start(Path.of(configPath), WATCH_POLL_INTERVAL, reconciler::apply);
                     }
-                    catch (final Throwable throwable) {
-                        throwable.printStackTrace(System.err);
+                    else {
+                        pool.closeIdle();
                     }
                 })
-                .onFailure(Main::panic);
-
+                .onFailure(fault -> {
+                    status.fail(fault);
+                    panic(fault);
+                });
         }
         catch (final Throwable throwable) {
+            status.fail(throwable);
             panic(throwable);
         }
     }
 
+    static Future<?> register(
+        final HttpConnectionPool pool,
+        final RegistrationExecutor executor,
+        final ConfigDto config,
+        final BootstrapStatus status
+    ) {
+        final var srSocketAddress = config.serviceRegistrySocketAddress();
+
+        final var serviceRegistry = new ServiceRegistryMgmt(pool, srSocketAddress, executor);
+        final var cache = new ServiceRegistryCache(pool, srSocketAddress);
+
+        return status.registry()
+            .track(() -> serviceRegistry.register(config.services(), config.providers())
+                .flatMap(count -> cache.refresh()
+                    .pass(count)))
+            .flatMap(ignored -> {
+                final var auSocketAddress = cache.getProviderByNameOrThrow("authorization").socketAddress();
+                final var orSocketAddress = cache.getProviderByNameOrThrow("orchestrator").socketAddress();
+
+                final var authorization = new AuthorizationMgmt(pool, auSocketAddress, cache, executor);
+                final var orchestrator = new OrchestratorMgmt(pool, orSocketAddress, cache, executor,
+                    config.settings()
+                        .flatMap(CfSettings::orchestrationChunkSize)
+                        .orElse(OrchestratorMgmt.DEFAULT_CHUNK_SIZE));
+
+                return Futures.serialize(List.of(
+                    status.authorization().track(() -> authorization.register(config.rules())),
+                    status.orchestration().track(() -> orchestrator.register(config.rules()))));
+            });
+    }
+
     private static void panic(final Throwable throwable) {
         System.err.println("Failed to start Sysop Configurator; unexpected exception thrown during startup");
         throwable.printStackTrace(System.err);
@@ -2,68 +2,355 @@ package sc_demo.sysop;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc_demo.common.Completion;
 import sc_demo.sysop.data.OrMgmtProviderBuilder;
 import sc_demo.sysop.data.OrMgmtRuleBuilder;
-import se.arkalix.net.MessageIncoming;
-import se.arkalix.net.http.client.HttpClient;
+import sc_demo.sysop.data.OrMgmtRuleDto;
+import sc_demo.sysop.data.OrMgmtStoreEntry;
+import sc_demo.sysop.data.OrMgmtStoreQueryResultDto;
 import se.arkalix.net.http.client.HttpClientRequest;
 import se.arkalix.util.concurrent.Future;
 import sc_demo.sysop.data.CfConsumptionRule;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static se.arkalix.dto.DtoEncoding.JSON;
+import static se.arkalix.net.http.HttpMethod.DELETE;
+import static se.arkalix.net.http.HttpMethod.GET;
 import static se.arkalix.net.http.HttpMethod.POST;
 
 public class OrchestratorMgmt {
     private static final Logger logger = LoggerFactory.getLogger(OrchestratorMgmt.class);
 
-    private final HttpClient client;
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private final HttpConnectionPool pool;
     private final InetSocketAddress orchestratorHost;
     private final ServiceRegistryCache registry;
+    private final RegistrationExecutor executor;
+    private final int chunkSize;
 
-    public OrchestratorMgmt(final HttpClient client, final InetSocketAddress orchestratorHost, final ServiceRegistryCache registry) {
-        this.client = Objects.requireNonNull(client);
+    public OrchestratorMgmt(
+        final HttpConnectionPool pool,
+        final InetSocketAddress orchestratorHost,
+        final ServiceRegistryCache registry,
+        final RegistrationExecutor executor,
+        final int chunkSize
+    ) {
+        this.pool = Objects.requireNonNull(pool);
         this.orchestratorHost = Objects.requireNonNull(orchestratorHost);
         this.registry = Objects.requireNonNull(registry);
+        this.executor = Objects.requireNonNull(executor);
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Expected chunkSize >= 1");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public Future<Integer> register(final List<CfConsumptionRule> rules) {
+        return store(ConsumptionGrant.iteratorOf(rules));
+    }
+
+    public Future<List<OrMgmtStoreEntry>> list() {
+        return pool.send(orchestratorHost, new HttpClientRequest()
+            .method(GET)
+            .uri("/orchestrator/mgmt/store"))
+            .flatMap(response -> response.bodyAsIfSuccess(JSON, OrMgmtStoreQueryResultDto.class))
+            .map(result -> List.copyOf(result.data()));
+    }
+
+    public Future<Integer> create(final Collection<ConsumptionGrant> grants) {
+        return store(grants.iterator());
+    }
+
+    /**
+     * Stores orchestration rules for all grants produced by {@code grants}.
+     * <p>
+     * Grants are taken from {@code grants} only when a chunk of rules is
+     * about to be sent, which means that no more than one chunk of rules per
+     * request in flight is held in memory at any one time. Each chunk is
+     * stored, retried and reported independently of all other chunks.
+     * <p>
+     * If the orchestrator rejects a chunk, it is split into halves that are
+     * stored separately, until every rejected rule has been isolated, which
+     * means that one invalid rule never prevents the other rules of its
+     * chunk from being stored. As storing rules is not idempotent, a chunk
+     * whose request failed for any other reason is only retried after the
+     * orchestrator has been asked for its rules, and then only with those
+     * of its rules not already stored.
+     *
+     * @param grants Grants to store orchestration rules for.
+     * @return Future completed with the number of stored rules when all
+     * chunks have been stored, or failed if any rule could not be stored.
+     */
+    private Future<Integer> store(final Iterator<ConsumptionGrant> grants) {
+        final var storedRules = new AtomicInteger();
+        final var failedRules = new AtomicInteger();
+        final var chunks = chunksOf(grants, chunkSize);
+        return executor.execute("orchestration rule chunks", new Iterator<RuleChunk>() {
+                @Override
+                public boolean hasNext() {
+                    return chunks.hasNext();
+                }
+
+                @Override
+                public RuleChunk next() {
+                    return new RuleChunk(chunks.next(), storedRules, failedRules);
+                }
+            }, chunk -> {
+                final Future<Void> stored;
+                if (chunk.isAttempted) {
+                    stored = list().flatMap(entries -> {
+                        chunk.onListed(entries);
+                        final var remaining = List.copyOf(chunk.remaining);
+                        if (remaining.isEmpty()) {
+                            return Future.<Void>success(null);
+                        }
+                        return storeBisecting(chunk, remaining, send(remaining));
+                    });
+                }
+                else {
+                    chunk.isAttempted = true;
+                    final var remaining = List.copyOf(chunk.remaining);
+                    stored = storeBisecting(chunk, remaining, send(remaining));
+                }
+                return stored
+                    .flatMap(ignored -> {
+                        if (chunk.failed > 0) {
+                            logger.warn("Created {} and failed to create {} orchestration rules of {}",
+                                chunk.stored, chunk.failed, chunk);
+                            return Future.<Void>failure(chunk.rejection);
+                        }
+                        logger.info("Created {} orchestration rules of {}: {}",
+                            chunk.stored, chunk, chunk.chunk.items());
+                        return Future.<Void>success(null);
+                    });
+            })
+            .ifFailure(Throwable.class, ignored -> logger.warn("Created only {} " +
+                "orchestration rules, failed to create {}; see earlier " +
+                "warnings", storedRules.get(), failedRules.get()))
+            .map(ignored -> {
+                logger.info("Created {} orchestration rules", storedRules.get());
+                return storedRules.get();
+            });
     }
 
-    public Future<?> register(final List<CfConsumptionRule> rules) {
-        return client.send(orchestratorHost, new HttpClientRequest()
+    private Future<String> send(final List<ConsumptionGrant> grants) {
+        return pool.send(orchestratorHost, new HttpClientRequest()
             .method(POST)
             .uri("/orchestrator/mgmt/store")
-            .body(JSON, rules.stream()
-                .flatMap(rule -> rule.providers()
-                    .stream()
-                    .flatMap(providerName -> {
-                        final var srProvider = registry.getProviderByNameOrThrow(providerName);
-                        final var orProvider = new OrMgmtProviderBuilder()
-                            .address(srProvider.address())
-                            .authenticationInfo(srProvider.authenticationInfo())
-                            .port(srProvider.port())
-                            .systemName(srProvider.systemName())
-                            .build();
-
-                        return rule.services()
-                            .stream()
-                            .map(serviceName -> new OrMgmtRuleBuilder()
-                                .consumerSystemId(registry.getSystemIdByNameOrThrow(rule.consumer()))
-                                .priority(0)
-                                .providerSystem(orProvider)
-                                .serviceDefinitionName(serviceName)
-                                .serviceInterfaceName(registry.getInterfaceNameByServiceNameOrThrow(serviceName))
-                                .build());
-                    }))
-                .collect(Collectors.toList())))
-            .flatMap(MessageIncoming::bodyAsString)
-            .ifSuccess(body -> {
-                logger.info("Created orchestration rules {}", rules);
-                logger.debug("Response: {}", body);
-            })
-            .ifFailure(Throwable.class, throwable ->
-                logger.warn("Failed to create orchestration rules from " + rules, throwable));
+            .body(JSON, rulesOf(grants)))
+            .flatMap(RegistrationExecutor::bodyAsStringIfSuccess);
+    }
+
+    /**
+     * Awaits {@code sent}, which must be the result of sending the rules of
+     * {@code grants}. If the rules are rejected, the grants are split into
+     * two halves that are sent and awaited in sequence, until every
+     * rejected rule has been isolated.
+     */
+    private Future<Void> storeBisecting(
+        final RuleChunk chunk,
+        final List<ConsumptionGrant> grants,
+        final Future<String> sent
+    ) {
+        final var completion = new Completion<Void>();
+        sent.onResult(result -> {
+            if (result.isSuccess()) {
+                logger.debug("Response: {}", result.value());
+                chunk.onStored(grants);
+                completion.complete(null);
+                return;
+            }
+            final var fault = result.fault();
+            if (!(fault instanceof RegistrationRejectedException)) {
+                completion.fail(fault);
+                return;
+            }
+            if (grants.size() == 1) {
+                logger.warn("Orchestrator rejected rule of {}: {}", chunk, grants.get(0), fault);
+                chunk.onRejected(grants.get(0), (RegistrationRejectedException) fault);
+                completion.complete(null);
+                return;
+            }
+            final var head = grants.subList(0, grants.size() / 2);
+            final var tail = grants.subList(grants.size() / 2, grants.size());
+            storeBisecting(chunk, head, send(head))
+                .flatMap(ignored -> storeBisecting(chunk, tail, send(tail)))
+                .onResult(result0 -> {
+                    if (result0.isSuccess()) {
+                        completion.complete(null);
+                    }
+                    else {
+                        completion.fail(result0.fault());
+                    }
+                });
+        });
+        return completion;
+    }
+
+    /**
+     * @return Grant corresponding to given orchestration rule, or {@code
+     * null} if the rule concerns a provider in a foreign cloud.
+     */
+    private static ConsumptionGrant grantOf(final OrMgmtStoreEntry entry) {
+        if (entry.foreign().orElse(false) || entry.providerSystem().isEmpty()) {
+            return null;
+        }
+        return new ConsumptionGrant(
+            entry.consumerSystem().systemName(),
+            entry.providerSystem().get().systemName(),
+            entry.serviceDefinition().serviceDefinition());
+    }
+
+    public Future<Integer> delete(final List<OrMgmtStoreEntry> entries) {
+        return executor.execute("orchestration rule removals", entries.iterator(), entry -> pool
+            .send(orchestratorHost, new HttpClientRequest()
+                .method(DELETE)
+                .uri("/orchestrator/mgmt/store/" + entry.id()))
+            .flatMap(RegistrationExecutor::bodyAsStringIfSuccess)
+            .ifSuccess(body -> logger.info("Removed orchestration rule {}", entry)));
+    }
+
+    List<OrMgmtRuleDto> rulesOf(final List<ConsumptionGrant> grants) {
+        final var rules = new ArrayList<OrMgmtRuleDto>(grants.size());
+        for (final var grant : grants) {
+            rules.add(toRule(grant));
+        }
+        return rules;
+    }
+
+    OrMgmtRuleDto toRule(final ConsumptionGrant grant) {
+        final var srProvider = registry.getProviderByNameOrThrow(grant.provider());
+        return new OrMgmtRuleBuilder()
+            .consumerSystemId(registry.getSystemIdByNameOrThrow(grant.consumer()))
+            .priority(0)
+            .providerSystem(new OrMgmtProviderBuilder()
+                .address(srProvider.address())
+                .authenticationInfo(srProvider.authenticationInfo())
+                .port(srProvider.port())
+                .systemName(srProvider.systemName())
+                .build())
+            .serviceDefinitionName(grant.service())
+            .serviceInterfaceName(registry.getInterfaceNameByServiceNameOrThrow(grant.service()))
+            .build();
+    }
+
+    /**
+     * Groups the items produced by given iterator into chunks, without
+     * taking more items from it than are needed to produce each chunk.
+     *
+     * @param items     Items to group.
+     * @param chunkSize Maximum number of items per chunk.
+     * @param <T>       Item type.
+     * @return Iterator producing chunks.
+     */
+    static <T> Iterator<Chunk<T>> chunksOf(final Iterator<T> items, final int chunkSize) {
+        return new Iterator<>() {
+            private int number = 0;
+
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public Chunk<T> next() {
+                if (!items.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final var chunk = new ArrayList<T>(chunkSize);
+                while (chunk.size() < chunkSize && items.hasNext()) {
+                    chunk.add(items.next());
+                }
+                return new Chunk<>(++number, chunk);
+            }
+        };
+    }
+
+    static class Chunk<T> {
+        private final int number;
+        private final List<T> items;
+
+        private Chunk(final int number, final List<T> items) {
+            this.number = number;
+            this.items = items;
+        }
+
+        List<T> items() {
+            return items;
+        }
+
+        @Override
+        public String toString() {
+            return "chunk " + number + " (" + items.size() + " items)";
+        }
+    }
+
+    /**
+     * Chunk of grants whose orchestration rules are being stored, keeping
+     * track of which of its rules have been stored or rejected so far.
+     */
+    private static class RuleChunk {
+        private final Chunk<ConsumptionGrant> chunk;
+        private final List<ConsumptionGrant> remaining;
+        private final AtomicInteger storedRules;
+        private final AtomicInteger failedRules;
+
+        private boolean isAttempted = false;
+        private int stored = 0;
+        private int failed = 0;
+        private RegistrationRejectedException rejection = null;
+
+        private RuleChunk(
+            final Chunk<ConsumptionGrant> chunk,
+            final AtomicInteger storedRules,
+            final AtomicInteger failedRules
+        ) {
+            this.chunk = chunk;
+            this.remaining = new ArrayList<>(chunk.items());
+            this.storedRules = storedRules;
+            this.failedRules = failedRules;
+        }
+
+        private void onStored(final List<ConsumptionGrant> grants) {
+            remaining.removeAll(grants);
+            stored += grants.size();
+            storedRules.addAndGet(grants.size());
+        }
+
+        private void onRejected(final ConsumptionGrant grant, final RegistrationRejectedException rejection) {
+            remaining.remove(grant);
+            failed += 1;
+            failedRules.incrementAndGet();
+            this.rejection = rejection;
+        }
+
+        private void onListed(final List<OrMgmtStoreEntry> entries) {
+            final var existing = new HashSet<ConsumptionGrant>();
+            for (final var entry : entries) {
+                final var grant = grantOf(entry);
+                if (grant != null) {
+                    existing.add(grant);
+                }
+            }
+            final var sizeBefore = remaining.size();
+            remaining.removeIf(existing::contains);
+            stored += sizeBefore - remaining.size();
+            storedRules.addAndGet(sizeBefore - remaining.size());
+        }
+
+        @Override
+        public String toString() {
+            return chunk.toString();
+        }
     }
 }
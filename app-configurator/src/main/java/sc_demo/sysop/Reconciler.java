@@ -0,0 +1,357 @@
+package sc_demo.sysop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.sysop.data.AuMgmtRuleIntraEntry;
+import sc_demo.sysop.data.CfProvider;
+import sc_demo.sysop.data.CfService;
+import sc_demo.sysop.data.CfSettings;
+import sc_demo.sysop.data.ConfigDto;
+import sc_demo.sysop.data.OrMgmtStoreEntry;
+import sc_demo.sysop.data.SrMgmtEntry;
+import se.arkalix.util.concurrent.Future;
+import se.arkalix.util.concurrent.Futures;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Brings the service registry, authorization and orchestrator systems in
+ * line with a {@link ConfigDto configuration}, sending only the creations
+ * and removals required to do so.
+ * <p>
+ * The current state of each core system is read once, after which it is
+ * compared to the configuration. Only entries related to systems named in
+ * the configuration are ever removed. Service registry entries are
+ * additionally only removed if they concern service definitions named in
+ * the configuration, as systems may register other services themselves.
+ * <p>
+ * Once a configuration has been reconciled, later versions of it can be
+ * {@link #apply(ConfigDto) applied} by only sending the changes between the
+ * versions.
+ */
+public class Reconciler {
+    private static final Logger logger = LoggerFactory.getLogger(Reconciler.class);
+
+    private static final Duration REGISTRY_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    private final HttpConnectionPool pool;
+    private final RegistrationExecutor executor;
+    private volatile ConfigDto config;
+    private final ServiceRegistryCache registry;
+    private final ServiceRegistryMgmt serviceRegistry;
+    private final BootstrapStatus status;
+
+    public Reconciler(
+        final HttpConnectionPool pool,
+        final RegistrationExecutor executor,
+        final ConfigDto config,
+        final BootstrapStatus status
+    ) {
+        this.pool = Objects.requireNonNull(pool);
+        this.executor = Objects.requireNonNull(executor);
+        this.config = Objects.requireNonNull(config);
+        this.status = Objects.requireNonNull(status);
+
+        final var srSocketAddress = config.serviceRegistrySocketAddress();
+        registry = new ServiceRegistryCache(pool, srSocketAddress);
+        serviceRegistry = new ServiceRegistryMgmt(pool, srSocketAddress, executor);
+    }
+
+    public Future<?> reconcile() {
+        return status.registry()
+            .track(() -> registry.refresh()
+                .flatMap(ignored -> reconcileServices())
+                .flatMap(changedServiceNames -> registry.refreshServices(changedServiceNames)
+                    .pass(changedServiceNames.size())))
+            .flatMap(ignored -> {
+                final var authorization = authorization();
+                final var orchestrator = orchestrator();
+                return Futures.serialize(List.of(
+                    status.authorization().track(() -> reconcileAuthorizations(authorization)),
+                    status.orchestration().track(() -> reconcileOrchestrations(orchestrator))));
+            });
+    }
+
+    /**
+     * Applies the differences between the configuration most recently
+     * applied and given configuration, without reading more state from the
+     * core systems than is required to identify entries to remove.
+     *
+     * @param next Configuration to apply.
+     * @return Future completed when {@code next} has been applied.
+     */
+    public Future<?> apply(final ConfigDto next) {
+        final var delta = ConfigDelta.between(config, next);
+        if (delta.isEmpty()) {
+            logger.info("Configuration changed without affecting any entries");
+            config = next;
+            return Future.done();
+        }
+        logger.info("Applying configuration changes {}", delta);
+        final var startedAt = System.nanoTime();
+        return registry.refreshIfOlderThan(REGISTRY_TIME_TO_LIVE)
+            .flatMap(ignored -> {
+                final var keys = Set.copyOf(delta.removedServiceKeys());
+                final var toRemove = registry.entries()
+                    .stream()
+                    .filter(entry -> keys.contains(ConfigDelta.serviceKeyOf(
+                        entry.provider().systemName(),
+                        entry.serviceDefinition().serviceDefinition())))
+                    .collect(Collectors.toList());
+                return serviceRegistry.unregister(toRemove);
+            })
+            .flatMap(ignored -> serviceRegistry.register(delta.addedServices(), next.providers()))
+            .flatMap(ignored -> registry.refreshServices(delta.changedServiceNames()))
+            .flatMap(ignored -> Futures.serialize(List.of(
+                applyAuthorizations(authorization(), delta),
+                applyOrchestrations(orchestrator(), delta))))
+            .ifSuccess(ignored -> {
+                config = next;
+                logger.info("Applied configuration changes in {} ms", (System.nanoTime() - startedAt) / 1_000_000);
+            });
+    }
+
+    /**
+     * Keeps the cached service registry entries used when {@link
+     * #apply(ConfigDto) applying} changes from becoming older than their
+     * time-to-live, which means that changes rarely have to wait for all
+     * entries to be fetched before being applied.
+     *
+     * @param scheduler Scheduler to refresh cache with.
+     * @return Scheduled task, which may be cancelled to stop refreshing.
+     */
+    public ScheduledFuture<?> refreshRegistryPeriodically(final ScheduledExecutorService scheduler) {
+        return registry.refreshPeriodically(scheduler, REGISTRY_TIME_TO_LIVE);
+    }
+
+    private AuthorizationMgmt authorization() {
+        final var auSocketAddress = registry.getProviderByNameOrThrow("authorization").socketAddress();
+        return new AuthorizationMgmt(pool, auSocketAddress, registry, executor);
+    }
+
+    private OrchestratorMgmt orchestrator() {
+        final var orSocketAddress = registry.getProviderByNameOrThrow("orchestrator").socketAddress();
+        return new OrchestratorMgmt(pool, orSocketAddress, registry, executor,
+            config.settings()
+                .flatMap(CfSettings::orchestrationChunkSize)
+                .orElse(OrchestratorMgmt.DEFAULT_CHUNK_SIZE));
+    }
+
+    private Future<Set<String>> reconcileServices() {
+        final var providers = config.providers();
+        final var managedSystemNames = providers.stream()
+            .map(CfProvider::systemName)
+            .collect(Collectors.toSet());
+        final var managedServiceNames = config.services()
+            .stream()
+            .map(CfService::serviceDefinition)
+            .collect(Collectors.toSet());
+
+        final var desired = new LinkedHashMap<String, CfService>();
+        for (final var service : config.services()) {
+            desired.put(providers.get(service.providerIndex()).systemName() + "/" + service.serviceDefinition(), service);
+        }
+
+        final var existingKeys = new HashSet<String>();
+        final var toRemove = new ArrayList<SrMgmtEntry>();
+        for (final var entry : registry.entries()) {
+            final var systemName = entry.provider().systemName();
+            final var serviceName = entry.serviceDefinition().serviceDefinition();
+            if (!managedSystemNames.contains(systemName) || !managedServiceNames.contains(serviceName)) {
+                continue;
+            }
+            final var key = systemName + "/" + serviceName;
+            final var service = desired.get(key);
+            if (service == null
+                || !isRegisteredAs(entry, service, providers.get(service.providerIndex()))
+                || !existingKeys.add(key))
+            {
+                toRemove.add(entry);
+            }
+        }
+        final var toCreate = new ArrayList<CfService>();
+        for (final var entry : desired.entrySet()) {
+            final var key = entry.getKey();
+            if (!existingKeys.contains(key)) {
+                toCreate.add(entry.getValue());
+            }
+        }
+
+        logger.info("Service registry: {} entries to create, {} to remove", toCreate.size(), toRemove.size());
+        final var changedServiceNames = new HashSet<String>();
+        toCreate.forEach(service -> changedServiceNames.add(service.serviceDefinition()));
+        toRemove.forEach(entry -> changedServiceNames.add(entry.serviceDefinition().serviceDefinition()));
+        if (changedServiceNames.isEmpty()) {
+            return Future.success(changedServiceNames);
+        }
+        return serviceRegistry.unregister(toRemove)
+            .flatMap(ignored -> serviceRegistry.register(toCreate, providers))
+            .pass(changedServiceNames);
+    }
+
+    private Future<Integer> reconcileAuthorizations(final AuthorizationMgmt authorization) {
+        final var desired = ConsumptionGrant.allOf(config.rules());
+        final var managedSystemNames = managedSystemNames();
+        return authorization.list()
+            .flatMap(entries -> {
+                final var existing = new HashSet<ConsumptionGrant>();
+                final var toRemove = new ArrayList<AuMgmtRuleIntraEntry>();
+                for (final var entry : entries) {
+                    if (!managedSystemNames.contains(entry.consumerSystem().systemName())) {
+                        continue;
+                    }
+                    final var grant = grantOf(entry);
+                    if (!desired.contains(grant) || !existing.add(grant)) {
+                        toRemove.add(entry);
+                    }
+                }
+                final var toCreate = missingFrom(desired, existing);
+
+                logger.info("Authorization: {} grants to create, {} rules to remove", toCreate.size(), toRemove.size());
+                return authorization.delete(toRemove)
+                    .flatMap(removed -> authorization.create(toCreate)
+                        .map(created -> removed + created));
+            });
+    }
+
+    private Future<Integer> reconcileOrchestrations(final OrchestratorMgmt orchestrator) {
+        final var desired = ConsumptionGrant.allOf(config.rules());
+        final var managedSystemNames = managedSystemNames();
+        return orchestrator.list()
+            .flatMap(entries -> {
+                final var existing = new HashSet<ConsumptionGrant>();
+                final var toRemove = new ArrayList<OrMgmtStoreEntry>();
+                for (final var entry : entries) {
+                    if (!managedSystemNames.contains(entry.consumerSystem().systemName()) || grantOf(entry) == null) {
+                        continue;
+                    }
+                    final var grant = grantOf(entry);
+                    if (!desired.contains(grant) || !existing.add(grant)) {
+                        toRemove.add(entry);
+                    }
+                }
+                final var toCreate = missingFrom(desired, existing);
+
+                logger.info("Orchestrator: {} rules to create, {} to remove", toCreate.size(), toRemove.size());
+                return orchestrator.delete(toRemove)
+                    .flatMap(removed -> orchestrator.create(toCreate)
+                        .map(created -> removed + created));
+            });
+    }
+
+    private Future<Integer> applyAuthorizations(final AuthorizationMgmt authorization, final ConfigDelta delta) {
+        final Future<Integer> removal;
+        if (delta.removedGrants().isEmpty()) {
+            removal = Future.success(0);
+        }
+        else {
+            final var removedGrants = Set.copyOf(delta.removedGrants());
+            removal = authorization.list()
+                .flatMap(entries -> authorization.delete(entries.stream()
+                    .filter(entry -> removedGrants.contains(grantOf(entry)))
+                    .collect(Collectors.toList())));
+        }
+        return removal.flatMap(removed -> authorization.create(delta.addedGrants())
+            .map(created -> removed + created));
+    }
+
+    private Future<Integer> applyOrchestrations(final OrchestratorMgmt orchestrator, final ConfigDelta delta) {
+        final Future<Integer> removal;
+        if (delta.removedGrants().isEmpty()) {
+            removal = Future.success(0);
+        }
+        else {
+            final var removedGrants = Set.copyOf(delta.removedGrants());
+            removal = orchestrator.list()
+                .flatMap(entries -> orchestrator.delete(entries.stream()
+                    .filter(entry -> removedGrants.contains(grantOf(entry)))
+                    .collect(Collectors.toList())));
+        }
+        return removal.flatMap(removed -> orchestrator.create(delta.addedGrants())
+            .map(created -> removed + created));
+    }
+
+    private static ConsumptionGrant grantOf(final AuMgmtRuleIntraEntry entry) {
+        return new ConsumptionGrant(
+            entry.consumerSystem().systemName(),
+            entry.providerSystem().systemName(),
+            entry.serviceDefinition().serviceDefinition());
+    }
+
+    /**
+     * @return Grant corresponding to given orchestration rule, or {@code
+     * null} if the rule concerns a provider in a foreign cloud.
+     */
+    private static ConsumptionGrant grantOf(final OrMgmtStoreEntry entry) {
+        if (entry.foreign().orElse(false) || entry.providerSystem().isEmpty()) {
+            return null;
+        }
+        return new ConsumptionGrant(
+            entry.consumerSystem().systemName(),
+            entry.providerSystem().get().systemName(),
+            entry.serviceDefinition().serviceDefinition());
+    }
+
+    private Set<String> managedSystemNames() {
+        final var names = new HashSet<String>();
+        for (final var provider : config.providers()) {
+            names.add(provider.systemName());
+        }
+        for (final var rule : config.rules()) {
+            names.add(rule.consumer());
+        }
+        return names;
+    }
+
+    private static List<ConsumptionGrant> missingFrom(
+        final Set<ConsumptionGrant> desired,
+        final Set<ConsumptionGrant> existing
+    ) {
+        final var missing = new LinkedHashSet<>(desired);
+        missing.removeAll(existing);
+        return new ArrayList<>(missing);
+    }
+
+    private static boolean isRegisteredAs(final SrMgmtEntry entry, final CfService service, final CfProvider provider) {
+        final var entryProvider = entry.provider();
+        if (!service.serviceUri().equals(entry.serviceUri())
+            || !provider.address().equals(entryProvider.address())
+            || provider.port() != entryProvider.port()
+            || !Objects.equals(provider.authenticationInfo(), entryProvider.authenticationInfo()))
+        {
+            return false;
+        }
+        // The service registry assigns default security modes and versions
+        // to services registered without them.
+        if (service.secure().isPresent() && !service.secure().get().toString().equalsIgnoreCase(entry.secure())) {
+            return false;
+        }
+        if (service.version().isPresent() && service.version().get() != entry.version()) {
+            return false;
+        }
+        final var metadata = entry.metadata() != null ? entry.metadata() : Map.<String, String>of();
+        if (!service.metadata().equals(metadata)) {
+            return false;
+        }
+        final var interfaces = new HashSet<String>();
+        for (final var descriptor : service.interfaces()) {
+            interfaces.add(descriptor.toString().toUpperCase());
+        }
+        final var entryInterfaces = new HashSet<String>();
+        for (final var entryInterface : entry.interfaces()) {
+            entryInterfaces.add(entryInterface.interfaceName().toUpperCase());
+        }
+        return interfaces.equals(entryInterfaces);
+    }
+}
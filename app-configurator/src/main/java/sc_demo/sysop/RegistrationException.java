@@ -0,0 +1,30 @@
+package sc_demo.sysop;
+
+/**
+ * Signifies that some items of a {@link RegistrationExecutor} execution
+ * could not be registered.
+ */
+public class RegistrationException extends RuntimeException {
+    private final int processed;
+    private final int failed;
+
+    public RegistrationException(final String name, final int processed, final int failed, final Throwable cause) {
+        super("Failed to register " + failed + " of " + processed + " " + name, cause);
+        this.processed = processed;
+        this.failed = failed;
+    }
+
+    /**
+     * @return Number of items processed, including failed items.
+     */
+    public int processed() {
+        return processed;
+    }
+
+    /**
+     * @return Number of items that could not be registered.
+     */
+    public int failed() {
+        return failed;
+    }
+}
@@ -0,0 +1,262 @@
+package sc_demo.sysop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.Completion;
+import sc_demo.sysop.data.CfSettings;
+import se.arkalix.net.http.client.HttpClientResponse;
+import se.arkalix.util.concurrent.Future;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Executes independent registration requests concurrently.
+ * <p>
+ * At most {@code parallelism} requests are in flight at any one time, and
+ * no more than {@code requestsPerSecond} requests are sent per second, as
+ * determined by a token bucket holding up to {@code parallelism} tokens.
+ * Failed requests are retried with exponentially increasing delays until
+ * {@code maxAttempts} attempts have been made, unless they fail with a
+ * {@link RegistrationRejectedException}, in which case they are not retried
+ * at all. Requests that fail for the last time are logged and counted as
+ * failed, but do not prevent the remaining requests from being sent.
+ * <p>
+ * No ordering is imposed on the requests of one {@link #execute(String,
+ * Iterator, Function) execution}. Requests depending on each other must be
+ * part of different executions.
+ */
+public class RegistrationExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationExecutor.class);
+
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final int DEFAULT_REQUESTS_PER_SECOND = 50;
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final int DEFAULT_RETRY_DELAY_MILLIS = 200;
+    private static final long MAX_RETRY_DELAY_MILLIS = 10_000;
+
+    private final ScheduledExecutorService scheduler;
+    private final int parallelism;
+    private final long nanosPerToken;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+
+    private double tokens;
+    private long tokensUpdatedAt;
+
+    public RegistrationExecutor(
+        final ScheduledExecutorService scheduler,
+        final int parallelism,
+        final int requestsPerSecond,
+        final int maxAttempts,
+        final Duration retryDelay
+    ) {
+        this.scheduler = Objects.requireNonNull(scheduler);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Expected parallelism >= 1");
+        }
+        if (requestsPerSecond < 1) {
+            throw new IllegalArgumentException("Expected requestsPerSecond >= 1");
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Expected maxAttempts >= 1");
+        }
+        this.parallelism = parallelism;
+        this.nanosPerToken = 1_000_000_000L / requestsPerSecond;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = retryDelay.toMillis();
+
+        tokens = parallelism;
+        tokensUpdatedAt = System.nanoTime();
+    }
+
+    /**
+     * Creates registration executor using given settings, if any, and
+     * default values for all settings not given.
+     *
+     * @param scheduler Scheduler used to dispatch and retry requests.
+     * @param settings  Registration settings, or {@code null}.
+     * @return New registration executor.
+     */
+    public static RegistrationExecutor from(final ScheduledExecutorService scheduler, final CfSettings settings) {
+        return new RegistrationExecutor(
+            scheduler,
+            settings != null ? settings.parallelism().orElse(DEFAULT_PARALLELISM) : DEFAULT_PARALLELISM,
+            settings != null ? settings.requestsPerSecond().orElse(DEFAULT_REQUESTS_PER_SECOND) : DEFAULT_REQUESTS_PER_SECOND,
+            settings != null ? settings.maxAttempts().orElse(DEFAULT_MAX_ATTEMPTS) : DEFAULT_MAX_ATTEMPTS,
+            Duration.ofMillis(settings != null ? settings.retryDelayMillis().orElse(DEFAULT_RETRY_DELAY_MILLIS) : DEFAULT_RETRY_DELAY_MILLIS));
+    }
+
+    /**
+     * Applies {@code task} to every item of {@code items}.
+     * <p>
+     * Items are taken from {@code items} only when there is capacity to send
+     * them, which means that the iterator may produce its items lazily.
+     * A task is considered to have failed if it throws an exception or if
+     * the future it returns fails.
+     *
+     * @param name  Name of items, used when logging.
+     * @param items Items to apply {@code task} to.
+     * @param task  Function sending one request for each item.
+     * @param <T>   Item type.
+     * @return Future completed with the number of items processed when all
+     * items have either succeeded or failed for the last time. The future
+     * fails with a {@link RegistrationException} if any item failed for the
+     * last time.
+     */
+    public <T> Future<Integer> execute(final String name, final Iterator<T> items, final Function<T, Future<?>> task) {
+        final var run = new Run<>(name, items, task);
+        for (var i = 0; i < parallelism; ++i) {
+            run.next();
+        }
+        return run.completion;
+    }
+
+    /**
+     * Reads body of given response as a string, if its status code indicates
+     * success. Otherwise, the returned future fails. If the status code
+     * indicates a client error other than 408 or 429, the future fails with
+     * a {@link RegistrationRejectedException}, which causes the request that
+     * produced the response to be counted as failed without being retried.
+     *
+     * @param response Response to read.
+     * @return Future completed with response body.
+     */
+    public static Future<String> bodyAsStringIfSuccess(final HttpClientResponse response) {
+        final var code = response.status().code();
+        if (code / 100 == 2) {
+            return response.bodyAsString();
+        }
+        if (code / 100 == 4 && code != 408 && code != 429) {
+            return response.bodyAsString()
+                .flatMap(body -> Future.failure(new RegistrationRejectedException(code, body)));
+        }
+        return Future.failure(new IllegalStateException("Core system " +
+            "responded with status " + response.status()));
+    }
+
+    private synchronized long acquireToken() {
+        final var now = System.nanoTime();
+        tokens = Math.min(parallelism, tokens + (double) (now - tokensUpdatedAt) / nanosPerToken);
+        tokensUpdatedAt = now;
+        tokens -= 1.0;
+        if (tokens >= 0.0) {
+            return 0;
+        }
+        return (long) (-tokens * nanosPerToken);
+    }
+
+    private long retryDelayFor(final int attempt) {
+        final var delay = Math.min(retryDelayMillis << Math.min(attempt - 1, 20), MAX_RETRY_DELAY_MILLIS);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private class Run<T> {
+        private final String name;
+        private final Iterator<T> items;
+        private final Function<T, Future<?>> task;
+        private final Completion<Integer> completion = new Completion<>();
+
+        private int inFlight = 0;
+        private int processed = 0;
+        private int failed = 0;
+        private Throwable lastFault = null;
+        private boolean isFinished = false;
+
+        private Run(final String name, final Iterator<T> items, final Function<T, Future<?>> task) {
+            this.name = name;
+            this.items = items;
+            this.task = task;
+        }
+
+        private void next() {
+            final T item;
+            var isLast = false;
+            synchronized (this) {
+                if (isFinished) {
+                    return;
+                }
+                if (items.hasNext()) {
+                    item = items.next();
+                    inFlight += 1;
+                }
+                else {
+                    if (inFlight > 0) {
+                        return;
+                    }
+                    isFinished = true;
+                    isLast = true;
+                    item = null;
+                }
+            }
+            if (isLast) {
+                finish();
+                return;
+            }
+            scheduler.schedule(() -> attempt(item, 1), acquireToken(), TimeUnit.NANOSECONDS);
+        }
+
+        private void attempt(final T item, final int attempt) {
+            final Future<?> future;
+            try {
+                future = task.apply(item);
+            }
+            catch (final Throwable throwable) {
+                // Exceptions thrown while preparing a request are caused by
+                // local problems, such as invalid configuration, which
+                // retrying cannot resolve.
+                onFault(item, maxAttempts, throwable);
+                return;
+            }
+            future.onResult(result -> {
+                if (result.isSuccess()) {
+                    onDone(false);
+                }
+                else {
+                    onFault(item, attempt, result.fault());
+                }
+            });
+        }
+
+        private void onFault(final T item, final int attempt, final Throwable fault) {
+            if (attempt >= maxAttempts || fault instanceof RegistrationRejectedException) {
+                logger.warn("Giving up on " + name + " " + item + " after " + attempt + " attempt(s)", fault);
+                synchronized (this) {
+                    lastFault = fault;
+                }
+                onDone(true);
+                return;
+            }
+            final var delay = retryDelayFor(attempt);
+            logger.debug("Attempt {} to register {} {} failed; retrying in {} ms", attempt, name, item, delay, fault);
+            scheduler.schedule(() -> scheduler.schedule(() -> attempt(item, attempt + 1),
+                acquireToken(), TimeUnit.NANOSECONDS), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void onDone(final boolean isFailed) {
+            synchronized (this) {
+                inFlight -= 1;
+                processed += 1;
+                if (isFailed) {
+                    failed += 1;
+                }
+            }
+            next();
+        }
+
+        private void finish() {
+            if (failed > 0) {
+                completion.fail(new RegistrationException(name, processed, failed, lastFault));
+            }
+            else {
+                logger.info("Registered {} {}", processed, name);
+                completion.complete(processed);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package sc_demo.sysop;
+
+/**
+ * Signifies that a core system rejected a registration request in a way
+ * that sending the same request again cannot resolve, such as by
+ * responding with a 400 or 409 status code.
+ */
+public class RegistrationRejectedException extends RuntimeException {
+    private final int status;
+
+    public RegistrationRejectedException(final int status, final String body) {
+        super("Core system rejected request with status " + status + ": " + body);
+        this.status = status;
+    }
+
+    /**
+     * @return Status code of the response rejecting the request.
+     */
+    public int status() {
+        return status;
+    }
+}
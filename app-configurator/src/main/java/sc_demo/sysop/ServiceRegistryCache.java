@@ -1,90 +1,255 @@
 package sc_demo.sysop;
 
-import se.arkalix.net.http.client.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import se.arkalix.net.http.client.HttpClientRequest;
 import se.arkalix.util.concurrent.Future;
+import se.arkalix.util.concurrent.Futures;
+import sc_demo.sysop.data.SrMgmtEntry;
 import sc_demo.sysop.data.SrMgmtProvider;
 import sc_demo.sysop.data.SrMgmtQueryResultDto;
 
 import java.net.InetSocketAddress;
-import java.util.Map;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static se.arkalix.dto.DtoEncoding.JSON;
 import static se.arkalix.net.http.HttpMethod.GET;
 
+/**
+ * Cached view of the entries held by a service registry.
+ * <p>
+ * Entries are fetched in pages, each of which is decoded as soon as it is
+ * received, which keeps the size of every individual response bounded. Once
+ * all pages of a refresh have been received, an immutable snapshot is built
+ * from them and swapped in atomically, which means that readers never
+ * observe partially refreshed state, and that entries no longer held by the
+ * registry are dropped. Entries of individual services can also be
+ * refreshed without all other entries being fetched again.
+ * <p>
+ * Lookups are served by a {@link ServiceRegistryIndex}, which is built once
+ * for every snapshot.
+ */
 public class ServiceRegistryCache {
-    private final Map<String, Integer> serviceNameToId = new ConcurrentHashMap<>();
-    private final Map<String, Integer> serviceNameToInterfaceId = new ConcurrentHashMap<>();
-    private final Map<String, String> serviceNameToInterfaceName = new ConcurrentHashMap<>();
-    private final Map<String, Integer> systemNameToId = new ConcurrentHashMap<>();
-    private final Map<String, SrMgmtProvider> systemNameToProvider = new ConcurrentHashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(ServiceRegistryCache.class);
 
-    private final HttpClient client;
+    private static final int DEFAULT_PAGE_SIZE = 500;
+
+    private final HttpConnectionPool pool;
     private final InetSocketAddress serviceRegistryHost;
+    private final int pageSize;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
 
-    public ServiceRegistryCache(final HttpClient client, final InetSocketAddress serviceRegistryHost) {
-        this.client = Objects.requireNonNull(client);
+    public ServiceRegistryCache(final HttpConnectionPool pool, final InetSocketAddress serviceRegistryHost) {
+        this(pool, serviceRegistryHost, DEFAULT_PAGE_SIZE);
+    }
+
+    public ServiceRegistryCache(final HttpConnectionPool pool, final InetSocketAddress serviceRegistryHost, final int pageSize) {
+        this.pool = Objects.requireNonNull(pool);
         this.serviceRegistryHost = Objects.requireNonNull(serviceRegistryHost);
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Expected pageSize >= 1");
+        }
+        this.pageSize = pageSize;
     }
 
     public int getInterfaceIdByServiceNameOrThrow(final String name) {
-        final var id = serviceNameToInterfaceId.get(name);
-        if (id == null) {
+        final var index = snapshot.index;
+        final var slot = index.serviceSlotOf(name);
+        if (slot == ServiceRegistryIndex.MISSING || index.interfaceIdAt(slot) == ServiceRegistryIndex.MISSING) {
             throw new IllegalStateException("No interface associated with service \"" + name + "\" exists in registry");
         }
-        return id;
+        return index.interfaceIdAt(slot);
     }
 
     public String getInterfaceNameByServiceNameOrThrow(final String name) {
-        final var n = serviceNameToInterfaceName.get(name);
-        if (n == null) {
+        final var index = snapshot.index;
+        final var slot = index.serviceSlotOf(name);
+        if (slot == ServiceRegistryIndex.MISSING || index.interfaceNameAt(slot) == null) {
             throw new IllegalStateException("No interface associated with service \"" + name + "\" exists in registry");
         }
-        return n;
+        return index.interfaceNameAt(slot);
     }
 
     public int getServiceIdByNameOrThrow(final String name) {
-        final var id = serviceNameToId.get(name);
-        if (id == null) {
+        final var index = snapshot.index;
+        final var slot = index.serviceSlotOf(name);
+        if (slot == ServiceRegistryIndex.MISSING) {
             throw new IllegalStateException("No service named \"" + name + "\" exists in registry");
         }
-        return id;
+        return index.serviceIdAt(slot);
     }
 
     public int getSystemIdByNameOrThrow(final String name) {
-        final var id = systemNameToId.get(name);
-        if (id == null) {
+        final var index = snapshot.index;
+        final var slot = index.systemSlotOf(name);
+        if (slot == ServiceRegistryIndex.MISSING) {
             throw new IllegalStateException("No system named \"" + name + "\" exists in registry");
         }
-        return id;
+        return index.systemIdAt(slot);
     }
 
     public SrMgmtProvider getProviderByNameOrThrow(final String name) {
-        final var provider = systemNameToProvider.get(name);
-        if (provider == null) {
+        final var index = snapshot.index;
+        final var slot = index.systemSlotOf(name);
+        if (slot == ServiceRegistryIndex.MISSING) {
             throw new IllegalStateException("No system named \"" + name + "\" exists in registry");
         }
-        return provider;
+        return index.providerAt(slot);
     }
 
+    /**
+     * @return Index of all entries held by the service registry when this
+     * cache was last refreshed.
+     */
+    public ServiceRegistryIndex index() {
+        return snapshot.index;
+    }
+
+    /**
+     * @return All entries held by the service registry when this cache was
+     * last refreshed.
+     */
+    public List<SrMgmtEntry> entries() {
+        return snapshot.entries;
+    }
+
+    /**
+     * Fetches all entries held by the service registry, replacing all
+     * entries currently cached.
+     *
+     * @return Future completed when the refresh is complete.
+     */
     public Future<?> refresh() {
-        return client.send(serviceRegistryHost, new HttpClientRequest().method(GET).uri("/serviceregistry/mgmt"))
+        return fetchAll("/serviceregistry/mgmt")
+            .ifSuccess(this::replace);
+    }
+
+    /**
+     * Replaces all entries currently cached with given entries.
+     *
+     * @param entries Entries to cache.
+     */
+    void replace(final List<SrMgmtEntry> entries) {
+        swap(ignored -> Snapshot.of(entries));
+    }
+
+    /**
+     * Fetches the entries of the named services only, replacing all cached
+     * entries of those services while leaving other entries untouched.
+     *
+     * @param serviceNames Names of services to refresh.
+     * @return Future completed when the refresh is complete.
+     */
+    public Future<?> refreshServices(final Collection<String> serviceNames) {
+        if (serviceNames.isEmpty()) {
+            return Future.done();
+        }
+        final var names = Set.copyOf(serviceNames);
+        return Futures.serialize(names.stream()
+            .map(name -> fetchAll("/serviceregistry/mgmt/servicedef/" + encodePathSegment(name))))
+            .ifSuccess(results -> swap(current -> {
+                final var entries = new ArrayList<SrMgmtEntry>(current.entries.size());
+                for (final var entry : current.entries) {
+                    if (!names.contains(entry.serviceDefinition().serviceDefinition())) {
+                        entries.add(entry);
+                    }
+                }
+                for (final var result : results) {
+                    entries.addAll(result);
+                }
+                return Snapshot.of(entries);
+            }));
+    }
+
+    /**
+     * Refreshes this cache if it was last refreshed longer ago than given
+     * time-to-live.
+     *
+     * @param timeToLive Maximum age of cached entries.
+     * @return Future completed when the refresh is complete, or immediately
+     * if no refresh was required.
+     */
+    public Future<?> refreshIfOlderThan(final Duration timeToLive) {
+        final var snapshot = this.snapshot;
+        if (snapshot != Snapshot.EMPTY && System.nanoTime() - snapshot.createdAt < timeToLive.toNanos()) {
+            return Future.done();
+        }
+        return refresh();
+    }
+
+    /**
+     * Schedules this cache to be refreshed whenever its entries become older
+     * than given time-to-live.
+     *
+     * @param scheduler  Scheduler to use.
+     * @param timeToLive Maximum age of cached entries.
+     * @return Scheduled task, which may be cancelled to stop refreshing.
+     */
+    public ScheduledFuture<?> refreshPeriodically(final ScheduledExecutorService scheduler, final Duration timeToLive) {
+        final var millis = timeToLive.toMillis();
+        return scheduler.scheduleWithFixedDelay(() -> refreshIfOlderThan(timeToLive)
+            .onFailure(fault -> logger.warn("Failed to refresh service registry cache", fault)),
+            millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static String encodePathSegment(final String segment) {
+        // URLEncoder encodes spaces as "+", which is only valid in queries.
+        return URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private Future<List<SrMgmtEntry>> fetchAll(final String path) {
+        return fetchPagesFrom(path, 0, new ArrayList<>());
+    }
+
+    private Future<List<SrMgmtEntry>> fetchPagesFrom(final String path, final int page, final List<SrMgmtEntry> entries) {
+        return pool.send(serviceRegistryHost, new HttpClientRequest()
+            .method(GET)
+            .uri(path)
+            .queryParameter("page", page)
+            .queryParameter("item_per_page", pageSize)
+            .queryParameter("sort_field", "id")
+            .queryParameter("direction", "ASC"))
             .flatMap(response -> response.bodyAsIfSuccess(JSON, SrMgmtQueryResultDto.class))
-            .ifSuccess(result -> result.data().forEach(entry -> {
-                final var sd = entry.serviceDefinition();
-                serviceNameToId.put(sd.serviceDefinition(), sd.id());
-
-                if (entry.interfaces().size() > 0) {
-                    final var entryInterface = entry.interfaces().get(0);
-                    serviceNameToInterfaceId.put(sd.serviceDefinition(), entryInterface.id());
-                    serviceNameToInterfaceName.put(sd.serviceDefinition(), entryInterface.interfaceName());
+            .flatMap(result -> {
+                entries.addAll(result.data());
+                if (result.data().size() < pageSize || entries.size() >= result.count()) {
+                    return Future.success(entries);
                 }
+                return fetchPagesFrom(path, page + 1, entries);
+            });
+    }
 
-                final var p = entry.provider();
-                systemNameToId.put(p.systemName(), p.id());
-                systemNameToProvider.put(p.systemName(), p);
-            }));
+    private synchronized void swap(final Function<Snapshot, Snapshot> function) {
+        snapshot = function.apply(snapshot);
+    }
+
+    private static class Snapshot {
+        private static final Snapshot EMPTY = of(List.of());
+
+        private final List<SrMgmtEntry> entries;
+        private final ServiceRegistryIndex index;
+        private final long createdAt;
+
+        private Snapshot(final List<SrMgmtEntry> entries) {
+            this.entries = entries;
+            index = ServiceRegistryIndex.of(entries);
+            createdAt = System.nanoTime();
+        }
+
+        private static Snapshot of(final List<SrMgmtEntry> entries) {
+            return new Snapshot(List.copyOf(entries));
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,164 @@
+package sc_demo.sysop;
+
+import sc_demo.sysop.data.SrMgmtEntry;
+import sc_demo.sysop.data.SrMgmtProvider;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Immutable index of the services and systems of a set of service registry
+ * entries.
+ * <p>
+ * Services and systems are kept in two open-addressing hash tables, each
+ * consisting of an array of names and parallel arrays of primitive values.
+ * Looking up a service or system therefore requires only one string hash,
+ * which is cached by the string itself, and never causes any boxing. Names
+ * and interface names are deduplicated when the index is built, which lets
+ * entries sharing a name share one string instance. Lookup keys are
+ * decoded separately from the index, however, which means that lookups
+ * compare names by {@link String#equals(Object)}. Only keys that happen to
+ * be the very instances held by the index are resolved by reference
+ * comparison.
+ */
+public class ServiceRegistryIndex {
+    /**
+     * Value returned by lookup methods if no matching entry exists.
+     */
+    public static final int MISSING = -1;
+
+    private final String[] serviceNames;
+    private final int[] serviceIds;
+    private final int[] interfaceIds;
+    private final String[] interfaceNames;
+    private final int serviceMask;
+
+    private final String[] systemNames;
+    private final int[] systemIds;
+    private final SrMgmtProvider[] providers;
+    private final int systemMask;
+
+    private ServiceRegistryIndex(final List<? extends SrMgmtEntry> entries) {
+        final var serviceCapacity = capacityFor(entries.size());
+        serviceNames = new String[serviceCapacity];
+        serviceIds = new int[serviceCapacity];
+        interfaceIds = new int[serviceCapacity];
+        interfaceNames = new String[serviceCapacity];
+        serviceMask = serviceCapacity - 1;
+        Arrays.fill(interfaceIds, MISSING);
+
+        final var systemCapacity = capacityFor(entries.size());
+        systemNames = new String[systemCapacity];
+        systemIds = new int[systemCapacity];
+        providers = new SrMgmtProvider[systemCapacity];
+        systemMask = systemCapacity - 1;
+
+        final var interned = new HashMap<String, String>();
+        for (final var entry : entries) {
+            final var sd = entry.serviceDefinition();
+            final var serviceSlot = slotOf(serviceNames, serviceMask, interned.computeIfAbsent(sd.serviceDefinition(), name -> name));
+            serviceIds[serviceSlot] = sd.id();
+            if (entry.interfaces().size() > 0) {
+                final var entryInterface = entry.interfaces().get(0);
+                interfaceIds[serviceSlot] = entryInterface.id();
+                interfaceNames[serviceSlot] = interned.computeIfAbsent(entryInterface.interfaceName(), name -> name);
+            }
+
+            final var p = entry.provider();
+            final var systemSlot = slotOf(systemNames, systemMask, interned.computeIfAbsent(p.systemName(), name -> name));
+            systemIds[systemSlot] = p.id();
+            providers[systemSlot] = p;
+        }
+    }
+
+    /**
+     * Builds index from given service registry entries. If more than one
+     * entry concerns the same service or system, the last such entry
+     * determines what is recorded for it.
+     *
+     * @param entries Entries to index.
+     * @return New index.
+     */
+    public static ServiceRegistryIndex of(final List<? extends SrMgmtEntry> entries) {
+        return new ServiceRegistryIndex(entries);
+    }
+
+    /**
+     * @param name Service name.
+     * @return Slot of named service, or {@link #MISSING}.
+     */
+    public int serviceSlotOf(final String name) {
+        return find(serviceNames, serviceMask, name);
+    }
+
+    public int serviceIdAt(final int slot) {
+        return serviceIds[slot];
+    }
+
+    /**
+     * @param slot Service slot.
+     * @return Identifier of interface of service in given slot, or {@link
+     * #MISSING} if the service has no interface.
+     */
+    public int interfaceIdAt(final int slot) {
+        return interfaceIds[slot];
+    }
+
+    /**
+     * @param slot Service slot.
+     * @return Name of interface of service in given slot, or {@code null} if
+     * the service has no interface.
+     */
+    public String interfaceNameAt(final int slot) {
+        return interfaceNames[slot];
+    }
+
+    /**
+     * @param name System name.
+     * @return Slot of named system, or {@link #MISSING}.
+     */
+    public int systemSlotOf(final String name) {
+        return find(systemNames, systemMask, name);
+    }
+
+    public int systemIdAt(final int slot) {
+        return systemIds[slot];
+    }
+
+    public SrMgmtProvider providerAt(final int slot) {
+        return providers[slot];
+    }
+
+    private static int capacityFor(final int size) {
+        // Keep the load factor at or below one half.
+        return Integer.highestOneBit(Math.max(size, 4) * 2 - 1) << 1;
+    }
+
+    private static int slotOf(final String[] names, final int mask, final String name) {
+        var slot = spread(name.hashCode()) & mask;
+        while (names[slot] != null && !names[slot].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        return slot;
+    }
+
+    private static int find(final String[] names, final int mask, final String name) {
+        var slot = spread(name.hashCode()) & mask;
+        while (true) {
+            final var candidate = names[slot];
+            if (candidate == null) {
+                return MISSING;
+            }
+            if (candidate == name || candidate.equals(name)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
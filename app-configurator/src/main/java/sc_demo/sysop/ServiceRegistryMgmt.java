@@ -3,45 +3,59 @@ package sc_demo.sysop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sc_demo.sysop.data.CfProvider;
-import se.arkalix.net.MessageIncoming;
-import se.arkalix.net.http.client.HttpClient;
 import se.arkalix.net.http.client.HttpClientRequest;
 import se.arkalix.util.concurrent.Future;
-import se.arkalix.util.concurrent.Futures;
 import sc_demo.sysop.data.CfService;
+import sc_demo.sysop.data.SrMgmtEntry;
 
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Objects;
 
 import static se.arkalix.dto.DtoEncoding.JSON;
+import static se.arkalix.net.http.HttpMethod.DELETE;
 import static se.arkalix.net.http.HttpMethod.POST;
 
 public class ServiceRegistryMgmt {
     private static final Logger logger = LoggerFactory.getLogger(ServiceRegistryMgmt.class);
 
-    private final HttpClient client;
+    private final HttpConnectionPool pool;
     private final InetSocketAddress serviceRegistryHost;
+    private final RegistrationExecutor executor;
 
-    public ServiceRegistryMgmt(final HttpClient client, final InetSocketAddress serviceRegistryHost) {
-        this.client = Objects.requireNonNull(client);
+    public ServiceRegistryMgmt(
+        final HttpConnectionPool pool,
+        final InetSocketAddress serviceRegistryHost,
+        final RegistrationExecutor executor
+    ) {
+        this.pool = Objects.requireNonNull(pool);
         this.serviceRegistryHost = Objects.requireNonNull(serviceRegistryHost);
+        this.executor = Objects.requireNonNull(executor);
     }
 
-    public Future<?> register(final List<CfService> services, final List<CfProvider> providers) {
-        return Futures.serialize(services.stream().map(service -> client
+    public Future<Integer> register(final List<CfService> services, final List<CfProvider> providers) {
+        return executor.execute("service entries", services.iterator(), service -> pool
             .send(serviceRegistryHost, new HttpClientRequest()
                 .method(POST)
                 .uri("/serviceregistry/mgmt")
                 .body(JSON, service.toRegistrationUsing(providers)))
-            .flatMap(MessageIncoming::bodyAsString)
+            .flatMap(RegistrationExecutor::bodyAsStringIfSuccess)
             .ifSuccess(body -> {
                 logger.info("Created service entry {}/{}",
                     providers.get(service.providerIndex()).systemName(),
                     service.serviceDefinition());
                 logger.debug("Response: {}", body);
-            })
-            .ifFailure(Throwable.class, throwable ->
-                logger.warn("Failed to create authorization rule from " + service, throwable))));
+            }));
+    }
+
+    public Future<Integer> unregister(final List<SrMgmtEntry> entries) {
+        return executor.execute("service entry removals", entries.iterator(), entry -> pool
+            .send(serviceRegistryHost, new HttpClientRequest()
+                .method(DELETE)
+                .uri("/serviceregistry/mgmt/" + entry.id()))
+            .flatMap(RegistrationExecutor::bodyAsStringIfSuccess)
+            .ifSuccess(body -> logger.info("Removed service entry {}/{}",
+                entry.provider().systemName(),
+                entry.serviceDefinition().serviceDefinition())));
     }
 }
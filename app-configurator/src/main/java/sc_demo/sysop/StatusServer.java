@@ -0,0 +1,89 @@
+package sc_demo.sysop;
+
+import sc_demo.sysop.data.StatusReadyBuilder;
+import se.arkalix.ArSystem;
+import se.arkalix.net.http.service.HttpService;
+import se.arkalix.util.concurrent.Future;
+
+import java.util.Objects;
+
+import static se.arkalix.descriptor.EncodingDescriptor.JSON;
+import static se.arkalix.net.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static se.arkalix.net.http.HttpStatus.OK;
+import static se.arkalix.net.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static se.arkalix.security.access.AccessPolicy.unrestricted;
+import static se.arkalix.util.concurrent.Future.done;
+
+/**
+ * Plain HTTP server exposing the {@link BootstrapStatus} of the configurator.
+ * <p>
+ * {@code GET /status/ready} responds with 200 when configuration is
+ * complete, 503 while it is still in progress and 500 if it failed, which
+ * lets other systems wait for the cloud to be ready before starting. {@code
+ * GET /status/metrics} responds with the state, duration and item counts of
+ * every configuration phase, as well as the counters of the connection pool
+ * used to reach the core systems.
+ * <p>
+ * The server is an insecure Arrowhead system without any plugins, which
+ * means that it is never registered with the service registry, as that is
+ * among the systems being configured. Requests are handled on the
+ * non-blocking I/O threads of the system, as none of them ever blocks.
+ */
+public class StatusServer {
+    private final ArSystem system;
+
+    private StatusServer(final ArSystem system) {
+        this.system = system;
+    }
+
+    /**
+     * Starts status server.
+     *
+     * @param port   Port to listen on.
+     * @param status Status to expose.
+     * @return Future completed with started server.
+     */
+    public static Future<StatusServer> start(final int port, final BootstrapStatus status) {
+        Objects.requireNonNull(status);
+
+        final var system = new ArSystem.Builder()
+            .name("configurator-status")
+            .localPort(port)
+            .insecure()
+            .build();
+
+        return system.provide(new HttpService()
+            .name("configurator-status")
+            .encodings(JSON)
+            .accessPolicy(unrestricted())
+            .basePath("/status")
+
+            .get("/ready", (request, response) -> {
+                final var state = status.state();
+                switch (state) {
+                case DONE: response.status(OK); break;
+                case FAILED: response.status(INTERNAL_SERVER_ERROR); break;
+                default: response.status(SERVICE_UNAVAILABLE); break;
+                }
+                response.body(new StatusReadyBuilder()
+                    .state(state)
+                    .build());
+
+                return done();
+            })
+
+            .get("/metrics", (request, response) -> {
+                response
+                    .status(OK)
+                    .body(status.toDto());
+
+                return done();
+            }))
+
+            .map(ignored -> new StatusServer(system));
+    }
+
+    public void stop() {
+        system.shutdown();
+    }
+}
@@ -0,0 +1,18 @@
+package sc_demo.sysop.data;
+
+import se.arkalix.dto.DtoReadableAs;
+import se.arkalix.dto.DtoToString;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoReadableAs(JSON)
+@DtoToString
+public interface AuMgmtRuleIntraEntry {
+    int id();
+
+    MgmtSystem consumerSystem();
+
+    MgmtSystem providerSystem();
+
+    MgmtServiceDefinition serviceDefinition();
+}
@@ -0,0 +1,14 @@
+package sc_demo.sysop.data;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import java.util.List;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoReadableAs(JSON)
+public interface AuMgmtRuleIntraQueryResult {
+    int count();
+
+    List<AuMgmtRuleIntraEntry> data();
+}
@@ -0,0 +1,49 @@
+package sc_demo.sysop.data;
+
+import se.arkalix.dto.DtoReadableAs;
+import se.arkalix.dto.DtoToString;
+
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoReadableAs(JSON)
+@DtoToString
+public interface CfSettings {
+    /**
+     * Maximum number of registration requests in flight at any one time.
+     */
+    Optional<Integer> parallelism();
+
+    /**
+     * Maximum number of registration requests sent per second.
+     */
+    Optional<Integer> requestsPerSecond();
+
+    /**
+     * Maximum number of times each registration request is attempted.
+     */
+    Optional<Integer> maxAttempts();
+
+    /**
+     * Delay, in milliseconds, before a failed registration request is retried
+     * for the first time. The delay is doubled for every failed attempt.
+     */
+    Optional<Integer> retryDelayMillis();
+
+    /**
+     * Maximum number of orchestration rules sent per request.
+     */
+    Optional<Integer> orchestrationChunkSize();
+
+    /**
+     * Maximum number of connections kept open to each core system.
+     */
+    Optional<Integer> maxConnectionsPerHost();
+
+    /**
+     * Time, in milliseconds, after which an unused connection to a core
+     * system is closed.
+     */
+    Optional<Integer> connectionIdleTimeoutMillis();
+}
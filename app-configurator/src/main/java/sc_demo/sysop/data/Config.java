@@ -4,6 +4,7 @@ import se.arkalix.dto.DtoReadableAs;
 
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.Optional;
 
 import static se.arkalix.dto.DtoEncoding.JSON;
 
@@ -24,4 +25,6 @@ public interface Config {
     List<CfService> services();
 
     List<CfConsumptionRule> rules();
+
+    Optional<CfSettings> settings();
 }
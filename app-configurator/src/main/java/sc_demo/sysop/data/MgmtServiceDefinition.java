@@ -0,0 +1,18 @@
+package sc_demo.sysop.data;
+
+import se.arkalix.dto.DtoReadableAs;
+import se.arkalix.dto.DtoToString;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Service definition, as referred to by entries returned from the
+ * management endpoints of the authorization and orchestrator systems.
+ */
+@DtoReadableAs(JSON)
+@DtoToString
+public interface MgmtServiceDefinition {
+    int id();
+
+    String serviceDefinition();
+}
@@ -0,0 +1,22 @@
+package sc_demo.sysop.data;
+
+import se.arkalix.dto.DtoReadableAs;
+import se.arkalix.dto.DtoToString;
+
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoReadableAs(JSON)
+@DtoToString
+public interface OrMgmtStoreEntry {
+    int id();
+
+    MgmtSystem consumerSystem();
+
+    Optional<Boolean> foreign();
+
+    Optional<MgmtSystem> providerSystem();
+
+    MgmtServiceDefinition serviceDefinition();
+}
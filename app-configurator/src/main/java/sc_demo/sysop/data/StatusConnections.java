@@ -0,0 +1,32 @@
+package sc_demo.sysop.data;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface StatusConnections {
+    String host();
+
+    int open();
+
+    int leased();
+
+    int idle();
+
+    int waiting();
+
+    long connects();
+
+    long connectFailures();
+
+    long reuses();
+
+    long closes();
+
+    long waits();
+
+    long waitMillisTotal();
+
+    long waitMillisMax();
+}
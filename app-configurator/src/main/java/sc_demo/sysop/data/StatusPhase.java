@@ -0,0 +1,26 @@
+package sc_demo.sysop.data;
+
+import sc_demo.sysop.BootstrapPhase;
+import se.arkalix.dto.DtoWritableAs;
+
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface StatusPhase {
+    String name();
+
+    BootstrapPhase.State state();
+
+    /**
+     * Milliseconds spent in phase so far, unless the phase is yet to start.
+     */
+    Optional<Long> durationMillis();
+
+    int items();
+
+    int failedItems();
+
+    Optional<String> error();
+}
@@ -0,0 +1,11 @@
+package sc_demo.sysop.data;
+
+import sc_demo.sysop.BootstrapPhase;
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface StatusReady {
+    BootstrapPhase.State state();
+}
@@ -0,0 +1,25 @@
+package sc_demo.sysop.data;
+
+import sc_demo.sysop.BootstrapPhase;
+import se.arkalix.dto.DtoWritableAs;
+
+import java.util.List;
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface StatusReport {
+    BootstrapPhase.State state();
+
+    long durationMillis();
+
+    Optional<String> error();
+
+    List<StatusPhase> phases();
+
+    /**
+     * Counters of the pooled connections to each core system.
+     */
+    List<StatusConnections> connections();
+}
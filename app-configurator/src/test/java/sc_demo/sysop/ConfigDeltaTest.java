@@ -0,0 +1,93 @@
+package sc_demo.sysop;
+
+import org.junit.jupiter.api.Test;
+import sc_demo.sysop.data.CfService;
+import sc_demo.sysop.data.ConfigDto;
+import se.arkalix.dto.binary.ByteArrayReader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConfigDeltaTest {
+    private static final String PROVIDERS = "" +
+        "{\"systemName\":\"alpha\",\"address\":\"alpha.p4sc\",\"port\":9001,\"authenticationInfo\":\"A\"}," +
+        "{\"systemName\":\"beta\",\"address\":\"beta.p4sc\",\"port\":9002,\"authenticationInfo\":\"B\"}";
+
+    private static final String SERVICES = "" +
+        "{\"serviceDefinition\":\"orders\",\"providerIndex\":0,\"serviceUri\":\"/orders\",\"secure\":\"CERTIFICATE\",\"interfaces\":[\"HTTP-SECURE-JSON\"]}," +
+        "{\"serviceDefinition\":\"events\",\"providerIndex\":1,\"serviceUri\":\"/events\",\"secure\":\"CERTIFICATE\",\"interfaces\":[\"HTTP-SECURE-JSON\"]}";
+
+    private static final String RULES = "" +
+        "{\"consumer\":\"beta\",\"services\":[\"orders\"],\"providers\":[\"alpha\"]}," +
+        "{\"consumer\":\"alpha\",\"services\":[\"events\"],\"providers\":[\"beta\"]}";
+
+    @Test
+    void shouldBeEmptyForEqualConfigurations() throws Exception {
+        final var delta = ConfigDelta.between(config(PROVIDERS, SERVICES, RULES), config(PROVIDERS, SERVICES, RULES));
+
+        assertTrue(delta.isEmpty());
+        assertTrue(delta.changedServiceNames().isEmpty());
+    }
+
+    @Test
+    void shouldRemoveThenAddServiceWithChangedFingerprint() throws Exception {
+        final var delta = ConfigDelta.between(
+            config(PROVIDERS, SERVICES, RULES),
+            config(PROVIDERS, SERVICES.replace("\"/orders\"", "\"/orders/v2\""), RULES));
+
+        assertEquals(List.of("alpha/orders"), delta.removedServiceKeys());
+        assertEquals(List.of("/orders/v2"), serviceUrisOf(delta.addedServices()));
+        assertEquals(Set.of("orders"), delta.changedServiceNames());
+        assertTrue(delta.removedGrants().isEmpty());
+        assertTrue(delta.addedGrants().isEmpty());
+    }
+
+    @Test
+    void shouldRemoveThenAddServicesAndGrantsOfProviderWithChangedFingerprint() throws Exception {
+        final var delta = ConfigDelta.between(
+            config(PROVIDERS, SERVICES, RULES),
+            config(PROVIDERS.replace("9001", "9101"), SERVICES, RULES));
+
+        final var grant = new ConsumptionGrant("beta", "alpha", "orders");
+        assertEquals(List.of("alpha/orders"), delta.removedServiceKeys());
+        assertEquals(List.of("/orders"), serviceUrisOf(delta.addedServices()));
+        assertEquals(Set.of("orders"), delta.changedServiceNames());
+        assertEquals(List.of(grant), delta.removedGrants());
+        assertEquals(List.of(grant), delta.addedGrants());
+    }
+
+    @Test
+    void shouldOnlyRemoveOrAddServicesAndGrantsMissingFromEitherConfiguration() throws Exception {
+        final var delta = ConfigDelta.between(
+            config(PROVIDERS, SERVICES, RULES),
+            config(PROVIDERS,
+                SERVICES.substring(0, SERVICES.indexOf("},") + 1) + "," +
+                    "{\"serviceDefinition\":\"invoices\",\"providerIndex\":1,\"serviceUri\":\"/invoices\",\"interfaces\":[\"HTTP-SECURE-JSON\"]}",
+                RULES.replace("[\"events\"]", "[\"invoices\"]")));
+
+        assertEquals(List.of("beta/events"), delta.removedServiceKeys());
+        assertEquals(List.of("/invoices"), serviceUrisOf(delta.addedServices()));
+        assertEquals(Set.of("events", "invoices"), delta.changedServiceNames());
+        assertEquals(List.of(new ConsumptionGrant("alpha", "beta", "events")), delta.removedGrants());
+        assertEquals(List.of(new ConsumptionGrant("alpha", "beta", "invoices")), delta.addedGrants());
+    }
+
+    private static ConfigDto config(final String providers, final String services, final String rules) throws Exception {
+        final var json = "{\"serviceRegistryHost\":\"service-registry.p4sc:8443\"," +
+            "\"providers\":[" + providers + "]," +
+            "\"services\":[" + services + "]," +
+            "\"rules\":[" + rules + "]}";
+        return ConfigDto.readJson(new ByteArrayReader(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<String> serviceUrisOf(final List<CfService> services) {
+        return services.stream()
+            .map(CfService::serviceUri)
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,329 @@
+package sc_demo.forecaster;
+
+import com.sun.net.httpserver.HttpServer;
+import sc_demo.common.JsonBuffer;
+import sc_demo.common.LatencyRecorder;
+import sc_demo.forecaster.stub.EventHandlerStub;
+import sc_demo.forecaster.stub.StubEventDto;
+import se.arkalix.dto.binary.ByteArrayReader;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+/**
+ * Publishes a synthetic stream of contract events to an {@link
+ * EventHandlerStub}, which delivers them to a {@link ContractEventIngester}
+ * subscribed to it, and reports throughput, publish and end-to-end
+ * latencies, and whether every accepted negotiation ends up in the
+ * projection.
+ * <p>
+ * Events are published by a given number of concurrent publishers, each
+ * waiting for the event handler to accept an event before publishing its
+ * next. Of all events, 80% are accepted negotiations, 15% rejected and 5%
+ * expired, as negotiators publish them.
+ * <p>
+ * Options are given as {@code --name=value}; see {@link #main(String[])}.
+ */
+public class ContractEventBenchmark {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 100.0};
+    private static final String ME = "Supplier Sales Agent";
+    private static final String OFFEROR = "Plant Purchasing Agent";
+    private static final String NOTIFY_PATH = "/events/supplier-agent-forecasting";
+
+    /**
+     * Runs benchmark.
+     * <p>
+     * Supported options, with their default values, are:
+     * <ul>
+     *     <li>{@code --events=20000}</li>
+     *     <li>{@code --publishers=16}</li>
+     *     <li>{@code --subscriber-threads=8}</li>
+     *     <li>{@code --stub-threads=16}</li>
+     *     <li>{@code --stub-max-deliveries=32}</li>
+     *     <li>{@code --stub-latency-millis=0}</li>
+     *     <li>{@code --timeout-seconds=300}</li>
+     *     <li>{@code --log-level=WARNING}</li>
+     * </ul>
+     *
+     * @param args Options.
+     * @throws Exception If the benchmark could not be completed.
+     */
+    public static void main(final String[] args) throws Exception {
+        final var options = optionsOf(args);
+        final var events = Integer.parseInt(options.getOrDefault("events", "20000"));
+        final var publishers = Integer.parseInt(options.getOrDefault("publishers", "16"));
+        final var subscriberThreads = Integer.parseInt(options.getOrDefault("subscriber-threads", "8"));
+        final var stubThreads = Integer.parseInt(options.getOrDefault("stub-threads", "16"));
+        final var stubMaxDeliveries = Integer.parseInt(options.getOrDefault("stub-max-deliveries", "32"));
+        final var stubLatency = Duration.ofMillis(Long.parseLong(options.getOrDefault("stub-latency-millis", "0")));
+        final var timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout-seconds", "300")));
+        final var logLevel = Level.parse(options.getOrDefault("log-level", "WARNING"));
+
+        // Main sets the log level when initialized, which is why it must be
+        // initialized before the level is overridden.
+        Class.forName(Main.class.getName());
+        final var root = java.util.logging.Logger.getLogger("");
+        root.setLevel(logLevel);
+        for (final var handler : root.getHandlers()) {
+            handler.setLevel(logLevel);
+        }
+
+        final var now = Instant.now();
+        final var template = new CashFlowTemplate("component-order.txt", List.of("quantity", "unitPrice"),
+            "EUR", "timeOfDelivery", OFFEROR);
+        final var projection = new LiquidityProjection(Duration.ofDays(1), 365, events, now);
+        final var ingester = new ContractEventIngester(ME, Map.of(template.name(), template), projection, null, null);
+
+        final var types = new ContractEvent.Type[events];
+        final var payloads = new String[events];
+        final var expectedAccepted = generate(types, payloads, now);
+        final var publishedAt = new AtomicLongArray(events);
+        final var endToEnd = new LatencyRecorder();
+
+        final var stub = EventHandlerStub.start(stubThreads, stubMaxDeliveries, stubLatency);
+        final var subscriber = startSubscriber(subscriberThreads, ingester, publishedAt, endToEnd);
+        final var publisherExecutor = Executors.newFixedThreadPool(publishers);
+        try {
+            System.out.printf("Events: %d, of which %d accepted%n", events, expectedAccepted);
+            System.out.printf("Stub: %d threads, %d deliveries in flight, %d ms latency%n",
+                stubThreads, stubMaxDeliveries, stubLatency.toMillis());
+            System.out.printf("Publishers: %d, subscriber threads: %d%n", publishers, subscriberThreads);
+
+            final var client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+            final var subscriberAddress = subscriber.getAddress();
+            for (final var type : ContractEvent.Type.values()) {
+                final var body = "{\"eventType\":\"" + type.topic() + "\",\"notifyUri\":\"" + NOTIFY_PATH + "\"," +
+                    "\"subscriberSystem\":{\"systemName\":\"supplier-agent-forecasting\"," +
+                    "\"address\":\"" + subscriberAddress.getAddress().getHostAddress() + "\"," +
+                    "\"port\":" + subscriberAddress.getPort() + "}}";
+                final var response = client.send(HttpRequest.newBuilder(URI.create(stub.uri() + "/subscribe"))
+                    .header("content-type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build(), HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() / 100 != 2) {
+                    throw new IllegalStateException("Failed to subscribe to " + type.topic() + "; status " + response.statusCode());
+                }
+            }
+
+            final var startedAt = System.nanoTime();
+            publish(publisherExecutor, client, stub.uri(), publishers, types, payloads, publishedAt);
+            final var publishedNanos = System.nanoTime() - startedAt;
+
+            final var deadline = System.nanoTime() + timeout.toNanos();
+            while (ingester.stats().received() < events && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            final var elapsedNanos = System.nanoTime() - startedAt;
+            final var stats = ingester.stats();
+
+            System.out.printf("%nPublished %d events in %d ms, %.1f events/s%n", events,
+                publishedNanos / 1_000_000, events * 1e9 / Math.max(publishedNanos, 1));
+            System.out.printf("Ingested %d events in %d ms, %.1f events/s%n", stats.received(),
+                elapsedNanos / 1_000_000, stats.received() * 1e9 / Math.max(elapsedNanos, 1));
+            System.out.printf("  Ingester: %s%n", new String(JsonBuffer.encode(stats), StandardCharsets.UTF_8));
+            System.out.printf("  Projection: %s%n", new String(JsonBuffer.encode(projection.stats()), StandardCharsets.UTF_8));
+            System.out.printf("  Delivery failures: %d%n", stub.deliveryFailures());
+            System.out.println("  Latency (ms):");
+            System.out.printf("    %-40s %8s %8s %8s %8s %8s%n", "operation", "count", "p50", "p90", "p99", "max");
+            final var recorders = stub.recorders();
+            recorders.put("publish to ingested", endToEnd);
+            for (final var entry : recorders.entrySet()) {
+                final var recorder = entry.getValue();
+                final var percentiles = recorder.percentiles(PERCENTILES);
+                System.out.printf("    %-40s %8d %8.2f %8.2f %8.2f %8.2f%n", entry.getKey(), recorder.count(),
+                    percentiles[0] / 1e6, percentiles[1] / 1e6, percentiles[2] / 1e6, percentiles[3] / 1e6);
+            }
+
+            final var isComplete = stats.received() == events
+                && stats.malformed() == 0
+                && projection.stats().contracts() == expectedAccepted;
+            System.out.printf("%nProjection state: %d contracts (%s)%n", projection.stats().contracts(),
+                isComplete ? "as expected" : "NOT as expected");
+            System.exit(isComplete ? 0 : 1);
+        }
+        finally {
+            publisherExecutor.shutdownNow();
+            subscriber.stop(0);
+            stub.stop();
+        }
+    }
+
+    private static int generate(final ContractEvent.Type[] types, final String[] payloads, final Instant now) {
+        final var random = new Random(payloads.length);
+        final var today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+        final var buffer = new JsonBuffer(512);
+        var accepted = 0;
+        for (var i = 0; i < payloads.length; ++i) {
+            final var draw = random.nextInt(100);
+            final var type = draw < 80
+                ? ContractEvent.Type.ACCEPTED
+                : draw < 95 ? ContractEvent.Type.REJECTED : ContractEvent.Type.EXPIRED;
+            final var builder = new ContractEventBuilder()
+                .type(type)
+                .negotiationId(i)
+                .publishedAt(now);
+            if (type != ContractEvent.Type.EXPIRED) {
+                builder.offerorName(OFFEROR).receiverName(ME);
+            }
+            if (type == ContractEvent.Type.ACCEPTED) {
+                final var arguments = new HashMap<String, String>();
+                arguments.put("quantity", Integer.toString(1 + random.nextInt(1000)));
+                arguments.put("unitPrice", (1 + random.nextInt(500)) + "." + random.nextInt(10) + random.nextInt(10));
+                arguments.put("timeOfDelivery", today.plusDays(random.nextInt(400)).toString());
+                builder.contracts(List.of(new ContractEventContractBuilder()
+                    .templateName("component-order.txt")
+                    .arguments(arguments)
+                    .build()));
+                accepted += 1;
+            }
+            else {
+                builder.contracts(List.of());
+            }
+            types[i] = type;
+            buffer.clear();
+            buffer.writeDto(builder.build());
+            payloads[i] = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        }
+        return accepted;
+    }
+
+    private static HttpServer startSubscriber(
+        final int threads,
+        final ContractEventIngester ingester,
+        final AtomicLongArray publishedAt,
+        final LatencyRecorder endToEnd
+    ) throws Exception {
+        final var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.createContext(NOTIFY_PATH, exchange -> {
+            try {
+                final var event = StubEventDto.readJson(new ByteArrayReader(exchange.getRequestBody().readAllBytes()));
+                ingester.ingest(event.payload());
+                final var negotiationId = event.metaData()
+                    .map(metaData -> metaData.get("negotiation-id"))
+                    .map(Integer::parseInt)
+                    .orElse(-1);
+                if (negotiationId >= 0 && negotiationId < publishedAt.length()) {
+                    endToEnd.record(System.nanoTime() - publishedAt.get(negotiationId));
+                }
+                exchange.sendResponseHeaders(200, -1);
+            }
+            catch (final Exception exception) {
+                exchange.sendResponseHeaders(400, -1);
+            }
+            finally {
+                exchange.close();
+            }
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "event-subscriber");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    private static void publish(
+        final ExecutorService executor,
+        final HttpClient client,
+        final URI eventHandlerUri,
+        final int publishers,
+        final ContractEvent.Type[] types,
+        final String[] payloads,
+        final AtomicLongArray publishedAt
+    ) throws Exception {
+        final var publishUri = URI.create(eventHandlerUri + "/publish");
+        final var next = new AtomicInteger();
+        final var failures = new AtomicLong();
+        final var futures = new ArrayList<Future<?>>(publishers);
+        for (var p = 0; p < publishers; ++p) {
+            futures.add(executor.submit(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < payloads.length) {
+                    final var body = new StringBuilder(payloads[i].length() + 192)
+                        .append("{\"eventType\":\"").append(types[i].topic())
+                        .append("\",\"metaData\":{\"negotiation-id\":\"").append(i)
+                        .append("\"},\"payload\":");
+                    writeJsonString(body, payloads[i]);
+                    body.append(",\"timeStamp\":\"").append(Instant.now()).append("\"}");
+                    publishedAt.set(i, System.nanoTime());
+                    try {
+                        final var response = client.send(HttpRequest.newBuilder(publishUri)
+                            .header("content-type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                            .build(), HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() / 100 != 2) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    catch (final InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    catch (final Exception exception) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (final var future : futures) {
+            future.get();
+        }
+        if (failures.get() > 0) {
+            System.out.printf("Failed to publish %d events%n", failures.get());
+        }
+    }
+
+    private static void writeJsonString(final StringBuilder builder, final String string) {
+        builder.append('"');
+        for (var i = 0; i < string.length(); ++i) {
+            final var c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        builder.append('"');
+    }
+
+    private static Map<String, String> optionsOf(final String[] args) {
+        final var options = new HashMap<String, String>();
+        for (final var arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            final var equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            }
+            else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+}
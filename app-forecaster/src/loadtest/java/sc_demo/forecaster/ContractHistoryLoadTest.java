@@ -0,0 +1,204 @@
+package sc_demo.forecaster;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * Fills a {@link ContractHistoryStore} with synthetic cash flows and reports
+ * append throughput, the time taken to reopen the store, and the duration
+ * and throughput of range scans and counterparty aggregations over it.
+ * <p>
+ * Cash flows are accepted evenly over the given number of days and expire
+ * up to a year after being accepted. Range scans and aggregations cover a
+ * window of given length, starting at a random point, as well as the entire
+ * history. Aggregations over the entire history are verified against sums
+ * computed while generating the cash flows.
+ * <p>
+ * Options are given as {@code --name=value}; see {@link #main(String[])}.
+ */
+public class ContractHistoryLoadTest {
+    private static final String[] CURRENCIES = {"EUR", "SEK", "USD"};
+    private static final String[] TEMPLATES = {"component-order.txt", "transport-booking.txt"};
+
+    /**
+     * Runs load test.
+     * <p>
+     * Supported options, with their default values, are:
+     * <ul>
+     *     <li>{@code --cash-flows=2000000}</li>
+     *     <li>{@code --counterparties=200}</li>
+     *     <li>{@code --days=180}</li>
+     *     <li>{@code --segment-capacity=65536}</li>
+     *     <li>{@code --window-days=30}</li>
+     *     <li>{@code --iterations=20}</li>
+     *     <li>{@code --log-level=WARNING}</li>
+     * </ul>
+     *
+     * @param args Options.
+     * @throws Exception If the load test could not be completed.
+     */
+    public static void main(final String[] args) throws Exception {
+        final var options = optionsOf(args);
+        final var cashFlows = Integer.parseInt(options.getOrDefault("cash-flows", "2000000"));
+        final var counterparties = Integer.parseInt(options.getOrDefault("counterparties", "200"));
+        final var days = Integer.parseInt(options.getOrDefault("days", "180"));
+        final var segmentCapacity = Integer.parseInt(options.getOrDefault("segment-capacity", "65536"));
+        final var window = Duration.ofDays(Long.parseLong(options.getOrDefault("window-days", "30")));
+        final var iterations = Integer.parseInt(options.getOrDefault("iterations", "20"));
+        final var logLevel = Level.parse(options.getOrDefault("log-level", "WARNING"));
+
+        // Main sets the log level when initialized, which is why it must be
+        // initialized before the level is overridden.
+        Class.forName(Main.class.getName());
+        final var root = java.util.logging.Logger.getLogger("");
+        root.setLevel(logLevel);
+        for (final var handler : root.getHandlers()) {
+            handler.setLevel(logLevel);
+        }
+
+        final var directory = Files.createTempDirectory("contract-history-load-test");
+        try {
+            final var start = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+            final var span = Duration.ofDays(days).toMillis();
+            final var expected = new HashMap<String, Long>();
+
+            var store = ContractHistoryStore.open(directory, segmentCapacity);
+            final var random = new Random(1);
+            var startedAt = System.nanoTime();
+            for (var i = 0; i < cashFlows; ++i) {
+                final var acceptedAt = start + span * i / cashFlows;
+                final var counterparty = "Counterparty " + random.nextInt(counterparties);
+                final var currency = CURRENCIES[random.nextInt(CURRENCIES.length)];
+                final var amount = (random.nextInt(2_000_000) - 1_000_000) * 100L;
+                final var flow = new CashFlow(TEMPLATES[i & 1], counterparty, currency,
+                    acceptedAt + (long) (random.nextDouble() * Duration.ofDays(365).toMillis()), amount);
+                store.append(i, acceptedAt, List.of(flow));
+                if (currency.equals("EUR")) {
+                    expected.merge(counterparty, amount, Long::sum);
+                }
+            }
+            store.flush();
+            var elapsedNanos = System.nanoTime() - startedAt;
+            System.out.printf("Appended %d cash flows in %d ms, %.1f cash flows/s%n", cashFlows,
+                elapsedNanos / 1_000_000, cashFlows * 1e9 / Math.max(elapsedNanos, 1));
+            store.close();
+
+            startedAt = System.nanoTime();
+            store = ContractHistoryStore.open(directory, segmentCapacity);
+            elapsedNanos = System.nanoTime() - startedAt;
+            final var stats = store.stats();
+            System.out.printf("Reopened %d segments holding %d rows, %.1f MiB mapped, in %.2f ms%n",
+                stats.segments(), stats.rows(), stats.mappedBytes() / 1048576.0, elapsedNanos / 1e6);
+
+            final var windowMillis = window.toMillis();
+            final var end = start + span + Duration.ofDays(365).toMillis();
+            final var store0 = store;
+            measure("Entries, " + window.toDays() + " day window, limit 1000", iterations, stats.rows(), random, start, end,
+                windowMillis, (from, to) -> store0.entries(from, to, 1000).size());
+            measure("Totals by counterparty, " + window.toDays() + " day window", iterations, stats.rows(), random, start, end,
+                windowMillis, (from, to) -> store0.totalsByCounterparty("EUR", from, to).size());
+            measure("Totals by counterparty, entire history", iterations, stats.rows(), random, Long.MIN_VALUE, Long.MAX_VALUE,
+                -1, (from, to) -> store0.totalsByCounterparty("EUR", from, to).size());
+
+            final var actual = store.totalsByCounterparty("EUR", Long.MIN_VALUE, Long.MAX_VALUE)
+                .stream()
+                .collect(Collectors.toMap(ContractHistoryTotal::counterparty, ContractHistoryTotal::net));
+            final var isComplete = stats.rows() == cashFlows && actual.equals(expected);
+            System.out.printf("%nStore state: %d rows, %d EUR counterparties (%s)%n", stats.rows(), actual.size(),
+                isComplete ? "as expected" : "NOT as expected");
+            store.close();
+            if (!isComplete) {
+                System.exit(1);
+            }
+        }
+        finally {
+            try (final var paths = Files.walk(directory)) {
+                for (final var path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    deleteIfExists(path);
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void measure(
+        final String name,
+        final int iterations,
+        final long rows,
+        final Random random,
+        final long start,
+        final long end,
+        final long windowMillis,
+        final Query query
+    ) {
+        var results = 0L;
+        var elapsedNanos = 0L;
+        var maxNanos = 0L;
+        for (var i = 0; i <= iterations; ++i) {
+            final long from;
+            final long to;
+            if (windowMillis < 0) {
+                from = start;
+                to = end;
+            }
+            else {
+                from = start + (long) (random.nextDouble() * (end - start - windowMillis));
+                to = from + windowMillis;
+            }
+            final var startedAt = System.nanoTime();
+            final var result = query.run(from, to);
+            final var nanos = System.nanoTime() - startedAt;
+
+            // The first iteration is only run to warm up.
+            if (i > 0) {
+                results += result;
+                elapsedNanos += nanos;
+                maxNanos = Math.max(maxNanos, nanos);
+            }
+        }
+        final var averageNanos = elapsedNanos / Math.max(iterations, 1);
+        System.out.printf("%n%s:%n  %.2f ms average, %.2f ms max, %.1f million stored rows/s, %.1f results%n", name,
+            averageNanos / 1e6, maxNanos / 1e6, rows * 1e3 / Math.max(averageNanos, 1), results / (double) Math.max(iterations, 1));
+    }
+
+    private static void deleteIfExists(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (final IOException exception) {
+            System.err.println("Failed to delete " + path + ": " + exception);
+        }
+    }
+
+    private static Map<String, String> optionsOf(final String[] args) {
+        final var options = new HashMap<String, String>();
+        for (final var arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            final var equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            }
+            else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+
+    @FunctionalInterface
+    private interface Query {
+        int run(long fromMillis, long toMillis);
+    }
+}
@@ -0,0 +1,282 @@
+package sc_demo.forecaster;
+
+import sc_demo.common.JsonBuffer;
+import sc_demo.forecaster.stub.Lp2Stub;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Replicates a synthetic stream of contract changes to an {@link Lp2Stub}
+ * via {@link Lp2Sync} and reports throughput, coalescing, request latencies
+ * and whether the stub ends up holding exactly the expected contracts.
+ * <p>
+ * Every contract is first created, then updated the given number of times
+ * and finally deleted with the given probability. Changes are submitted in
+ * rounds, each round touching every contract once, which means that the
+ * number of changes coalesced depends on how fast the stub keeps up.
+ * <p>
+ * If a crash point is given, the journal is copied after that fraction of
+ * all changes has been submitted, simulating the application being killed
+ * at that moment. The pipeline is then abandoned and a new one is started
+ * from the copied journal, after which the remaining changes are submitted
+ * to it. Recovery is successful if the stub still ends up holding exactly
+ * the expected contracts.
+ * <p>
+ * Options are given as {@code --name=value}; see {@link #main(String[])}.
+ */
+public class Lp2SyncLoadTest {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 100.0};
+
+    /**
+     * Runs load test.
+     * <p>
+     * Supported options, with their default values, are:
+     * <ul>
+     *     <li>{@code --contracts=20000}</li>
+     *     <li>{@code --updates-per-contract=2}</li>
+     *     <li>{@code --delete-rate=0.1}</li>
+     *     <li>{@code --crash-at=0.5}, or {@code 0} to never crash</li>
+     *     <li>{@code --batch-size=64}</li>
+     *     <li>{@code --batch-window-millis=20}</li>
+     *     <li>{@code --max-in-flight=16}</li>
+     *     <li>{@code --fsync=NEVER}</li>
+     *     <li>{@code --stub-threads=16}</li>
+     *     <li>{@code --stub-latency-millis=2}</li>
+     *     <li>{@code --stub-failure-rate=0.0}</li>
+     *     <li>{@code --timeout-seconds=300}</li>
+     *     <li>{@code --log-level=WARNING}</li>
+     * </ul>
+     *
+     * @param args Options.
+     * @throws Exception If the load test could not be completed.
+     */
+    public static void main(final String[] args) throws Exception {
+        final var options = optionsOf(args);
+        final var contracts = Integer.parseInt(options.getOrDefault("contracts", "20000"));
+        final var updatesPerContract = Integer.parseInt(options.getOrDefault("updates-per-contract", "2"));
+        final var deleteRate = Double.parseDouble(options.getOrDefault("delete-rate", "0.1"));
+        final var crashAt = Double.parseDouble(options.getOrDefault("crash-at", "0.5"));
+        final var batchSize = Integer.parseInt(options.getOrDefault("batch-size", "64"));
+        final var batchWindow = Duration.ofMillis(Long.parseLong(options.getOrDefault("batch-window-millis", "20")));
+        final var maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "16"));
+        final var fsyncPolicy = Lp2SyncJournal.FsyncPolicy.valueOf(options.getOrDefault("fsync", "NEVER"));
+        final var stubThreads = Integer.parseInt(options.getOrDefault("stub-threads", "16"));
+        final var stubLatency = Duration.ofMillis(Long.parseLong(options.getOrDefault("stub-latency-millis", "2")));
+        final var stubFailureRate = Double.parseDouble(options.getOrDefault("stub-failure-rate", "0.0"));
+        final var timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout-seconds", "300")));
+        final var logLevel = Level.parse(options.getOrDefault("log-level", "WARNING"));
+
+        // Main sets the log level when initialized, which is why it must be
+        // initialized before the level is overridden.
+        Class.forName(Main.class.getName());
+        final var root = java.util.logging.Logger.getLogger("");
+        root.setLevel(logLevel);
+        for (final var handler : root.getHandlers()) {
+            handler.setLevel(logLevel);
+        }
+
+        final var changes = new ArrayList<Change>();
+        final var expected = new HashMap<String, String>();
+        generate(contracts, updatesPerContract, deleteRate, changes, expected);
+        final var crashIndex = crashAt > 0.0 ? (int) (changes.size() * crashAt) : -1;
+
+        final var directory = Files.createTempDirectory("lp2-sync-load-test");
+        final var journalPath = directory.resolve("lp2-sync.journal");
+        final var crashPath = directory.resolve("lp2-sync.journal.crashed");
+        final var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "forecaster-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final var stub = Lp2Stub.start(stubThreads, stubLatency, stubFailureRate);
+        try {
+            System.out.printf("Changes: %d contracts, %d changes, %d contracts expected to remain%n",
+                contracts, changes.size(), expected.size());
+            System.out.printf("Stub: %d threads, %d ms latency, %.3f failure rate%n",
+                stubThreads, stubLatency.toMillis(), stubFailureRate);
+            System.out.printf("Sync: batches of %d, %d ms window, %d in flight, fsync %s%n",
+                batchSize, batchWindow.toMillis(), maxInFlight, fsyncPolicy);
+
+            final var client = new Lp2Client(stub.contractUri(), Duration.ofSeconds(5), Duration.ofSeconds(30));
+            final var startedAt = System.nanoTime();
+
+            var sync = open(client, journalPath, fsyncPolicy, scheduler, batchSize, batchWindow, maxInFlight);
+            for (var i = 0; i < changes.size(); ++i) {
+                if (i == crashIndex) {
+                    Files.copy(journalPath, crashPath, REPLACE_EXISTING);
+                    final var stats = sync.stats();
+                    sync.close();
+                    System.out.printf("%nCrashed after %d changes, with %d pending and %d in flight; journal %d bytes%n",
+                        i, stats.pending(), stats.inFlight(), Files.size(crashPath));
+                    report("Before crash", stub, stats, System.nanoTime() - startedAt);
+
+                    final var resumedAt = System.nanoTime();
+                    sync = open(client, crashPath, fsyncPolicy, scheduler, batchSize, batchWindow, maxInFlight);
+                    System.out.printf("Resumed with %d pending changes in %d ms%n",
+                        sync.stats().pending(), (System.nanoTime() - resumedAt) / 1_000_000);
+                }
+                final var change = changes.get(i);
+                sync.submit(change.op, change.contractId, change.body);
+            }
+            final var submittedAt = System.nanoTime();
+            final var isDrained = sync.awaitDrained(timeout);
+            final var elapsedNanos = System.nanoTime() - startedAt;
+
+            System.out.printf("%nSubmitted %d changes in %d ms; %s after %d ms%n", changes.size(),
+                (submittedAt - startedAt) / 1_000_000, isDrained ? "drained" : "NOT drained", elapsedNanos / 1_000_000);
+            report("After crash", stub, sync.stats(), elapsedNanos);
+            sync.close();
+
+            final var actual = stub.contracts();
+            final var isComplete = isDrained && actual.equals(expected);
+            System.out.printf("%nStub state: %d contracts (%s)%n", actual.size(),
+                isComplete ? "as expected" : "NOT as expected");
+            if (!isComplete) {
+                var mismatches = 0;
+                for (final var entry : expected.entrySet()) {
+                    if (!entry.getValue().equals(actual.get(entry.getKey())) && mismatches++ < 5) {
+                        System.out.printf("  Expected %s: %s, got %s%n", entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+                    }
+                }
+                for (final var id : actual.keySet()) {
+                    if (!expected.containsKey(id) && mismatches++ < 5) {
+                        System.out.printf("  Unexpected %s%n", id);
+                    }
+                }
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+        finally {
+            stub.stop();
+            deleteIfExists(crashPath);
+            deleteIfExists(journalPath);
+            deleteIfExists(directory);
+        }
+    }
+
+    private static Lp2Sync open(
+        final Lp2Client client,
+        final Path journalPath,
+        final Lp2SyncJournal.FsyncPolicy fsyncPolicy,
+        final ScheduledExecutorService scheduler,
+        final int batchSize,
+        final Duration batchWindow,
+        final int maxInFlight
+    ) {
+        return new Lp2Sync(
+            client,
+            new Lp2SyncJournal(journalPath, fsyncPolicy, Duration.ofSeconds(1), scheduler),
+            scheduler,
+            batchSize,
+            batchWindow,
+            maxInFlight,
+            Duration.ofMillis(50),
+            Duration.ofSeconds(2),
+            10,
+            4 * 1024 * 1024);
+    }
+
+    private static void generate(
+        final int contracts,
+        final int updatesPerContract,
+        final double deleteRate,
+        final List<Change> changes,
+        final Map<String, String> expected
+    ) {
+        final var random = new Random(1);
+        final var now = Instant.parse("2020-10-01T10:00:00Z");
+        for (var round = 0; round <= updatesPerContract; ++round) {
+            for (var i = 0; i < contracts; ++i) {
+                final var contractId = "load-test-" + i;
+                final var flow = new CashFlow("component-order.txt", "Counterparty " + (i % 50), i % 7 == 0 ? "SEK" : "EUR",
+                    now.plus(Duration.ofDays(1 + random.nextInt(365))).toEpochMilli(),
+                    (random.nextInt(2_000_000) - 1_000_000) * 100L);
+                final var body = JsonBuffer.encode(ContractEventIngester.lp2ContractOf(contractId, "Load Test Agent", flow, now));
+                changes.add(new Change(round == 0 ? Lp2Sync.Op.CREATE : Lp2Sync.Op.UPDATE, contractId, body));
+                expected.put(contractId, new String(body, StandardCharsets.UTF_8));
+            }
+        }
+        for (var i = 0; i < contracts; ++i) {
+            if (random.nextDouble() < deleteRate) {
+                final var contractId = "load-test-" + i;
+                changes.add(new Change(Lp2Sync.Op.DELETE, contractId, new byte[0]));
+                expected.remove(contractId);
+            }
+        }
+    }
+
+    private static void report(final String name, final Lp2Stub stub, final Lp2SyncStatsDto stats, final long elapsedNanos) {
+        var requests = 0L;
+        for (final var recorder : stub.recorders().values()) {
+            requests += recorder.count();
+        }
+        System.out.printf("%s: %d submitted, %d coalesced, %d sent, %d synced, %d retried, %d dropped, journal %d bytes%n",
+            name, stats.submitted(), stats.coalesced(), stats.sent(), stats.synced(), stats.retried(), stats.dropped(),
+            stats.journalSize());
+        System.out.printf("  Requests: %d, %.1f requests/s, %.1f changes/s%n", requests,
+            requests * 1e9 / Math.max(elapsedNanos, 1), stats.submitted() * 1e9 / Math.max(elapsedNanos, 1));
+        System.out.println("  Stub latency (ms), cumulative since start:");
+        System.out.printf("    %-30s %8s %8s %8s %8s %8s%n", "operation", "count", "p50", "p90", "p99", "max");
+        for (final var entry : stub.recorders().entrySet()) {
+            final var recorder = entry.getValue();
+            final var percentiles = recorder.percentiles(PERCENTILES);
+            System.out.printf("    %-30s %8d %8.2f %8.2f %8.2f %8.2f%n", entry.getKey(), recorder.count(),
+                percentiles[0] / 1e6, percentiles[1] / 1e6, percentiles[2] / 1e6, percentiles[3] / 1e6);
+        }
+    }
+
+    private static void deleteIfExists(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (final IOException exception) {
+            System.err.println("Failed to delete " + path + ": " + exception.getMessage());
+        }
+    }
+
+    private static Map<String, String> optionsOf(final String[] args) {
+        final var options = new HashMap<String, String>();
+        for (final var arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            final var equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            }
+            else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+
+    private static class Change {
+        private final Lp2Sync.Op op;
+        private final String contractId;
+        private final byte[] body;
+
+        private Change(final Lp2Sync.Op op, final String contractId, final byte[] body) {
+            this.op = op;
+            this.contractId = contractId;
+            this.body = body;
+        }
+    }
+}
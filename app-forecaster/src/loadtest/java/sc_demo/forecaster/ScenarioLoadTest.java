@@ -0,0 +1,254 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.binary.ByteArrayReader;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+
+/**
+ * Fills a {@link LiquidityProjection} with synthetic cash flows, evaluates a
+ * batch of synthetic scenarios against it via a {@link ScenarioEvaluator},
+ * and reports the time until the first and last results were received, as
+ * well as the distribution of scenario evaluation times.
+ * <p>
+ * Results are read the way clients read them, by repeatedly waiting for
+ * results following those already received. Scenarios are a mix of delays,
+ * price changes and added offers, of one or all counterparties. As delays
+ * only move cash flows, every scenario consisting only of delays is
+ * verified to leave the sum of all cash flows unchanged.
+ * <p>
+ * Options are given as {@code --name=value}; see {@link #main(String[])}.
+ */
+public class ScenarioLoadTest {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 100.0};
+    private static final String ME = "Supplier Sales Agent";
+    private static final String TEMPLATE_NAME = "component-order.txt";
+
+    /**
+     * Runs load test.
+     * <p>
+     * Supported options, with their default values, are:
+     * <ul>
+     *     <li>{@code --contracts=100000}</li>
+     *     <li>{@code --counterparties=200}</li>
+     *     <li>{@code --scenarios=100}</li>
+     *     <li>{@code --adjustments-per-scenario=4}</li>
+     *     <li>{@code --horizon=365}</li>
+     *     <li>{@code --parallelism=<available processors>}</li>
+     *     <li>{@code --log-level=WARNING}</li>
+     * </ul>
+     *
+     * @param args Options.
+     * @throws Exception If the load test could not be completed.
+     */
+    public static void main(final String[] args) throws Exception {
+        final var options = optionsOf(args);
+        final var contracts = Integer.parseInt(options.getOrDefault("contracts", "100000"));
+        final var counterparties = Integer.parseInt(options.getOrDefault("counterparties", "200"));
+        final var scenarioCount = Integer.parseInt(options.getOrDefault("scenarios", "100"));
+        final var adjustmentsPerScenario = Integer.parseInt(options.getOrDefault("adjustments-per-scenario", "4"));
+        final var horizon = Integer.parseInt(options.getOrDefault("horizon", "365"));
+        final var parallelism = Integer.parseInt(options.getOrDefault("parallelism",
+            Integer.toString(Runtime.getRuntime().availableProcessors())));
+        final var logLevel = Level.parse(options.getOrDefault("log-level", "WARNING"));
+
+        // Main sets the log level when initialized, which is why it must be
+        // initialized before the level is overridden.
+        Class.forName(Main.class.getName());
+        final var root = java.util.logging.Logger.getLogger("");
+        root.setLevel(logLevel);
+        for (final var handler : root.getHandlers()) {
+            handler.setLevel(logLevel);
+        }
+
+        final var now = Instant.now();
+        final var random = new Random(1);
+        final var projection = new LiquidityProjection(Duration.ofDays(1), horizon, contracts, now);
+        for (var i = 0; i < contracts; ++i) {
+            final var flow = new CashFlow(TEMPLATE_NAME, counterpartyOf(random.nextInt(counterparties)), "EUR",
+                now.plus(Duration.ofDays(random.nextInt(horizon + horizon / 4))).toEpochMilli(),
+                (random.nextInt(2_000_000) - 1_000_000) * 100L);
+            projection.add(i, List.of(flow), now);
+        }
+
+        final var template = new CashFlowTemplate(TEMPLATE_NAME, List.of("quantity", "unitPrice"),
+            "EUR", "timeOfDelivery", ME);
+        final var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "forecaster-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var evaluator = new ScenarioEvaluator(ME, Map.of(TEMPLATE_NAME, template), projection,
+            new ForkJoinPool(parallelism), scheduler, 4);
+
+        final var isDelayOnly = new boolean[scenarioCount];
+        final var body = scenariosOf(scenarioCount, adjustmentsPerScenario, counterparties, now, random, isDelayOnly);
+        final var batchDto = ScenarioBatchDto.readJson(new ByteArrayReader(body));
+
+        System.out.printf("Projection: %d contracts, %d counterparties, %d buckets%n",
+            contracts, counterparties, horizon);
+        System.out.printf("Scenarios: %d, %d adjustments each, %d bytes of JSON, parallelism %d%n",
+            scenarioCount, adjustmentsPerScenario, body.length, parallelism);
+
+        final var startedAt = System.nanoTime();
+        final var batch = evaluator.submit(batchDto.scenarios(), Instant.now());
+        final var results = new ArrayList<ScenarioResultDto>(scenarioCount);
+        var firstNanos = -1L;
+        var polls = 0;
+        while (results.size() < scenarioCount) {
+            final var completion = new CompletableFuture<ScenarioResultPageDto>();
+            batch.awaitFrom(results.size(), 1000, Duration.ofSeconds(30)).onResult(result -> {
+                if (result.isSuccess()) {
+                    completion.complete(result.value());
+                }
+                else {
+                    completion.completeExceptionally(result.fault());
+                }
+            });
+            final var page = completion.get();
+            polls += 1;
+            if (page.results().isEmpty()) {
+                System.out.println("Timed out waiting for results");
+                System.exit(1);
+            }
+            if (firstNanos < 0) {
+                firstNanos = System.nanoTime() - startedAt;
+            }
+            results.addAll(page.results());
+        }
+        final var elapsedNanos = System.nanoTime() - startedAt;
+
+        final var evaluationMicros = new long[results.size()];
+        var errors = 0;
+        var mismatches = 0;
+        for (var i = 0; i < results.size(); ++i) {
+            final var result = results.get(i);
+            evaluationMicros[i] = result.evaluationMicros();
+            if (result.error().isPresent()) {
+                errors += 1;
+                if (errors <= 5) {
+                    System.out.printf("  Scenario %d failed: %s%n", result.index(), result.error().get());
+                }
+            }
+            else if (isDelayOnly[result.index()] && result.change() != 0) {
+                mismatches += 1;
+                if (mismatches <= 5) {
+                    System.out.printf("  Scenario %d only delays, but changed sum by %d%n", result.index(), result.change());
+                }
+            }
+        }
+        Arrays.sort(evaluationMicros);
+
+        System.out.printf("%nReceived first result after %.2f ms and all %d after %.2f ms, in %d poll(s)%n",
+            firstNanos / 1e6, results.size(), elapsedNanos / 1e6, polls);
+        System.out.printf("  %.1f scenarios/s%n", results.size() * 1e9 / Math.max(elapsedNanos, 1));
+        System.out.printf("  Evaluation time (ms): p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n",
+            percentileOf(evaluationMicros, PERCENTILES[0]) / 1e3, percentileOf(evaluationMicros, PERCENTILES[1]) / 1e3,
+            percentileOf(evaluationMicros, PERCENTILES[2]) / 1e3, percentileOf(evaluationMicros, PERCENTILES[3]) / 1e3);
+
+        final var isComplete = errors == 0 && mismatches == 0;
+        System.out.printf("%nResults: %d errors, %d delay-only mismatches (%s)%n", errors, mismatches,
+            isComplete ? "as expected" : "NOT as expected");
+        System.exit(isComplete ? 0 : 1);
+    }
+
+    private static byte[] scenariosOf(
+        final int count,
+        final int adjustmentsPerScenario,
+        final int counterparties,
+        final Instant now,
+        final Random random,
+        final boolean[] isDelayOnly
+    ) {
+        final var today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+        final var builder = new StringBuilder("{\"scenarios\":[");
+        for (var i = 0; i < count; ++i) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"name\":\"Scenario ").append(i).append("\",\"currency\":\"EUR\",\"adjustments\":[");
+            isDelayOnly[i] = true;
+            for (var j = 0; j < adjustmentsPerScenario; ++j) {
+                if (j > 0) {
+                    builder.append(',');
+                }
+                builder.append('{');
+                if (random.nextInt(4) != 0) {
+                    builder.append("\"counterparty\":\"").append(counterpartyOf(random.nextInt(counterparties))).append("\",");
+                }
+                switch (random.nextInt(3)) {
+                case 0:
+                    builder.append("\"type\":\"DELAY\",\"buckets\":").append(1 + random.nextInt(30));
+                    break;
+                case 1:
+                    builder.append("\"type\":\"SCALE\",\"factor\":").append(0.5 + random.nextInt(100) / 100.0);
+                    isDelayOnly[i] = false;
+                    break;
+                default:
+                    builder.append("\"type\":\"ADD\",\"offerorName\":\"")
+                        .append(counterpartyOf(random.nextInt(counterparties)))
+                        .append("\",\"receiverName\":\"").append(ME).append("\",\"contracts\":[");
+                    final var offers = 1 + random.nextInt(10);
+                    for (var k = 0; k < offers; ++k) {
+                        if (k > 0) {
+                            builder.append(',');
+                        }
+                        builder.append("{\"templateName\":\"").append(TEMPLATE_NAME)
+                            .append("\",\"arguments\":{\"quantity\":\"").append(1 + random.nextInt(1000))
+                            .append("\",\"unitPrice\":\"").append(1 + random.nextInt(500))
+                            .append("\",\"timeOfDelivery\":\"").append(today.plusDays(random.nextInt(400)))
+                            .append("\"}}");
+                    }
+                    builder.append(']');
+                    isDelayOnly[i] = false;
+                    break;
+                }
+                builder.append('}');
+            }
+            builder.append("]}");
+        }
+        return builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String counterpartyOf(final int index) {
+        return "Counterparty " + index;
+    }
+
+    private static double percentileOf(final long[] sorted, final double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final var index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static Map<String, String> optionsOf(final String[] args) {
+        final var options = new HashMap<String, String>();
+        for (final var arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            final var equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            }
+            else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,252 @@
+package sc_demo.forecaster.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import sc_demo.common.LatencyRecorder;
+import se.arkalix.dto.binary.ByteArrayReader;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the publish and subscribe endpoints of the event
+ * handler core system.
+ * <p>
+ * Subscriptions and events are accepted via plain HTTP. Every published
+ * event is responded to as soon as it has been handed over for delivery,
+ * after which it is pushed, via plain HTTP, to every subscriber of its
+ * event type, with at most a fixed number of deliveries in flight at any
+ * one time. Publishing blocks while that limit is reached, which makes
+ * slow subscribers slow down publishers rather than growing an unbounded
+ * backlog.
+ * <p>
+ * The duration of handling every request is recorded per operation, as is
+ * the time from an event being received to it being acknowledged by each
+ * subscriber.
+ * <p>
+ * Unless the JVM is started with {@code -Dsun.net.httpserver.nodelay=true},
+ * as the {@code eventBenchmark} task does, every response body is held back by
+ * Nagle's algorithm until the client acknowledges the response head, which
+ * it may delay by up to 40 ms.
+ */
+public class EventHandlerStub {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final Semaphore deliveries;
+    private final Duration latency;
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+    private final Map<String, List<URI>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong deliveryFailures = new AtomicLong();
+
+    private EventHandlerStub(
+        final HttpServer server,
+        final ExecutorService executor,
+        final int maxDeliveriesInFlight,
+        final Duration latency
+    ) {
+        this.server = server;
+        this.executor = executor;
+        this.latency = Objects.requireNonNull(latency);
+        client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+        deliveries = new Semaphore(maxDeliveriesInFlight);
+    }
+
+    /**
+     * Starts stub on an ephemeral loopback port.
+     *
+     * @param threads               Number of threads handling requests.
+     * @param maxDeliveriesInFlight Maximum number of event deliveries in
+     *                              flight at any one time.
+     * @param latency               Time to delay every response to a
+     *                              publisher.
+     * @return Started stub.
+     * @throws IOException If the stub could not be bound to a port.
+     */
+    public static EventHandlerStub start(final int threads, final int maxDeliveriesInFlight, final Duration latency)
+        throws IOException
+    {
+        final var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        final var executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "event-handler-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var stub = new EventHandlerStub(server, executor, maxDeliveriesInFlight, latency);
+        server.createContext("/eventhandler", stub::handle);
+        server.setExecutor(executor);
+        server.start();
+        return stub;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return URI of the event handler base path of the stub.
+     */
+    public URI uri() {
+        final var address = server.getAddress();
+        return URI.create("http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/eventhandler");
+    }
+
+    /**
+     * @return Durations of handled requests and event deliveries, by
+     * operation.
+     */
+    public Map<String, LatencyRecorder> recorders() {
+        return new TreeMap<>(recorders);
+    }
+
+    /**
+     * @return Number of deliveries that failed or were not acknowledged
+     * with a 2xx status.
+     */
+    public long deliveryFailures() {
+        return deliveryFailures.get();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final var startedAt = System.nanoTime();
+        final var method = exchange.getRequestMethod();
+        final var path = exchange.getRequestURI().getPath();
+        final var operation = method + " " + path;
+        try {
+            if (!latency.isZero()) {
+                Thread.sleep(latency.toMillis());
+            }
+            final var body = exchange.getRequestBody().readAllBytes();
+            if (method.equals("POST") && path.equals("/eventhandler/subscribe")) {
+                subscribe(StubSubscriptionDto.readJson(new ByteArrayReader(body)));
+                respond(exchange, 201, "{}");
+            }
+            else if (method.equals("POST") && path.equals("/eventhandler/publish")) {
+                publish(startedAt, StubEventDto.readJson(new ByteArrayReader(body)));
+                respond(exchange, 200, "");
+            }
+            else {
+                respond(exchange, 404, "{\"errorMessage\":\"Not found\"}");
+            }
+        }
+        catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{\"errorMessage\":\"Stopping\"}");
+        }
+        catch (final Throwable throwable) {
+            respond(exchange, 400, "{\"errorMessage\":\"" + String.valueOf(throwable.getMessage()).replace('"', '\'') + "\"}");
+        }
+        finally {
+            exchange.close();
+            recorders.computeIfAbsent(operation, ignored -> new LatencyRecorder())
+                .record(System.nanoTime() - startedAt);
+        }
+    }
+
+    private void subscribe(final StubSubscription subscription) {
+        final var subscriber = subscription.subscriberSystem();
+        final var uri = URI.create("http://" + subscriber.address() + ":" + subscriber.port() + subscription.notifyUri());
+        subscribers.computeIfAbsent(subscription.eventType().toUpperCase(), ignored -> new CopyOnWriteArrayList<>())
+            .add(uri);
+    }
+
+    private void publish(final long receivedAt, final StubEvent event) throws InterruptedException {
+        final var eventType = event.eventType().toUpperCase();
+        final var uris = subscribers.getOrDefault(eventType, List.of());
+        if (uris.isEmpty()) {
+            return;
+        }
+
+        final var builder = new StringBuilder(event.payload().length() + 128);
+        builder.append("{\"eventType\":");
+        writeString(builder, eventType);
+        builder.append(",\"payload\":");
+        writeString(builder, event.payload());
+        builder.append(",\"metaData\":{");
+        var isFirst = true;
+        for (final var entry : event.metaData().orElse(Map.of()).entrySet()) {
+            if (!isFirst) {
+                builder.append(',');
+            }
+            isFirst = false;
+            writeString(builder, entry.getKey());
+            builder.append(':');
+            writeString(builder, entry.getValue());
+        }
+        builder.append("},\"timeStamp\":");
+        writeString(builder, event.timeStamp().orElse(""));
+        final var body = builder.append('}').toString().getBytes(StandardCharsets.UTF_8);
+
+        final var recorder = recorders.computeIfAbsent("DELIVER " + eventType, ignored -> new LatencyRecorder());
+        final var requests = new ArrayList<HttpRequest>(uris.size());
+        for (final var uri : uris) {
+            requests.add(HttpRequest.newBuilder(uri)
+                .header("content-type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build());
+        }
+        for (final var request : requests) {
+            deliveries.acquire();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, fault) -> {
+                    deliveries.release();
+                    if (fault != null || response.statusCode() / 100 != 2) {
+                        deliveryFailures.incrementAndGet();
+                    }
+                    recorder.record(System.nanoTime() - receivedAt);
+                });
+        }
+    }
+
+    private static void writeString(final StringBuilder builder, final String string) {
+        builder.append('"');
+        for (var i = 0; i < string.length(); ++i) {
+            final var c = string.charAt(i);
+            switch (c) {
+            case '"': builder.append("\\\""); break;
+            case '\\': builder.append("\\\\"); break;
+            case '\n': builder.append("\\n"); break;
+            case '\r': builder.append("\\r"); break;
+            case '\t': builder.append("\\t"); break;
+            default:
+                if (c < 0x20) {
+                    builder.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    builder.append(c);
+                }
+            }
+        }
+        builder.append('"');
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        final var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("content-type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+}
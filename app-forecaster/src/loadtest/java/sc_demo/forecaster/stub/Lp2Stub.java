@@ -0,0 +1,244 @@
+package sc_demo.forecaster.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import sc_demo.common.LatencyRecorder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for the LP2 contract API.
+ * <p>
+ * Contracts are served via plain HTTP and kept in memory, keyed by their
+ * {@code contractId}. Creating an existing contract is responded to with
+ * 409 Conflict, while updating or deleting a missing contract is responded
+ * to with 404 Not Found.
+ * <p>
+ * Every request can be delayed and failed with a given probability, making
+ * it possible to observe how the forecaster behaves when LP2 is slow or
+ * unavailable. The duration of handling every request, including any delay,
+ * is recorded per operation.
+ * <p>
+ * Unless the JVM is started with {@code -Dsun.net.httpserver.nodelay=true},
+ * as the {@code loadTest} task does, every response body is held back by
+ * Nagle's algorithm until the client acknowledges the response head, which
+ * it may delay by up to 40 ms.
+ */
+public class Lp2Stub {
+    private static final String BASE_PATH = "/api/contract";
+    private static final Pattern CONTRACT_ID = Pattern.compile("\"contractId\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration latency;
+    private final double failureRate;
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+    private final Map<String, String> contracts = new HashMap<>();
+
+    private Lp2Stub(
+        final HttpServer server,
+        final ExecutorService executor,
+        final Duration latency,
+        final double failureRate
+    ) {
+        this.server = server;
+        this.executor = executor;
+        this.latency = Objects.requireNonNull(latency);
+        if (failureRate < 0.0 || failureRate >= 1.0) {
+            throw new IllegalArgumentException("Expected 0 <= failureRate < 1");
+        }
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Starts stub on an ephemeral loopback port.
+     *
+     * @param threads     Number of threads handling requests.
+     * @param latency     Time to delay every response.
+     * @param failureRate Probability of any request being responded to with
+     *                    503 Service Unavailable, in the range {@code [0, 1)}.
+     * @return Started stub.
+     * @throws IOException If the stub could not be bound to a port.
+     */
+    public static Lp2Stub start(final int threads, final Duration latency, final double failureRate)
+        throws IOException
+    {
+        final var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        final var executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "lp2-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var stub = new Lp2Stub(server, executor, latency, failureRate);
+        server.createContext(BASE_PATH, stub::handle);
+        server.setExecutor(executor);
+        server.start();
+        return stub;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return URI of contract collection of the stub.
+     */
+    public URI contractUri() {
+        final var address = server.getAddress();
+        return URI.create("http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + BASE_PATH);
+    }
+
+    /**
+     * @return Durations of handled requests, by operation.
+     */
+    public Map<String, LatencyRecorder> recorders() {
+        return new TreeMap<>(recorders);
+    }
+
+    /**
+     * @return Copy of all contracts held by the stub, as JSON, by
+     * identifier.
+     */
+    public synchronized Map<String, String> contracts() {
+        return new HashMap<>(contracts);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final var startedAt = System.nanoTime();
+        final var method = exchange.getRequestMethod();
+        final var path = exchange.getRequestURI().getRawPath();
+        final var isItem = path.length() > BASE_PATH.length() + 1;
+        final var operation = method + " " + BASE_PATH + (isItem ? "/{id}" : "");
+        try {
+            if (!latency.isZero()) {
+                Thread.sleep(latency.toMillis());
+            }
+            if (failureRate > 0.0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                respond(exchange, 503, "{\"error\":\"Injected failure\"}");
+                return;
+            }
+            final var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (isItem) {
+                final var id = URLDecoder.decode(path.substring(BASE_PATH.length() + 1), StandardCharsets.UTF_8);
+                switch (method) {
+                case "GET": respond(exchange, get(id)); return;
+                case "DELETE": respond(exchange, delete(id)); return;
+                }
+            }
+            else {
+                switch (method) {
+                case "GET": respond(exchange, list()); return;
+                case "POST": respond(exchange, create(body)); return;
+                case "PUT": respond(exchange, update(body)); return;
+                }
+            }
+            respond(exchange, 405, "{\"error\":\"Method not allowed\"}");
+        }
+        catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{\"error\":\"Stopping\"}");
+        }
+        catch (final Throwable throwable) {
+            respond(exchange, 400, "{\"error\":\"" + String.valueOf(throwable.getMessage()).replace('"', '\'') + "\"}");
+        }
+        finally {
+            exchange.close();
+            recorders.computeIfAbsent(operation, ignored -> new LatencyRecorder())
+                .record(System.nanoTime() - startedAt);
+        }
+    }
+
+    private synchronized Response create(final String body) {
+        final var id = contractIdOf(body);
+        if (contracts.containsKey(id)) {
+            return new Response(409, "{\"error\":\"Contract already exists\"}");
+        }
+        contracts.put(id, body);
+        return new Response(201, body);
+    }
+
+    private synchronized Response update(final String body) {
+        final var id = contractIdOf(body);
+        if (!contracts.containsKey(id)) {
+            return new Response(404, "{\"error\":\"No such contract\"}");
+        }
+        contracts.put(id, body);
+        return new Response(200, body);
+    }
+
+    private synchronized Response delete(final String id) {
+        if (contracts.remove(id) == null) {
+            return new Response(404, "{\"error\":\"No such contract\"}");
+        }
+        return new Response(200, "");
+    }
+
+    private synchronized Response get(final String id) {
+        final var body = contracts.get(id);
+        if (body == null) {
+            return new Response(404, "{\"error\":\"No such contract\"}");
+        }
+        return new Response(200, body);
+    }
+
+    private synchronized Response list() {
+        final var builder = new StringBuilder(256 * contracts.size() + 2);
+        builder.append('[');
+        var isFirst = true;
+        for (final var body : contracts.values()) {
+            if (!isFirst) {
+                builder.append(',');
+            }
+            isFirst = false;
+            builder.append(body);
+        }
+        return new Response(200, builder.append(']').toString());
+    }
+
+    private static String contractIdOf(final String body) {
+        final var matcher = CONTRACT_ID.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("No contractId in request body");
+        }
+        return matcher.group(1);
+    }
+
+    private static void respond(final HttpExchange exchange, final Response response) throws IOException {
+        respond(exchange, response.status, response.body);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        final var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("content-type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final String body;
+
+        private Response(final int status, final String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package sc_demo.forecaster.stub;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Event, as published to or delivered by the event handler.
+ */
+@DtoReadableAs(JSON)
+public interface StubEvent {
+    String eventType();
+    String payload();
+    Optional<Map<String, String>> metaData();
+    Optional<String> timeStamp();
+}
@@ -0,0 +1,12 @@
+package sc_demo.forecaster.stub;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoReadableAs(JSON)
+public interface StubSubscriber {
+    String systemName();
+    String address();
+    int port();
+}
@@ -0,0 +1,12 @@
+package sc_demo.forecaster.stub;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoReadableAs(JSON)
+public interface StubSubscription {
+    String eventType();
+    String notifyUri();
+    StubSubscriber subscriberSystem();
+}
@@ -1,13 +0,0 @@
-package sc_demo.carrier;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-public class Main {
-    private static final Logger logger = LoggerFactory.getLogger(Main.class);
-
-    public static void main(final String[] args) {
-
-    }
-
-}
@@ -0,0 +1,58 @@
+package sc_demo.forecaster;
+
+import java.util.Objects;
+
+/**
+ * Payment expected to be made to or by the forecasting party.
+ */
+public class CashFlow {
+    private final String templateName;
+    private final String counterparty;
+    private final String currency;
+    private final long dueAtMillis;
+    private final long amount;
+
+    /**
+     * @param templateName Name of template of contract giving rise to the
+     *                     cash flow.
+     * @param counterparty Name of party paying or being paid.
+     * @param currency     Three-letter currency code.
+     * @param dueAtMillis  Time of payment, in milliseconds since the epoch.
+     * @param amount       Amount in minor units, with {@link
+     *                     LiquidityProjection#SCALE} decimals, negative if
+     *                     paid by the forecasting party.
+     */
+    public CashFlow(
+        final String templateName,
+        final String counterparty,
+        final String currency,
+        final long dueAtMillis,
+        final long amount
+    ) {
+        this.templateName = Objects.requireNonNull(templateName, "Expected templateName");
+        this.counterparty = Objects.requireNonNull(counterparty, "Expected counterparty");
+        this.currency = Objects.requireNonNull(currency, "Expected currency");
+        this.dueAtMillis = dueAtMillis;
+        this.amount = amount;
+    }
+
+    public String templateName() {
+        return templateName;
+    }
+
+    public String counterparty() {
+        return counterparty;
+    }
+
+    public String currency() {
+        return currency;
+    }
+
+    public long dueAtMillis() {
+        return dueAtMillis;
+    }
+
+    public long amount() {
+        return amount;
+    }
+}
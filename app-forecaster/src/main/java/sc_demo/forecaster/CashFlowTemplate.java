@@ -0,0 +1,170 @@
+package sc_demo.forecaster;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Describes how to derive a {@link CashFlow} from the arguments of an
+ * accepted contract of a certain template.
+ */
+public class CashFlowTemplate {
+    private final String name;
+    private final List<String> amountArguments;
+    private final String currency;
+    private final String dueArgument;
+    private final String payerName;
+
+    /**
+     * Creates new cash flow template.
+     *
+     * @param name            Name of template, as referred to by contracts.
+     * @param amountArguments Names of the arguments whose product is the
+     *                        amount to pay.
+     * @param currency        Currency of payment.
+     * @param dueArgument     Name of the argument holding the time of
+     *                        payment.
+     * @param payerName       Name of the party that pays, which must be
+     *                        either the offeror or the receiver of every
+     *                        contract of this template. The party is named
+     *                        rather than given a role, as the party making
+     *                        the final offer of a negotiation depends on
+     *                        how many counter-offers preceded it.
+     */
+    public CashFlowTemplate(
+        final String name,
+        final List<String> amountArguments,
+        final String currency,
+        final String dueArgument,
+        final String payerName
+    ) {
+        this.name = Objects.requireNonNull(name, "Expected name");
+        this.amountArguments = List.copyOf(amountArguments);
+        this.currency = Objects.requireNonNull(currency, "Expected currency");
+        this.dueArgument = Objects.requireNonNull(dueArgument, "Expected dueArgument");
+        this.payerName = Objects.requireNonNull(payerName, "Expected payerName");
+    }
+
+    /**
+     * @return Name of template, as referred to by contracts.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Derives cash flow of the accepted contract with given arguments, as
+     * seen by the party named {@code me}.
+     *
+     * @param arguments    Contract arguments.
+     * @param offerorName  Name of party that made the accepted offer.
+     * @param receiverName Name of party that accepted the offer.
+     * @param me           Name of forecasting party.
+     * @return Cash flow, or {@code null} if {@code me} is not a party to the
+     * contract.
+     * @throws IllegalArgumentException If the payer of this template is not
+     *                                  a party to the contract, if the
+     *                                  contract lacks any of the arguments
+     *                                  required to derive its cash flow, or if
+     *                                  they cannot be parsed.
+     */
+    public CashFlow cashFlowOf(
+        final Map<String, String> arguments,
+        final String offerorName,
+        final String receiverName,
+        final String me
+    ) {
+        final String payeeName;
+        if (payerName.equals(offerorName)) {
+            payeeName = receiverName;
+        }
+        else if (payerName.equals(receiverName)) {
+            payeeName = offerorName;
+        }
+        else {
+            throw new IllegalArgumentException("Payer \"" + payerName + "\" of template \"" + name +
+                "\" neither offeror \"" + offerorName + "\" nor receiver \"" + receiverName + "\"");
+        }
+
+        final boolean isPaying;
+        if (me.equals(payerName)) {
+            isPaying = true;
+        }
+        else if (me.equals(payeeName)) {
+            isPaying = false;
+        }
+        else {
+            return null;
+        }
+
+        var amount = BigDecimal.ONE;
+        for (final var argument : amountArguments) {
+            amount = amount.multiply(decimalOf(arguments, argument));
+        }
+        final var minorUnits = amount
+            .setScale(LiquidityProjection.SCALE, RoundingMode.HALF_EVEN)
+            .unscaledValue()
+            .longValueExact();
+
+        return new CashFlow(
+            name,
+            isPaying ? payeeName : payerName,
+            currency,
+            millisOf(arguments, dueArgument),
+            isPaying ? -minorUnits : minorUnits);
+    }
+
+    private static BigDecimal decimalOf(final Map<String, String> arguments, final String name) {
+        final var value = argumentOf(arguments, name);
+        try {
+            return new BigDecimal(value.trim());
+        }
+        catch (final NumberFormatException exception) {
+            throw new IllegalArgumentException("Argument '" + name + "' not a valid number: " + value, exception);
+        }
+    }
+
+    private static long millisOf(final Map<String, String> arguments, final String name) {
+        final var value = argumentOf(arguments, name).trim();
+        try {
+            return Instant.parse(value).toEpochMilli();
+        }
+        catch (final DateTimeParseException ignored) {
+            // Not an instant, try less specific formats below.
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        }
+        catch (final DateTimeParseException ignored) {
+            // Not an offset date-time, try less specific formats below.
+        }
+        try {
+            return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+        catch (final DateTimeParseException ignored) {
+            // Not a local date-time, try less specific format below.
+        }
+        try {
+            return LocalDate.parse(value).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+        catch (final DateTimeParseException exception) {
+            throw new IllegalArgumentException("Argument '" + name + "' not a valid ISO-8601 date or time: " + value, exception);
+        }
+    }
+
+    private static String argumentOf(final Map<String, String> arguments, final String name) {
+        final var value = arguments.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Argument '" + name + "' not specified");
+        }
+        return value;
+    }
+}
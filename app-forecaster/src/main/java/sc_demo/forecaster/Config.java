@@ -0,0 +1,305 @@
+package sc_demo.forecaster;
+
+import java.io.FileInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+@SuppressWarnings("SameParameterValue")
+public class Config {
+    private final Properties properties;
+    private final String path;
+
+    private Config(final Properties properties, final String path) {
+        this.properties = properties;
+        this.path = path;
+    }
+
+    public static Config readAt(final String path) {
+        final var properties = new Properties();
+        try {
+            properties.load(new FileInputStream(path));
+        }
+        catch (final Exception exception) {
+            throw new RuntimeException(exception);
+        }
+        return new Config(properties, path);
+    }
+
+    public Path keyStorePath() {
+        return Path.of(getStringOrThrow("app.keystore.path"));
+    }
+
+    public char[] keyStorePassword() {
+        return getStringOrThrow("app.keystore.password").toCharArray();
+    }
+
+    public String keyAliasOrNull() {
+        return getString("app.key.alias", null);
+    }
+
+    public char[] keyPassword() {
+        return getStringOrThrow("app.key.password").toCharArray();
+    }
+
+    public Path trustStorePath() {
+        return Path.of(getStringOrThrow("app.truststore.path"));
+    }
+
+    public char[] trustStorePassword() {
+        return getStringOrThrow("app.truststore.password").toCharArray();
+    }
+
+    public InetSocketAddress localSocketAddress() {
+        final var hostname = getString("app.hostname", null);
+        final var port = getInt("app.port", 0);
+        return hostname != null
+            ? new InetSocketAddress(hostname, port)
+            : new InetSocketAddress(port);
+    }
+
+    public InetSocketAddress serviceRegistrySocketAddress() {
+        final var hostname = getStringOrThrow("sr.hostname");
+        final var port = getIntOrThrow("sr.port");
+        return new InetSocketAddress(hostname, port);
+    }
+
+    /**
+     * @return Name of party whose cash flows are forecast.
+     */
+    public String meName() {
+        return getStringOrThrow("app.me.name");
+    }
+
+    /**
+     * Reads the templates of contracts that give rise to cash flows, each
+     * given as {@code name:amount:currency:due:payer}, where {@code amount}
+     * is a {@code *}-separated list of the names of the arguments whose
+     * product is the amount to pay, {@code due} is the name of the argument
+     * holding the time of payment and {@code payer} is the name of the
+     * party that pays, such as {@code Plant Purchasing Agent}.
+     *
+     * @return Cash flow templates.
+     */
+    public List<CashFlowTemplate> forecastTemplates() {
+        final var list = new ArrayList<CashFlowTemplate>();
+
+        final var raw = getStringOrThrow("app.forecast.templates");
+        for (final var entry : raw.split(",")) {
+            final var parts = entry.split(":");
+            if (parts.length != 5) {
+                throw new IllegalStateException("Property 'app.forecast.templates' entry '" + entry.trim() +
+                    "' not of the form 'name:amount:currency:due:payer' in '" + path + "'");
+            }
+            final var payerName = parts[4].trim();
+            if (payerName.isEmpty()) {
+                throw new IllegalStateException("Property 'app.forecast.templates' entry '" + entry.trim() +
+                    "' does not name its payer in '" + path + "'");
+            }
+            final var amountArguments = new ArrayList<String>();
+            for (final var argument : parts[1].split("\\*")) {
+                amountArguments.add(argument.trim());
+            }
+            list.add(new CashFlowTemplate(
+                parts[0].trim(),
+                amountArguments,
+                parts[2].trim().toUpperCase(),
+                parts[3].trim(),
+                payerName));
+        }
+
+        return list;
+    }
+
+    public Duration forecastBucketSize() {
+        final var bucketSize = getDuration("app.forecast.bucket-size", Duration.ofDays(1));
+        if (bucketSize.isNegative() || bucketSize.isZero()) {
+            throw new IllegalStateException("Property 'app.forecast.bucket-size' not positive in '" + path + "'");
+        }
+        return bucketSize;
+    }
+
+    public int forecastHorizon() {
+        return getInt("app.forecast.horizon", 365);
+    }
+
+    public int forecastExpectedContracts() {
+        return getInt("app.forecast.expected-contracts", 1 << 16);
+    }
+
+    public Path historyPath() {
+        return Path.of(getString("app.history.path", "contract-history"));
+    }
+
+    public int historySegmentCapacity() {
+        final var capacity = getInt("app.history.segment-capacity", 1 << 16);
+        if (capacity < 1) {
+            throw new IllegalStateException("Property 'app.history.segment-capacity' not positive in '" + path + "'");
+        }
+        return capacity;
+    }
+
+    public Duration historyFlushInterval() {
+        return getDuration("app.history.flush-interval", Duration.ofSeconds(5));
+    }
+
+    public int historyMaxLimit() {
+        return getInt("app.history.max-limit", 10000);
+    }
+
+    public int scenariosParallelism() {
+        return getInt("app.scenarios.parallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    public int scenariosMaxBatches() {
+        return getInt("app.scenarios.max-batches", 16);
+    }
+
+    public int scenariosMaxPerBatch() {
+        return getInt("app.scenarios.max-per-batch", 1000);
+    }
+
+    public int scenariosDefaultLimit() {
+        return getInt("app.scenarios.default-limit", 100);
+    }
+
+    public Duration scenariosMaxWait() {
+        return getDuration("app.scenarios.max-wait", Duration.ofSeconds(25));
+    }
+
+    /**
+     * @return URI of LP2 contract collection, or {@code null} if no LP2
+     * host is specified, in which case contracts are not replicated to LP2.
+     */
+    public URI lp2ContractUriOrNull() {
+        final var hostname = getString("lp2.hostname", null);
+        if (hostname == null) {
+            return null;
+        }
+        try {
+            return new URI(
+                getString("lp2.scheme", "https"),
+                null,
+                hostname,
+                getInt("lp2.port", 443),
+                getString("lp2.path", "/api/contract"),
+                null,
+                null);
+        }
+        catch (final URISyntaxException exception) {
+            throw new IllegalStateException("Properties 'lp2.*' do not form a valid URI in '" + path + "'", exception);
+        }
+    }
+
+    public Duration lp2ConnectTimeout() {
+        return getDuration("lp2.connect-timeout", Duration.ofSeconds(10));
+    }
+
+    public Duration lp2RequestTimeout() {
+        return getDuration("lp2.request-timeout", Duration.ofSeconds(30));
+    }
+
+    public int lp2SyncBatchSize() {
+        return getInt("lp2.sync.batch-size", 64);
+    }
+
+    public Duration lp2SyncBatchWindow() {
+        return getDuration("lp2.sync.batch-window", Duration.ofMillis(200));
+    }
+
+    public int lp2SyncMaxInFlight() {
+        return getInt("lp2.sync.max-in-flight", 8);
+    }
+
+    public Duration lp2SyncMinBackoff() {
+        return getDuration("lp2.sync.min-backoff", Duration.ofMillis(500));
+    }
+
+    public Duration lp2SyncMaxBackoff() {
+        return getDuration("lp2.sync.max-backoff", Duration.ofMinutes(1));
+    }
+
+    public int lp2SyncMaxAttempts() {
+        return getInt("lp2.sync.max-attempts", 10);
+    }
+
+    public Path lp2SyncJournalPath() {
+        return Path.of(getString("lp2.sync.journal.path", "lp2-sync.journal"));
+    }
+
+    public Lp2SyncJournal.FsyncPolicy lp2SyncJournalFsyncPolicy() {
+        final var policy = getString("lp2.sync.journal.fsync", "INTERVAL");
+        try {
+            return Lp2SyncJournal.FsyncPolicy.valueOf(policy.trim().toUpperCase());
+        }
+        catch (final IllegalArgumentException exception) {
+            throw new IllegalStateException("Property 'lp2.sync.journal.fsync' not one of ALWAYS, INTERVAL or NEVER in '" + path + "'", exception);
+        }
+    }
+
+    public Duration lp2SyncJournalFsyncInterval() {
+        return getDuration("lp2.sync.journal.fsync-interval", Duration.ofSeconds(1));
+    }
+
+    public long lp2SyncJournalCompactionThreshold() {
+        return getInt("lp2.sync.journal.compaction-threshold", 16 * 1024 * 1024);
+    }
+
+    private String getString(final String name, final String defaultValue) {
+        final var property = properties.getProperty(name);
+        if (property == null) {
+            return defaultValue;
+        }
+        return property;
+    }
+
+    private String getStringOrThrow(final String name) {
+        final var property = properties.getProperty(name);
+        if (property == null) {
+            throw new IllegalStateException("Property '" + name + "' not specified in '" + path + "'");
+        }
+        return property;
+    }
+
+    private int getInt(final String name, final int defaultValue) {
+        final var property = properties.getProperty(name);
+        if (property == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(property);
+        }
+        catch (final NumberFormatException exception) {
+            throw new IllegalStateException("Property '" + name + "' not a valid integer in '" + path + "'", exception);
+        }
+    }
+
+    private Duration getDuration(final String name, final Duration defaultValue) {
+        final var property = properties.getProperty(name);
+        if (property == null) {
+            return defaultValue;
+        }
+        try {
+            return Duration.parse(property.trim());
+        }
+        catch (final DateTimeParseException exception) {
+            throw new IllegalStateException("Property '" + name + "' not a valid ISO-8601 duration in '" + path + "'", exception);
+        }
+    }
+
+    private int getIntOrThrow(final String name) {
+        final var property = getStringOrThrow(name);
+        try {
+            return Integer.parseInt(property);
+        }
+        catch (final NumberFormatException exception) {
+            throw new IllegalStateException("Property '" + name + "' not a valid integer in '" + path + "'", exception);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoReadableAs;
+import se.arkalix.dto.DtoWritableAs;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Payload of events published by negotiators when negotiations are
+ * terminated.
+ * <p>
+ * Offeror, receiver and contracts are only specified if known, which they
+ * are not for expired negotiations.
+ */
+@DtoReadableAs(JSON)
+@DtoWritableAs(JSON)
+public interface ContractEvent {
+    Type type();
+    long negotiationId();
+    Optional<String> offerorName();
+    Optional<String> receiverName();
+    List<ContractEventContract> contracts();
+    Instant publishedAt();
+
+    enum Type {
+        ACCEPTED,
+        REJECTED,
+        EXPIRED;
+
+        /**
+         * @return Event handler topic of events of this type.
+         */
+        public String topic() {
+            return "CONTRACT_" + name();
+        }
+    }
+}
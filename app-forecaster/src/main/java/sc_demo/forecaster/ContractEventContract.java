@@ -0,0 +1,15 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoReadableAs;
+import se.arkalix.dto.DtoWritableAs;
+
+import java.util.Map;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoReadableAs(JSON)
+@DtoWritableAs(JSON)
+public interface ContractEventContract {
+    String templateName();
+    Map<String, String> arguments();
+}
@@ -0,0 +1,221 @@
+package sc_demo.forecaster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.JsonBuffer;
+import se.arkalix.dto.binary.ByteArrayReader;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Applies contract events, as published by negotiators, to a {@link
+ * LiquidityProjection} and, if given, a {@link ContractHistoryStore} and a
+ * {@link Lp2Sync}.
+ * <p>
+ * The cash flows of accepted negotiations are appended to the history, added
+ * to the projection and submitted to LP2, while rejected and expired
+ * negotiations are only counted, as they never give rise to any cash flows.
+ * As events may be delivered more than once, accepted negotiations already
+ * added to the projection are ignored. The projection is restored from the
+ * history after restarts, which is why cash flows are only added to the
+ * projection after having been appended to the history. If appending fails,
+ * the negotiation is not added at all, which allows it to be added if its
+ * event is delivered again. All methods are thread-safe.
+ */
+public class ContractEventIngester {
+    private static final Logger logger = LoggerFactory.getLogger(ContractEventIngester.class);
+
+    private final String me;
+    private final Map<String, CashFlowTemplate> templates;
+    private final LiquidityProjection projection;
+    private final ContractHistoryStore history;
+    private final Lp2Sync lp2Sync;
+    private final Object appendLock = new Object();
+
+    private long received = 0;
+    private long accepted = 0;
+    private long rejected = 0;
+    private long expired = 0;
+    private long duplicates = 0;
+    private long malformed = 0;
+    private long lagMillisTotal = 0;
+    private long lagMillisMax = 0;
+
+    /**
+     * @param me         Name of forecasting party.
+     * @param templates  Cash flow templates, by template name.
+     * @param projection Projection to add cash flows to.
+     * @param history    History to append cash flows to, or {@code null}.
+     * @param lp2Sync    LP2 sync to submit contracts to, or {@code null}.
+     */
+    public ContractEventIngester(
+        final String me,
+        final Map<String, CashFlowTemplate> templates,
+        final LiquidityProjection projection,
+        final ContractHistoryStore history,
+        final Lp2Sync lp2Sync
+    ) {
+        this.me = Objects.requireNonNull(me, "Expected me");
+        this.templates = Map.copyOf(templates);
+        this.projection = Objects.requireNonNull(projection, "Expected projection");
+        this.history = history;
+        this.lp2Sync = lp2Sync;
+    }
+
+    /**
+     * Decodes and applies JSON-encoded contract event.
+     *
+     * @param data JSON-encoded {@link ContractEvent}.
+     */
+    public void ingest(final String data) {
+        final ContractEventDto event;
+        try {
+            event = ContractEventDto.readJson(new ByteArrayReader(data.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (final Exception exception) {
+            synchronized (this) {
+                received += 1;
+                malformed += 1;
+            }
+            logger.warn("Ignoring malformed contract event: {}", data, exception);
+            return;
+        }
+        ingest(event);
+    }
+
+    /**
+     * Applies contract event.
+     *
+     * @param event Contract event.
+     */
+    public void ingest(final ContractEventDto event) {
+        final var now = Instant.now();
+        final var lagMillis = Math.max(now.toEpochMilli() - event.publishedAt().toEpochMilli(), 0);
+        synchronized (this) {
+            received += 1;
+            lagMillisTotal += lagMillis;
+            lagMillisMax = Math.max(lagMillisMax, lagMillis);
+            switch (event.type()) {
+            case ACCEPTED: accepted += 1; break;
+            case REJECTED: rejected += 1; return;
+            case EXPIRED: expired += 1; return;
+            }
+        }
+
+        final var negotiationId = event.negotiationId();
+        final var offerorName = event.offerorName().orElse(null);
+        final var receiverName = event.receiverName().orElse(null);
+        if (offerorName == null || receiverName == null) {
+            synchronized (this) {
+                malformed += 1;
+            }
+            logger.warn("Ignoring accepted negotiation {}; offeror or receiver not specified", negotiationId);
+            return;
+        }
+
+        final var flows = cashFlowsOf(negotiationId, event.contracts(), offerorName, receiverName);
+
+        // Appending and adding are serialized, as a negotiation delivered
+        // twice concurrently must neither be appended twice nor be added
+        // before it has been appended.
+        synchronized (appendLock) {
+            if (projection.contains(negotiationId)) {
+                synchronized (this) {
+                    duplicates += 1;
+                }
+                return;
+            }
+            if (history != null) {
+                try {
+                    history.append(negotiationId, event.publishedAt().toEpochMilli(), flows);
+                }
+                catch (final RuntimeException exception) {
+                    logger.error("Failed to append cash flows of negotiation {} to contract history; " +
+                        "not adding them to projection", negotiationId, exception);
+                    return;
+                }
+            }
+            projection.add(negotiationId, flows, now);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Added {} cash flow(s) of negotiation {}", flows.size(), negotiationId);
+        }
+        if (lp2Sync != null) {
+            for (var i = 0; i < flows.size(); ++i) {
+                final var contractId = negotiationId + "-" + i;
+                lp2Sync.submit(Lp2Sync.Op.CREATE, contractId, JsonBuffer.encode(lp2ContractOf(contractId, me, flows.get(i), now)));
+            }
+        }
+    }
+
+    public synchronized ContractEventStatsDto stats() {
+        return new ContractEventStatsBuilder()
+            .received(received)
+            .accepted(accepted)
+            .rejected(rejected)
+            .expired(expired)
+            .duplicates(duplicates)
+            .malformed(malformed)
+            .lagMillisTotal(lagMillisTotal)
+            .lagMillisMax(lagMillisMax)
+            .build();
+    }
+
+    /**
+     * Creates LP2 contract from the cash flow of a contract.
+     *
+     * @param contractId Unique contract identifier.
+     * @param me         Name of forecasting party.
+     * @param flow       Cash flow of contract.
+     * @param acceptedAt Time at which contract was accepted.
+     * @return New LP2 contract.
+     */
+    static Lp2ContractDto lp2ContractOf(
+        final String contractId,
+        final String me,
+        final CashFlow flow,
+        final Instant acceptedAt
+    ) {
+        return new Lp2ContractBuilder()
+            .contractId(contractId)
+            .userId(me)
+            .counterpartyId(flow.counterparty())
+            .creationDate(acceptedAt)
+            .expirationDate(Instant.ofEpochMilli(flow.dueAtMillis()))
+            .amount(BigDecimal.valueOf(flow.amount(), LiquidityProjection.SCALE))
+            .currency(flow.currency())
+            .build();
+    }
+
+    private List<CashFlow> cashFlowsOf(
+        final long negotiationId,
+        final List<? extends ContractEventContract> contracts,
+        final String offerorName,
+        final String receiverName
+    ) {
+        final var flows = new ArrayList<CashFlow>(contracts.size());
+        for (final var contract : contracts) {
+            final var template = templates.get(contract.templateName());
+            if (template == null) {
+                continue;
+            }
+            try {
+                final var flow = template.cashFlowOf(contract.arguments(), offerorName, receiverName, me);
+                if (flow != null) {
+                    flows.add(flow);
+                }
+            }
+            catch (final RuntimeException exception) {
+                logger.warn("Ignoring {} contract of negotiation {}; " +
+                    "failed to determine its cash flow", contract.templateName(), negotiationId, exception);
+            }
+        }
+        return flows;
+    }
+}
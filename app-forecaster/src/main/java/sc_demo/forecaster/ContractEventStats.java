@@ -0,0 +1,17 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ContractEventStats {
+    long received();
+    long accepted();
+    long rejected();
+    long expired();
+    long duplicates();
+    long malformed();
+    long lagMillisTotal();
+    long lagMillisMax();
+}
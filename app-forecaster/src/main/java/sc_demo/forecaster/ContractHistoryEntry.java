@@ -0,0 +1,26 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.time.Instant;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Cash flow of an accepted contract, as held by a {@link
+ * ContractHistoryStore}.
+ * <p>
+ * The amount is given in minor units, with {@link
+ * LiquidityProjection#SCALE} decimals, and is negative if paid by the
+ * forecasting party.
+ */
+@DtoWritableAs(JSON)
+public interface ContractHistoryEntry {
+    long negotiationId();
+    Instant acceptedAt();
+    Instant expiresAt();
+    String templateName();
+    String counterparty();
+    String currency();
+    long amount();
+}
@@ -0,0 +1,13 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ContractHistoryStats {
+    int segments();
+    long rows();
+    int strings();
+    long mappedBytes();
+}
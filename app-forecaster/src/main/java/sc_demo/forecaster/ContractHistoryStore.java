@@ -0,0 +1,679 @@
+package sc_demo.forecaster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only columnar store of the cash flows of accepted contracts, held
+ * in memory-mapped segment files.
+ * <p>
+ * Every segment holds a fixed number of rows, one per cash flow, and stores
+ * each column as a contiguous array of primitive values. Negotiation
+ * identifiers, acceptance times, expiration times and amounts are stored as
+ * {@code long}s, while template names, counterparty names and currencies
+ * are stored as {@code int} identifiers of a {@link StringDictionary}. The
+ * expiration time of a contract is the time its cash flow is due, which is
+ * also how LP2 defines it. Every segment header holds the number of rows
+ * committed to it, as well as the lowest and highest expiration and
+ * acceptance times of those rows, which lets range scans skip segments
+ * without reading any of their columns.
+ * <p>
+ * Opening the store only maps its segments into memory, which means that
+ * its rows are never read into the heap unless scanned. Full segments are
+ * mapped read-only, while the last segment is appended to via its mapping.
+ * A row is committed by incrementing the row count of its segment after its
+ * columns have been written, which means that rows being written when the
+ * application is terminated are ignored when the store is reopened. Added
+ * strings are written to disk before any segment, and rows referring to
+ * strings that still did not make it to disk are discarded when the store
+ * is opened.
+ * <p>
+ * Scans copy columns in chunks from their mappings into reusable arrays,
+ * which amounts to plain memory copies, as segments use the byte order of
+ * the platforms the application runs on. Rows in each chunk are then
+ * filtered by a branch-free loop that produces a selection of matching rows,
+ * which the JIT compiler is able to unroll and keep free of mispredicted
+ * branches, after which only the columns needed are read for the selected
+ * rows. Scans hold the monitor of the store only while taking a snapshot
+ * of its row counts and strings, which is why they never delay appends for
+ * longer than that. Rows appended after a scan started are not seen by it.
+ * All methods are thread-safe.
+ */
+public class ContractHistoryStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ContractHistoryStore.class);
+
+    private static final String DICTIONARY_FILE_NAME = "strings.dict";
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".col";
+    private static final int CHUNK_SIZE = 1024;
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final StringDictionary dictionary;
+    private final List<Segment> segments;
+
+    private Segment active;
+    private long rows;
+
+    private ContractHistoryStore(
+        final Path directory,
+        final int segmentCapacity,
+        final StringDictionary dictionary,
+        final List<Segment> segments
+    ) {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        this.dictionary = dictionary;
+        this.segments = segments;
+        for (final var segment : segments) {
+            rows += segment.rows;
+        }
+        if (!segments.isEmpty()) {
+            final var last = segments.get(segments.size() - 1);
+            if (last.isWritable && last.rows < last.capacity) {
+                active = last;
+            }
+        }
+    }
+
+    /**
+     * Opens store in given directory, creating the directory if it does not
+     * exist.
+     *
+     * @param directory       Path to store directory.
+     * @param segmentCapacity Number of rows held by each new segment.
+     * @return Opened store.
+     */
+    public static ContractHistoryStore open(final Path directory, final int segmentCapacity) {
+        Objects.requireNonNull(directory, "Expected directory");
+        if (segmentCapacity < 1 || segmentCapacity > Segment.MAX_CAPACITY) {
+            throw new IllegalArgumentException("Expected 1 <= segmentCapacity <= " + Segment.MAX_CAPACITY);
+        }
+        final var startedAt = System.nanoTime();
+        final StringDictionary dictionary;
+        final List<Path> paths;
+        try {
+            Files.createDirectories(directory);
+            dictionary = StringDictionary.open(directory.resolve(DICTIONARY_FILE_NAME));
+            try (final var stream = Files.list(directory)) {
+                paths = stream
+                    .filter(path -> {
+                        final var name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        final var segments = new ArrayList<Segment>(paths.size());
+        for (var i = 0; i < paths.size(); ++i) {
+            final var isLast = i == paths.size() - 1;
+            final var segment = Segment.open(paths.get(i), isLast);
+            if (isLast) {
+                segment.truncateToStringsIn(dictionary);
+            }
+            segments.add(segment);
+        }
+
+        final var store = new ContractHistoryStore(directory, segmentCapacity, dictionary, segments);
+        logger.info("Mapped {} contract history segment(s) holding {} row(s) in {} ms",
+            segments.size(), store.rows, (System.nanoTime() - startedAt) / 1_000_000);
+        return store;
+    }
+
+    /**
+     * Appends the cash flows of the accepted negotiation with given
+     * identifier.
+     *
+     * @param negotiationId    Identifier of negotiation.
+     * @param acceptedAtMillis Time of acceptance, in milliseconds since the
+     *                         epoch.
+     * @param flows            Cash flows of negotiation.
+     */
+    public synchronized void append(final long negotiationId, final long acceptedAtMillis, final List<CashFlow> flows) {
+        for (final var flow : flows) {
+            final var template = dictionary.idOf(flow.templateName());
+            final var counterparty = dictionary.idOf(flow.counterparty());
+            final var currency = dictionary.idOf(flow.currency());
+            if (active == null || active.rows == active.capacity) {
+                roll();
+            }
+            active.append(negotiationId, acceptedAtMillis, flow.dueAtMillis(), flow.amount(),
+                currency, counterparty, template);
+            rows += 1;
+        }
+    }
+
+    /**
+     * Collects the cash flows expiring within given range, in the order
+     * they were appended.
+     *
+     * @param fromMillis Start of range, inclusive, in milliseconds since the
+     *                   epoch.
+     * @param toMillis   End of range, exclusive, in milliseconds since the
+     *                   epoch.
+     * @param limit      Maximum number of cash flows to collect.
+     * @return Collected cash flows.
+     */
+    public List<ContractHistoryEntryDto> entries(final long fromMillis, final long toMillis, final int limit) {
+        final var snapshot = snapshot();
+        final var entries = new ArrayList<ContractHistoryEntryDto>();
+        final var expiresAts = new long[CHUNK_SIZE];
+        final var selection = new int[CHUNK_SIZE];
+
+        for (final var scan : snapshot.scans) {
+            if (entries.size() >= limit) {
+                break;
+            }
+            if (!scan.overlaps(fromMillis, toMillis)) {
+                continue;
+            }
+            final var segment = scan.segment;
+            for (var offset = 0; offset < scan.rows && entries.size() < limit; offset += CHUNK_SIZE) {
+                final var n = Math.min(CHUNK_SIZE, scan.rows - offset);
+                read(segment.expiresAts, offset, expiresAts, n);
+
+                var m = 0;
+                for (var i = 0; i < n; ++i) {
+                    final var expiresAt = expiresAts[i];
+                    selection[m] = i;
+                    m += expiresAt >= fromMillis & expiresAt < toMillis ? 1 : 0;
+                }
+
+                for (var j = 0; j < m && entries.size() < limit; ++j) {
+                    final var row = offset + selection[j];
+                    entries.add(new ContractHistoryEntryBuilder()
+                        .negotiationId(segment.negotiationIds.get(row))
+                        .acceptedAt(Instant.ofEpochMilli(segment.acceptedAts.get(row)))
+                        .expiresAt(Instant.ofEpochMilli(expiresAts[selection[j]]))
+                        .templateName(snapshot.strings[segment.templates.get(row)])
+                        .counterparty(snapshot.strings[segment.counterparties.get(row)])
+                        .currency(snapshot.strings[segment.currencies.get(row)])
+                        .amount(segment.amounts.get(row))
+                        .build());
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Sums up the cash flows of given currency expiring within given range,
+     * by counterparty.
+     *
+     * @param currency   Currency of cash flows.
+     * @param fromMillis Start of range, inclusive, in milliseconds since the
+     *                   epoch.
+     * @param toMillis   End of range, exclusive, in milliseconds since the
+     *                   epoch.
+     * @return Sums of every counterparty with at least one cash flow in the
+     * range, ordered by counterparty name.
+     */
+    public List<ContractHistoryTotalDto> totalsByCounterparty(
+        final String currency,
+        final long fromMillis,
+        final long toMillis
+    ) {
+        final int currencyId;
+        final Snapshot snapshot;
+        synchronized (this) {
+            currencyId = dictionary.idOfOrNegative(currency);
+            snapshot = snapshot();
+        }
+        if (currencyId < 0) {
+            return List.of();
+        }
+
+        final var strings = snapshot.strings.length;
+        final var cashFlows = new long[strings];
+        final var receivables = new long[strings];
+        final var payables = new long[strings];
+
+        final var expiresAts = new long[CHUNK_SIZE];
+        final var currencies = new int[CHUNK_SIZE];
+        final var counterparties = new int[CHUNK_SIZE];
+        final var amounts = new long[CHUNK_SIZE];
+        final var selection = new int[CHUNK_SIZE];
+
+        for (final var scan : snapshot.scans) {
+            if (!scan.overlaps(fromMillis, toMillis)) {
+                continue;
+            }
+            final var segment = scan.segment;
+            for (var offset = 0; offset < scan.rows; offset += CHUNK_SIZE) {
+                final var n = Math.min(CHUNK_SIZE, scan.rows - offset);
+                read(segment.expiresAts, offset, expiresAts, n);
+                read(segment.currencies, offset, currencies, n);
+
+                var m = 0;
+                for (var i = 0; i < n; ++i) {
+                    final var expiresAt = expiresAts[i];
+                    selection[m] = i;
+                    m += expiresAt >= fromMillis & expiresAt < toMillis & currencies[i] == currencyId ? 1 : 0;
+                }
+                if (m == 0) {
+                    continue;
+                }
+
+                read(segment.counterparties, offset, counterparties, n);
+                read(segment.amounts, offset, amounts, n);
+                for (var j = 0; j < m; ++j) {
+                    final var i = selection[j];
+                    final var counterparty = counterparties[i];
+                    final var amount = amounts[i];
+                    cashFlows[counterparty] += 1;
+                    receivables[counterparty] += Math.max(amount, 0);
+                    payables[counterparty] += Math.min(amount, 0);
+                }
+            }
+        }
+
+        final var totals = new ArrayList<ContractHistoryTotalDto>();
+        for (var counterparty = 0; counterparty < strings; ++counterparty) {
+            if (cashFlows[counterparty] == 0) {
+                continue;
+            }
+            totals.add(new ContractHistoryTotalBuilder()
+                .counterparty(snapshot.strings[counterparty])
+                .currency(currency)
+                .cashFlows(cashFlows[counterparty])
+                .receivable(receivables[counterparty])
+                .payable(payables[counterparty])
+                .net(receivables[counterparty] + payables[counterparty])
+                .build());
+        }
+        totals.sort(Comparator.comparing(ContractHistoryTotalDto::counterparty));
+        return totals;
+    }
+
+    /**
+     * Hands the identifier of every stored negotiation to given consumer, in
+     * the order they were appended, reading only the column holding
+     * negotiation identifiers. As the rows of a negotiation may span two
+     * segments, the consumer may receive the same identifier twice.
+     *
+     * @param consumer Function receiving negotiation identifiers.
+     */
+    public void forEachNegotiationId(final LongConsumer consumer) {
+        final var snapshot = snapshot();
+        final var negotiationIds = new long[CHUNK_SIZE];
+        for (final var scan : snapshot.scans) {
+            var negotiationId = 0L;
+            for (var offset = 0; offset < scan.rows; offset += CHUNK_SIZE) {
+                final var n = Math.min(CHUNK_SIZE, scan.rows - offset);
+                read(scan.segment.negotiationIds, offset, negotiationIds, n);
+                for (var i = 0; i < n; ++i) {
+                    // The rows of a negotiation are appended together.
+                    if (negotiationIds[i] != negotiationId || offset + i == 0) {
+                        negotiationId = negotiationIds[i];
+                        consumer.accept(negotiationId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands every stored cash flow due at or after {@code fromMillis} to
+     * given consumer, in the order they were appended. Segments holding
+     * only cash flows due earlier are skipped without being read.
+     *
+     * @param fromMillis Time, in milliseconds since epoch, before which
+     *                   cash flows are skipped.
+     * @param consumer   Function receiving cash flows.
+     */
+    public void forEachCashFlow(final long fromMillis, final Consumer<CashFlow> consumer) {
+        final var snapshot = snapshot();
+        final var expiresAts = new long[CHUNK_SIZE];
+        final var amounts = new long[CHUNK_SIZE];
+        final var currencies = new int[CHUNK_SIZE];
+        final var counterparties = new int[CHUNK_SIZE];
+        final var templates = new int[CHUNK_SIZE];
+        for (final var scan : snapshot.scans) {
+            if (!scan.overlaps(fromMillis, Long.MAX_VALUE)) {
+                continue;
+            }
+            final var segment = scan.segment;
+            for (var offset = 0; offset < scan.rows; offset += CHUNK_SIZE) {
+                final var n = Math.min(CHUNK_SIZE, scan.rows - offset);
+                read(segment.expiresAts, offset, expiresAts, n);
+                read(segment.amounts, offset, amounts, n);
+                read(segment.currencies, offset, currencies, n);
+                read(segment.counterparties, offset, counterparties, n);
+                read(segment.templates, offset, templates, n);
+                for (var i = 0; i < n; ++i) {
+                    if (expiresAts[i] < fromMillis) {
+                        continue;
+                    }
+                    consumer.accept(new CashFlow(
+                        snapshot.strings[templates[i]],
+                        snapshot.strings[counterparties[i]],
+                        snapshot.strings[currencies[i]],
+                        expiresAts[i],
+                        amounts[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces all rows and strings appended since the last call to be written
+     * to disk.
+     */
+    public synchronized void flush() {
+        dictionary.force();
+        if (active != null) {
+            active.force();
+        }
+    }
+
+    public synchronized ContractHistoryStatsDto stats() {
+        var mappedBytes = 0L;
+        for (final var segment : segments) {
+            mappedBytes += segment.mapped.capacity();
+        }
+        return new ContractHistoryStatsBuilder()
+            .segments(segments.size())
+            .rows(rows)
+            .strings(dictionary.size())
+            .mappedBytes(mappedBytes)
+            .build();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        dictionary.close();
+        active = null;
+    }
+
+    private synchronized Snapshot snapshot() {
+        final var scans = new ArrayList<SegmentScan>(segments.size());
+        for (final var segment : segments) {
+            scans.add(new SegmentScan(segment));
+        }
+        return new Snapshot(scans, dictionary.toArray());
+    }
+
+    private void roll() {
+        // Strings must be on disk before any rows referring to them.
+        flush();
+        final var path = directory.resolve(String.format("%s%08d%s",
+            SEGMENT_FILE_PREFIX, segments.size(), SEGMENT_FILE_SUFFIX));
+        active = Segment.create(path, segmentCapacity);
+        segments.add(active);
+        logger.info("Created contract history segment {}", path);
+    }
+
+    private static void read(final LongBuffer column, final int offset, final long[] array, final int length) {
+        column.duplicate().position(offset).get(array, 0, length);
+    }
+
+    private static void read(final IntBuffer column, final int offset, final int[] array, final int length) {
+        column.duplicate().position(offset).get(array, 0, length);
+    }
+
+    private static class Snapshot {
+        private final List<SegmentScan> scans;
+        private final String[] strings;
+
+        private Snapshot(final List<SegmentScan> scans, final String[] strings) {
+            this.scans = scans;
+            this.strings = strings;
+        }
+    }
+
+    /**
+     * Committed rows of a segment, as of when a scan started. Rows are never
+     * modified after being committed, which is why they can be read without
+     * holding the monitor of the store.
+     */
+    private static class SegmentScan {
+        private final Segment segment;
+        private final int rows;
+        private final long minExpiresAt;
+        private final long maxExpiresAt;
+
+        private SegmentScan(final Segment segment) {
+            this.segment = segment;
+            rows = segment.rows;
+            minExpiresAt = segment.minExpiresAt;
+            maxExpiresAt = segment.maxExpiresAt;
+        }
+
+        private boolean overlaps(final long fromMillis, final long toMillis) {
+            return rows > 0 && minExpiresAt < toMillis && maxExpiresAt >= fromMillis;
+        }
+    }
+
+    private static class Segment {
+        private static final int MAGIC = 0x31534843; // "CHS1"
+        private static final int VERSION = 1;
+        private static final int HEADER_SIZE = 64;
+        private static final int ROW_SIZE = 4 * 8 + 3 * 4;
+        private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / ROW_SIZE;
+
+        private static final int MAGIC_OFFSET = 0;
+        private static final int VERSION_OFFSET = 4;
+        private static final int CAPACITY_OFFSET = 8;
+        private static final int ROWS_OFFSET = 12;
+        private static final int MIN_EXPIRES_AT_OFFSET = 16;
+        private static final int MAX_EXPIRES_AT_OFFSET = 24;
+        private static final int MIN_ACCEPTED_AT_OFFSET = 32;
+        private static final int MAX_ACCEPTED_AT_OFFSET = 40;
+
+        private final Path path;
+        private final MappedByteBuffer mapped;
+        private final boolean isWritable;
+        private final int capacity;
+
+        private final LongBuffer negotiationIds;
+        private final LongBuffer acceptedAts;
+        private final LongBuffer expiresAts;
+        private final LongBuffer amounts;
+        private final IntBuffer currencies;
+        private final IntBuffer counterparties;
+        private final IntBuffer templates;
+
+        private int rows;
+        private long minExpiresAt;
+        private long maxExpiresAt;
+        private long minAcceptedAt;
+        private long maxAcceptedAt;
+        private boolean isDirty = false;
+
+        private Segment(final Path path, final MappedByteBuffer mapped, final boolean isWritable, final int capacity) {
+            this.path = path;
+            this.mapped = mapped;
+            this.isWritable = isWritable;
+            this.capacity = capacity;
+
+            // Rows are native-endian, as columns are then copied into arrays
+            // without any byte swapping. Segments are consequently not
+            // portable between platforms of different byte order.
+            mapped.order(ByteOrder.nativeOrder());
+            var offset = HEADER_SIZE;
+            negotiationIds = longColumnAt(offset);
+            acceptedAts = longColumnAt(offset += capacity * 8);
+            expiresAts = longColumnAt(offset += capacity * 8);
+            amounts = longColumnAt(offset += capacity * 8);
+            currencies = intColumnAt(offset += capacity * 8);
+            counterparties = intColumnAt(offset += capacity * 4);
+            templates = intColumnAt(offset + capacity * 4);
+
+            rows = mapped.getInt(ROWS_OFFSET);
+            minExpiresAt = mapped.getLong(MIN_EXPIRES_AT_OFFSET);
+            maxExpiresAt = mapped.getLong(MAX_EXPIRES_AT_OFFSET);
+            minAcceptedAt = mapped.getLong(MIN_ACCEPTED_AT_OFFSET);
+            maxAcceptedAt = mapped.getLong(MAX_ACCEPTED_AT_OFFSET);
+        }
+
+        private static Segment create(final Path path, final int capacity) {
+            final MappedByteBuffer mapped;
+            try (final var channel = FileChannel.open(path, CREATE_NEW, READ, WRITE)) {
+                mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeOf(capacity));
+            }
+            catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            mapped.order(ByteOrder.nativeOrder())
+                .putInt(MAGIC_OFFSET, MAGIC)
+                .putInt(VERSION_OFFSET, VERSION)
+                .putInt(CAPACITY_OFFSET, capacity)
+                .putInt(ROWS_OFFSET, 0)
+                .putLong(MIN_EXPIRES_AT_OFFSET, Long.MAX_VALUE)
+                .putLong(MAX_EXPIRES_AT_OFFSET, Long.MIN_VALUE)
+                .putLong(MIN_ACCEPTED_AT_OFFSET, Long.MAX_VALUE)
+                .putLong(MAX_ACCEPTED_AT_OFFSET, Long.MIN_VALUE);
+            return new Segment(path, mapped, true, capacity);
+        }
+
+        private static Segment open(final Path path, final boolean isWritable) {
+            final MappedByteBuffer mapped;
+            try (final var channel = isWritable
+                ? FileChannel.open(path, READ, WRITE)
+                : FileChannel.open(path, READ))
+            {
+                final var size = channel.size();
+                if (size < HEADER_SIZE) {
+                    throw corrupt(path, "shorter than its header");
+                }
+                mapped = channel.map(isWritable
+                    ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            mapped.order(ByteOrder.nativeOrder());
+            if (mapped.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw corrupt(path, "not a segment, or written on a platform of different byte order");
+            }
+            if (mapped.getInt(VERSION_OFFSET) != VERSION) {
+                throw corrupt(path, "of unsupported version " + mapped.getInt(VERSION_OFFSET));
+            }
+            final var capacity = mapped.getInt(CAPACITY_OFFSET);
+            if (capacity < 1 || capacity > MAX_CAPACITY || mapped.capacity() != sizeOf(capacity)) {
+                throw corrupt(path, "of invalid capacity " + capacity);
+            }
+            final var rows = mapped.getInt(ROWS_OFFSET);
+            if (rows < 0 || rows > capacity) {
+                throw corrupt(path, "holding invalid number of rows " + rows);
+            }
+            return new Segment(path, mapped, isWritable, capacity);
+        }
+
+        private static int sizeOf(final int capacity) {
+            return HEADER_SIZE + capacity * ROW_SIZE;
+        }
+
+        private static IllegalStateException corrupt(final Path path, final String reason) {
+            return new IllegalStateException("Contract history segment '" + path + "' is " + reason);
+        }
+
+        private void append(
+            final long negotiationId,
+            final long acceptedAt,
+            final long expiresAt,
+            final long amount,
+            final int currency,
+            final int counterparty,
+            final int template
+        ) {
+            final var row = rows;
+            negotiationIds.put(row, negotiationId);
+            acceptedAts.put(row, acceptedAt);
+            expiresAts.put(row, expiresAt);
+            amounts.put(row, amount);
+            currencies.put(row, currency);
+            counterparties.put(row, counterparty);
+            templates.put(row, template);
+
+            minExpiresAt = Math.min(minExpiresAt, expiresAt);
+            maxExpiresAt = Math.max(maxExpiresAt, expiresAt);
+            minAcceptedAt = Math.min(minAcceptedAt, acceptedAt);
+            maxAcceptedAt = Math.max(maxAcceptedAt, acceptedAt);
+            mapped.putLong(MIN_EXPIRES_AT_OFFSET, minExpiresAt)
+                .putLong(MAX_EXPIRES_AT_OFFSET, maxExpiresAt)
+                .putLong(MIN_ACCEPTED_AT_OFFSET, minAcceptedAt)
+                .putLong(MAX_ACCEPTED_AT_OFFSET, maxAcceptedAt);
+
+            // Committing the row last makes it visible only once complete.
+            rows = row + 1;
+            mapped.putInt(ROWS_OFFSET, rows);
+            isDirty = true;
+        }
+
+        private void truncateToStringsIn(final StringDictionary dictionary) {
+            final var strings = dictionary.size();
+            var row = 0;
+            while (row < rows
+                && currencies.get(row) < strings
+                && counterparties.get(row) < strings
+                && templates.get(row) < strings)
+            {
+                row += 1;
+            }
+            if (row < rows) {
+                logger.warn("Discarding {} row(s) of {} referring to strings missing from dictionary",
+                    rows - row, path);
+                rows = row;
+                if (isWritable) {
+                    mapped.putInt(ROWS_OFFSET, rows);
+                    isDirty = true;
+                }
+            }
+        }
+
+        private void force() {
+            if (isDirty) {
+                mapped.force();
+                isDirty = false;
+            }
+        }
+
+        private LongBuffer longColumnAt(final int offset) {
+            return sliceAt(offset, capacity * 8).asLongBuffer();
+        }
+
+        private IntBuffer intColumnAt(final int offset) {
+            return sliceAt(offset, capacity * 4).asIntBuffer();
+        }
+
+        private ByteBuffer sliceAt(final int offset, final int length) {
+            return mapped.duplicate()
+                .position(offset)
+                .limit(offset + length)
+                .slice()
+                .order(ByteOrder.nativeOrder());
+        }
+    }
+}
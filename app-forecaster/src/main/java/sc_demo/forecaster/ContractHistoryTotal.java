@@ -0,0 +1,22 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Sums of the cash flows of one counterparty and currency, as held by a
+ * {@link ContractHistoryStore}.
+ * <p>
+ * All amounts are given in minor units, with {@link
+ * LiquidityProjection#SCALE} decimals. Payable amounts are negative.
+ */
+@DtoWritableAs(JSON)
+public interface ContractHistoryTotal {
+    String counterparty();
+    String currency();
+    long cashFlows();
+    long receivable();
+    long payable();
+    long net();
+}
@@ -0,0 +1,123 @@
+package sc_demo.forecaster;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of the bucket sums of every series of a {@link
+ * LiquidityProjection}, as taken by {@link
+ * LiquidityProjection#snapshot(java.time.Instant)}.
+ * <p>
+ * The buckets of every series are ordered, starting with the bucket that
+ * was current when the snapshot was taken. As a snapshot is never modified,
+ * it may be read by any number of threads without synchronization.
+ */
+public class ForecastBase {
+    private final long startMillis;
+    private final long bucketMillis;
+    private final int horizon;
+    private final String[] currencies;
+    private final String[] counterparties;
+    private final long[][] amounts;
+    private final long[] later;
+    private final Map<String, Integer> totalIndexes = new HashMap<>();
+    private final Map<String, Integer> seriesIndexes = new HashMap<>();
+
+    ForecastBase(
+        final long startMillis,
+        final long bucketMillis,
+        final int horizon,
+        final String[] currencies,
+        final String[] counterparties,
+        final long[][] amounts,
+        final long[] later
+    ) {
+        this.startMillis = startMillis;
+        this.bucketMillis = bucketMillis;
+        this.horizon = horizon;
+        this.currencies = Objects.requireNonNull(currencies);
+        this.counterparties = Objects.requireNonNull(counterparties);
+        this.amounts = Objects.requireNonNull(amounts);
+        this.later = Objects.requireNonNull(later);
+        for (var i = 0; i < currencies.length; ++i) {
+            if (counterparties[i] == null) {
+                totalIndexes.put(currencies[i], i);
+            }
+            else {
+                seriesIndexes.put(currencies[i] + '\0' + counterparties[i], i);
+            }
+        }
+    }
+
+    /**
+     * @return Start of first bucket, in milliseconds since the epoch.
+     */
+    public long startMillis() {
+        return startMillis;
+    }
+
+    public long bucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * @return Number of buckets held by each series.
+     */
+    public int horizon() {
+        return horizon;
+    }
+
+    public int seriesCount() {
+        return currencies.length;
+    }
+
+    public String currencyOf(final int series) {
+        return currencies[series];
+    }
+
+    /**
+     * @param series Index of series.
+     * @return Counterparty of series, or {@code null} if the series is the
+     * total of its currency.
+     */
+    public String counterpartyOf(final int series) {
+        return counterparties[series];
+    }
+
+    /**
+     * @param currency Currency of series.
+     * @return Index of total series of given currency, or {@code -1} if no
+     * such series exists.
+     */
+    public int totalIndexOf(final String currency) {
+        return totalIndexes.getOrDefault(currency, -1);
+    }
+
+    /**
+     * @param currency     Currency of series.
+     * @param counterparty Counterparty of series.
+     * @return Index of series of given currency and counterparty, or {@code
+     * -1} if no such series exists.
+     */
+    public int seriesIndexOf(final String currency, final String counterparty) {
+        return seriesIndexes.getOrDefault(currency + '\0' + counterparty, -1);
+    }
+
+    /**
+     * @param series Index of series.
+     * @param bucket Index of bucket, where {@code 0} is the first bucket.
+     * @return Sum of cash flows of given series due in given bucket.
+     */
+    public long amountOf(final int series, final int bucket) {
+        return amounts[series][bucket];
+    }
+
+    /**
+     * @param series Index of series.
+     * @return Sum of cash flows of given series due after the last bucket.
+     */
+    public long laterOf(final int series) {
+        return later[series];
+    }
+}
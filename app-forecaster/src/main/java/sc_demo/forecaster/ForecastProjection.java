@@ -0,0 +1,51 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Projected cash flows of one currency and, optionally, one counterparty.
+ * <p>
+ * All amounts are integers with {@link #scale()} implied decimals. Positive
+ * amounts are received and negative amounts paid.
+ */
+@DtoWritableAs(JSON)
+public interface ForecastProjection {
+    String currency();
+
+    /**
+     * @return Counterparty, or nothing if the projection covers all
+     * counterparties.
+     */
+    Optional<String> counterparty();
+
+    int scale();
+
+    /**
+     * @return Start of first bucket.
+     */
+    Instant start();
+
+    Duration bucketSize();
+
+    /**
+     * @return Sum of cash flows due within each bucket.
+     */
+    List<Long> amounts();
+
+    /**
+     * @return Cumulative sum of cash flows at the end of each bucket.
+     */
+    List<Long> balances();
+
+    /**
+     * @return Sum of cash flows due after the last bucket.
+     */
+    long later();
+}
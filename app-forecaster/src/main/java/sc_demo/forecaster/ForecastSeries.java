@@ -0,0 +1,15 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ForecastSeries {
+    String currency();
+    Optional<String> counterparty();
+    long withinHorizon();
+    long later();
+}
@@ -0,0 +1,15 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ForecastStats {
+    long contracts();
+    long cashFlows();
+    long duplicates();
+    long pastDue();
+    int series();
+    int later();
+}
@@ -0,0 +1,539 @@
+package sc_demo.forecaster;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Incrementally updated projection of the cash flows of accepted contracts,
+ * summed up into fixed-size time buckets per currency and counterparty.
+ * <p>
+ * Every series, one for each pair of currency and counterparty plus one
+ * total for each currency, holds a ring of bucket sums that covers the
+ * {@code horizon} buckets starting with the current one. Cash flows due
+ * later than that are kept in a primitive min-heap, ordered by bucket, and
+ * are moved into their rings as time advances and buckets elapse. Cash flows
+ * that are due in the past when added are counted as due in the current
+ * bucket, as they are yet to be settled.
+ * <p>
+ * Adding a contract takes {@code O(log n)} time, where {@code n} is the
+ * number of cash flows beyond the horizon, and a projection over {@code b}
+ * buckets takes {@code O(b)} time, regardless of the number of contracts.
+ * Advancing time takes {@code O(s)} time per elapsed bucket, where {@code
+ * s} is the number of series. All methods are thread-safe.
+ * <p>
+ * Currency and counterparty names are interned into integer identifiers,
+ * and every series is found via the pair of identifiers of its currency and
+ * counterparty, packed into a {@code long}. Both names and series are kept
+ * in open-addressing hash tables of parallel primitive arrays, which means
+ * that finding the series of a cash flow never allocates or boxes.
+ */
+public class LiquidityProjection {
+    /**
+     * Number of decimals of all amounts.
+     */
+    public static final int SCALE = 2;
+
+    private static final int MISSING = -1;
+    private static final int NO_COUNTERPARTY = -2;
+
+    private final long bucketMillis;
+    private final int horizon;
+    private long firstBucket;
+
+    private String[] names = new String[16];
+    private int[] nameIds = new int[16];
+    private int nameCount = 0;
+
+    private long[] seriesKeys = new long[16];
+    private int[] seriesSlots = new int[16];
+    private int seriesCount = 0;
+    private String[] currencies = new String[8];
+    private String[] counterparties = new String[8];
+    private int[] totalSeriesIndexes = new int[8];
+    private long[][] buckets = new long[8][];
+    private long[] windowSums = new long[8];
+    private long[] laterSums = new long[8];
+
+    private int laterSize = 0;
+    private long[] laterBuckets = new long[64];
+    private long[] laterAmounts = new long[64];
+    private int[] laterSeries = new int[64];
+
+    private final LongHashSet negotiationIds;
+    private long contracts = 0;
+    private long cashFlows = 0;
+    private long duplicates = 0;
+    private long pastDue = 0;
+
+    /**
+     * @param bucketSize        Duration covered by each bucket.
+     * @param horizon           Number of buckets, starting with the current
+     *                          one, held by each series.
+     * @param expectedContracts Number of contracts expected to be added,
+     *                          used to size the duplicate filter.
+     * @param now               Current time.
+     */
+    public LiquidityProjection(
+        final Duration bucketSize,
+        final int horizon,
+        final int expectedContracts,
+        final Instant now
+    ) {
+        bucketMillis = bucketSize.toMillis();
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Expected bucketSize >= 1 ms");
+        }
+        if (horizon < 1) {
+            throw new IllegalArgumentException("Expected horizon >= 1");
+        }
+        this.horizon = horizon;
+        firstBucket = Math.floorDiv(now.toEpochMilli(), bucketMillis);
+        negotiationIds = new LongHashSet(expectedContracts);
+        Arrays.fill(seriesSlots, MISSING);
+    }
+
+    /**
+     * Adds cash flows of the contracts of the accepted negotiation with
+     * given identifier, unless already added.
+     *
+     * @param negotiationId Identifier of negotiation.
+     * @param flows         Cash flows of negotiation.
+     * @param now           Current time.
+     * @return {@code true} only if the cash flows were added.
+     */
+    public synchronized boolean add(final long negotiationId, final List<CashFlow> flows, final Instant now) {
+        if (!negotiationIds.add(negotiationId)) {
+            duplicates += 1;
+            return false;
+        }
+        advanceTo(now);
+        contracts += 1;
+        for (final var flow : flows) {
+            add(flow);
+        }
+        return true;
+    }
+
+    /**
+     * @param negotiationId Identifier of negotiation.
+     * @return {@code true} only if the cash flows of the negotiation with
+     * given identifier have been added or restored.
+     */
+    public synchronized boolean contains(final long negotiationId) {
+        return negotiationIds.contains(negotiationId);
+    }
+
+    /**
+     * Restores the duplicate filter entry of an accepted negotiation added
+     * before the application was restarted, such as by reading it from a
+     * {@link ContractHistoryStore}. Its cash flows are restored separately,
+     * via {@link #restore(CashFlow, Instant)}.
+     *
+     * @param negotiationId Identifier of negotiation.
+     * @return {@code true} only if the negotiation was not already added.
+     */
+    public synchronized boolean restore(final long negotiationId) {
+        if (!negotiationIds.add(negotiationId)) {
+            return false;
+        }
+        contracts += 1;
+        return true;
+    }
+
+    /**
+     * Restores a cash flow of an accepted negotiation added before the
+     * application was restarted. Unlike {@link #add(long, List, Instant)},
+     * cash flows due before the current bucket are not added, as they would
+     * already have left the projection had the application kept running.
+     *
+     * @param flow Cash flow to restore.
+     * @param now  Current time.
+     */
+    public synchronized void restore(final CashFlow flow, final Instant now) {
+        advanceTo(now);
+        if (Math.floorDiv(flow.dueAtMillis(), bucketMillis) >= firstBucket) {
+            add(flow);
+        }
+    }
+
+    /**
+     * @param now Current time.
+     * @return Time, in milliseconds since epoch, at which the current bucket
+     * starts. Restored cash flows due earlier are never added.
+     */
+    public synchronized long currentBucketStartMillis(final Instant now) {
+        advanceTo(now);
+        return firstBucket * bucketMillis;
+    }
+
+    private void add(final CashFlow flow) {
+        final var series = seriesIndexOf(flow.currency(), flow.counterparty());
+        final var total = totalSeriesIndexes[series];
+        final var amount = flow.amount();
+
+        var bucket = Math.floorDiv(flow.dueAtMillis(), bucketMillis);
+        if (bucket < firstBucket) {
+            bucket = firstBucket;
+            pastDue += 1;
+        }
+        cashFlows += 1;
+
+        if (bucket < firstBucket + horizon) {
+            final var index = indexOf(bucket);
+            buckets[series][index] += amount;
+            buckets[total][index] += amount;
+            windowSums[series] += amount;
+            windowSums[total] += amount;
+        }
+        else {
+            laterSums[series] += amount;
+            laterSums[total] += amount;
+            pushLater(bucket, amount, series);
+        }
+    }
+
+    /**
+     * Projects the cash flows of given currency and counterparty, or of all
+     * counterparties if {@code counterparty} is {@code null}, over the given
+     * number of buckets, starting with the current one.
+     *
+     * @param currency     Currency of cash flows.
+     * @param counterparty Name of counterparty, or {@code null}.
+     * @param limit        Maximum number of buckets to include.
+     * @param now          Current time.
+     * @return Projection.
+     */
+    public synchronized ForecastProjectionDto project(
+        final String currency,
+        final String counterparty,
+        final int limit,
+        final Instant now
+    ) {
+        Objects.requireNonNull(currency, "Expected currency");
+        advanceTo(now);
+
+        final var size = Math.max(0, Math.min(limit, horizon));
+        final var amounts = new ArrayList<Long>(size);
+        final var balances = new ArrayList<Long>(size);
+        final var index = findSeries(currency, counterparty);
+        var balance = 0L;
+        var later = 0L;
+        if (index != MISSING) {
+            final var series = buckets[index];
+            for (var i = 0; i < size; ++i) {
+                final var amount = series[indexOf(firstBucket + i)];
+                balance += amount;
+                amounts.add(amount);
+                balances.add(balance);
+            }
+            later = windowSums[index] - balance + laterSums[index];
+        }
+        else {
+            for (var i = 0; i < size; ++i) {
+                amounts.add(0L);
+                balances.add(0L);
+            }
+        }
+
+        return new ForecastProjectionBuilder()
+            .currency(currency)
+            .counterparty(counterparty)
+            .scale(SCALE)
+            .start(Instant.ofEpochMilli(firstBucket * bucketMillis))
+            .bucketSize(Duration.ofMillis(bucketMillis))
+            .amounts(amounts)
+            .balances(balances)
+            .later(later)
+            .build();
+    }
+
+    /**
+     * Lists all series, including currency totals, with their sums.
+     *
+     * @param now Current time.
+     * @return Series.
+     */
+    public synchronized List<ForecastSeriesDto> series(final Instant now) {
+        advanceTo(now);
+        final var list = new ArrayList<ForecastSeriesDto>(seriesCount);
+        for (var i = 0; i < seriesCount; ++i) {
+            list.add(new ForecastSeriesBuilder()
+                .currency(currencies[i])
+                .counterparty(counterparties[i])
+                .withinHorizon(windowSums[i])
+                .later(laterSums[i])
+                .build());
+        }
+        return list;
+    }
+
+    /**
+     * Copies the current bucket sums of all series, including currency
+     * totals, into an immutable snapshot.
+     *
+     * @param now Current time.
+     * @return Snapshot.
+     */
+    public synchronized ForecastBase snapshot(final Instant now) {
+        advanceTo(now);
+        final var amounts = new long[seriesCount][];
+        for (var s = 0; s < seriesCount; ++s) {
+            final var series = new long[horizon];
+            for (var i = 0; i < horizon; ++i) {
+                series[i] = buckets[s][indexOf(firstBucket + i)];
+            }
+            amounts[s] = series;
+        }
+        return new ForecastBase(
+            firstBucket * bucketMillis,
+            bucketMillis,
+            horizon,
+            Arrays.copyOf(currencies, seriesCount),
+            Arrays.copyOf(counterparties, seriesCount),
+            amounts,
+            Arrays.copyOf(laterSums, seriesCount));
+    }
+
+    public synchronized ForecastStatsDto stats() {
+        return new ForecastStatsBuilder()
+            .contracts(contracts)
+            .cashFlows(cashFlows)
+            .duplicates(duplicates)
+            .pastDue(pastDue)
+            .series(seriesCount)
+            .later(laterSize)
+            .build();
+    }
+
+    private void advanceTo(final Instant now) {
+        final var bucket = Math.floorDiv(now.toEpochMilli(), bucketMillis);
+        if (bucket <= firstBucket) {
+            return;
+        }
+
+        // Elapsed buckets are cleared, as the ring slots they occupy are
+        // about to be reused by buckets at the end of the new window.
+        final var end = Math.min(bucket, firstBucket + horizon);
+        for (var b = firstBucket; b < end; ++b) {
+            final var index = indexOf(b);
+            for (var s = 0; s < seriesCount; ++s) {
+                windowSums[s] -= buckets[s][index];
+                buckets[s][index] = 0;
+            }
+        }
+        firstBucket = bucket;
+
+        final var windowEnd = firstBucket + horizon;
+        while (laterSize > 0 && laterBuckets[0] < windowEnd) {
+            final var laterBucket = laterBuckets[0];
+            final var amount = laterAmounts[0];
+            final var series = laterSeries[0];
+            popLater();
+
+            final var total = totalSeriesIndexes[series];
+            laterSums[series] -= amount;
+            laterSums[total] -= amount;
+            if (laterBucket >= firstBucket) {
+                final var index = indexOf(laterBucket);
+                buckets[series][index] += amount;
+                buckets[total][index] += amount;
+                windowSums[series] += amount;
+                windowSums[total] += amount;
+            }
+        }
+    }
+
+    private int indexOf(final long bucket) {
+        return (int) Math.floorMod(bucket, (long) horizon);
+    }
+
+    private int seriesIndexOf(final String currency, final String counterparty) {
+        final var currencyId = internName(currency);
+        final var key = keyOf(currencyId, counterparty != null ? internName(counterparty) : NO_COUNTERPARTY);
+        final var index = seriesSlots[seriesSlotOf(key)];
+        if (index != MISSING) {
+            return index;
+        }
+        final var totalKey = keyOf(currencyId, NO_COUNTERPARTY);
+        var total = seriesSlots[seriesSlotOf(totalKey)];
+        if (total == MISSING) {
+            total = addSeries(currency, null, totalKey, MISSING);
+        }
+        return addSeries(currency, counterparty, key, total);
+    }
+
+    private int findSeries(final String currency, final String counterparty) {
+        final var currencyId = findName(currency);
+        final var counterpartyId = counterparty != null ? findName(counterparty) : NO_COUNTERPARTY;
+        if (currencyId == MISSING || counterpartyId == MISSING) {
+            return MISSING;
+        }
+        return seriesSlots[seriesSlotOf(keyOf(currencyId, counterpartyId))];
+    }
+
+    private int addSeries(final String currency, final String counterparty, final long key, final int total) {
+        if (seriesCount == currencies.length) {
+            final var capacity = seriesCount * 2;
+            currencies = Arrays.copyOf(currencies, capacity);
+            counterparties = Arrays.copyOf(counterparties, capacity);
+            totalSeriesIndexes = Arrays.copyOf(totalSeriesIndexes, capacity);
+            buckets = Arrays.copyOf(buckets, capacity);
+            windowSums = Arrays.copyOf(windowSums, capacity);
+            laterSums = Arrays.copyOf(laterSums, capacity);
+        }
+        final var index = seriesCount++;
+        currencies[index] = currency;
+        counterparties[index] = counterparty;
+        totalSeriesIndexes[index] = total != MISSING ? total : index;
+        buckets[index] = new long[horizon];
+
+        final var slot = seriesSlotOf(key);
+        seriesKeys[slot] = key;
+        seriesSlots[slot] = index;
+        if (seriesCount * 2 > seriesSlots.length) {
+            growSeriesTable();
+        }
+        return index;
+    }
+
+    private static long keyOf(final int currencyId, final int counterpartyId) {
+        return (long) currencyId << 32 | (counterpartyId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return Slot holding series with given key, or the empty slot at
+     * which it is to be inserted.
+     */
+    private int seriesSlotOf(final long key) {
+        final var mask = seriesSlots.length - 1;
+        final var hash = key * 0x9E3779B97F4A7C15L;
+        var slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (seriesSlots[slot] != MISSING && seriesKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growSeriesTable() {
+        final var keys = seriesKeys;
+        final var slots = seriesSlots;
+        seriesKeys = new long[keys.length * 2];
+        seriesSlots = new int[slots.length * 2];
+        Arrays.fill(seriesSlots, MISSING);
+        for (var i = 0; i < slots.length; ++i) {
+            if (slots[i] != MISSING) {
+                final var slot = seriesSlotOf(keys[i]);
+                seriesKeys[slot] = keys[i];
+                seriesSlots[slot] = slots[i];
+            }
+        }
+    }
+
+    private int findName(final String name) {
+        final var mask = names.length - 1;
+        var slot = spread(name.hashCode()) & mask;
+        while (true) {
+            final var candidate = names[slot];
+            if (candidate == null) {
+                return MISSING;
+            }
+            if (candidate == name || candidate.equals(name)) {
+                return nameIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int internName(final String name) {
+        final var id = findName(name);
+        if (id != MISSING) {
+            return id;
+        }
+        if ((nameCount + 1) * 2 > names.length) {
+            final var oldNames = names;
+            final var oldIds = nameIds;
+            names = new String[oldNames.length * 2];
+            nameIds = new int[oldIds.length * 2];
+            for (var i = 0; i < oldNames.length; ++i) {
+                if (oldNames[i] != null) {
+                    insertName(oldNames[i], oldIds[i]);
+                }
+            }
+        }
+        insertName(name, nameCount);
+        return nameCount++;
+    }
+
+    private void insertName(final String name, final int id) {
+        final var mask = names.length - 1;
+        var slot = spread(name.hashCode()) & mask;
+        while (names[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        nameIds[slot] = id;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void pushLater(final long bucket, final long amount, final int series) {
+        if (laterSize == laterBuckets.length) {
+            final var capacity = laterSize * 2;
+            laterBuckets = Arrays.copyOf(laterBuckets, capacity);
+            laterAmounts = Arrays.copyOf(laterAmounts, capacity);
+            laterSeries = Arrays.copyOf(laterSeries, capacity);
+        }
+        var i = laterSize++;
+        while (i > 0) {
+            final var parent = (i - 1) >>> 1;
+            if (laterBuckets[parent] <= bucket) {
+                break;
+            }
+            moveLater(parent, i);
+            i = parent;
+        }
+        laterBuckets[i] = bucket;
+        laterAmounts[i] = amount;
+        laterSeries[i] = series;
+    }
+
+    private void popLater() {
+        final var last = --laterSize;
+        if (last == 0) {
+            return;
+        }
+        final var bucket = laterBuckets[last];
+        final var amount = laterAmounts[last];
+        final var series = laterSeries[last];
+        var i = 0;
+        while (true) {
+            var child = (i << 1) + 1;
+            if (child >= last) {
+                break;
+            }
+            if (child + 1 < last && laterBuckets[child + 1] < laterBuckets[child]) {
+                child += 1;
+            }
+            if (bucket <= laterBuckets[child]) {
+                break;
+            }
+            moveLater(child, i);
+            i = child;
+        }
+        laterBuckets[i] = bucket;
+        laterAmounts[i] = amount;
+        laterSeries[i] = series;
+    }
+
+    private void moveLater(final int from, final int to) {
+        laterBuckets[to] = laterBuckets[from];
+        laterAmounts[to] = laterAmounts[from];
+        laterSeries[to] = laterSeries[from];
+    }
+}
@@ -0,0 +1,107 @@
+package sc_demo.forecaster;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of primitive {@code long} values.
+ * <p>
+ * Not thread-safe.
+ */
+public class LongHashSet {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] slots;
+    private int mask;
+    private int size = 0;
+    private boolean containsEmpty = false;
+
+    public LongHashSet(final int expectedSize) {
+        var capacity = 16;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds given value to set.
+     *
+     * @param value Value to add.
+     * @return {@code true} only if the value was not already in the set.
+     */
+    public boolean add(final long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size += 1;
+            return true;
+        }
+        var index = indexOf(value, mask);
+        while (true) {
+            final var slot = slots[index];
+            if (slot == EMPTY) {
+                break;
+            }
+            if (slot == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = value;
+        size += 1;
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @param value Value to look for.
+     * @return {@code true} only if the value is in the set.
+     */
+    public boolean contains(final long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        var index = indexOf(value, mask);
+        while (true) {
+            final var slot = slots[index];
+            if (slot == EMPTY) {
+                return false;
+            }
+            if (slot == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        final var old = slots;
+        slots = new long[old.length * 2];
+        Arrays.fill(slots, EMPTY);
+        mask = slots.length - 1;
+        for (final var value : old) {
+            if (value != EMPTY) {
+                var index = indexOf(value, mask);
+                while (slots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = value;
+            }
+        }
+    }
+
+    private static int indexOf(final long value, final int mask) {
+        final var hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,75 @@
+package sc_demo.forecaster;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Client of the LP2 contract API.
+ * <p>
+ * LP2 is a public HTTPS service outside the Arrowhead local cloud, which is
+ * why the HTTP client of the JDK is used rather than that of the local cloud
+ * system. The JDK client keeps connections alive and reuses them between
+ * requests.
+ */
+public class Lp2Client {
+    private final HttpClient client;
+    private final URI baseUri;
+    private final Duration requestTimeout;
+
+    /**
+     * @param baseUri        URI of contract collection, such as {@code
+     *                       https://liquidityprognosis2.appspot.com/api/contract}.
+     * @param connectTimeout Maximum time to wait for a connection to be
+     *                       established.
+     * @param requestTimeout Maximum time to wait for a response.
+     */
+    public Lp2Client(final URI baseUri, final Duration connectTimeout, final Duration requestTimeout) {
+        this.baseUri = Objects.requireNonNull(baseUri, "Expected baseUri");
+        this.requestTimeout = Objects.requireNonNull(requestTimeout, "Expected requestTimeout");
+        client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(connectTimeout)
+            .build();
+    }
+
+    /**
+     * Sends change to LP2.
+     *
+     * @param op         Kind of change.
+     * @param contractId Identifier of changed contract.
+     * @param body       JSON-encoded contract, ignored if {@code op} is
+     *                   {@link Lp2Sync.Op#DELETE DELETE}.
+     * @return Future completed with the status code of the response.
+     */
+    public CompletableFuture<Integer> send(final Lp2Sync.Op op, final String contractId, final byte[] body) {
+        final var builder = HttpRequest.newBuilder()
+            .timeout(requestTimeout);
+        switch (op) {
+        case CREATE:
+            builder.uri(baseUri)
+                .header("content-type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+            break;
+        case UPDATE:
+            builder.uri(baseUri)
+                .header("content-type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(body));
+            break;
+        case DELETE:
+            builder.uri(URI.create(baseUri + "/" + URLEncoder.encode(contractId, StandardCharsets.UTF_8)))
+                .DELETE();
+            break;
+        default:
+            throw new IllegalStateException("Unexpected op: " + op);
+        }
+        return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.discarding())
+            .thenApply(HttpResponse::statusCode);
+    }
+}
@@ -0,0 +1,25 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Contract as represented by the Liquidity Prognosis 2 (LP2) contract API.
+ * <p>
+ * The {@code userId} is the name of the forecasting party and the amount is
+ * the sum to be paid to it by the counterparty, negative if paid by it.
+ */
+@DtoWritableAs(JSON)
+public interface Lp2Contract {
+    String contractId();
+    String userId();
+    String counterpartyId();
+    Instant creationDate();
+    Instant expirationDate();
+    BigDecimal amount();
+    String currency();
+}
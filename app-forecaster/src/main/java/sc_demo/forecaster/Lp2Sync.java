@@ -0,0 +1,613 @@
+package sc_demo.forecaster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline that replicates contract changes to the LP2 contract API.
+ * <p>
+ * Submitted changes are first written to a {@link Lp2SyncJournal} and then
+ * coalesced per contract. Journal records are written by the scheduler,
+ * outside the monitor of this pipeline, which is why submitting a change
+ * never waits for the disk. A change is not sent before its record has
+ * been written. Coalescing means that at most one change per contract
+ * is ever pending, in addition to at most one being sent. A contract created
+ * and updated before being sent is only created, with its latest body, and a
+ * contract updated and deleted is only deleted.
+ * <p>
+ * Pending changes are sent in batches, either when a full batch is pending
+ * or when the batch window of the oldest pending change has elapsed, while
+ * never having more than a fixed number of requests in flight. Changes that
+ * fail due to connection problems, timeouts, 408, 429 or 5xx responses are
+ * retried after an exponential backoff with jitter. LP2 has no batch API, so
+ * every change of a batch is sent as a separate request, via connections
+ * kept alive by the {@link Lp2Client}.
+ * <p>
+ * As LP2 only offers separate create and update operations, an update
+ * responded to with 404 is retried as a create, and a create responded to
+ * with 409 is retried as an update, after the same backoff as any other
+ * retried change. If a change keeps flipping between create and update,
+ * such as when someone else keeps creating and deleting its contract, it is
+ * logged and dropped after a fixed number of such attempts. Deletes
+ * responded to with 404 are considered successful. Any other 4xx response
+ * causes the change to be logged and dropped, as it would never succeed.
+ */
+public class Lp2Sync implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(Lp2Sync.class);
+
+    private final Lp2Client client;
+    private final Lp2SyncJournal journal;
+    private final ScheduledExecutorService scheduler;
+    private final int batchSize;
+    private final long batchWindowNanos;
+    private final int maxInFlight;
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int maxAttempts;
+    private final long compactionThreshold;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final ArrayDeque<Entry> ready = new ArrayDeque<>();
+    private final PriorityQueue<Entry> delayed = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.notBefore));
+
+    private ArrayDeque<JournalRecord> unjournaled = new ArrayDeque<>();
+    private boolean isJournaling = false;
+
+    private long lastSequence = 0;
+    private int inFlight = 0;
+    private ScheduledFuture<?> flushFuture = null;
+    private long flushDeadline = Long.MAX_VALUE;
+    private long compactedSize = 0;
+    private boolean isClosed = false;
+    private boolean isFailing = false;
+    private String lastError = null;
+
+    private long submitted = 0;
+    private long coalesced = 0;
+    private long sent = 0;
+    private long synced = 0;
+    private long retried = 0;
+    private long dropped = 0;
+
+    public Lp2Sync(
+        final Lp2Client client,
+        final Lp2SyncJournal journal,
+        final ScheduledExecutorService scheduler,
+        final int batchSize,
+        final Duration batchWindow,
+        final int maxInFlight,
+        final Duration minBackoff,
+        final Duration maxBackoff,
+        final int maxAttempts,
+        final long compactionThreshold
+    ) {
+        this.client = Objects.requireNonNull(client);
+        this.journal = Objects.requireNonNull(journal);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Expected batchSize >= 1");
+        }
+        this.batchSize = batchSize;
+        batchWindowNanos = batchWindow.toNanos();
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Expected maxInFlight >= 1");
+        }
+        this.maxInFlight = maxInFlight;
+        minBackoffNanos = Math.max(minBackoff.toNanos(), 1);
+        maxBackoffNanos = Math.max(maxBackoff.toNanos(), minBackoffNanos);
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Expected maxAttempts >= 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.compactionThreshold = compactionThreshold;
+
+        synchronized (this) {
+            journal.replay(new Lp2SyncJournal.RecordConsumer() {
+                @Override
+                public void onChange(final long sequence, final Op op, final String contractId, final byte[] body) {
+                    lastSequence = Math.max(lastSequence, sequence);
+                    final var entry = entries.get(contractId);
+                    if (entry == null) {
+                        entries.put(contractId, new Entry(contractId, sequence, op, body));
+                    }
+                    else {
+                        entry.update(sequence, op, body);
+                    }
+                }
+
+                @Override
+                public void onAcknowledgement(final long sequence, final Op op, final String contractId) {
+                    final var entry = entries.get(contractId);
+                    if (entry == null) {
+                        return;
+                    }
+                    if (entry.sequence <= sequence) {
+                        entries.remove(contractId);
+                    }
+                    else {
+                        entry.acknowledge(op);
+                    }
+                }
+            });
+            compactedSize = journal.size();
+            for (final var entry : entries.values()) {
+                entry.isQueued = true;
+                ready.addLast(entry);
+            }
+            if (!ready.isEmpty()) {
+                logger.info("Resuming LP2 sync of {} pending contract change(s)", ready.size());
+                scheduleFlush(0);
+            }
+        }
+    }
+
+    /**
+     * Submits contract change for replication to LP2.
+     *
+     * @param op         Kind of change.
+     * @param contractId Identifier of changed contract.
+     * @param body       JSON-encoded contract, or an empty array if {@code
+     *                   op} is {@link Op#DELETE DELETE}.
+     * @throws IllegalStateException If this pipeline is closed.
+     */
+    public synchronized void submit(final Op op, final String contractId, final byte[] body) {
+        if (isClosed) {
+            throw new IllegalStateException("LP2 sync closed");
+        }
+        submitted += 1;
+        unjournaled.addLast(new JournalRecord(++lastSequence, op, contractId, body));
+        scheduleJournaling();
+    }
+
+    /**
+     * Waits until all submitted changes have been replicated or dropped.
+     *
+     * @param timeout Maximum time to wait.
+     * @return {@code true} only if no changes remain.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized boolean awaitDrained(final Duration timeout) throws InterruptedException {
+        final var deadline = System.nanoTime() + timeout.toNanos();
+        while (!entries.isEmpty() || isJournaling) {
+            final var remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    public Lp2SyncStatsDto stats() {
+        final var journalSize = journal.size();
+        synchronized (this) {
+            return new Lp2SyncStatsBuilder()
+                .pending(entries.size() - inFlight)
+                .inFlight(inFlight)
+                .delayed(delayed.size())
+                .submitted(submitted)
+                .coalesced(coalesced)
+                .sent(sent)
+                .synced(synced)
+                .retried(retried)
+                .dropped(dropped)
+                .journalSize(journalSize)
+                .lastError(lastError)
+                .build();
+        }
+    }
+
+    /**
+     * Stops sending changes, waits briefly for any changes in flight to
+     * complete and for submitted changes to be journaled, and then closes
+     * the journal. Pending changes remain in the journal and are sent when
+     * it is next replayed.
+     *
+     * @throws IOException If closing the journal fails.
+     */
+    @Override
+    public void close() throws IOException {
+        final boolean isJournalingHere;
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+            final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            try {
+                while (inFlight > 0) {
+                    final var remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        logger.warn("Closing LP2 sync with {} change(s) in flight; they will be sent again", inFlight);
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                while (isJournaling) {
+                    final var remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        logger.warn("Closing LP2 sync with {} change(s) not yet journaled; they will not be sent",
+                            unjournaled.size());
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+            catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            // Records may remain if the scheduler was shut down before the
+            // journaling task got to run.
+            isJournalingHere = !isJournaling && !unjournaled.isEmpty();
+            if (isJournalingHere) {
+                isJournaling = true;
+            }
+        }
+        if (isJournalingHere) {
+            writeJournal();
+        }
+        journal.close();
+    }
+
+    private void flush() {
+        final var sends = new ArrayList<Runnable>();
+        synchronized (this) {
+            flushFuture = null;
+            flushDeadline = Long.MAX_VALUE;
+            if (isClosed) {
+                return;
+            }
+            final var now = System.nanoTime();
+            while (!delayed.isEmpty() && delayed.peek().notBefore <= now) {
+                ready.addLast(delayed.poll());
+            }
+            final var limit = Math.min(batchSize, maxInFlight - inFlight);
+            while (sends.size() < limit && !ready.isEmpty()) {
+                final var entry = ready.pollFirst();
+                entry.isQueued = false;
+                entry.isInFlight = true;
+                entry.sentSequence = entry.sequence;
+                final var sequence = entry.sequence;
+                final var op = entry.op;
+                final var body = entry.body;
+                sends.add(() -> client.send(op, entry.contractId, body)
+                    .whenComplete((status, fault) -> complete(entry, sequence, op, status, fault)));
+            }
+            inFlight += sends.size();
+            sent += sends.size();
+
+            if (!ready.isEmpty()) {
+                if (inFlight < maxInFlight) {
+                    scheduleFlush(0);
+                }
+            }
+            else if (!delayed.isEmpty()) {
+                scheduleFlush(delayed.peek().notBefore - now);
+            }
+        }
+        for (final var send : sends) {
+            send.run();
+        }
+    }
+
+    private synchronized void complete(
+        final Entry entry,
+        final long sequence,
+        final Op op,
+        final Integer status,
+        final Throwable fault
+    ) {
+        inFlight -= 1;
+        entry.isInFlight = false;
+        if (isClosed) {
+            // The journal may already be closed, which is why the outcome is
+            // not recorded. If successful, the change is sent again when the
+            // journal is next replayed.
+            notifyAll();
+            return;
+        }
+
+        final var code = status != null ? status : 0;
+        final var isSuccessful = fault == null && (code / 100 == 2 || (op == Op.DELETE && code == 404));
+        final var isConflict = fault == null && isConflict(op, code);
+        if (isConflict) {
+            entry.conflicts += 1;
+        }
+        if (isSuccessful || fault == null && isPermanentFailure(op, code) || isConflict && entry.conflicts >= maxAttempts) {
+            if (!isSuccessful) {
+                logger.warn("LP2 rejected {} of contract {} with status {} after {} attempt(s); dropping change",
+                    op, entry.contractId, code, entry.attempts + 1);
+                dropped += 1;
+            }
+            else {
+                synced += 1;
+                if (isFailing) {
+                    isFailing = false;
+                    logger.info("LP2 sync recovered");
+                }
+            }
+            unjournaled.addLast(new JournalRecord(sequence, op, entry.contractId, null));
+            scheduleJournaling();
+            entry.attempts = 0;
+            entry.conflicts = 0;
+            if (entry.sequence == sequence) {
+                entries.remove(entry.contractId);
+                if (entries.isEmpty()) {
+                    notifyAll();
+                }
+            }
+            else {
+                if (isSuccessful) {
+                    entry.acknowledge(op);
+                }
+                entry.isQueued = true;
+                ready.addLast(entry);
+            }
+        }
+        else {
+            if (isConflict) {
+                // The contract was created or deleted by someone else, or an
+                // earlier change was applied without being acknowledged.
+                if (entry.op == op) {
+                    entry.op = op == Op.UPDATE ? Op.CREATE : Op.UPDATE;
+                }
+            }
+            else {
+                recordFailure(fault, code);
+            }
+            retried += 1;
+            entry.attempts += 1;
+            final var backoff = Math.min(maxBackoffNanos, minBackoffNanos << Math.min(entry.attempts - 1, 20));
+            entry.notBefore = System.nanoTime() + backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            entry.isQueued = true;
+            delayed.add(entry);
+        }
+
+        if (!ready.isEmpty()) {
+            scheduleFlush(ready.size() >= batchSize || inFlight == 0 ? 0 : batchWindowNanos);
+        }
+        else if (!delayed.isEmpty()) {
+            scheduleFlush(delayed.peek().notBefore - System.nanoTime());
+        }
+    }
+
+    private void recordFailure(final Throwable fault, final int code) {
+        final var cause = fault instanceof CompletionException && fault.getCause() != null
+            ? fault.getCause()
+            : fault;
+        lastError = cause != null
+            ? cause.getClass().getSimpleName() + ": " + cause.getMessage()
+            : "Status " + code;
+        if (!isFailing) {
+            isFailing = true;
+            logger.warn("LP2 sync failing, retrying with backoff; {}", lastError);
+        }
+    }
+
+    private static boolean isConflict(final Op op, final int code) {
+        return code == 404 && op == Op.UPDATE || code == 409 && op == Op.CREATE;
+    }
+
+    private static boolean isPermanentFailure(final Op op, final int code) {
+        if (code / 100 != 4 || code == 408 || code == 429) {
+            return false;
+        }
+        return !isConflict(op, code);
+    }
+
+    private void scheduleFlush(final long delayNanos) {
+        if (isClosed) {
+            return;
+        }
+        final var delay = Math.max(delayNanos, 0);
+        final var deadline = System.nanoTime() + delay;
+        if (flushFuture != null) {
+            if (flushDeadline - deadline <= 0) {
+                return;
+            }
+            flushFuture.cancel(false);
+        }
+        flushDeadline = deadline;
+        flushFuture = scheduler.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void scheduleJournaling() {
+        if (isJournaling) {
+            return;
+        }
+        scheduler.execute(this::writeJournal);
+        isJournaling = true;
+    }
+
+    /**
+     * Writes all unjournaled records to the journal, without holding the
+     * monitor of this pipeline, and then makes the written changes eligible
+     * for being sent. Only one thread at a time, the one that set {@link
+     * #isJournaling}, may call this method.
+     */
+    private void writeJournal() {
+        while (true) {
+            final ArrayDeque<JournalRecord> records;
+            synchronized (this) {
+                if (unjournaled.isEmpty()) {
+                    isJournaling = false;
+                    notifyAll();
+                    return;
+                }
+                records = unjournaled;
+                unjournaled = new ArrayDeque<>();
+            }
+            try {
+                for (final var record : records) {
+                    if (record.body != null) {
+                        journal.appendChange(record.sequence, record.op, record.contractId, record.body);
+                    }
+                    else {
+                        journal.appendAcknowledgement(record.sequence, record.op, record.contractId);
+                    }
+                }
+            }
+            catch (final RuntimeException exception) {
+                // The changes are still sent, but are lost if the
+                // application is terminated before they are acknowledged.
+                logger.error("Failed to write {} record(s) to LP2 sync journal", records.size(), exception);
+            }
+            synchronized (this) {
+                for (final var record : records) {
+                    if (record.body != null) {
+                        enqueue(record);
+                    }
+                }
+                if (!ready.isEmpty()) {
+                    scheduleFlush(ready.size() >= batchSize ? 0 : batchWindowNanos);
+                }
+            }
+            try {
+                compactIfDue();
+            }
+            catch (final RuntimeException exception) {
+                logger.error("Failed to compact LP2 sync journal", exception);
+            }
+        }
+    }
+
+    private void enqueue(final JournalRecord record) {
+        var entry = entries.get(record.contractId);
+        if (entry == null) {
+            entry = new Entry(record.contractId, record.sequence, record.op, record.body);
+            entries.put(record.contractId, entry);
+        }
+        else {
+            if (!entry.isInFlight || entry.sequence != entry.sentSequence) {
+                coalesced += 1;
+            }
+            entry.update(record.sequence, record.op, record.body);
+        }
+        if (!entry.isInFlight && !entry.isQueued) {
+            entry.isQueued = true;
+            ready.addLast(entry);
+        }
+    }
+
+    private void compactIfDue() {
+        final var size = journal.size();
+        if (size < compactionThreshold || size < compactedSize * 2) {
+            return;
+        }
+        final var pending = new ArrayList<JournalRecord>();
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            for (final var entry : entries.values()) {
+                pending.add(new JournalRecord(entry.sequence, entry.op, entry.contractId, entry.body));
+            }
+        }
+        journal.compact(writer -> {
+            for (final var record : pending) {
+                writer.write(record.sequence, record.op, record.contractId, record.body);
+            }
+        });
+        compactedSize = journal.size();
+    }
+
+    /**
+     * Kind of contract change.
+     */
+    public enum Op {
+        CREATE,
+        UPDATE,
+        DELETE,
+    }
+
+    /**
+     * Change or, if {@code body} is {@code null}, acknowledgement, not yet
+     * written to the journal.
+     */
+    private static class JournalRecord {
+        private final long sequence;
+        private final Op op;
+        private final String contractId;
+        private final byte[] body;
+
+        private JournalRecord(final long sequence, final Op op, final String contractId, final byte[] body) {
+            this.sequence = sequence;
+            this.op = op;
+            this.contractId = contractId;
+            this.body = body;
+        }
+    }
+
+    private static class Entry {
+        private final String contractId;
+
+        private long sequence;
+        private Op op;
+        private byte[] body;
+
+        private boolean isInFlight = false;
+        private boolean isQueued = false;
+        private long sentSequence = 0;
+        private int attempts = 0;
+        private int conflicts = 0;
+        private long notBefore = 0;
+
+        private Entry(final String contractId, final long sequence, final Op op, final byte[] body) {
+            this.contractId = contractId;
+            this.sequence = sequence;
+            this.op = op;
+            this.body = body;
+        }
+
+        /**
+         * Coalesces given change with any change already pending.
+         */
+        private void update(final long sequence, final Op op, final byte[] body) {
+            if (op == Op.DELETE) {
+                this.op = Op.DELETE;
+            }
+            else if (this.op == Op.DELETE) {
+                // The contract may still exist remotely, as the pending
+                // delete has not necessarily been sent.
+                this.op = Op.UPDATE;
+            }
+            this.sequence = sequence;
+            this.body = body;
+        }
+
+        /**
+         * Adjusts pending change after an earlier change of the same
+         * contract has been acknowledged.
+         */
+        private void acknowledge(final Op acknowledged) {
+            if (acknowledged == Op.DELETE) {
+                if (op == Op.UPDATE) {
+                    op = Op.CREATE;
+                }
+            }
+            else if (op == Op.CREATE) {
+                op = Op.UPDATE;
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package sc_demo.forecaster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only on-disk write-ahead journal of the changes queued for, and
+ * acknowledged by, the LP2 contract API.
+ * <p>
+ * Every record consists of a fixed size header, holding the length of its
+ * payload, a checksum covering its sequence number, type and payload, a
+ * sequence number and a record type, followed by a payload holding the identifier of the changed contract and, if
+ * applicable, its JSON-encoded body. A change record is written before its
+ * change is queued, and an acknowledgement record after the change with the
+ * same sequence number has been accepted by LP2. Changes without later
+ * acknowledgements are consequently sent again when the journal is
+ * replayed, which makes delivery at-least-once. A torn record at the end of
+ * the journal, caused by the application being terminated while writing it,
+ * is discarded.
+ * <p>
+ * As acknowledged changes are never needed again, the journal is
+ * periodically compacted by rewriting it with only the changes still
+ * pending, after which the new journal atomically replaces the old.
+ */
+public class Lp2SyncJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(Lp2SyncJournal.class);
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 1;
+    private static final int CHECKSUMMED_HEADER_OFFSET = 4 + 4;
+    private static final Lp2Sync.Op[] OPS = Lp2Sync.Op.values();
+
+    private final Path path;
+    private final FsyncPolicy fsyncPolicy;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final CRC32 crc32 = new CRC32();
+
+    private FileChannel channel;
+    private long size;
+    private boolean isDirty = false;
+
+    public Lp2SyncJournal(
+        final Path path,
+        final FsyncPolicy fsyncPolicy,
+        final Duration fsyncInterval,
+        final ScheduledExecutorService scheduler
+    ) {
+        this.path = Objects.requireNonNull(path);
+        this.fsyncPolicy = Objects.requireNonNull(fsyncPolicy);
+        try {
+            final var parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            final var millis = fsyncInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::forceIfDirty, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reads all valid records in this journal, in order, handing each of
+     * them to given consumer, and then prepares the journal for appending.
+     *
+     * @param consumer Function receiving replayed records.
+     */
+    public synchronized void replay(final RecordConsumer consumer) {
+        var recordCount = 0L;
+        final var startedAt = System.nanoTime();
+        try {
+            channel = FileChannel.open(path, CREATE, READ, WRITE);
+            final var length = channel.size();
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            var position = 0;
+            while (position + HEADER_SIZE <= length) {
+                buffer.position(position);
+                final var payloadLength = buffer.getInt();
+                final var checksum = buffer.getInt();
+                final var sequence = buffer.getLong();
+                final var type = buffer.get();
+                if (payloadLength < 2 || position + HEADER_SIZE + payloadLength > length
+                    || type < 0 || type >= OPS.length * 2)
+                {
+                    break;
+                }
+                final var payload = new byte[payloadLength];
+                buffer.get(payload);
+                crc32.reset();
+                crc32.update(buffer.duplicate().position(position + CHECKSUMMED_HEADER_OFFSET).limit(position + HEADER_SIZE));
+                crc32.update(payload);
+                if ((int) crc32.getValue() != checksum) {
+                    break;
+                }
+                final var idLength = ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF);
+                if (2 + idLength > payloadLength) {
+                    break;
+                }
+                final var contractId = new String(payload, 2, idLength, StandardCharsets.UTF_8);
+                if (type < OPS.length) {
+                    final var body = new byte[payloadLength - 2 - idLength];
+                    System.arraycopy(payload, 2 + idLength, body, 0, body.length);
+                    consumer.onChange(sequence, OPS[type], contractId, body);
+                }
+                else {
+                    consumer.onAcknowledgement(sequence, OPS[type - OPS.length], contractId);
+                }
+                position += HEADER_SIZE + payloadLength;
+                recordCount += 1;
+            }
+            if (position < length) {
+                logger.warn("Discarding {} bytes of incomplete records at end of {}", length - position, path);
+                channel.truncate(position);
+            }
+            channel.position(position);
+            size = position;
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        logger.info("Replayed {} LP2 sync journal records in {} ms", recordCount,
+            (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    /**
+     * Writes change record to the end of this journal.
+     *
+     * @param sequence   Change sequence number.
+     * @param op         Change operation.
+     * @param contractId Identifier of changed contract.
+     * @param body       JSON-encoded contract, or an empty array.
+     */
+    public synchronized void appendChange(final long sequence, final Lp2Sync.Op op, final String contractId, final byte[] body) {
+        size += append(channel, sequence, (byte) op.ordinal(), contractId, body);
+        forceOrMarkDirty();
+    }
+
+    /**
+     * Writes acknowledgement record to the end of this journal.
+     *
+     * @param sequence   Sequence number of acknowledged change.
+     * @param op         Operation of acknowledged change.
+     * @param contractId Identifier of changed contract.
+     */
+    public synchronized void appendAcknowledgement(final long sequence, final Lp2Sync.Op op, final String contractId) {
+        size += append(channel, sequence, (byte) (OPS.length + op.ordinal()), contractId, new byte[0]);
+        forceOrMarkDirty();
+    }
+
+    /**
+     * Replaces all records of this journal with the change records provided
+     * by given writer.
+     *
+     * @param writer Function writing all changes still pending.
+     */
+    public synchronized void compact(final CompactionWriter writer) {
+        final var startedAt = System.nanoTime();
+        final var sizeBefore = size;
+        final var compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            final var compactChannel = FileChannel.open(compactPath, CREATE, TRUNCATE_EXISTING, WRITE);
+            final var compactSize = new long[]{0};
+            try {
+                writer.write((sequence, op, contractId, body) ->
+                    compactSize[0] += append(compactChannel, sequence, (byte) op.ordinal(), contractId, body));
+                compactChannel.force(false);
+            }
+            finally {
+                compactChannel.close();
+            }
+            channel.close();
+            Files.move(compactPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+            channel = FileChannel.open(path, READ, WRITE);
+            channel.position(compactSize[0]);
+            size = compactSize[0];
+            isDirty = false;
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        logger.info("Compacted LP2 sync journal from {} to {} bytes in {} ms", sizeBefore, size,
+            (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    /**
+     * @return Current size of journal, in bytes.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                channel.force(false);
+            }
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private int append(
+        final FileChannel channel,
+        final long sequence,
+        final byte type,
+        final String contractId,
+        final byte[] body
+    ) {
+        if (channel == null) {
+            throw new IllegalStateException("LP2 sync journal not replayed or already closed");
+        }
+        final var id = contractId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > 0xFFFF) {
+            throw new IllegalArgumentException("Contract identifier too long: " + contractId);
+        }
+        final var payload = ByteBuffer.allocate(2 + id.length + body.length)
+            .putShort((short) id.length)
+            .put(id)
+            .put(body)
+            .flip();
+
+        header.clear();
+        header.putInt(payload.remaining())
+            .putInt(0)
+            .putLong(sequence)
+            .put(type)
+            .flip();
+        crc32.reset();
+        crc32.update(header.array(), CHECKSUMMED_HEADER_OFFSET, HEADER_SIZE - CHECKSUMMED_HEADER_OFFSET);
+        crc32.update(payload.array());
+        header.putInt(4, (int) crc32.getValue());
+
+        final var recordSize = HEADER_SIZE + payload.remaining();
+        try {
+            final var buffers = new ByteBuffer[]{header, payload};
+            var remaining = (long) recordSize;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return recordSize;
+    }
+
+    private void forceOrMarkDirty() {
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            try {
+                channel.force(false);
+            }
+            catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        else {
+            isDirty = true;
+        }
+    }
+
+    private synchronized void forceIfDirty() {
+        if (!isDirty || channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            isDirty = false;
+        }
+        catch (final IOException exception) {
+            logger.error("Failed to force LP2 sync journal to disk", exception);
+        }
+    }
+
+    /**
+     * Determines when records written to an {@link Lp2SyncJournal} are
+     * forced to disk.
+     */
+    public enum FsyncPolicy {
+        /**
+         * Every record is forced to disk before being considered written.
+         */
+        ALWAYS,
+
+        /**
+         * Written records are forced to disk at a fixed interval.
+         */
+        INTERVAL,
+
+        /**
+         * Written records are never forced to disk, which leaves it to the
+         * operating system to decide when to write them.
+         */
+        NEVER,
+    }
+
+    public interface RecordConsumer {
+        void onChange(long sequence, Lp2Sync.Op op, String contractId, byte[] body);
+
+        void onAcknowledgement(long sequence, Lp2Sync.Op op, String contractId);
+    }
+
+    @FunctionalInterface
+    public interface ChangeWriter {
+        void write(long sequence, Lp2Sync.Op op, String contractId, byte[] body);
+    }
+
+    @FunctionalInterface
+    public interface CompactionWriter {
+        void write(ChangeWriter writer);
+    }
+}
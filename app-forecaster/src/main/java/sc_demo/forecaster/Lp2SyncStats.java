@@ -0,0 +1,22 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface Lp2SyncStats {
+    int pending();
+    int inFlight();
+    int delayed();
+    long submitted();
+    long coalesced();
+    long sent();
+    long synced();
+    long retried();
+    long dropped();
+    long journalSize();
+    Optional<String> lastError();
+}
@@ -0,0 +1,397 @@
+package sc_demo.forecaster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.Completion;
+import se.arkalix.ArSystem;
+import se.arkalix.core.plugin.HttpJsonCloudPlugin;
+import se.arkalix.core.plugin.eh.ArEventSubscriberPluginFacade;
+import se.arkalix.core.plugin.eh.EventSubscription;
+import se.arkalix.core.plugin.eh.HttpJsonEventSubscriberPlugin;
+import se.arkalix.net.http.service.HttpService;
+import se.arkalix.security.identity.OwnedIdentity;
+import se.arkalix.security.identity.TrustStore;
+import se.arkalix.util.concurrent.Future;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import static se.arkalix.descriptor.EncodingDescriptor.JSON;
+import static se.arkalix.net.http.HttpStatus.BAD_REQUEST;
+import static se.arkalix.net.http.HttpStatus.NOT_FOUND;
+import static se.arkalix.net.http.HttpStatus.OK;
+import static se.arkalix.security.access.AccessPolicy.cloud;
+import static se.arkalix.util.concurrent.Future.done;
+
+public class Main {
+    private static final Logger logger = LoggerFactory.getLogger(Main.class);
+
+    public static void main(final String[] args) {
+        try {
+            final var config = Config.readAt(args.length > 0
+                ? args[0]
+                : "application.properties");
+
+            final var system = new ArSystem.Builder()
+                .identity(new OwnedIdentity.Loader()
+                    .keyStorePath(config.keyStorePath())
+                    .keyStorePassword(config.keyStorePassword())
+                    .keyAlias(config.keyAliasOrNull())
+                    .keyPassword(config.keyPassword())
+                    .load())
+                .trustStore(TrustStore.read(config.trustStorePath(), config.trustStorePassword()))
+                .localSocketAddress(config.localSocketAddress())
+                .plugins(
+                    new HttpJsonCloudPlugin.Builder()
+                        .serviceRegistrationPredicate(service -> service.interfaces()
+                            .stream()
+                            .allMatch(i -> i.encoding().isDto()))
+                        .serviceRegistrySocketAddress(config.serviceRegistrySocketAddress())
+                        .build(),
+                    new HttpJsonEventSubscriberPlugin())
+                .build();
+
+            logger.info("Productive 4.0 Supply Chain Demonstrator - " + system.name());
+
+            final var me = config.meName();
+            final var templates = new HashMap<String, CashFlowTemplate>();
+            for (final var template : config.forecastTemplates()) {
+                templates.put(template.name(), template);
+            }
+            final var horizon = config.forecastHorizon();
+            final var projection = new LiquidityProjection(
+                config.forecastBucketSize(),
+                horizon,
+                config.forecastExpectedContracts(),
+                Instant.now());
+
+            final var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final var thread = new Thread(runnable, "forecaster-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            final var lp2ContractUri = config.lp2ContractUriOrNull();
+            final var lp2Sync = lp2ContractUri != null
+                ? new Lp2Sync(
+                    new Lp2Client(lp2ContractUri, config.lp2ConnectTimeout(), config.lp2RequestTimeout()),
+                    new Lp2SyncJournal(
+                        config.lp2SyncJournalPath(),
+                        config.lp2SyncJournalFsyncPolicy(),
+                        config.lp2SyncJournalFsyncInterval(),
+                        scheduler),
+                    scheduler,
+                    config.lp2SyncBatchSize(),
+                    config.lp2SyncBatchWindow(),
+                    config.lp2SyncMaxInFlight(),
+                    config.lp2SyncMinBackoff(),
+                    config.lp2SyncMaxBackoff(),
+                    config.lp2SyncMaxAttempts(),
+                    config.lp2SyncJournalCompactionThreshold())
+                : null;
+            if (lp2Sync != null) {
+                logger.info("Replicating accepted contracts to {}", lp2ContractUri);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        lp2Sync.close();
+                    }
+                    catch (final IOException exception) {
+                        logger.error("Failed to close LP2 sync", exception);
+                    }
+                }));
+            }
+
+            final var history = ContractHistoryStore.open(config.historyPath(), config.historySegmentCapacity());
+            final var historyFlushMillis = config.historyFlushInterval().toMillis();
+            scheduler.scheduleWithFixedDelay(history::flush, historyFlushMillis, historyFlushMillis, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    history.close();
+                }
+                catch (final IOException exception) {
+                    logger.error("Failed to close contract history", exception);
+                }
+            }));
+
+            // The projection and its duplicate filter are only held in
+            // memory, which is why they are rebuilt from the history before
+            // any new contract events are received.
+            // Only the negotiation identifiers of the history are read in
+            // full, as segments only holding cash flows due before the
+            // current bucket have no cash flows left to restore.
+            final var restoredAt = Instant.now();
+            final var restored = new long[]{0, 0};
+            history.forEachNegotiationId(negotiationId -> {
+                if (projection.restore(negotiationId)) {
+                    restored[0] += 1;
+                }
+            });
+            history.forEachCashFlow(projection.currentBucketStartMillis(restoredAt), flow -> {
+                projection.restore(flow, restoredAt);
+                restored[1] += 1;
+            });
+            logger.info("Restored {} negotiation(s) and {} cash flow(s) from contract history in {} ms",
+                restored[0], restored[1], Duration.between(restoredAt, Instant.now()).toMillis());
+
+            // History scans may take long enough to stall the event loop,
+            // which is why they are performed by a thread of their own.
+            final var historyExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                final var thread = new Thread(runnable, "forecaster-history");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final var historyMaxLimit = config.historyMaxLimit();
+
+            final var ingester = new ContractEventIngester(me, templates, projection, history, lp2Sync);
+            final var scenarioEvaluator = new ScenarioEvaluator(
+                me,
+                templates,
+                projection,
+                new ForkJoinPool(config.scenariosParallelism()),
+                scheduler,
+                config.scenariosMaxBatches());
+            final var scenariosMaxPerBatch = config.scenariosMaxPerBatch();
+            final var scenariosDefaultLimit = config.scenariosDefaultLimit();
+            final var scenariosMaxWait = config.scenariosMaxWait();
+
+            final var subscriber = system.pluginFacadeOf(HttpJsonEventSubscriberPlugin.class)
+                .map(f -> (ArEventSubscriberPluginFacade) f)
+                .orElseThrow(() -> new IllegalStateException("No " +
+                    "ArEventSubscriberPluginFacade is available; cannot " +
+                    "subscribe to contract events"));
+
+            for (final var type : ContractEvent.Type.values()) {
+                subscriber.subscribe(new EventSubscription()
+                        .topic(type.topic())
+                        .handler((metadata, data) -> ingester.ingest(data)))
+                    .onFailure(fault -> logger.error("Failed to subscribe " +
+                        "to " + type.topic() + " events", fault));
+            }
+
+            system.provide(new HttpService()
+                .name("liquidity-forecast")
+                .encodings(JSON)
+                .accessPolicy(cloud())
+                .basePath("/forecast")
+
+                .get("/projections", (request, response) -> {
+                    final var currency = request.queryParameter("currency");
+                    if (currency.isEmpty()) {
+                        response.status(BAD_REQUEST);
+                        return done();
+                    }
+                    final int buckets;
+                    try {
+                        buckets = request.queryParameter("buckets")
+                            .map(Integer::parseUnsignedInt)
+                            .map(value -> Math.min(value, horizon))
+                            .orElse(horizon);
+                    }
+                    catch (final NumberFormatException exception) {
+                        response.status(BAD_REQUEST);
+                        return done();
+                    }
+                    response
+                        .status(OK)
+                        .body(projection.project(
+                            currency.get().toUpperCase(),
+                            request.queryParameter("counterparty").orElse(null),
+                            buckets,
+                            Instant.now()));
+
+                    return done();
+                })
+
+                .get("/series", (request, response) -> {
+                    response
+                        .status(OK)
+                        .body(projection.series(Instant.now()));
+
+                    return done();
+                })
+
+                .post("/scenarios", (request, response) -> request
+                    .bodyAs(ScenarioBatchDto.class)
+                    .ifSuccess(batch -> {
+                        if (batch.scenarios().size() > scenariosMaxPerBatch) {
+                            response.status(BAD_REQUEST);
+                            return;
+                        }
+                        response
+                            .status(OK)
+                            .body(scenarioEvaluator.submit(batch.scenarios(), Instant.now()).status());
+                    }))
+
+                .get("/scenarios/results", (request, response) -> {
+                    final ScenarioEvaluator.Batch batch;
+                    final int from;
+                    final int limit;
+                    final Duration wait;
+                    try {
+                        batch = request.queryParameter("batch")
+                            .map(Long::parseUnsignedLong)
+                            .map(scenarioEvaluator::batchOrNull)
+                            .orElse(null);
+                        from = request.queryParameter("from")
+                            .map(Integer::parseUnsignedInt)
+                            .orElse(0);
+                        limit = request.queryParameter("limit")
+                            .map(Integer::parseUnsignedInt)
+                            .orElse(scenariosDefaultLimit);
+
+                        // If a wait time is given, the request is held until
+                        // any new result completes or the wait time expires,
+                        // which lets clients receive results as they
+                        // complete.
+                        wait = request.queryParameter("wait")
+                            .map(Long::parseUnsignedLong)
+                            .map(Duration::ofMillis)
+                            .map(duration -> duration.compareTo(scenariosMaxWait) > 0 ? scenariosMaxWait : duration)
+                            .orElse(Duration.ZERO);
+                    }
+                    catch (final NumberFormatException exception) {
+                        response.status(BAD_REQUEST);
+                        return done();
+                    }
+                    if (batch == null) {
+                        response.status(NOT_FOUND);
+                        return done();
+                    }
+                    return batch.awaitFrom(from, limit, wait)
+                        .ifSuccess(page -> response
+                            .status(OK)
+                            .body(page));
+                })
+
+                .get("/history", (request, response) -> {
+                    final long fromMillis;
+                    final long toMillis;
+                    final int limit;
+                    try {
+                        fromMillis = millisOf(request.queryParameter("from").orElse(null), Long.MIN_VALUE);
+                        toMillis = millisOf(request.queryParameter("to").orElse(null), Long.MAX_VALUE);
+                        limit = request.queryParameter("limit")
+                            .map(Integer::parseUnsignedInt)
+                            .map(value -> Math.min(value, historyMaxLimit))
+                            .orElse(Math.min(1000, historyMaxLimit));
+                    }
+                    catch (final DateTimeParseException | NumberFormatException exception) {
+                        response.status(BAD_REQUEST);
+                        return done();
+                    }
+                    return supplyOn(historyExecutor, () -> history.entries(fromMillis, toMillis, limit))
+                        .ifSuccess(entries -> response
+                            .status(OK)
+                            .body(entries));
+                })
+
+                .get("/history/counterparties", (request, response) -> {
+                    final var currency = request.queryParameter("currency");
+                    if (currency.isEmpty()) {
+                        response.status(BAD_REQUEST);
+                        return done();
+                    }
+                    final long fromMillis;
+                    final long toMillis;
+                    try {
+                        fromMillis = millisOf(request.queryParameter("from").orElse(null), Long.MIN_VALUE);
+                        toMillis = millisOf(request.queryParameter("to").orElse(null), Long.MAX_VALUE);
+                    }
+                    catch (final DateTimeParseException exception) {
+                        response.status(BAD_REQUEST);
+                        return done();
+                    }
+                    return supplyOn(historyExecutor, () -> history.totalsByCounterparty(
+                        currency.get().toUpperCase(), fromMillis, toMillis))
+                        .ifSuccess(totals -> response
+                            .status(OK)
+                            .body(totals));
+                })
+
+                .get("/metrics", (request, response) -> {
+                    response
+                        .status(OK)
+                        .body(projection.stats());
+
+                    return done();
+                })
+
+                .get("/metrics/events", (request, response) -> {
+                    response
+                        .status(OK)
+                        .body(ingester.stats());
+
+                    return done();
+                })
+
+                .get("/metrics/history", (request, response) -> {
+                    response
+                        .status(OK)
+                        .body(history.stats());
+
+                    return done();
+                })
+
+                .get("/metrics/lp2-sync", (request, response) -> {
+                    if (lp2Sync == null) {
+                        response.status(NOT_FOUND);
+                        return done();
+                    }
+                    response
+                        .status(OK)
+                        .body(lp2Sync.stats());
+
+                    return done();
+                }))
+
+                .onFailure(Main::panic);
+        }
+        catch (final Throwable throwable) {
+            panic(throwable);
+        }
+    }
+
+    private static long millisOf(final String instant, final long defaultValue) {
+        return instant != null
+            ? Instant.parse(instant).toEpochMilli()
+            : defaultValue;
+    }
+
+    private static <V> Future<V> supplyOn(final Executor executor, final Supplier<V> supplier) {
+        final var completion = new Completion<V>();
+        executor.execute(() -> {
+            try {
+                completion.complete(supplier.get());
+            }
+            catch (final Throwable throwable) {
+                completion.fail(throwable);
+            }
+        });
+        return completion;
+    }
+
+    private static void panic(final Throwable throwable) {
+        System.err.println("Failed to start application");
+        throwable.printStackTrace(System.err);
+        System.exit(1);
+    }
+
+    static {
+        final var logLevel = Level.ALL;
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %5$s%6$s%n");
+        final var root = java.util.logging.Logger.getLogger("");
+        root.setLevel(logLevel);
+        for (final var handler : root.getHandlers()) {
+            handler.setLevel(logLevel);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import java.util.List;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Hypothetical change to the projected cash flows of one currency, as
+ * evaluated by a {@link ScenarioEvaluator}.
+ * <p>
+ * Adjustments are applied in order, each to the cash flows resulting from
+ * the adjustments preceding it.
+ */
+@DtoReadableAs(JSON)
+public interface Scenario {
+    String name();
+    String currency();
+    List<ScenarioAdjustment> adjustments();
+}
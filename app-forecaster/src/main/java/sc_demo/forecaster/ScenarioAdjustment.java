@@ -0,0 +1,45 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import java.util.List;
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Adjustment of the cash flows of a {@link Scenario}.
+ * <p>
+ * Delays and scales apply to the cash flows of the given counterparty, or
+ * of all counterparties if none is given. Additions derive cash flows from
+ * the given contracts, as if offered by the given offeror to the given
+ * receiver and then accepted, which makes it possible to evaluate the
+ * effect of pending offers being accepted.
+ */
+@DtoReadableAs(JSON)
+public interface ScenarioAdjustment {
+    Type type();
+    Optional<String> counterparty();
+    Optional<Integer> buckets();
+    Optional<Double> factor();
+    Optional<String> offerorName();
+    Optional<String> receiverName();
+    Optional<List<ContractEventContract>> contracts();
+
+    enum Type {
+        /**
+         * Moves cash flows {@code buckets} buckets later.
+         */
+        DELAY,
+
+        /**
+         * Multiplies cash flows by {@code factor}.
+         */
+        SCALE,
+
+        /**
+         * Adds the cash flows of {@code contracts}.
+         */
+        ADD,
+    }
+}
@@ -0,0 +1,12 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoReadableAs;
+
+import java.util.List;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoReadableAs(JSON)
+public interface ScenarioBatch {
+    List<Scenario> scenarios();
+}
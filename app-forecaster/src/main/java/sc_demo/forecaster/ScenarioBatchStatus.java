@@ -0,0 +1,15 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.time.Instant;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ScenarioBatchStatus {
+    long id();
+    int scenarios();
+    int completed();
+    Instant createdAt();
+}
@@ -0,0 +1,455 @@
+package sc_demo.forecaster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.Completion;
+import se.arkalix.util.concurrent.Future;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates batches of {@link Scenario scenarios} in parallel against
+ * snapshots of a {@link LiquidityProjection}.
+ * <p>
+ * When a batch is submitted, one {@link ForecastBase} is taken and shared
+ * by all of its scenarios, each of which is then evaluated as a separate
+ * task on a fork-join pool. A scenario never copies the base. Instead, it
+ * holds one array of bucket deltas for every counterparty it adjusts, and
+ * derives its results by adding those deltas to the currency total of the
+ * base. Evaluating a scenario consequently takes time proportional to the
+ * number of counterparties it adjusts, rather than to the number of
+ * contracts.
+ * <p>
+ * Results are collected in the order their scenarios complete. Clients may
+ * read them via {@link Batch#awaitFrom(int, int, Duration)}, which lets them
+ * wait for results not yet available, and receive every result as soon as
+ * it completes. At most a fixed number of batches are retained, after
+ * which the oldest batch is discarded whenever a new one is submitted.
+ */
+public class ScenarioEvaluator {
+    private static final Logger logger = LoggerFactory.getLogger(ScenarioEvaluator.class);
+
+    private final String me;
+    private final Map<String, CashFlowTemplate> templates;
+    private final LiquidityProjection projection;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService scheduler;
+    private final int maxBatches;
+    private final Map<Long, Batch> batches = new LinkedHashMap<>();
+
+    private long nextBatchId = 0;
+
+    /**
+     * @param me         Name of forecasting party.
+     * @param templates  Cash flow templates, by template name.
+     * @param projection Projection to evaluate scenarios against.
+     * @param pool       Pool to evaluate scenarios on.
+     * @param scheduler  Scheduler used to time out waiting clients.
+     * @param maxBatches Maximum number of batches to retain.
+     */
+    public ScenarioEvaluator(
+        final String me,
+        final Map<String, CashFlowTemplate> templates,
+        final LiquidityProjection projection,
+        final ForkJoinPool pool,
+        final ScheduledExecutorService scheduler,
+        final int maxBatches
+    ) {
+        this.me = Objects.requireNonNull(me, "Expected me");
+        this.templates = Map.copyOf(templates);
+        this.projection = Objects.requireNonNull(projection, "Expected projection");
+        this.pool = Objects.requireNonNull(pool, "Expected pool");
+        this.scheduler = Objects.requireNonNull(scheduler, "Expected scheduler");
+        if (maxBatches < 1) {
+            throw new IllegalArgumentException("Expected maxBatches >= 1");
+        }
+        this.maxBatches = maxBatches;
+    }
+
+    /**
+     * Takes a snapshot of the projection and starts evaluating given
+     * scenarios against it.
+     *
+     * @param scenarios Scenarios to evaluate.
+     * @param now       Current time.
+     * @return Started batch.
+     */
+    public Batch submit(final List<? extends Scenario> scenarios, final Instant now) {
+        final var base = projection.snapshot(now);
+        final Batch batch;
+        synchronized (this) {
+            batch = new Batch(nextBatchId++, scenarios.size(), now);
+            batches.put(batch.id, batch);
+            final var iterator = batches.values().iterator();
+            while (batches.size() > maxBatches) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        for (var i = 0; i < scenarios.size(); ++i) {
+            final var index = i;
+            final var scenario = scenarios.get(i);
+            pool.execute(() -> batch.add(evaluate(base, index, scenario)));
+        }
+        return batch;
+    }
+
+    /**
+     * @param id Identifier of batch.
+     * @return Batch with given identifier, or {@code null} if no such batch
+     * is retained.
+     */
+    public synchronized Batch batchOrNull(final long id) {
+        return batches.get(id);
+    }
+
+    /**
+     * Evaluates given scenario, never throwing. Any exception thrown while
+     * evaluating the scenario, such as due to it being invalid, is instead
+     * described by the error of the returned result, which means that every
+     * submitted scenario always produces a result.
+     */
+    private ScenarioResultDto evaluate(final ForecastBase base, final int index, final Scenario scenario) {
+        final var startedAt = System.nanoTime();
+        try {
+            return evaluate(base, index, scenario, startedAt);
+        }
+        catch (final RuntimeException exception) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to evaluate scenario {}", index, exception);
+            }
+            final var name = scenario != null ? scenario.name() : null;
+            final var currency = scenario != null ? scenario.currency() : null;
+            return new ScenarioResultBuilder()
+                .index(index)
+                .name(name != null ? name : "")
+                .currency(currency != null ? currency.toUpperCase() : "")
+                .error(exception.getMessage() != null ? exception.getMessage() : exception.toString())
+                .scale(LiquidityProjection.SCALE)
+                .start(Instant.ofEpochMilli(base.startMillis()))
+                .bucketSize(Duration.ofMillis(base.bucketMillis()))
+                .balances(List.of())
+                .lowestAt(Instant.ofEpochMilli(base.startMillis()))
+                .evaluationMicros((System.nanoTime() - startedAt) / 1000)
+                .build();
+        }
+    }
+
+    private ScenarioResultDto evaluate(
+        final ForecastBase base,
+        final int index,
+        final Scenario scenario,
+        final long startedAt
+    ) {
+        final var currency = scenario.currency().toUpperCase();
+        final var horizon = base.horizon();
+
+        // Every delta array holds one slot per bucket, followed by one slot
+        // for all cash flows due later.
+        final var deltas = new HashMap<String, long[]>();
+        for (final var adjustment : scenario.adjustments()) {
+            switch (adjustment.type()) {
+            case DELAY:
+                final var buckets = adjustment.buckets()
+                    .orElseThrow(() -> new IllegalArgumentException("DELAY requires buckets"));
+                if (buckets < 0) {
+                    throw new IllegalArgumentException("DELAY requires buckets >= 0");
+                }
+                for (final var counterparty : counterpartiesOf(base, currency, adjustment, deltas)) {
+                    delay(base, currency, counterparty, buckets, deltas);
+                }
+                break;
+
+            case SCALE:
+                final var factor = adjustment.factor()
+                    .orElseThrow(() -> new IllegalArgumentException("SCALE requires factor"));
+                for (final var counterparty : counterpartiesOf(base, currency, adjustment, deltas)) {
+                    scale(base, currency, counterparty, factor, deltas);
+                }
+                break;
+
+            case ADD:
+                add(base, currency, adjustment, deltas);
+                break;
+            }
+        }
+
+        final var sum = new long[horizon + 1];
+        for (final var delta : deltas.values()) {
+            for (var b = 0; b <= horizon; ++b) {
+                sum[b] += delta[b];
+            }
+        }
+        var change = 0L;
+        for (final var amount : sum) {
+            change += amount;
+        }
+
+        final var total = base.totalIndexOf(currency);
+        final var balances = new ArrayList<Long>(horizon);
+        var balance = 0L;
+        var lowestBalance = Long.MAX_VALUE;
+        var lowestBucket = 0;
+        for (var b = 0; b < horizon; ++b) {
+            balance += (total >= 0 ? base.amountOf(total, b) : 0L) + sum[b];
+            balances.add(balance);
+            if (balance < lowestBalance) {
+                lowestBalance = balance;
+                lowestBucket = b;
+            }
+        }
+        final var later = (total >= 0 ? base.laterOf(total) : 0L) + sum[horizon];
+
+        return new ScenarioResultBuilder()
+            .index(index)
+            .name(scenario.name())
+            .currency(currency)
+            .scale(LiquidityProjection.SCALE)
+            .start(Instant.ofEpochMilli(base.startMillis()))
+            .bucketSize(Duration.ofMillis(base.bucketMillis()))
+            .balances(balances)
+            .lowestBalance(lowestBalance)
+            .lowestAt(Instant.ofEpochMilli(base.startMillis() + lowestBucket * base.bucketMillis()))
+            .later(later)
+            .change(change)
+            .evaluationMicros((System.nanoTime() - startedAt) / 1000)
+            .build();
+    }
+
+    private static List<String> counterpartiesOf(
+        final ForecastBase base,
+        final String currency,
+        final ScenarioAdjustment adjustment,
+        final Map<String, long[]> deltas
+    ) {
+        final var counterparty = adjustment.counterparty().orElse(null);
+        if (counterparty != null) {
+            return List.of(counterparty);
+        }
+        final var counterparties = new ArrayList<>(deltas.keySet());
+        for (var s = 0; s < base.seriesCount(); ++s) {
+            final var name = base.counterpartyOf(s);
+            if (name != null && currency.equals(base.currencyOf(s)) && !deltas.containsKey(name)) {
+                counterparties.add(name);
+            }
+        }
+        return counterparties;
+    }
+
+    private static void delay(
+        final ForecastBase base,
+        final String currency,
+        final String counterparty,
+        final int buckets,
+        final Map<String, long[]> deltas
+    ) {
+        if (buckets == 0) {
+            return;
+        }
+        final var horizon = base.horizon();
+        final var series = base.seriesIndexOf(currency, counterparty);
+        final var amounts = amountsOf(base, series, deltas.get(counterparty));
+        final var delta = deltas.computeIfAbsent(counterparty, ignored -> new long[horizon + 1]);
+
+        var later = amounts[horizon];
+        for (var b = horizon - 1; b >= 0; --b) {
+            final var target = (long) b + buckets;
+            if (target < horizon) {
+                delta[(int) target] += amounts[b];
+            }
+            else {
+                later += amounts[b];
+            }
+            delta[b] -= amounts[b];
+        }
+        delta[horizon] += later - amounts[horizon];
+    }
+
+    private static void scale(
+        final ForecastBase base,
+        final String currency,
+        final String counterparty,
+        final double factor,
+        final Map<String, long[]> deltas
+    ) {
+        final var horizon = base.horizon();
+        final var series = base.seriesIndexOf(currency, counterparty);
+        final var amounts = amountsOf(base, series, deltas.get(counterparty));
+        final var delta = deltas.computeIfAbsent(counterparty, ignored -> new long[horizon + 1]);
+        for (var b = 0; b <= horizon; ++b) {
+            delta[b] += Math.round(amounts[b] * factor) - amounts[b];
+        }
+    }
+
+    private void add(
+        final ForecastBase base,
+        final String currency,
+        final ScenarioAdjustment adjustment,
+        final Map<String, long[]> deltas
+    ) {
+        final var offerorName = adjustment.offerorName()
+            .orElseThrow(() -> new IllegalArgumentException("ADD requires offerorName"));
+        final var receiverName = adjustment.receiverName()
+            .orElseThrow(() -> new IllegalArgumentException("ADD requires receiverName"));
+        final var horizon = base.horizon();
+        for (final var contract : adjustment.contracts().orElse(List.of())) {
+            final var template = templates.get(contract.templateName());
+            if (template == null) {
+                throw new IllegalArgumentException("No cash flow template named \"" + contract.templateName() + "\"");
+            }
+            final var flow = template.cashFlowOf(contract.arguments(), offerorName, receiverName, me);
+            if (flow == null || !flow.currency().equals(currency)) {
+                continue;
+            }
+            final var bucket = Math.max(0, Math.floorDiv(flow.dueAtMillis() - base.startMillis(), base.bucketMillis()));
+            final var delta = deltas.computeIfAbsent(flow.counterparty(), ignored -> new long[horizon + 1]);
+            delta[(int) Math.min(bucket, horizon)] += flow.amount();
+        }
+    }
+
+    private static long[] amountsOf(final ForecastBase base, final int series, final long[] delta) {
+        final var horizon = base.horizon();
+        final var amounts = new long[horizon + 1];
+        if (series >= 0) {
+            for (var b = 0; b < horizon; ++b) {
+                amounts[b] = base.amountOf(series, b);
+            }
+            amounts[horizon] = base.laterOf(series);
+        }
+        if (delta != null) {
+            for (var b = 0; b <= horizon; ++b) {
+                amounts[b] += delta[b];
+            }
+        }
+        return amounts;
+    }
+
+    /**
+     * Scenario batch, collecting the results of its scenarios as they
+     * complete.
+     */
+    public class Batch {
+        private final long id;
+        private final int scenarios;
+        private final Instant createdAt;
+        private final List<ScenarioResultDto> results;
+        private final List<Waiter> waiters = new ArrayList<>();
+
+        private Batch(final long id, final int scenarios, final Instant createdAt) {
+            this.id = id;
+            this.scenarios = scenarios;
+            this.createdAt = createdAt;
+            results = new ArrayList<>(scenarios);
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public synchronized ScenarioBatchStatusDto status() {
+            return new ScenarioBatchStatusBuilder()
+                .id(id)
+                .scenarios(scenarios)
+                .completed(results.size())
+                .createdAt(createdAt)
+                .build();
+        }
+
+        /**
+         * @param from  Index of first desired result, in completion order.
+         * @param limit Maximum number of results to include in page.
+         * @return Page of results, which is empty if no such results exist.
+         */
+        public synchronized ScenarioResultPageDto readPage(final int from, final int limit) {
+            final var start = Math.max(0, Math.min(from, results.size()));
+            final var end = (int) Math.min((long) start + Math.max(limit, 0), results.size());
+            return new ScenarioResultPageBuilder()
+                .batch(id)
+                .scenarios(scenarios)
+                .completed(results.size())
+                .results(new ArrayList<>(results.subList(start, end)))
+                .next(end)
+                .build();
+        }
+
+        /**
+         * Gets at most {@code limit} results, starting at index {@code
+         * from}, waiting for at most {@code timeout} for at least one such
+         * result to complete if none is currently available.
+         *
+         * @param from    Index of first desired result, in completion order.
+         * @param limit   Maximum number of results to include in page.
+         * @param timeout Maximum duration to wait for results to complete.
+         * @return Future completed with page of results, which is empty
+         * only if {@code timeout} expired before any result completed, or if
+         * all results have already been read.
+         */
+        public Future<ScenarioResultPageDto> awaitFrom(final int from, final int limit, final Duration timeout) {
+            final var waiter = new Waiter(from, limit);
+            synchronized (this) {
+                final var page = readPage(from, limit);
+                if (!page.results().isEmpty() || results.size() == scenarios
+                    || timeout.isZero() || timeout.isNegative())
+                {
+                    return Future.success(page);
+                }
+                waiters.add(waiter);
+            }
+            final var timer = scheduler.schedule(() -> {
+                if (removeWaiter(waiter)) {
+                    waiter.completion.complete(readPage(from, limit));
+                }
+            }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return waiter.completion.onCancel(() -> {
+                timer.cancel(false);
+                removeWaiter(waiter);
+            });
+        }
+
+        private void add(final ScenarioResultDto result) {
+            final var waiters = new ArrayList<Waiter>();
+            final var pages = new ArrayList<ScenarioResultPageDto>();
+            synchronized (this) {
+                results.add(result);
+                final var isDone = results.size() == scenarios;
+                final var iterator = this.waiters.iterator();
+                while (iterator.hasNext()) {
+                    final var waiter = iterator.next();
+                    if (waiter.from < results.size() || isDone) {
+                        iterator.remove();
+                        waiters.add(waiter);
+                        pages.add(readPage(waiter.from, waiter.limit));
+                    }
+                }
+            }
+            for (var i = 0; i < waiters.size(); ++i) {
+                waiters.get(i).completion.complete(pages.get(i));
+            }
+        }
+
+        private synchronized boolean removeWaiter(final Waiter waiter) {
+            return waiters.remove(waiter);
+        }
+    }
+
+    private static class Waiter {
+        private final int from;
+        private final int limit;
+        private final Completion<ScenarioResultPageDto> completion = new Completion<>();
+
+        private Waiter(final int from, final int limit) {
+            this.from = from;
+            this.limit = limit;
+        }
+    }
+}
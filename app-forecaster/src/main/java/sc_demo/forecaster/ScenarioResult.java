@@ -0,0 +1,36 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Outcome of evaluating a {@link Scenario}.
+ * <p>
+ * Balances are cumulative sums of the currency total of each bucket,
+ * starting with the first, as in a {@link ForecastProjection}. The change is
+ * the sum of all cash flows of the scenario minus that of the projection it
+ * was evaluated against. If the scenario could not be evaluated, only its
+ * index, name, currency and error are meaningful.
+ */
+@DtoWritableAs(JSON)
+public interface ScenarioResult {
+    int index();
+    String name();
+    String currency();
+    Optional<String> error();
+    int scale();
+    Instant start();
+    Duration bucketSize();
+    List<Long> balances();
+    long lowestBalance();
+    Instant lowestAt();
+    long later();
+    long change();
+    long evaluationMicros();
+}
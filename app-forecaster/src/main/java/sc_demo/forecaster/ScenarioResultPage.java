@@ -0,0 +1,23 @@
+package sc_demo.forecaster;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.util.List;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+/**
+ * Page of the results of a scenario batch, in the order the scenarios
+ * completed.
+ * <p>
+ * To receive the results following those in the page, clients ask for the
+ * results starting at {@code next}.
+ */
+@DtoWritableAs(JSON)
+public interface ScenarioResultPage {
+    long batch();
+    int scenarios();
+    int completed();
+    List<ScenarioResult> results();
+    int next();
+}
@@ -0,0 +1,177 @@
+package sc_demo.forecaster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only on-disk dictionary, assigning consecutive integer identifiers
+ * to strings in the order they are first added.
+ * <p>
+ * Every string is stored as its length followed by its UTF-8 bytes. As the
+ * strings held are expected to be few, such as the names of parties,
+ * currencies and templates, all of them are also kept in memory. A torn
+ * string at the end of the file, caused by the application being terminated
+ * while writing it, is discarded when the dictionary is opened.
+ * <p>
+ * Not thread-safe.
+ */
+public class StringDictionary implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StringDictionary.class);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    private boolean isDirty = false;
+
+    private StringDictionary(final Path path, final FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens dictionary at given path, creating it if it does not exist.
+     *
+     * @param path Path to dictionary file.
+     * @return Opened dictionary.
+     */
+    public static StringDictionary open(final Path path) {
+        try {
+            final var channel = FileChannel.open(path, CREATE, READ, WRITE);
+            final var dictionary = new StringDictionary(path, channel);
+            final var length = channel.size();
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            var position = 0;
+            while (position + 4 <= length) {
+                final var stringLength = buffer.getInt(position);
+                if (stringLength < 0 || position + 4 + stringLength > length) {
+                    break;
+                }
+                final var bytes = new byte[stringLength];
+                buffer.position(position + 4);
+                buffer.get(bytes);
+                dictionary.put(new String(bytes, StandardCharsets.UTF_8));
+                position += 4 + stringLength;
+            }
+            if (position < length) {
+                logger.warn("Discarding {} bytes of incomplete strings at end of {}", length - position, path);
+                channel.truncate(position);
+            }
+            channel.position(position);
+            return dictionary;
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Gets identifier of given string, adding it to the dictionary if not
+     * already in it.
+     *
+     * @param string String to get identifier of.
+     * @return Identifier of string.
+     */
+    public int idOf(final String string) {
+        final var id = ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        final var bytes = string.getBytes(StandardCharsets.UTF_8);
+        final var buffer = ByteBuffer.allocate(4 + bytes.length)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(bytes.length)
+            .put(bytes)
+            .flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        isDirty = true;
+        return put(string);
+    }
+
+    /**
+     * @param string String to get identifier of.
+     * @return Identifier of string, or {@code -1} if not in the dictionary.
+     */
+    public int idOfOrNegative(final String string) {
+        return ids.getOrDefault(string, -1);
+    }
+
+    /**
+     * @param id Identifier of string.
+     * @return String with given identifier.
+     * @throws IndexOutOfBoundsException If no string has the identifier.
+     */
+    public String stringOf(final int id) {
+        return strings.get(id);
+    }
+
+    /**
+     * @return Copy of all strings in the dictionary, indexed by identifier.
+     */
+    public String[] toArray() {
+        return strings.toArray(new String[0]);
+    }
+
+    /**
+     * @return Number of strings in the dictionary, which is also the
+     * identifier of the next string added.
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Forces any strings added since the last call to be written to disk.
+     */
+    public void force() {
+        if (!isDirty) {
+            return;
+        }
+        try {
+            channel.force(false);
+            isDirty = false;
+        }
+        catch (final IOException exception) {
+            logger.error("Failed to force {} to disk", path, exception);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private int put(final String string) {
+        final var id = strings.size();
+        strings.add(string);
+        ids.put(string, id);
+        return id;
+    }
+}
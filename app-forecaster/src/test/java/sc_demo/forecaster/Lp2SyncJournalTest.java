@@ -0,0 +1,131 @@
+package sc_demo.forecaster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class Lp2SyncJournalTest {
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 1;
+
+    @TempDir
+    Path directory;
+
+    private ScheduledExecutorService scheduler;
+    private Path path;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        path = directory.resolve("lp2-sync.journal");
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void shouldDiscardTornRecordAtEnd() throws IOException {
+        try (final var journal = open()) {
+            assertEquals(List.of(), replay(journal));
+            journal.appendChange(1, Lp2Sync.Op.CREATE, "c1", body("a"));
+            journal.appendChange(2, Lp2Sync.Op.UPDATE, "c1", body("b"));
+            journal.appendAcknowledgement(1, Lp2Sync.Op.CREATE, "c1");
+        }
+        try (final var channel = FileChannel.open(path, WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        try (final var journal = open()) {
+            assertEquals(List.of("change 1 CREATE c1 a", "change 2 UPDATE c1 b"), replay(journal));
+            journal.appendAcknowledgement(2, Lp2Sync.Op.UPDATE, "c1");
+        }
+        try (final var journal = open()) {
+            assertEquals(List.of("change 1 CREATE c1 a", "change 2 UPDATE c1 b", "ack 2 UPDATE c1"), replay(journal));
+        }
+    }
+
+    @Test
+    void shouldDiscardRecordWithDamagedHeader() throws IOException {
+        try (final var journal = open()) {
+            replay(journal);
+            journal.appendChange(1, Lp2Sync.Op.CREATE, "c1", body("a"));
+            journal.appendChange(2, Lp2Sync.Op.CREATE, "c2", body("b"));
+        }
+        final var firstRecordSize = HEADER_SIZE + 2 + "c1".length() + body("a").length;
+
+        // Corrupts the least significant byte of the sequence number of the
+        // second record, which is covered by its checksum.
+        try (final var channel = FileChannel.open(path, READ, WRITE)) {
+            final var offset = firstRecordSize + HEADER_SIZE - 2;
+            final var buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, offset);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0xFF)).rewind();
+            channel.write(buffer, offset);
+        }
+
+        try (final var journal = open()) {
+            assertEquals(List.of("change 1 CREATE c1 a"), replay(journal));
+            assertEquals(firstRecordSize, journal.size());
+        }
+        assertEquals(firstRecordSize, Files.size(path));
+    }
+
+    @Test
+    void shouldReplayOnlyCompactedChanges() throws IOException {
+        try (final var journal = open()) {
+            replay(journal);
+            journal.appendChange(1, Lp2Sync.Op.CREATE, "c1", body("a"));
+            journal.appendChange(2, Lp2Sync.Op.CREATE, "c2", body("b"));
+            journal.appendAcknowledgement(1, Lp2Sync.Op.CREATE, "c1");
+            journal.compact(writer -> writer.write(2, Lp2Sync.Op.CREATE, "c2", body("b")));
+            journal.appendChange(3, Lp2Sync.Op.DELETE, "c1", new byte[0]);
+        }
+        try (final var journal = open()) {
+            assertEquals(List.of("change 2 CREATE c2 b", "change 3 DELETE c1 "), replay(journal));
+        }
+    }
+
+    private Lp2SyncJournal open() {
+        return new Lp2SyncJournal(path, Lp2SyncJournal.FsyncPolicy.NEVER, Duration.ofSeconds(1), scheduler);
+    }
+
+    private static byte[] body(final String value) {
+        return ("{\"value\":\"" + value + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> replay(final Lp2SyncJournal journal) {
+        final var records = new ArrayList<String>();
+        journal.replay(new Lp2SyncJournal.RecordConsumer() {
+            @Override
+            public void onChange(final long sequence, final Lp2Sync.Op op, final String contractId, final byte[] body) {
+                final var json = new String(body, StandardCharsets.UTF_8);
+                records.add("change " + sequence + " " + op + " " + contractId + " " +
+                    (json.isEmpty() ? "" : json.substring(10, json.length() - 2)));
+            }
+
+            @Override
+            public void onAcknowledgement(final long sequence, final Lp2Sync.Op op, final String contractId) {
+                records.add("ack " + sequence + " " + op + " " + contractId);
+            }
+        });
+        return records;
+    }
+}
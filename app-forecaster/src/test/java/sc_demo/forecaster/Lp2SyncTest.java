@@ -0,0 +1,206 @@
+package sc_demo.forecaster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Lp2SyncTest {
+    @TempDir
+    Path directory;
+
+    private ScheduledExecutorService scheduler;
+    private FakeLp2Client client;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        client = new FakeLp2Client();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void shouldCoalesceCreateUpdateDeleteIntoDelete() throws Exception {
+        try (final var sync = open(10)) {
+            submitWhileSchedulerBlocked(sync,
+                Lp2Sync.Op.CREATE, "c1", "a",
+                Lp2Sync.Op.UPDATE, "c1", "b",
+                Lp2Sync.Op.DELETE, "c1", null);
+
+            final var request = client.next();
+            assertEquals(Lp2Sync.Op.DELETE, request.op);
+            assertEquals("c1", request.contractId);
+            request.response.complete(404);
+
+            assertTrue(sync.awaitDrained(Duration.ofSeconds(5)));
+            assertNull(client.requests.poll());
+            final var stats = sync.stats();
+            assertEquals(3L, stats.submitted());
+            assertEquals(2L, stats.coalesced());
+            assertEquals(1L, stats.sent());
+            assertEquals(1L, stats.synced());
+        }
+        try (final var sync = open(10)) {
+            assertTrue(sync.awaitDrained(Duration.ofSeconds(5)));
+            assertNull(client.requests.poll(100, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void shouldCoalesceCreateUpdateIntoCreateWithLatestBody() throws Exception {
+        try (final var sync = open(10)) {
+            submitWhileSchedulerBlocked(sync,
+                Lp2Sync.Op.CREATE, "c1", "a",
+                Lp2Sync.Op.UPDATE, "c1", "b");
+
+            final var request = client.next();
+            assertEquals(Lp2Sync.Op.CREATE, request.op);
+            assertEquals("b", request.value());
+            request.response.complete(201);
+
+            assertTrue(sync.awaitDrained(Duration.ofSeconds(5)));
+            assertNull(client.requests.poll());
+        }
+    }
+
+    @Test
+    void shouldResendUnacknowledgedChangeAfterReplay() throws Exception {
+        try (final var sync = open(10, Duration.ofMinutes(1))) {
+            sync.submit(Lp2Sync.Op.CREATE, "c1", body("a"));
+            final var request = client.next();
+            assertEquals(Lp2Sync.Op.CREATE, request.op);
+            request.response.complete(503);
+        }
+        try (final var sync = open(10)) {
+            final var request = client.next();
+            assertEquals(Lp2Sync.Op.CREATE, request.op);
+            assertEquals("a", request.value());
+            request.response.complete(201);
+            assertTrue(sync.awaitDrained(Duration.ofSeconds(5)));
+        }
+    }
+
+    @Test
+    void shouldRetryUpdateRespondedWith404AsCreateUntilMaxAttempts() throws Exception {
+        try (final var sync = open(2)) {
+            sync.submit(Lp2Sync.Op.UPDATE, "c1", body("a"));
+
+            final var update = client.next();
+            assertEquals(Lp2Sync.Op.UPDATE, update.op);
+            update.response.complete(404);
+
+            final var create = client.next();
+            assertEquals(Lp2Sync.Op.CREATE, create.op);
+            create.response.complete(409);
+
+            assertTrue(sync.awaitDrained(Duration.ofSeconds(5)));
+            assertNull(client.requests.poll());
+            assertEquals(1L, sync.stats().dropped());
+        }
+    }
+
+    private Lp2Sync open(final int maxAttempts) {
+        return open(maxAttempts, Duration.ofMillis(1));
+    }
+
+    private Lp2Sync open(final int maxAttempts, final Duration minBackoff) {
+        final var journal = new Lp2SyncJournal(directory.resolve("lp2-sync.journal"),
+            Lp2SyncJournal.FsyncPolicy.NEVER, Duration.ofSeconds(1), scheduler);
+        return new Lp2Sync(client, journal, scheduler, 10, Duration.ZERO, 4,
+            minBackoff, minBackoff.multipliedBy(10), maxAttempts, Long.MAX_VALUE);
+    }
+
+    /**
+     * Submits changes, given as triplets of operation, contract identifier
+     * and body value, while the scheduler is kept busy, which guarantees
+     * that all of them are journaled and coalesced before any is sent.
+     */
+    private void submitWhileSchedulerBlocked(final Lp2Sync sync, final Object... changes) throws InterruptedException {
+        final var isBlocked = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        scheduler.execute(() -> {
+            isBlocked.countDown();
+            try {
+                release.await();
+            }
+            catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        isBlocked.await();
+        try {
+            for (var i = 0; i < changes.length; i += 3) {
+                final var value = (String) changes[i + 2];
+                sync.submit((Lp2Sync.Op) changes[i], (String) changes[i + 1], value != null ? body(value) : new byte[0]);
+            }
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    private static byte[] body(final String value) {
+        return ("{\"value\":\"" + value + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class FakeLp2Client extends Lp2Client {
+        private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+
+        private FakeLp2Client() {
+            super(URI.create("http://localhost"), Duration.ofSeconds(1), Duration.ofSeconds(1));
+        }
+
+        @Override
+        public CompletableFuture<Integer> send(final Lp2Sync.Op op, final String contractId, final byte[] body) {
+            final var request = new Request(op, contractId, body);
+            requests.add(request);
+            return request.response;
+        }
+
+        private Request next() throws InterruptedException {
+            final var request = requests.poll(5, TimeUnit.SECONDS);
+            assertNotNull(request);
+            return request;
+        }
+    }
+
+    private static class Request {
+        private final Lp2Sync.Op op;
+        private final String contractId;
+        private final byte[] body;
+        private final CompletableFuture<Integer> response = new CompletableFuture<>();
+
+        private Request(final Lp2Sync.Op op, final String contractId, final byte[] body) {
+            this.op = op;
+            this.contractId = contractId;
+            this.body = body;
+        }
+
+        private String value() {
+            final var json = new String(body, StandardCharsets.UTF_8);
+            return json.substring(10, json.length() - 2);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package sc_demo.negotiator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import sc_demo.common.JsonBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding {@link ClientInboxEntryDto inbox entries} as JSON, as
+ * well as assembling the pages served via {@code /ui/inbox/entries} from an
+ * {@link InboxLog} filled with synthetic entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InboxBenchmark {
+    private static final ClientInboxEntry.Type[] TYPES = ClientInboxEntry.Type.values();
+
+    @Param({"1000", "100000"})
+    public int entries;
+
+    @Param({"100"})
+    public int limit;
+
+    private ScheduledExecutorService scheduler;
+    private List<ClientInboxEntryDto> dtos;
+    private InboxLog inboxLog;
+    private JsonBuffer buffer;
+    private long from;
+
+    @Setup
+    public void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        inboxLog = new InboxLog(new InboxRetention(entries, null, null), scheduler);
+        dtos = new ArrayList<>(entries);
+        for (var i = 0; i < entries; ++i) {
+            dtos.add(inboxLog.append(entryOf(i)));
+        }
+        buffer = new JsonBuffer(4096);
+    }
+
+    @Setup(Level.Invocation)
+    public void nextOffset() {
+        // Reads are spread across the whole log, as UI clients catching up
+        // from different positions would spread them.
+        from = (from + 7919) % entries;
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Creates a synthetic inbox entry, mirroring the mix of entry types and
+     * payload sizes of a negotiator with many parallel negotiations.
+     *
+     * @param i Index of entry.
+     * @return Builder of entry.
+     */
+    static ClientInboxEntryBuilder entryOf(final int i) {
+        final var type = TYPES[i % TYPES.length];
+        final var builder = new ClientInboxEntryBuilder()
+            .type(type)
+            .id(i / TYPES.length + 1);
+        if (type == ClientInboxEntry.Type.OFFER_FAULT) {
+            builder.error("Negotiation " + (i / TYPES.length + 1) + " failed; " +
+                "counter-party did not respond within the validity period of the offer");
+        }
+        return builder;
+    }
+
+    @Benchmark
+    public byte[] encodeEntry() {
+        buffer.clear();
+        buffer.writeDto(dtos.get((int) from));
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodePage() {
+        final var start = (int) Math.min(from, entries - limit);
+        return JsonBuffer.encode(dtos.subList(Math.max(start, 0), Math.min(start + limit, entries)));
+    }
+
+    @Benchmark
+    public InboxLog.Page readPage() {
+        return inboxLog.readPage(from, limit);
+    }
+}
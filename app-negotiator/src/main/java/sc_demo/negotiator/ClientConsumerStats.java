@@ -0,0 +1,17 @@
+package sc_demo.negotiator;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ClientConsumerStats {
+    String service();
+    long hits();
+    long misses();
+    long refreshes();
+    long invalidations();
+    long failures();
+    long connects();
+    long reuses();
+}
@@ -0,0 +1,11 @@
+package sc_demo.negotiator;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ClientEventStats {
+    long published();
+    long failed();
+}
@@ -1,6 +1,7 @@
 package sc_demo.negotiator;
 
 import se.arkalix.core.plugin.cp.TrustedContractOffer;
+import se.arkalix.dto.DtoReadableAs;
 import se.arkalix.dto.DtoWritableAs;
 import se.arkalix.dto.json.value.JsonObject;
 
@@ -8,8 +9,10 @@ import java.util.Optional;
 
 import static se.arkalix.dto.DtoEncoding.JSON;
 
+@DtoReadableAs(JSON)
 @DtoWritableAs(JSON)
 public interface ClientInboxEntry {
+    long sequence();
     Type type();
     long id();
     Optional<TrustedContractOffer> offer();
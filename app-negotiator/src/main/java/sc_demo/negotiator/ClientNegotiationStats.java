@@ -0,0 +1,12 @@
+package sc_demo.negotiator;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ClientNegotiationStats {
+    int pending();
+    long completed();
+    long expired();
+}
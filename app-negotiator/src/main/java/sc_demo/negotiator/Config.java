@@ -9,6 +9,8 @@ import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -124,6 +126,68 @@ public class Config {
         return list;
     }
 
+    public InboxRetention inboxRetention() {
+        return new InboxRetention(
+            getInt("app.inbox.max-entries", 10000),
+            getDuration("app.inbox.max-age", null),
+            getDuration("app.inbox.terminal-retention", null));
+    }
+
+    public Path inboxJournalPathOrNull() {
+        final var path = getString("app.inbox.journal.path", null);
+        return path != null ? Path.of(path) : null;
+    }
+
+    public long inboxJournalSegmentSize() {
+        return getInt("app.inbox.journal.segment-size", 64 * 1024 * 1024);
+    }
+
+    public InboxJournal.FsyncPolicy inboxJournalFsyncPolicy() {
+        final var policy = getString("app.inbox.journal.fsync", "INTERVAL");
+        try {
+            return InboxJournal.FsyncPolicy.valueOf(policy.trim().toUpperCase());
+        }
+        catch (final IllegalArgumentException exception) {
+            throw new IllegalStateException("Property 'app.inbox.journal.fsync' not one of ALWAYS, INTERVAL or NEVER in '" + path + "'", exception);
+        }
+    }
+
+    public Duration inboxJournalFsyncInterval() {
+        return getDuration("app.inbox.journal.fsync-interval", Duration.ofSeconds(1));
+    }
+
+    public int inboxDefaultLimit() {
+        return getInt("app.inbox.default-limit", 500);
+    }
+
+    public int inboxMaxLimit() {
+        return getInt("app.inbox.max-limit", 5000);
+    }
+
+    public Duration inboxMaxWait() {
+        return getDuration("app.inbox.max-wait", Duration.ofSeconds(25));
+    }
+
+    public int definitionCacheCapacity() {
+        return getInt("app.definitions.cache-capacity", 4096);
+    }
+
+    public Duration definitionBatchWindow() {
+        return getDuration("app.definitions.batch-window", Duration.ofMillis(10));
+    }
+
+    public int definitionBatchSize() {
+        return getInt("app.definitions.batch-size", 64);
+    }
+
+    public Duration consumerTimeToLive() {
+        return getDuration("app.consumers.time-to-live", Duration.ofMinutes(5));
+    }
+
+    public int offerTombstoneCapacity() {
+        return getInt("app.offers.tombstone-capacity", 4096);
+    }
+
     private String getString(final String name, final String defaultValue) {
         final var property = properties.getProperty(name);
         if (property == null) {
@@ -153,6 +217,19 @@ public class Config {
         }
     }
 
+    private Duration getDuration(final String name, final Duration defaultValue) {
+        final var property = properties.getProperty(name);
+        if (property == null) {
+            return defaultValue;
+        }
+        try {
+            return Duration.parse(property.trim());
+        }
+        catch (final DateTimeParseException exception) {
+            throw new IllegalStateException("Property '" + name + "' not a valid ISO-8601 duration in '" + path + "'", exception);
+        }
+    }
+
     private int getIntOrThrow(final String name) {
         final var property = getStringOrThrow(name);
         try {
@@ -0,0 +1,294 @@
+package sc_demo.negotiator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.Completion;
+import se.arkalix.ArSystem;
+import se.arkalix.net.http.consumer.HttpConsumer;
+import se.arkalix.net.http.consumer.HttpConsumerConnection;
+import se.arkalix.net.http.consumer.HttpConsumerRequest;
+import se.arkalix.net.http.consumer.HttpConsumerResponse;
+import se.arkalix.util.concurrent.Future;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static se.arkalix.descriptor.EncodingDescriptor.JSON;
+
+/**
+ * Cache of resolved {@link HttpConsumer HTTP consumers}, indexed by the names
+ * of the services they consume, and of connections established via them.
+ * <p>
+ * Resolving a consumer requires a complete orchestration cycle, which is why
+ * resolved consumers are reused until their time-to-live expires or until
+ * they are invalidated due to a failed request. Consumers that are used
+ * before three quarters of their time-to-live has passed are re-resolved in
+ * the background, which means that frequently used consumers are rarely
+ * resolved on the hot path.
+ * <p>
+ * Requests sent via {@link #send(String, Function, Function)} share one
+ * kept-alive connection per cached consumer, which means that a TLS
+ * handshake only is performed when a consumer is resolved or when its
+ * connection is found to be dead. Connections of consumers that are
+ * replaced or invalidated are closed as soon as no requests are in flight
+ * through them.
+ */
+public class ConsumerCache {
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerCache.class);
+
+    private final ArSystem system;
+    private final Duration timeToLive;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public ConsumerCache(final ArSystem system, final Duration timeToLive, final ScheduledExecutorService scheduler) {
+        this.system = Objects.requireNonNull(system);
+        this.timeToLive = Objects.requireNonNull(timeToLive);
+        this.scheduler = Objects.requireNonNull(scheduler);
+    }
+
+    /**
+     * Gets cached consumer of named service, or resolves a new one if no
+     * valid such is cached. Callers waiting for the same resolution each
+     * receive their own future, which may be cancelled without affecting
+     * the others.
+     *
+     * @param serviceName Name of service to consume.
+     * @return Future completed with consumer.
+     */
+    public Future<HttpConsumer> get(final String serviceName) {
+        final Completion<HttpConsumer> completion;
+        synchronized (this) {
+            final var entry = entries.computeIfAbsent(serviceName, Entry::new);
+            if (entry.consumer != null && System.nanoTime() - entry.resolvedAt < timeToLive.toNanos()) {
+                entry.hits.incrementAndGet();
+                entry.isUsedSinceResolve = true;
+                return Future.success(entry.consumer);
+            }
+            entry.misses.incrementAndGet();
+            if (entry.pending != null) {
+                return entry.pending.fork();
+            }
+            completion = entry.pending = new Completion<>();
+        }
+        resolve(serviceName, completion);
+        return completion.fork();
+    }
+
+    /**
+     * Sends request to named service via the connection of its cached
+     * consumer, resolving a new consumer or establishing a new connection
+     * only if no valid such is cached.
+     * <p>
+     * The consumer, and with it its connection, is invalidated if sending
+     * the request or handling its response fails.
+     *
+     * @param serviceName     Name of service to consume.
+     * @param requestOf       Function creating request to send, given the
+     *                        consumer it is sent via.
+     * @param responseHandler Function handling received response.
+     * @param <R>             Type of value produced by response handler.
+     * @return Future completed with value produced by response handler.
+     */
+    public <R> Future<R> send(
+        final String serviceName,
+        final Function<HttpConsumer, HttpConsumerRequest> requestOf,
+        final Function<HttpConsumerResponse, Future<R>> responseHandler
+    ) {
+        return get(serviceName).flatMap(consumer -> {
+            final var channel = channelOf(serviceName, consumer);
+            return channel.connection
+                .flatMap(connection -> connection.send(requestOf.apply(consumer)))
+                .flatMap(responseHandler::apply)
+                .ifSuccess(ignored -> release(channel))
+                .ifFailure(Throwable.class, fault -> {
+                    release(channel);
+                    invalidate(serviceName, consumer);
+                });
+        });
+    }
+
+    /**
+     * Removes given consumer from this cache, if it is the one currently
+     * cached for the named service, and closes its connection as soon as
+     * no requests are in flight through it. Should be called whenever a
+     * request sent via a cached consumer fails.
+     *
+     * @param serviceName Name of service consumed by {@code consumer}.
+     * @param consumer    Consumer to invalidate.
+     */
+    public synchronized void invalidate(final String serviceName, final HttpConsumer consumer) {
+        final var entry = entries.get(serviceName);
+        if (entry != null && entry.consumer == consumer) {
+            entry.consumer = null;
+            entry.invalidations.incrementAndGet();
+            logger.debug("Invalidated cached consumer of \"{}\"", serviceName);
+        }
+        if (entry != null && entry.channel != null && entry.channel.consumer == consumer) {
+            retire(entry.channel);
+            entry.channel = null;
+        }
+    }
+
+    /**
+     * @return Hit, miss and refresh statistics for each service with a
+     * cached consumer.
+     */
+    public synchronized List<ClientConsumerStatsDto> stats() {
+        final var stats = new ArrayList<ClientConsumerStatsDto>(entries.size());
+        for (final var entry : entries.values()) {
+            stats.add(new ClientConsumerStatsBuilder()
+                .service(entry.serviceName)
+                .hits(entry.hits.get())
+                .misses(entry.misses.get())
+                .refreshes(entry.refreshes.get())
+                .invalidations(entry.invalidations.get())
+                .failures(entry.failures.get())
+                .connects(entry.connects.get())
+                .reuses(entry.reuses.get())
+                .build());
+        }
+        return stats;
+    }
+
+    private void resolve(final String serviceName, final Completion<HttpConsumer> completion) {
+        system.consume()
+            .name(serviceName)
+            .encodings(JSON)
+            .oneUsing(HttpConsumer.factory())
+            .ifSuccess(consumer -> {
+                synchronized (this) {
+                    final var entry = entries.get(serviceName);
+                    entry.consumer = consumer;
+                    entry.resolvedAt = System.nanoTime();
+                    entry.isUsedSinceResolve = false;
+                    entry.pending = null;
+                }
+                scheduleRefresh(serviceName);
+                completion.complete(consumer);
+            })
+            .onFailure(fault -> {
+                synchronized (this) {
+                    final var entry = entries.get(serviceName);
+                    entry.failures.incrementAndGet();
+                    entry.pending = null;
+                }
+                completion.fail(fault);
+            });
+    }
+
+    private Channel channelOf(final String serviceName, final HttpConsumer consumer) {
+        final Channel channel;
+        synchronized (this) {
+            final var entry = entries.get(serviceName);
+            final var current = entry.channel;
+            if (current != null && current.consumer == consumer && !current.isRetired
+                && (current.established == null || current.established.isLive()))
+            {
+                current.inFlight += 1;
+                entry.reuses.incrementAndGet();
+                return current;
+            }
+            if (current != null) {
+                retire(current);
+            }
+            channel = entry.channel = new Channel(consumer);
+            channel.inFlight += 1;
+            entry.connects.incrementAndGet();
+        }
+        consumer.connect()
+            .ifSuccess(connection -> {
+                final boolean isRetired;
+                synchronized (this) {
+                    channel.established = connection;
+                    isRetired = channel.isRetired && channel.inFlight == 0;
+                }
+                if (isRetired) {
+                    connection.close();
+                }
+                channel.connection.complete(connection);
+            })
+            .onFailure(fault -> {
+                synchronized (this) {
+                    channel.isRetired = true;
+                }
+                channel.connection.fail(fault);
+            });
+        return channel;
+    }
+
+    private synchronized void release(final Channel channel) {
+        channel.inFlight -= 1;
+        if (channel.isRetired && channel.inFlight == 0 && channel.established != null) {
+            channel.established.close();
+        }
+    }
+
+    private void retire(final Channel channel) {
+        channel.isRetired = true;
+        if (channel.inFlight == 0 && channel.established != null) {
+            channel.established.close();
+        }
+    }
+
+    private void scheduleRefresh(final String serviceName) {
+        scheduler.schedule(() -> {
+            final Completion<HttpConsumer> completion;
+            synchronized (this) {
+                final var entry = entries.get(serviceName);
+                if (entry.consumer == null || !entry.isUsedSinceResolve || entry.pending != null) {
+                    return;
+                }
+                entry.refreshes.incrementAndGet();
+                completion = entry.pending = new Completion<>();
+            }
+            resolve(serviceName, completion);
+            completion.onFailure(fault -> logger.warn("Failed to " +
+                "refresh consumer of \"" + serviceName + "\"", fault));
+        }, timeToLive.toMillis() * 3 / 4, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Entry {
+        private final String serviceName;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong refreshes = new AtomicLong();
+        private final AtomicLong invalidations = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong connects = new AtomicLong();
+        private final AtomicLong reuses = new AtomicLong();
+
+        private HttpConsumer consumer = null;
+        private Channel channel = null;
+        private long resolvedAt = 0;
+        private boolean isUsedSinceResolve = false;
+        private Completion<HttpConsumer> pending = null;
+
+        private Entry(final String serviceName) {
+            this.serviceName = serviceName;
+        }
+    }
+
+    private static class Channel {
+        private final HttpConsumer consumer;
+        private final Completion<HttpConsumerConnection> connection = new Completion<>();
+
+        private HttpConsumerConnection established = null;
+        private int inFlight = 0;
+        private boolean isRetired = false;
+
+        private Channel(final HttpConsumer consumer) {
+            this.consumer = consumer;
+        }
+    }
+}
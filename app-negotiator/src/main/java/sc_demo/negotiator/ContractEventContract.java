@@ -0,0 +1,13 @@
+package sc_demo.negotiator;
+
+import se.arkalix.dto.DtoWritableAs;
+
+import java.util.Map;
+
+import static se.arkalix.dto.DtoEncoding.JSON;
+
+@DtoWritableAs(JSON)
+public interface ContractEventContract {
+    String templateName();
+    Map<String, String> arguments();
+}
@@ -0,0 +1,88 @@
+package sc_demo.negotiator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.JsonBuffer;
+import se.arkalix.core.plugin.cp.TrustedContractOfferDto;
+import se.arkalix.core.plugin.eh.ArEventPublisherPluginFacade;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes events about terminated negotiations via the event handler core
+ * system, letting other systems learn about accepted, rejected and expired
+ * negotiations without polling.
+ * <p>
+ * Every event is published on the {@link ContractEvent.Type#topic() topic}
+ * of its type, with the negotiation identifier and any known offeror and
+ * receiver names as metadata, which subscribers may use to filter events.
+ * Publishing is fire-and-forget; failures are logged and counted, but not
+ * retried, as the event handler offers no delivery guarantees to
+ * subscribers either way.
+ */
+public class ContractEventPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(ContractEventPublisher.class);
+
+    private final ArEventPublisherPluginFacade publisher;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public ContractEventPublisher(final ArEventPublisherPluginFacade publisher) {
+        this.publisher = Objects.requireNonNull(publisher);
+    }
+
+    /**
+     * Publishes event about given negotiation.
+     *
+     * @param type          Type of event.
+     * @param negotiationId Identifier of negotiation.
+     * @param offer         Last offer of negotiation, or {@code null} if not
+     *                      known.
+     */
+    public void publish(final ContractEvent.Type type, final long negotiationId, final TrustedContractOfferDto offer) {
+        final var contracts = new ArrayList<ContractEventContractDto>();
+        final var builder = new ContractEventBuilder()
+            .type(type)
+            .negotiationId(negotiationId)
+            .publishedAt(Instant.now());
+        final Map<String, String> metadata;
+        if (offer != null) {
+            for (final var contract : offer.contracts()) {
+                contracts.add(new ContractEventContractBuilder()
+                    .templateName(contract.templateName())
+                    .arguments(contract.arguments())
+                    .build());
+            }
+            builder.offerorName(offer.offerorName())
+                .receiverName(offer.receiverName());
+            metadata = Map.of(
+                "negotiation-id", Long.toString(negotiationId),
+                "offeror", offer.offerorName(),
+                "receiver", offer.receiverName());
+        }
+        else {
+            metadata = Map.of("negotiation-id", Long.toString(negotiationId));
+        }
+        final var data = new String(JsonBuffer.encode(builder.contracts(contracts).build()), StandardCharsets.UTF_8);
+
+        publisher.publish(type.topic(), metadata, data)
+            .ifSuccess(ignored -> published.incrementAndGet())
+            .onFailure(fault -> {
+                failed.incrementAndGet();
+                logger.warn("Failed to publish {} event of negotiation {}", type, negotiationId, fault);
+            });
+    }
+
+    public ClientEventStatsDto stats() {
+        return new ClientEventStatsBuilder()
+            .published(published.get())
+            .failed(failed.get())
+            .build();
+    }
+}
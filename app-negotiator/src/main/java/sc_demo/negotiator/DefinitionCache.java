@@ -0,0 +1,300 @@
+package sc_demo.negotiator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.Completion;
+import se.arkalix.dto.json.value.JsonArray;
+import se.arkalix.dto.json.value.JsonObject;
+import se.arkalix.dto.json.value.JsonString;
+import se.arkalix.dto.json.value.JsonType;
+import se.arkalix.internal.core.plugin.Paths;
+import se.arkalix.net.http.consumer.HttpConsumerRequest;
+import se.arkalix.util.concurrent.Future;
+import se.arkalix.util.concurrent.Futures;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static se.arkalix.net.http.HttpMethod.GET;
+
+/**
+ * In-process cache of the contract definitions held by the contract proxy
+ * consumed via the "trusted-contract-negotiation" service.
+ * <p>
+ * Definitions are indexed by each of their hashes, formatted as {@code
+ * algorithm:sum}, and are evicted in least-recently-used order when the
+ * cache holds more than a configured number of definitions. Requests for
+ * definitions that are already in flight are never duplicated. Which
+ * definitions have been announced for which negotiations is tracked by the
+ * {@link InboxLog} they are announced via.
+ * <p>
+ * Hashes not already known are collected into batches, which are sent to
+ * the contract proxy as single requests when either a batch window expires
+ * or a maximum batch size is reached. This means that bursts of negotiation
+ * events referring to many definitions only cause a few requests. The
+ * received definitions are then handed out to each party that asked for
+ * any of them.
+ */
+public class DefinitionCache {
+    private static final Logger logger = LoggerFactory.getLogger(DefinitionCache.class);
+
+    private static final String SERVICE_NAME = "trusted-contract-negotiation";
+
+    private final ConsumerCache consumers;
+    private final int capacity;
+    private final ScheduledExecutorService scheduler;
+    private final Duration batchWindow;
+    private final int batchSize;
+
+    private final Map<String, JsonObject> definitionsByHash;
+    private final Map<String, Completion<Map<String, JsonObject>>> hashRequestsInFlight = new HashMap<>();
+    private final Map<Long, Completion<List<JsonObject>>> idRequestsInFlight = new HashMap<>();
+
+    private Batch batch = null;
+
+    public DefinitionCache(
+        final ConsumerCache consumers,
+        final int capacity,
+        final ScheduledExecutorService scheduler,
+        final Duration batchWindow,
+        final int batchSize
+    ) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Expected capacity > 0");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Expected batchSize > 0");
+        }
+        this.consumers = Objects.requireNonNull(consumers);
+        this.capacity = capacity;
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.batchWindow = Objects.requireNonNull(batchWindow);
+        this.batchSize = batchSize;
+
+        definitionsByHash = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, JsonObject> eldest) {
+                return size() > DefinitionCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Collects all definitions related to the negotiation with the given
+     * identifier.
+     * <p>
+     * As new definitions may be related to a negotiation at any time, this
+     * method always queries the contract proxy, unless an identical query is
+     * already in flight. All received definitions are cached. Each caller
+     * receives its own future, which may be cancelled without affecting
+     * other callers waiting for the same query.
+     *
+     * @param negotiationId Negotiation identifier.
+     * @return Future completed with list of related definitions.
+     */
+    public Future<List<JsonObject>> getByNegotiationId(final long negotiationId) {
+        final Completion<List<JsonObject>> completion;
+        synchronized (this) {
+            final var inFlight = idRequestsInFlight.get(negotiationId);
+            if (inFlight != null) {
+                return inFlight.fork();
+            }
+            completion = new Completion<>();
+            idRequestsInFlight.put(negotiationId, completion);
+        }
+
+        fetch("id", Long.toString(negotiationId))
+            .ifSuccess(definitions -> {
+                synchronized (this) {
+                    idRequestsInFlight.remove(negotiationId);
+                    for (final var definition : definitions) {
+                        for (final var hash : hashesOf(definition)) {
+                            definitionsByHash.put(hash, definition);
+                        }
+                    }
+                }
+                completion.complete(definitions);
+            })
+            .onFailure(fault -> {
+                synchronized (this) {
+                    idRequestsInFlight.remove(negotiationId);
+                }
+                completion.fail(fault);
+            });
+
+        return completion.fork();
+    }
+
+    /**
+     * Collects the definitions identified by given hashes, only querying the
+     * contract proxy for those hashes not already cached or in flight.
+     *
+     * @param hashes Definition hashes, formatted as {@code algorithm:sum}.
+     * @return Future completed with list of unique definitions matching
+     * given hashes, in no particular order.
+     */
+    public Future<List<JsonObject>> getByHashes(final Collection<String> hashes) {
+        final var result = new LinkedHashMap<JsonObject, Boolean>();
+        final var pending = new LinkedHashSet<Completion<Map<String, JsonObject>>>();
+        final var batchesToSend = new ArrayList<Batch>(0);
+        final var batchesToSchedule = new ArrayList<Batch>(0);
+
+        synchronized (this) {
+            for (final var hash : new LinkedHashSet<>(hashes)) {
+                final var definition = definitionsByHash.get(hash);
+                if (definition != null) {
+                    result.put(definition, true);
+                    continue;
+                }
+                final var inFlight = hashRequestsInFlight.get(hash);
+                if (inFlight != null) {
+                    pending.add(inFlight);
+                    continue;
+                }
+                if (batch == null) {
+                    batch = new Batch();
+                    batchesToSchedule.add(batch);
+                }
+                batch.hashes.add(hash);
+                hashRequestsInFlight.put(hash, batch.completion);
+                pending.add(batch.completion);
+                if (batch.hashes.size() >= batchSize) {
+                    batch.isSent = true;
+                    batchesToSend.add(batch);
+                    batch = null;
+                }
+            }
+        }
+        for (final var full : batchesToSend) {
+            send(full);
+        }
+        for (final var created : batchesToSchedule) {
+            if (batchWindow.isZero()) {
+                sendIfPending(created);
+            }
+            else {
+                scheduler.schedule(() -> sendIfPending(created), batchWindow.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return Future.success(new ArrayList<>(result.keySet()));
+        }
+        return Futures.serialize(pending.stream().map(Completion::fork))
+            .map(maps -> {
+                for (final var map : maps) {
+                    for (final var hash : hashes) {
+                        final var definition = map.get(hash);
+                        if (definition != null) {
+                            result.put(definition, true);
+                        }
+                    }
+                }
+                return new ArrayList<>(result.keySet());
+            });
+    }
+
+    private void sendIfPending(final Batch batch) {
+        synchronized (this) {
+            if (batch.isSent) {
+                return;
+            }
+            batch.isSent = true;
+            if (this.batch == batch) {
+                this.batch = null;
+            }
+        }
+        send(batch);
+    }
+
+    private void send(final Batch batch) {
+        final var hashes = batch.hashes;
+        final var completion = batch.completion;
+        fetch("hash", String.join(",", hashes))
+            .ifSuccess(definitions -> {
+                final var fetched = new HashMap<String, JsonObject>();
+                synchronized (this) {
+                    for (final var definition : definitions) {
+                        for (final var hash : hashesOf(definition)) {
+                            definitionsByHash.put(hash, definition);
+                            fetched.put(hash, definition);
+                        }
+                    }
+                    for (final var hash : hashes) {
+                        hashRequestsInFlight.remove(hash);
+                    }
+                }
+                completion.complete(fetched);
+            })
+            .onFailure(fault -> {
+                synchronized (this) {
+                    for (final var hash : hashes) {
+                        hashRequestsInFlight.remove(hash);
+                    }
+                }
+                completion.fail(fault);
+            });
+    }
+
+    private Future<List<JsonObject>> fetch(final String parameterName, final String parameterValue) {
+        logger.debug("Fetching definitions with {}={}", parameterName, parameterValue);
+        return consumers.send(SERVICE_NAME,
+            consumer -> new HttpConsumerRequest()
+                .method(GET)
+                .path(Paths.combine(consumer.service().uri(), "definitions"))
+                .queryParameter(parameterName, parameterValue),
+            response -> response.bodyAsListIfSuccess(JsonObject.class));
+    }
+
+    /**
+     * Gets the hashes of given definition, each formatted as {@code
+     * algorithm:sum}.
+     *
+     * @param definition Definition, expected to contain a "hashes" array of
+     *                   objects with "algorithm" and "sum" members.
+     * @return List of hashes, which is empty if none could be found.
+     */
+    public static List<String> hashesOf(final JsonObject definition) {
+        final var hashes = memberOf(definition, "hashes");
+        if (!(hashes instanceof JsonArray)) {
+            return Collections.emptyList();
+        }
+        final var result = new ArrayList<String>(1);
+        for (final var element : ((JsonArray) hashes).elements()) {
+            if (!(element instanceof JsonObject)) {
+                continue;
+            }
+            final var algorithm = memberOf((JsonObject) element, "algorithm");
+            final var sum = memberOf((JsonObject) element, "sum");
+            if (algorithm instanceof JsonString && sum instanceof JsonString) {
+                result.add(((JsonString) algorithm).value() + ":" + ((JsonString) sum).value());
+            }
+        }
+        return result;
+    }
+
+    private static JsonType memberOf(final JsonObject object, final String name) {
+        for (final var pair : object.pairs()) {
+            if (pair.name().equals(name)) {
+                return pair.value();
+            }
+        }
+        return null;
+    }
+
+    private static class Batch {
+        private final List<String> hashes = new ArrayList<>();
+        private final Completion<Map<String, JsonObject>> completion = new Completion<>();
+        private boolean isSent = false;
+    }
+}
@@ -0,0 +1,435 @@
+package sc_demo.negotiator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only on-disk journal of JSON-encoded {@link ClientInboxEntry}
+ * records.
+ * <p>
+ * The journal consists of a directory of segment files, each named after
+ * the sequence number of its first record. Every record consists of a fixed
+ * size header, holding the sequence number, append time, type, negotiation
+ * identifier and checksum of the entry, followed by the JSON-encoded entry
+ * itself. The checksum covers both the entry and the header fields
+ * following it. When replayed, segments are memory-mapped and only record headers
+ * are interpreted, which means that entries are handed back as read-only
+ * slices of the mapped segments, without ever being copied or deserialized
+ * by the journal. A torn record at the end of the last segment, caused by
+ * the application being terminated while writing it, is discarded. A
+ * damaged record in any other segment causes that segment to be truncated
+ * at the damaged record, after which replay continues with the next
+ * segment.
+ * <p>
+ * Appended records are handed to a dedicated writer thread, which means
+ * that appending never waits for disk I/O. The writer writes and forces
+ * records in batches of whatever records are queued when it becomes ready.
+ * When written records are forced to disk is determined by a {@link
+ * FsyncPolicy}.
+ */
+public class InboxJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(InboxJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 1 + 8;
+    private static final int CHECKSUMMED_HEADER_OFFSET = 4 + 4;
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final Record CLOSE = new Record(0, 0, null, 0, null);
+
+    private static final ClientInboxEntry.Type[] TYPES = ClientInboxEntry.Type.values();
+
+    private final Path directory;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final List<Segment> segments = new ArrayList<>();
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    // Only accessed by the writer thread.
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final CRC32 crc32 = new CRC32();
+    private FileChannel channel = null;
+    private Segment segment = null;
+    private boolean isDirty = false;
+    private long forceDeadline = 0;
+
+    public InboxJournal(
+        final Path directory,
+        final long segmentSize,
+        final FsyncPolicy fsyncPolicy,
+        final Duration fsyncInterval
+    ) {
+        this.directory = Objects.requireNonNull(directory);
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = Objects.requireNonNull(fsyncPolicy);
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+
+        try {
+            Files.createDirectories(directory);
+            try (final var paths = Files.list(directory)) {
+                for (final var path : paths
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .collect(Collectors.toList()))
+                {
+                    final var name = path.getFileName().toString();
+                    try {
+                        segments.add(new Segment(path, Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+                    }
+                    catch (final NumberFormatException exception) {
+                        logger.warn("Ignoring unexpected file in inbox journal directory: {}", path);
+                    }
+                }
+            }
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        segments.sort((a, b) -> Long.compare(a.firstSequence, b.firstSequence));
+
+        writer = new Thread(this::write, "inbox-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reads all valid records in this journal, in order, handing each of
+     * them to given consumer.
+     * <p>
+     * Must be called before any record is appended.
+     *
+     * @param consumer Function receiving replayed records.
+     */
+    public void replay(final RecordConsumer consumer) {
+        var recordCount = 0L;
+        final var startedAt = System.nanoTime();
+        final var crc32 = new CRC32();
+        for (var i = 0; i < segments.size(); ++i) {
+            final var segment = segments.get(i);
+            try (final var channel = FileChannel.open(segment.path, READ, WRITE)) {
+                final var length = channel.size();
+                final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                var position = 0;
+                while (position + HEADER_SIZE <= length) {
+                    buffer.position(position);
+                    final var payloadLength = buffer.getInt();
+                    final var checksum = buffer.getInt();
+                    final var sequence = buffer.getLong();
+                    final var appendedAt = buffer.getLong();
+                    final var typeOrdinal = buffer.get();
+                    final var id = buffer.getLong();
+                    if (payloadLength < 0 || position + HEADER_SIZE + payloadLength > length
+                        || typeOrdinal < 0 || typeOrdinal >= TYPES.length)
+                    {
+                        break;
+                    }
+                    final var payload = buffer.slice().limit(payloadLength);
+                    crc32.reset();
+                    crc32.update(buffer.duplicate().position(position + CHECKSUMMED_HEADER_OFFSET).limit(position + HEADER_SIZE));
+                    crc32.update(payload.duplicate());
+                    if ((int) crc32.getValue() != checksum) {
+                        break;
+                    }
+                    consumer.accept(sequence, appendedAt, TYPES[typeOrdinal], id, payload.asReadOnlyBuffer());
+                    position += HEADER_SIZE + payloadLength;
+                    recordCount += 1;
+                }
+                if (position < length) {
+                    if (i + 1 < segments.size()) {
+                        logger.error("Inbox journal segment {} is damaged at offset {}; discarding its " +
+                            "remaining {} bytes and continuing with the next segment", segment.path, position,
+                            length - position);
+                    }
+                    else {
+                        logger.warn("Discarding {} bytes of incomplete records at end of {}", length - position, segment.path);
+                    }
+                    channel.truncate(position);
+                }
+                segment.size = position;
+            }
+            catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        logger.info("Replayed {} inbox journal records from {} segments in {} ms", recordCount, segments.size(),
+            (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    /**
+     * Queues record for being written to the end of this journal.
+     *
+     * @param sequence   Entry sequence number.
+     * @param appendedAt Time at which entry was appended, in milliseconds since
+     *                   the Unix epoch.
+     * @param type       Entry type.
+     * @param id         Entry negotiation identifier.
+     * @param payload    JSON-encoded entry.
+     */
+    public void append(
+        final long sequence,
+        final long appendedAt,
+        final ClientInboxEntry.Type type,
+        final long id,
+        final byte[] payload
+    ) {
+        queue.add(new Record(sequence, appendedAt, type, id, payload));
+    }
+
+    /**
+     * Deletes all segments containing only records with sequence numbers
+     * lower than {@code sequence}.
+     *
+     * @param sequence Sequence number of oldest record to retain.
+     */
+    public void truncateBefore(final long sequence) {
+        while (true) {
+            final Segment segment;
+            synchronized (segments) {
+                if (segments.size() <= 1 || segments.get(1).firstSequence > sequence) {
+                    return;
+                }
+                segment = segments.remove(0);
+            }
+            try {
+                Files.deleteIfExists(segment.path);
+            }
+            catch (final IOException exception) {
+                logger.warn("Failed to delete inbox journal segment " + segment.path, exception);
+            }
+        }
+    }
+
+    /**
+     * Writes all queued records, forces them to disk unless the fsync
+     * policy is {@link FsyncPolicy#NEVER NEVER}, and then closes this
+     * journal.
+     */
+    @Override
+    public void close() throws IOException {
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        }
+        catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing inbox journal", exception);
+        }
+    }
+
+    private void write() {
+        final var batch = new ArrayList<Record>(MAX_BATCH_SIZE);
+        try {
+            while (true) {
+                final Record first;
+                if (isDirty && fsyncPolicy == FsyncPolicy.INTERVAL) {
+                    first = queue.poll(forceDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        force();
+                        continue;
+                    }
+                }
+                else {
+                    first = queue.take();
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                var isClosing = false;
+                for (final var record : batch) {
+                    if (record == CLOSE) {
+                        isClosing = true;
+                        break;
+                    }
+                    write(record);
+                }
+                batch.clear();
+
+                if (fsyncPolicy == FsyncPolicy.ALWAYS || isClosing && fsyncPolicy != FsyncPolicy.NEVER
+                    || fsyncPolicy == FsyncPolicy.INTERVAL && System.nanoTime() - forceDeadline >= 0)
+                {
+                    force();
+                }
+                if (isClosing) {
+                    if (channel != null) {
+                        channel.close();
+                        channel = null;
+                    }
+                    return;
+                }
+            }
+        }
+        catch (final InterruptedException exception) {
+            logger.warn("Inbox journal writer interrupted; {} queued records not written", queue.size());
+        }
+        catch (final IOException exception) {
+            logger.error("Failed to close inbox journal", exception);
+        }
+    }
+
+    private void write(final Record record) {
+        try {
+            if (segment == null) {
+                synchronized (segments) {
+                    segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                }
+            }
+            if (segment == null || segment.size >= segmentSize) {
+                roll(record.sequence);
+            }
+            if (channel == null) {
+                channel = FileChannel.open(segment.path, CREATE, WRITE);
+                channel.position(segment.size);
+            }
+
+            header.clear();
+            header.putInt(record.payload.length)
+                .putInt(0)
+                .putLong(record.sequence)
+                .putLong(record.appendedAt)
+                .put((byte) record.type.ordinal())
+                .putLong(record.id)
+                .flip();
+            crc32.reset();
+            crc32.update(header.array(), CHECKSUMMED_HEADER_OFFSET, HEADER_SIZE - CHECKSUMMED_HEADER_OFFSET);
+            crc32.update(record.payload);
+            header.putInt(4, (int) crc32.getValue());
+
+            final var buffers = new ByteBuffer[]{header, ByteBuffer.wrap(record.payload)};
+            var remaining = (long) HEADER_SIZE + record.payload.length;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            segment.size += HEADER_SIZE + record.payload.length;
+
+            if (!isDirty) {
+                isDirty = true;
+                forceDeadline = System.nanoTime() + fsyncIntervalNanos;
+            }
+        }
+        catch (final IOException exception) {
+            logger.error("Failed to write inbox journal record " + record.sequence, exception);
+        }
+    }
+
+    private void roll(final long firstSequence) throws IOException {
+        if (channel != null) {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                channel.force(false);
+            }
+            channel.close();
+            channel = null;
+        }
+        isDirty = false;
+        segment = new Segment(directory.resolve(String.format("%020d", firstSequence) + SEGMENT_SUFFIX), firstSequence);
+        synchronized (segments) {
+            segments.add(segment);
+        }
+    }
+
+    private void force() {
+        if (!isDirty || channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            isDirty = false;
+        }
+        catch (final IOException exception) {
+            logger.error("Failed to force inbox journal to disk", exception);
+        }
+    }
+
+    /**
+     * Determines when records written to an {@link InboxJournal} are forced
+     * to disk.
+     */
+    public enum FsyncPolicy {
+        /**
+         * Every batch of written records is forced to disk before the next
+         * batch is written.
+         */
+        ALWAYS,
+
+        /**
+         * Written records are forced to disk at a fixed interval.
+         */
+        INTERVAL,
+
+        /**
+         * Written records are never forced to disk, which leaves it to the
+         * operating system to decide when to write them.
+         */
+        NEVER,
+    }
+
+    @FunctionalInterface
+    public interface RecordConsumer {
+        /**
+         * Receives replayed record.
+         *
+         * @param sequence   Entry sequence number.
+         * @param appendedAt Time at which entry was appended, in
+         *                   milliseconds since the Unix epoch.
+         * @param type       Entry type.
+         * @param id         Entry negotiation identifier.
+         * @param payload    Read-only slice of mapped segment holding
+         *                   JSON-encoded entry, which remains valid after
+         *                   replay.
+         */
+        void accept(long sequence, long appendedAt, ClientInboxEntry.Type type, long id, ByteBuffer payload);
+    }
+
+    private static class Record {
+        private final long sequence;
+        private final long appendedAt;
+        private final ClientInboxEntry.Type type;
+        private final long id;
+        private final byte[] payload;
+
+        private Record(
+            final long sequence,
+            final long appendedAt,
+            final ClientInboxEntry.Type type,
+            final long id,
+            final byte[] payload
+        ) {
+            this.sequence = sequence;
+            this.appendedAt = appendedAt;
+            this.type = type;
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long firstSequence;
+        private long size;
+
+        private Segment(final Path path, final long firstSequence) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package sc_demo.negotiator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc_demo.common.Completion;
+import sc_demo.common.JsonBuffer;
+import se.arkalix.dto.binary.ByteArrayReader;
+import se.arkalix.dto.json.value.JsonObject;
+import se.arkalix.util.concurrent.Future;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of {@link ClientInboxEntry} records.
+ * <p>
+ * Every appended entry is assigned a monotonically increasing sequence
+ * number, starting at zero. Entries are held in a ring buffer, which means
+ * that the position of any sequence number can be computed directly, making
+ * it possible to locate any offset in constant time. If the log was replayed
+ * from a journal with missing records, the sequence numbers it holds are
+ * not contiguous, in which case offsets are instead located via binary
+ * search. Clients are never given the sequence numbers of missing records as
+ * cursors, which means that they skip any gaps without noticing them. Entries
+ * are only ever
+ * evicted from the head of the log, as determined by an {@link
+ * InboxRetention}. Clients that ask for entries that have already been
+ * evicted receive all entries still available, which they can detect by
+ * comparing the sequence number of the first received entry to the one they
+ * asked for. Clients that ask for entries beyond the next sequence number,
+ * which may happen if the log was restarted without a journal, immediately
+ * receive an empty page whose cursor is the next sequence number, from
+ * which they can continue reading.
+ * <p>
+ * Each entry is encoded as JSON once, when appended, after which only its
+ * encoded form is retained. Entries are read in {@link Page pages}, each of
+ * which is assembled by copying the already encoded entries it contains
+ * into a single byte array.
+ * <p>
+ * If an {@link InboxJournal} is provided, all appended entries are also
+ * written to it, which allows the log to be restored after restarts. Only
+ * the payloads of replayed records that are not immediately evicted are
+ * copied out of the journal. Journal segments holding only evicted entries
+ * are deleted periodically by the scheduler.
+ * <p>
+ * The hashes of the definitions in all {@link ClientInboxEntry.Type#DEFINITION
+ * DEFINITION} entries are tracked per entry identifier for as long as the
+ * log holds any entry of the same negotiation, which makes it possible to
+ * tell if a definition has already been announced via {@link
+ * #claimDefinition(long, JsonObject)}. When entries are replayed from a
+ * journal, only DEFINITION entries are decoded, in order to restore their
+ * hashes.
+ * <p>
+ * Clients may also wait for entries not yet appended via {@link
+ * #awaitFrom(long, int, Duration)}, in which case they are notified as soon
+ * as some entry becomes available.
+ */
+public class InboxLog {
+    private static final Logger logger = LoggerFactory.getLogger(InboxLog.class);
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final long JOURNAL_PRUNE_INTERVAL_MILLIS = 1000;
+
+    private static final byte[] PAGE_PREFIX = "{\"entries\":[".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] PAGE_INFIX = "],\"next\":".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final ThreadLocal<JsonBuffer> buffers = ThreadLocal.withInitial(() -> new JsonBuffer(4096));
+
+    private final InboxRetention retention;
+    private final ScheduledExecutorService scheduler;
+    private final InboxJournal journal;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private final Map<Long, Integer> entryCountByNegotiationId = new HashMap<>();
+    private final Map<Long, Long> terminatedAtByNegotiationId = new HashMap<>();
+    private final Map<Long, Set<String>> definitionHashesById = new HashMap<>();
+
+    private byte[][] entries;
+    private long[] sequences;
+    private long[] ids;
+    private long[] appendedAt;
+    private int head = 0;
+    private int size = 0;
+    private long nextSequence = 0;
+
+    public InboxLog(final InboxRetention retention, final ScheduledExecutorService scheduler) {
+        this(retention, scheduler, null);
+    }
+
+    /**
+     * Creates new inbox log, replaying all records of given journal, if any,
+     * before any new entries are appended to it.
+     *
+     * @param retention Policy determining when entries are evicted.
+     * @param scheduler Scheduler used to time out waiting clients and to
+     *                  prune the journal.
+     * @param journal   Journal to replay and write appended entries to, or
+     *                  {@code null}.
+     */
+    public InboxLog(
+        final InboxRetention retention,
+        final ScheduledExecutorService scheduler,
+        final InboxJournal journal
+    ) {
+        this.retention = Objects.requireNonNull(retention);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.journal = journal;
+
+        final var capacity = Math.min(INITIAL_CAPACITY, retention.maxEntries());
+        entries = new byte[capacity][];
+        sequences = new long[capacity];
+        ids = new long[capacity];
+        appendedAt = new long[capacity];
+
+        if (journal != null) {
+            replay(journal);
+            scheduler.scheduleWithFixedDelay(() -> journal.truncateBefore(firstSequence()),
+                JOURNAL_PRUNE_INTERVAL_MILLIS, JOURNAL_PRUNE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void replay(final InboxJournal journal) {
+        // Only the last maxEntries records can be retained, which is why
+        // any earlier records are dropped before their payloads are copied.
+        // Records missing from the journal leave gaps in the replayed
+        // sequence numbers, which are kept, as the records on both sides of
+        // a gap are still valid.
+        final var records = new ArrayDeque<ReplayedRecord>();
+        journal.replay((sequence, appendedAt, type, id, payload) -> {
+            final var last = records.peekLast();
+            if (last != null && sequence <= last.sequence) {
+                return;
+            }
+            records.addLast(new ReplayedRecord(sequence, appendedAt, type, id, payload));
+            if (records.size() > retention.maxEntries()) {
+                records.removeFirst();
+            }
+        });
+
+        final var maxAge = retention.maxAge();
+        final var now = System.currentTimeMillis();
+        for (final var record : records) {
+            nextSequence = record.sequence;
+            if (size == 0 && maxAge != null && now - record.appendedAt > maxAge.toMillis()) {
+                nextSequence += 1;
+                continue;
+            }
+            final var payload = new byte[record.payload.remaining()];
+            record.payload.get(payload);
+            append(record.type, record.id, payload, record.appendedAt);
+            if (record.type == ClientInboxEntry.Type.DEFINITION) {
+                try {
+                    ClientInboxEntryDto.readJson(new ByteArrayReader(payload))
+                        .definition()
+                        .ifPresent(definition -> addDefinitionHashes(record.id, DefinitionCache.hashesOf(definition)));
+                }
+                catch (final Exception exception) {
+                    logger.warn("Failed to decode definition of replayed inbox entry " + record.sequence, exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * Assigns a sequence number to the entry being built by {@code builder},
+     * builds it and then appends it to this log.
+     *
+     * @param builder Builder of entry to append.
+     * @return Built entry.
+     */
+    public ClientInboxEntryDto append(final ClientInboxEntryBuilder builder) {
+        final ClientInboxEntryDto entry;
+        final List<Waiter> waiters;
+        final List<Page> pages;
+        synchronized (this) {
+            entry = builder
+                .sequence(nextSequence)
+                .build();
+
+            final var buffer = buffers.get();
+            buffer.clear();
+            buffer.writeDto(entry);
+
+            final var encoded = buffer.toByteArray();
+            final var now = System.currentTimeMillis();
+            if (journal != null) {
+                journal.append(entry.sequence(), now, entry.type(), entry.id(), encoded);
+            }
+            append(entry.type(), entry.id(), encoded, now);
+            entry.definition().ifPresent(definition -> addDefinitionHashes(entry.id(), DefinitionCache.hashesOf(definition)));
+
+            if (this.waiters.isEmpty()) {
+                return entry;
+            }
+            waiters = new ArrayList<>(this.waiters.size());
+            pages = new ArrayList<>(this.waiters.size());
+            final var iterator = this.waiters.iterator();
+            while (iterator.hasNext()) {
+                final var waiter = iterator.next();
+                if (waiter.from < nextSequence) {
+                    iterator.remove();
+                    waiters.add(waiter);
+                    pages.add(readPage(waiter.from, waiter.limit));
+                }
+            }
+        }
+        for (var i = 0; i < waiters.size(); ++i) {
+            waiters.get(i).completion.complete(pages.get(i));
+        }
+        return entry;
+    }
+
+    private void append(final ClientInboxEntry.Type type, final long id, final byte[] encoded, final long now) {
+        evict(now, 1);
+        if (size == entries.length) {
+            grow();
+        }
+        final var index = (head + size) % entries.length;
+        entries[index] = encoded;
+        sequences[index] = nextSequence;
+        ids[index] = id;
+        appendedAt[index] = now;
+        size += 1;
+        nextSequence += 1;
+
+        final var negotiationId = Math.abs(id);
+        entryCountByNegotiationId.merge(negotiationId, 1, Integer::sum);
+        if (InboxRetention.isTerminal(type)) {
+            terminatedAtByNegotiationId.putIfAbsent(negotiationId, now);
+        }
+    }
+
+    /**
+     * Records that {@code definition} is about to be announced via a
+     * DEFINITION entry with the given identifier.
+     *
+     * @param id         Entry identifier.
+     * @param definition Definition to announce.
+     * @return {@code true} only if {@code definition} has not been announced
+     * with the given identifier by any entry still held by this log, nor
+     * claimed since.
+     */
+    public synchronized boolean claimDefinition(final long id, final JsonObject definition) {
+        final var hashes = DefinitionCache.hashesOf(definition);
+        if (hashes.isEmpty()) {
+            return true;
+        }
+        return addDefinitionHashes(id, hashes);
+    }
+
+    private boolean addDefinitionHashes(final long id, final List<String> hashes) {
+        final var announced = definitionHashesById.computeIfAbsent(id, ignored -> new HashSet<>());
+        var isNew = false;
+        for (final var hash : hashes) {
+            isNew |= announced.add(hash);
+        }
+        return isNew;
+    }
+
+    /**
+     * Gets at most {@code limit} entries with sequence numbers equal to or
+     * larger than {@code sequence}.
+     *
+     * @param sequence Sequence number of first desired entry.
+     * @param limit    Maximum number of entries to include in page.
+     * @return Page of entries, which is empty if no such entries exist.
+     */
+    public synchronized Page readPage(final long sequence, final int limit) {
+        evict(System.currentTimeMillis(), 0);
+
+        final var start = Math.min(Math.max(sequence, firstSequence()), nextSequence);
+        final var offset = offsetOf(start);
+        final var count = Math.max(0, Math.min(size - offset, limit));
+        final var cursor = offset + count < size
+            ? sequences[(head + offset + count) % entries.length]
+            : nextSequence;
+
+        final var next = Long.toString(cursor).getBytes(StandardCharsets.ISO_8859_1);
+        var length = PAGE_PREFIX.length + Math.max(count - 1, 0) + PAGE_INFIX.length + next.length + 1;
+        for (var i = 0; i < count; ++i) {
+            length += entries[(head + offset + i) % entries.length].length;
+        }
+
+        final var body = new byte[length];
+        var position = 0;
+        System.arraycopy(PAGE_PREFIX, 0, body, position, PAGE_PREFIX.length);
+        position += PAGE_PREFIX.length;
+        for (var i = 0; i < count; ++i) {
+            if (i > 0) {
+                body[position++] = ',';
+            }
+            final var entry = entries[(head + offset + i) % entries.length];
+            System.arraycopy(entry, 0, body, position, entry.length);
+            position += entry.length;
+        }
+        System.arraycopy(PAGE_INFIX, 0, body, position, PAGE_INFIX.length);
+        position += PAGE_INFIX.length;
+        System.arraycopy(next, 0, body, position, next.length);
+        position += next.length;
+        body[position] = '}';
+
+        return new Page(body, count, cursor);
+    }
+
+    private int offsetOf(final long sequence) {
+        // The offset of a sequence number can only be smaller than its
+        // distance from the first sequence number if there are gaps, in
+        // which case the offset of the first held entry with an equal or
+        // larger sequence number is found via binary search.
+        if (sequence >= nextSequence) {
+            return size;
+        }
+        final var offset = (int) Math.min(sequence - firstSequence(), size - 1);
+        if (sequences[(head + offset) % entries.length] == sequence) {
+            return offset;
+        }
+        var low = 0;
+        var high = offset + 1;
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (sequences[(head + middle) % entries.length] < sequence) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets at most {@code limit} entries with sequence numbers equal to or
+     * larger than {@code sequence}, waiting for at most {@code timeout} for
+     * at least one such entry to be appended if none is currently available.
+     *
+     * @param sequence Sequence number of first desired entry.
+     * @param limit    Maximum number of entries to include in page.
+     * @param timeout  Maximum duration to wait for entries to become
+     *                 available.
+     * @return Future completed with page of entries, which is empty only if
+     * {@code timeout} expired before any entry became available or if
+     * {@code sequence} is beyond the next sequence number.
+     */
+    public Future<Page> awaitFrom(final long sequence, final int limit, final Duration timeout) {
+        final var waiter = new Waiter(sequence, limit);
+        synchronized (this) {
+            final var page = readPage(sequence, limit);
+            if (page.count() > 0 || sequence > page.next() || timeout.isZero() || timeout.isNegative()) {
+                return Future.success(page);
+            }
+            waiters.add(waiter);
+        }
+        final var timer = scheduler.schedule(() -> {
+            if (removeWaiter(waiter)) {
+                waiter.completion.complete(readPage(sequence, limit));
+            }
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        return waiter.completion.onCancel(() -> {
+            timer.cancel(false);
+            removeWaiter(waiter);
+        });
+    }
+
+    /**
+     * @return Sequence number of oldest entry still held by this log.
+     */
+    public synchronized long firstSequence() {
+        return size > 0 ? sequences[head] : nextSequence;
+    }
+
+    /**
+     * @return Sequence number the next appended entry will be assigned.
+     */
+    public synchronized long nextSequence() {
+        return nextSequence;
+    }
+
+    private synchronized boolean removeWaiter(final Waiter waiter) {
+        return waiters.remove(waiter);
+    }
+
+    private void evict(final long now, final int reserve) {
+        final var maxAge = retention.maxAge();
+        final var terminalRetention = retention.terminalRetention();
+        while (size > 0) {
+            final var negotiationId = Math.abs(ids[head]);
+            final var isEvictable = size + reserve > retention.maxEntries()
+                || maxAge != null && now - appendedAt[head] > maxAge.toMillis()
+                || terminalRetention != null && isTerminatedBefore(negotiationId, now - terminalRetention.toMillis());
+            if (!isEvictable) {
+                break;
+            }
+            entries[head] = null;
+            head = (head + 1) % entries.length;
+            size -= 1;
+
+            final var count = entryCountByNegotiationId.merge(negotiationId, -1, Integer::sum);
+            if (count != null && count <= 0) {
+                entryCountByNegotiationId.remove(negotiationId);
+                terminatedAtByNegotiationId.remove(negotiationId);
+                definitionHashesById.remove(negotiationId);
+                definitionHashesById.remove(-negotiationId);
+            }
+        }
+    }
+
+    private boolean isTerminatedBefore(final long negotiationId, final long time) {
+        final var terminatedAt = terminatedAtByNegotiationId.get(negotiationId);
+        return terminatedAt != null && terminatedAt < time;
+    }
+
+    private void grow() {
+        final var capacity = (int) Math.min((long) entries.length * 2, retention.maxEntries());
+        final var entries0 = new byte[capacity][];
+        final var sequences0 = new long[capacity];
+        final var ids0 = new long[capacity];
+        final var appendedAt0 = new long[capacity];
+        for (var i = 0; i < size; ++i) {
+            final var index = (head + i) % entries.length;
+            entries0[i] = entries[index];
+            sequences0[i] = sequences[index];
+            ids0[i] = ids[index];
+            appendedAt0[i] = appendedAt[index];
+        }
+        entries = entries0;
+        sequences = sequences0;
+        ids = ids0;
+        appendedAt = appendedAt0;
+        head = 0;
+    }
+
+    /**
+     * A page of JSON-encoded inbox entries, ready to be sent to a client.
+     * <p>
+     * The page body is an object with an "entries" array and a "next"
+     * cursor, which is the sequence number to ask for in order to receive
+     * the entries following those in the page.
+     */
+    public static class Page {
+        private final byte[] body;
+        private final int count;
+        private final long next;
+
+        private Page(final byte[] body, final int count, final long next) {
+            this.body = body;
+            this.count = count;
+            this.next = next;
+        }
+
+        public byte[] body() {
+            return body;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public long next() {
+            return next;
+        }
+    }
+
+    private static class Waiter {
+        private final long from;
+        private final int limit;
+        private final Completion<Page> completion = new Completion<>();
+
+        private Waiter(final long from, final int limit) {
+            this.from = from;
+            this.limit = limit;
+        }
+    }
+
+    private static class ReplayedRecord {
+        private final long sequence;
+        private final long appendedAt;
+        private final ClientInboxEntry.Type type;
+        private final long id;
+        private final ByteBuffer payload;
+
+        private ReplayedRecord(
+            final long sequence,
+            final long appendedAt,
+            final ClientInboxEntry.Type type,
+            final long id,
+            final ByteBuffer payload
+        ) {
+            this.sequence = sequence;
+            this.appendedAt = appendedAt;
+            this.type = type;
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+}
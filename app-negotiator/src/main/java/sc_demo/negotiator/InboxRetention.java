@@ -0,0 +1,53 @@
+package sc_demo.negotiator;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Determines when entries at the head of an {@link InboxLog} may be evicted.
+ * <p>
+ * An entry is evicted when the log holds more than {@link #maxEntries()}
+ * entries, when it is older than {@link #maxAge()}, or when the negotiation
+ * it belongs to reached a terminal state (accepted, rejected, expired or
+ * faulted) longer ago than {@link #terminalRetention()}. The last two
+ * criteria are disabled if their durations are {@code null}.
+ */
+public class InboxRetention {
+    private final int maxEntries;
+    private final Duration maxAge;
+    private final Duration terminalRetention;
+
+    public InboxRetention(final int maxEntries, final Duration maxAge, final Duration terminalRetention) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Expected maxEntries > 0");
+        }
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.terminalRetention = terminalRetention;
+    }
+
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    public Duration maxAge() {
+        return maxAge;
+    }
+
+    public Duration terminalRetention() {
+        return terminalRetention;
+    }
+
+    public static boolean isTerminal(final ClientInboxEntry.Type type) {
+        Objects.requireNonNull(type);
+        switch (type) {
+        case OFFER_ACCEPT:
+        case OFFER_EXPIRY:
+        case OFFER_FAULT:
+        case OFFER_REJECT:
+            return true;
+        default:
+            return false;
+        }
+    }
+}
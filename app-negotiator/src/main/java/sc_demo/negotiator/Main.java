@@ -2,19 +2,18 @@ package sc_demo.negotiator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc_demo.common.JsonBuffer;
 import se.arkalix.ArSystem;
 import se.arkalix.core.plugin.HttpJsonCloudPlugin;
 import se.arkalix.core.plugin.cp.*;
+import se.arkalix.core.plugin.eh.ArEventPublisherPluginFacade;
+import se.arkalix.core.plugin.eh.HttpJsonEventPublisherPlugin;
 import se.arkalix.descriptor.EncodingDescriptor;
-import se.arkalix.dto.DtoWritable;
 import se.arkalix.dto.json.value.JsonObject;
-import se.arkalix.internal.core.plugin.Paths;
-import se.arkalix.net.http.consumer.HttpConsumer;
-import se.arkalix.net.http.consumer.HttpConsumerRequest;
-import se.arkalix.net.http.service.HttpRouteHandler;
 import se.arkalix.net.http.service.HttpService;
 import se.arkalix.security.identity.OwnedIdentity;
 import se.arkalix.security.identity.TrustStore;
+import se.arkalix.util.concurrent.Future;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -22,13 +21,11 @@ import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 import static se.arkalix.descriptor.EncodingDescriptor.JSON;
-import static se.arkalix.net.http.HttpMethod.GET;
 import static se.arkalix.net.http.HttpStatus.NO_CONTENT;
 import static se.arkalix.net.http.HttpStatus.OK;
 import static se.arkalix.security.access.AccessPolicy.cloud;
@@ -37,12 +34,12 @@ import static se.arkalix.util.concurrent.Future.done;
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
-    private static final byte[] bankSvg = readResourceAsBytes("bank.svg");
-    private static final byte[] indexHtml = readResourceAsBytes("index.html");
-    private static final byte[] ledgerSvg = readResourceAsBytes("ledger.svg");
-    private static final byte[] mainJs = readResourceAsBytes("main.js");
-    private static final byte[] messengerSvg = readResourceAsBytes("messenger.svg");
-    private static final byte[] screenCss = readResourceAsBytes("screen.css");
+    private static final StaticResource bankSvg = StaticResource.of(readResourceAsBytes("bank.svg"), "image/svg+xml");
+    private static final StaticResource indexHtml = StaticResource.of(readResourceAsBytes("index.html"), "text/html");
+    private static final StaticResource ledgerSvg = StaticResource.of(readResourceAsBytes("ledger.svg"), "image/svg+xml");
+    private static final StaticResource mainJs = StaticResource.of(readResourceAsBytes("main.js"), "text/javascript");
+    private static final StaticResource messengerSvg = StaticResource.of(readResourceAsBytes("messenger.svg"), "image/svg+xml");
+    private static final StaticResource screenCss = StaticResource.of(readResourceAsBytes("screen.css"), "text/css");
 
     public static void main(final String[] args) {
         try {
@@ -66,6 +63,7 @@ public class Main {
                             .allMatch(i -> i.encoding().isDto()))
                         .serviceRegistrySocketAddress(config.serviceRegistrySocketAddress())
                         .build(),
+                    new HttpJsonEventPublisherPlugin(),
                     new HttpJsonTrustedContractNegotiatorPlugin())
                 .build();
 
@@ -75,24 +73,66 @@ public class Main {
             final var parties = config.parties();
             final var templates = config.templates();
 
-            final var inboxEntries = new CopyOnWriteArrayList<ClientInboxEntryDto>();
-            final var offerResponders = new ConcurrentHashMap<Long, TrustedContractNegotiatorResponder>();
+            final var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final var thread = new Thread(runnable, "negotiator-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            final var inboxJournalPath = config.inboxJournalPathOrNull();
+            final var inboxJournal = inboxJournalPath != null
+                ? new InboxJournal(
+                    inboxJournalPath,
+                    config.inboxJournalSegmentSize(),
+                    config.inboxJournalFsyncPolicy(),
+                    config.inboxJournalFsyncInterval())
+                : null;
+            if (inboxJournal != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        inboxJournal.close();
+                    }
+                    catch (final IOException exception) {
+                        logger.error("Failed to close inbox journal", exception);
+                    }
+                }));
+            }
+
+            final var inboxLog = new InboxLog(config.inboxRetention(), scheduler, inboxJournal);
+            final var inboxMaxWait = config.inboxMaxWait();
+            final var inboxDefaultLimit = config.inboxDefaultLimit();
+            final var inboxMaxLimit = config.inboxMaxLimit();
+            final var consumerCache = new ConsumerCache(system, config.consumerTimeToLive(), scheduler);
+            final var definitionCache = new DefinitionCache(
+                consumerCache,
+                config.definitionCacheCapacity(),
+                scheduler,
+                config.definitionBatchWindow(),
+                config.definitionBatchSize());
+            final var offerResponders = new OfferResponders(scheduler, config.offerTombstoneCapacity());
             final var negotiator = system.pluginFacadeOf(HttpJsonTrustedContractNegotiatorPlugin.class)
                 .map(f -> (ArTrustedContractNegotiatorPluginFacade) f)
                 .orElseThrow(() -> new IllegalStateException("No " +
                     "ArTrustedContractNegotiatorPluginFacade is " +
                     "available; cannot observe negotiations"));
+            final var contractEventPublisher = new ContractEventPublisher(system
+                .pluginFacadeOf(HttpJsonEventPublisherPlugin.class)
+                .map(f -> (ArEventPublisherPluginFacade) f)
+                .orElseThrow(() -> new IllegalStateException("No " +
+                    "ArEventPublisherPluginFacade is available; cannot " +
+                    "publish contract events")));
 
             final var negotiationHandler = new TrustedContractNegotiatorHandler() {
                 @Override
                 public void onAccept(final TrustedContractNegotiationDto negotiation) {
-                    inboxEntries.add(new ClientInboxEntryBuilder()
+                    offerResponders.remove(negotiation.id());
+                    contractEventPublisher.publish(ContractEvent.Type.ACCEPTED, negotiation.id(), negotiation.offer());
+                    inboxLog.append(new ClientInboxEntryBuilder()
                         .type(ClientInboxEntry.Type.OFFER_ACCEPT)
                         .id(negotiation.id())
-                        .offer(negotiation.offer())
-                        .build());
+                        .offer(negotiation.offer()));
 
-                    collectDefinitionsForNegotiationWithId(system, inboxEntries, negotiation.id());
+                    collectDefinitionsForNegotiationWithId(definitionCache, inboxLog, negotiation.id());
                 }
 
                 @Override
@@ -100,45 +140,46 @@ public class Main {
                     final TrustedContractNegotiationDto negotiation,
                     final TrustedContractNegotiatorResponder responder
                 ) {
-                    offerResponders.put(negotiation.id(), responder);
-                    inboxEntries.add(new ClientInboxEntryBuilder()
+                    offerResponders.put(negotiation.id(), responder, negotiation.offer().validUntil());
+                    inboxLog.append(new ClientInboxEntryBuilder()
                         .type(ClientInboxEntry.Type.OFFER_SUBMIT)
                         .id(negotiation.id())
-                        .offer(negotiation.offer())
-                        .build());
+                        .offer(negotiation.offer()));
 
-                    collectDefinitionsForNegotiationWithId(system, inboxEntries, negotiation.id());
-                    collectDefinitionsForHashReferencesIn(system, inboxEntries, negotiation);
+                    collectDefinitionsForNegotiationWithId(definitionCache, inboxLog, negotiation.id());
+                    collectDefinitionsForHashReferencesIn(definitionCache, inboxLog, negotiation);
                 }
 
                 @Override
                 public void onReject(final TrustedContractNegotiationDto negotiation) {
-                    inboxEntries.add(new ClientInboxEntryBuilder()
+                    offerResponders.remove(negotiation.id());
+                    contractEventPublisher.publish(ContractEvent.Type.REJECTED, negotiation.id(), negotiation.offer());
+                    inboxLog.append(new ClientInboxEntryBuilder()
                         .type(ClientInboxEntry.Type.OFFER_REJECT)
                         .id(negotiation.id())
-                        .offer(negotiation.offer())
-                        .build());
+                        .offer(negotiation.offer()));
 
-                    collectDefinitionsForNegotiationWithId(system, inboxEntries, negotiation.id());
+                    collectDefinitionsForNegotiationWithId(definitionCache, inboxLog, negotiation.id());
                 }
 
                 @Override
                 public void onExpiry(final long negotiationId) {
-                    inboxEntries.add(new ClientInboxEntryBuilder()
+                    offerResponders.remove(negotiationId);
+                    contractEventPublisher.publish(ContractEvent.Type.EXPIRED, negotiationId, null);
+                    inboxLog.append(new ClientInboxEntryBuilder()
                         .type(ClientInboxEntry.Type.OFFER_EXPIRY)
-                        .id(negotiationId)
-                        .build());
+                        .id(negotiationId));
 
                     TrustedContractNegotiatorHandler.super.onExpiry(negotiationId);
                 }
 
                 @Override
                 public void onFault(final long negotiationId, final Throwable throwable) {
-                    inboxEntries.add(new ClientInboxEntryBuilder()
+                    offerResponders.remove(negotiationId);
+                    inboxLog.append(new ClientInboxEntryBuilder()
                         .type(ClientInboxEntry.Type.OFFER_FAULT)
                         .id(negotiationId)
-                        .error(throwable.getMessage())
-                        .build());
+                        .error(throwable.getMessage()));
 
                     TrustedContractNegotiatorHandler.super.onFault(negotiationId, throwable);
                 }
@@ -154,27 +195,63 @@ public class Main {
                 .accessPolicy(cloud())
                 .basePath("/ui")
 
-                .get("/bank.svg", serve(bankSvg, "image/svg+xml"))
-                .get("/index.html", serve(indexHtml, "text/html"))
-                .get("/ledger.svg", serve(ledgerSvg, "image/svg+xml"))
-                .get("/main.js", serve(mainJs, "text/javascript"))
-                .get("/messenger.svg", serve(messengerSvg, "image/svg+xml"))
-                .get("/screen.css", serve(screenCss, "text/css"))
+                .get("/bank.svg", bankSvg.handler())
+                .get("/index.html", indexHtml.handler())
+                .get("/ledger.svg", ledgerSvg.handler())
+                .get("/main.js", mainJs.handler())
+                .get("/messenger.svg", messengerSvg.handler())
+                .get("/screen.css", screenCss.handler())
 
-                .get("/me", serve(me))
-                .get("/parties", serve(parties))
-                .get("/templates", serve(templates))
+                .get("/me", StaticResource.of(JsonBuffer.encode(me), "application/json").handler())
+                .get("/parties", StaticResource.of(JsonBuffer.encode(parties), "application/json").handler())
+                .get("/templates", StaticResource.of(JsonBuffer.encode(templates), "application/json").handler())
 
                 .get("/inbox/entries", (request, response) -> {
                     final var from = request.queryParameter("from")
+                        .map(Long::parseUnsignedLong)
+                        .orElse(0L);
+
+                    // If a wait time is given, the request is held until
+                    // any new entry becomes available or the wait time
+                    // expires, which lets UI clients long-poll the inbox.
+                    final var wait = request.queryParameter("wait")
+                        .map(Long::parseUnsignedLong)
+                        .map(Duration::ofMillis)
+                        .map(duration -> duration.compareTo(inboxMaxWait) > 0 ? inboxMaxWait : duration)
+                        .orElse(Duration.ZERO);
+
+                    final var limit = request.queryParameter("limit")
                         .map(Integer::parseUnsignedInt)
-                        .orElse(0);
+                        .map(value -> Math.min(value, inboxMaxLimit))
+                        .orElse(inboxDefaultLimit);
+
+                    return inboxLog.awaitFrom(from, limit, wait)
+                        .ifSuccess(page -> response
+                            .status(OK)
+                            .header("content-type", "application/json")
+                            .body(page.body()));
+                })
 
+                .get("/metrics/negotiations", (request, response) -> {
                     response
                         .status(OK)
-                        .body(inboxEntries.stream()
-                            .skip(from)
-                            .collect(Collectors.toUnmodifiableList()));
+                        .body(offerResponders.stats());
+
+                    return done();
+                })
+
+                .get("/metrics/consumers", (request, response) -> {
+                    response
+                        .status(OK)
+                        .body(consumerCache.stats());
+
+                    return done();
+                })
+
+                .get("/metrics/events", (request, response) -> {
+                    response
+                        .status(OK)
+                        .body(contractEventPublisher.stats());
 
                     return done();
                 })
@@ -194,39 +271,64 @@ public class Main {
                         response
                             .status(OK)
                             .body(new ClientIdBuilder().id(id).build());
-                        collectDefinitionsForNegotiationWithId(system, inboxEntries, id);
+                        collectDefinitionsForNegotiationWithId(definitionCache, inboxLog, id);
                     }))
 
                 .post("/acceptances", (request, response) -> request
                     .bodyAs(ClientIdDto.class)
-                    .flatMap(offer -> offerResponders.get(offer.id())
-                        .accept()
-                        .pass(offer))
-                    .ifSuccess(offer -> {
-                        response.status(NO_CONTENT);
-                        collectDefinitionsForNegotiationWithId(system, inboxEntries, offer.id());
+                    .flatMap(offer -> {
+                        final var responder = offerResponders.getOrNull(offer.id());
+                        if (responder == null) {
+                            response.status(offerResponders.statusOfMissing(offer.id()));
+                            return Future.success(false);
+                        }
+                        return responder.accept()
+                            .ifSuccess(ignored -> {
+                                offerResponders.remove(offer.id());
+                                response.status(NO_CONTENT);
+                                collectDefinitionsForNegotiationWithId(definitionCache, inboxLog, offer.id());
+                            })
+                            .pass(true);
                     }))
 
                 .post("/counter-offers", (request, response) -> request
                     .bodyAs(TrustedContractCounterOfferDto.class)
-                    .flatMap(offer -> offerResponders.get(offer.negotiationId())
-                        .offer(new SimplifiedContractCounterOffer.Builder()
-                            .validFor(Duration.ofHours(3))
-                            .contracts(new TrustedContractBuilder()
-                                .templateName(offer.contracts().get(0).templateName())
-                                .arguments(offer.contracts().get(0).arguments())
+                    .flatMap(offer -> {
+                        final var responder = offerResponders.getOrNull(offer.negotiationId());
+                        if (responder == null) {
+                            response.status(offerResponders.statusOfMissing(offer.negotiationId()));
+                            return Future.success(false);
+                        }
+                        return responder
+                            .offer(new SimplifiedContractCounterOffer.Builder()
+                                .validFor(Duration.ofHours(3))
+                                .contracts(new TrustedContractBuilder()
+                                    .templateName(offer.contracts().get(0).templateName())
+                                    .arguments(offer.contracts().get(0).arguments())
+                                    .build())
                                 .build())
-                            .build()))
-                    .ifSuccess(ignored -> response.status(NO_CONTENT)))
+                            .ifSuccess(ignored -> {
+                                offerResponders.remove(offer.negotiationId());
+                                response.status(NO_CONTENT);
+                            })
+                            .pass(true);
+                    }))
 
                 .post("/rejections", (request, response) -> request
                     .bodyAs(ClientIdDto.class)
-                    .flatMap(offer -> offerResponders.get(offer.id())
-                        .reject()
-                        .pass(offer))
-                    .ifSuccess(offer ->  {
-                        response.status(NO_CONTENT);
-                        collectDefinitionsForNegotiationWithId(system, inboxEntries, offer.id());
+                    .flatMap(offer -> {
+                        final var responder = offerResponders.getOrNull(offer.id());
+                        if (responder == null) {
+                            response.status(offerResponders.statusOfMissing(offer.id()));
+                            return Future.success(false);
+                        }
+                        return responder.reject()
+                            .ifSuccess(ignored -> {
+                                offerResponders.remove(offer.id());
+                                response.status(NO_CONTENT);
+                                collectDefinitionsForNegotiationWithId(definitionCache, inboxLog, offer.id());
+                            })
+                            .pass(true);
                     })))
 
                 .onFailure(Main::panic);
@@ -239,37 +341,23 @@ public class Main {
     }
 
     private static void collectDefinitionsForNegotiationWithId(
-        final ArSystem system,
-        final List<ClientInboxEntryDto> inboxEntries,
+        final DefinitionCache definitionCache,
+        final InboxLog inboxLog,
         final long negotiationId
     ) {
-        system.consume()
-            .name("trusted-contract-negotiation")
-            .encodings(JSON)
-            .oneUsing(HttpConsumer.factory())
-            .flatMap(consumer -> consumer.send(new HttpConsumerRequest()
-                .method(GET)
-                .path(Paths.combine(consumer.service().uri(), "definitions"))
-                .queryParameter("id", negotiationId)))
-            .flatMap(response -> response.bodyAsListIfSuccess(JsonObject.class))
-            .ifSuccess(definitions -> definitions
-                .forEach(definition -> inboxEntries
-                    .add(new ClientInboxEntryBuilder()
-                        .type(ClientInboxEntry.Type.DEFINITION)
-                        .id(negotiationId)
-                        .definition(definition)
-                        .build())))
+        definitionCache.getByNegotiationId(negotiationId)
+            .ifSuccess(definitions -> announceDefinitions(inboxLog, negotiationId, definitions))
             .onFailure(fault -> logger.error("Failed to acquire " +
                 "definitions related to negotiation " +
                 negotiationId, fault));
     }
 
     private static void collectDefinitionsForHashReferencesIn(
-        final ArSystem system,
-        final List<ClientInboxEntryDto> inboxEntries,
+        final DefinitionCache definitionCache,
+        final InboxLog inboxLog,
         final TrustedContractNegotiationDto negotiation
     ) {
-        final var hash = negotiation.offer()
+        final var hashes = negotiation.offer()
             .contracts()
             .stream()
             .flatMap(contract -> contract.arguments()
@@ -277,33 +365,34 @@ public class Main {
                 .stream()
                 .filter(entry -> entry.getKey().endsWith(":hash"))
                 .map(Map.Entry::getValue))
-            .collect(Collectors.joining(","));
+            .collect(Collectors.toList());
 
-        if (hash.isEmpty()) {
+        if (hashes.isEmpty()) {
             return;
         }
 
-        system.consume()
-            .name("trusted-contract-negotiation")
-            .encodings(JSON)
-            .oneUsing(HttpConsumer.factory())
-            .flatMap(consumer -> consumer.send(new HttpConsumerRequest()
-                .method(GET)
-                .path(Paths.combine(consumer.service().uri(), "definitions"))
-                .queryParameter("hash", hash)))
-            .flatMap(response -> response.bodyAsListIfSuccess(JsonObject.class))
-            .ifSuccess(definitions -> definitions
-                .forEach(definition -> inboxEntries
-                    .add(new ClientInboxEntryBuilder()
-                        .type(ClientInboxEntry.Type.DEFINITION)
-                        .id(-negotiation.id())
-                        .definition(definition)
-                        .build())))
+        definitionCache.getByHashes(hashes)
+            .ifSuccess(definitions -> announceDefinitions(inboxLog, -negotiation.id(), definitions))
             .onFailure(fault -> logger.error("Failed to acquire " +
                 "definitions referenced by negotiation " +
                 negotiation.id(), fault));
     }
 
+    private static void announceDefinitions(
+        final InboxLog inboxLog,
+        final long inboxId,
+        final List<JsonObject> definitions
+    ) {
+        for (final var definition : definitions) {
+            if (inboxLog.claimDefinition(inboxId, definition)) {
+                inboxLog.append(new ClientInboxEntryBuilder()
+                    .type(ClientInboxEntry.Type.DEFINITION)
+                    .id(inboxId)
+                    .definition(definition));
+            }
+        }
+    }
+
     private static byte[] readResourceAsBytes(final String path) {
         try {
             return Objects.requireNonNull(Main.class
@@ -316,29 +405,6 @@ public class Main {
         }
     }
 
-    private static HttpRouteHandler serve(final byte[] data, final String contentType) {
-        return (request, response) -> {
-            response.status(OK)
-                .header("content-type", contentType)
-                .body(data);
-            return done();
-        };
-    }
-
-    private static HttpRouteHandler serve(final DtoWritable data) {
-        return (request, response) -> {
-            response.status(OK).body(data);
-            return done();
-        };
-    }
-
-    private static HttpRouteHandler serve(final List<? extends DtoWritable> data) {
-        return (request, response) -> {
-            response.status(OK).body(data);
-            return done();
-        };
-    }
-
     private static void panic(final Throwable throwable) {
         System.err.println("Failed to start application");
         throwable.printStackTrace(System.err);
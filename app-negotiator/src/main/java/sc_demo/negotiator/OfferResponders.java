@@ -0,0 +1,160 @@
+package sc_demo.negotiator;
+
+import se.arkalix.core.plugin.cp.TrustedContractNegotiatorResponder;
+import se.arkalix.net.http.HttpStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static se.arkalix.net.http.HttpStatus.GONE;
+import static se.arkalix.net.http.HttpStatus.NOT_FOUND;
+
+/**
+ * Registry of {@link TrustedContractNegotiatorResponder responders} to
+ * offers received from counter-parties, indexed by negotiation identifier.
+ * <p>
+ * Every registered responder is removed either when its negotiation is
+ * terminated, or when the offer it responds to is no longer valid, whichever
+ * happens first. The identifiers of a bounded number of recently removed
+ * responders are remembered, which makes it possible to tell apart requests
+ * for responders that never existed from requests for responders that no
+ * longer exist.
+ */
+public class OfferResponders {
+    private static final Duration EXPIRY_GRACE = Duration.ofSeconds(5);
+
+    private final ScheduledExecutorService scheduler;
+    private final int tombstoneCapacity;
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<Long, Boolean> tombstones;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public OfferResponders(final ScheduledExecutorService scheduler, final int tombstoneCapacity) {
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.tombstoneCapacity = tombstoneCapacity;
+
+        tombstones = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Boolean> eldest) {
+                return size() > OfferResponders.this.tombstoneCapacity;
+            }
+        };
+    }
+
+    /**
+     * Registers responder, replacing any responder already registered for
+     * the same negotiation.
+     *
+     * @param negotiationId Identifier of negotiation.
+     * @param responder     Responder to register.
+     * @param validUntil    Time after which the offer {@code responder}
+     *                      responds to can no longer be accepted.
+     */
+    public void put(
+        final long negotiationId,
+        final TrustedContractNegotiatorResponder responder,
+        final Instant validUntil
+    ) {
+        final var delay = Math.max(Duration.between(Instant.now(), validUntil).plus(EXPIRY_GRACE).toMillis(), 0);
+        final var entry = new Entry(responder);
+        final Entry previous;
+        synchronized (this) {
+            previous = entries.put(negotiationId, entry);
+            tombstones.remove(negotiationId);
+            entry.timer = scheduler.schedule(() -> {
+                if (remove(negotiationId, entry)) {
+                    expired.incrementAndGet();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        if (previous != null) {
+            previous.timer.cancel(false);
+        }
+    }
+
+    /**
+     * @param negotiationId Identifier of negotiation.
+     * @return Responder registered for identified negotiation, or
+     * {@code null}.
+     */
+    public synchronized TrustedContractNegotiatorResponder getOrNull(final long negotiationId) {
+        final var entry = entries.get(negotiationId);
+        return entry != null ? entry.responder : null;
+    }
+
+    /**
+     * Removes the responder registered for identified negotiation, if any.
+     * Should be called whenever a negotiation is terminated or after a
+     * responder has been used.
+     *
+     * @param negotiationId Identifier of negotiation.
+     */
+    public void remove(final long negotiationId) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(negotiationId);
+        }
+        if (entry != null && remove(negotiationId, entry)) {
+            completed.incrementAndGet();
+        }
+    }
+
+    private boolean remove(final long negotiationId, final Entry entry) {
+        synchronized (this) {
+            if (!entries.remove(negotiationId, entry)) {
+                return false;
+            }
+            tombstones.put(negotiationId, Boolean.TRUE);
+        }
+        entry.timer.cancel(false);
+        return true;
+    }
+
+    /**
+     * Determines what HTTP status to respond with when a client refers to a
+     * negotiation without a registered responder.
+     *
+     * @param negotiationId Identifier of negotiation.
+     * @return {@link HttpStatus#GONE} if a responder was recently removed for
+     * the identified negotiation, {@link HttpStatus#NOT_FOUND} otherwise.
+     */
+    public synchronized HttpStatus statusOfMissing(final long negotiationId) {
+        return tombstones.containsKey(negotiationId) ? GONE : NOT_FOUND;
+    }
+
+    /**
+     * @return Current number of pending negotiations, as well as the number
+     * of negotiations completed or expired so far.
+     */
+    public ClientNegotiationStatsDto stats() {
+        final int pending;
+        synchronized (this) {
+            pending = entries.size();
+        }
+        return new ClientNegotiationStatsBuilder()
+            .pending(pending)
+            .completed(completed.get())
+            .expired(expired.get())
+            .build();
+    }
+
+    private static class Entry {
+        private final TrustedContractNegotiatorResponder responder;
+        private ScheduledFuture<?> timer;
+
+        private Entry(final TrustedContractNegotiatorResponder responder) {
+            this.responder = responder;
+        }
+    }
+}
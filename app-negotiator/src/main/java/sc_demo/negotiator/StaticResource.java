@@ -0,0 +1,164 @@
+package sc_demo.negotiator;
+
+import se.arkalix.net.http.service.HttpRouteHandler;
+import se.arkalix.net.http.service.HttpServiceRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+import static se.arkalix.net.http.HttpStatus.NOT_MODIFIED;
+import static se.arkalix.net.http.HttpStatus.OK;
+import static se.arkalix.util.concurrent.Future.done;
+
+/**
+ * An immutable HTTP resource, such as a script, an image, a style sheet or
+ * a pre-encoded JSON document.
+ * <p>
+ * A gzip-compressed variant of the resource is prepared when the resource
+ * is created, and is served to all clients that accept it, as long as it is
+ * smaller than the original. Each variant is given a strong entity tag,
+ * making it possible for clients to revalidate cached copies without the
+ * resource being transferred again.
+ */
+public class StaticResource {
+    private static final String CACHE_CONTROL = "public, no-cache";
+
+    private final String contentType;
+    private final byte[] identity;
+    private final String identityTag;
+    private final byte[] gzip;
+    private final String gzipTag;
+
+    private StaticResource(final byte[] identity, final String contentType) {
+        this.contentType = Objects.requireNonNull(contentType);
+        this.identity = Objects.requireNonNull(identity);
+        identityTag = entityTagOf(identity);
+
+        final var gzip = compress(identity);
+        if (gzip.length < identity.length) {
+            this.gzip = gzip;
+            gzipTag = entityTagOf(gzip);
+        }
+        else {
+            this.gzip = null;
+            gzipTag = null;
+        }
+    }
+
+    /**
+     * Creates new static resource from given data.
+     *
+     * @param data        Resource data. Must not be modified after this call.
+     * @param contentType Resource MIME type.
+     * @return New static resource.
+     */
+    public static StaticResource of(final byte[] data, final String contentType) {
+        return new StaticResource(data, contentType);
+    }
+
+    /**
+     * @return HTTP route handler serving this resource.
+     */
+    public HttpRouteHandler handler() {
+        return (request, response) -> {
+            final var isGzip = gzip != null && acceptsGzip(request);
+            final var tag = isGzip ? gzipTag : identityTag;
+
+            response
+                .header("cache-control", CACHE_CONTROL)
+                .header("etag", tag)
+                .header("vary", "accept-encoding");
+
+            if (isMatchedBy(request, tag)) {
+                response.status(NOT_MODIFIED);
+                return done();
+            }
+
+            response
+                .status(OK)
+                .header("content-type", contentType);
+
+            if (isGzip) {
+                response
+                    .header("content-encoding", "gzip")
+                    .body(gzip);
+            }
+            else {
+                response.body(identity);
+            }
+
+            return done();
+        };
+    }
+
+    private static boolean acceptsGzip(final HttpServiceRequest request) {
+        final var acceptEncoding = request.header("accept-encoding").orElse(null);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final var coding : acceptEncoding.split(",")) {
+            final var parts = coding.split(";");
+            final var name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            for (var i = 1; i < parts.length; ++i) {
+                final var parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0.0;
+                    }
+                    catch (final NumberFormatException exception) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isMatchedBy(final HttpServiceRequest request, final String tag) {
+        final var ifNoneMatch = request.header("if-none-match").orElse(null);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (var candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String entityTagOf(final byte[] data) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        }
+        catch (final NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static byte[] compress(final byte[] data) {
+        final var output = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (final var gzip = new GZIPOutputStream(output)) {
+            gzip.write(data);
+        }
+        catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return output.toByteArray();
+    }
+}
@@ -51,6 +51,7 @@ const global = {
     templates: [],
 
     inboxOffset: 0,
+    inboxWait: 25000,
     definitions: new Map(),
     negotiations: new Map(),
 
@@ -119,8 +120,8 @@ const global = {
         return idHash;
     },
 
-    getJson: (url, headers) => {
-        return global.requestJson("GET", url, headers || {}, undefined);
+    getJson: (url, headers, timeout) => {
+        return global.requestJson("GET", url, headers || {}, undefined, timeout);
     },
 
     postJson: (url, headers, payload) => {
@@ -131,7 +132,7 @@ const global = {
         return global.requestJson("POST", url, headers || {}, payload);
     },
 
-    requestJson: (method, url, headers, payload) => {
+    requestJson: (method, url, headers, payload, timeout) => {
         if (!headers) {
             headers = {accept: "application/json"};
         }
@@ -144,7 +145,7 @@ const global = {
         if (payload) {
             headers["content-type"] = "application/json";
         }
-        return global.request(method, url, headers, payload)
+        return global.request(method, url, headers, payload, timeout)
             .then((xhr) => {
                 if (typeof xhr.responseText === "undefined" || xhr.responseText.length === 0) {
                     return null;
@@ -161,10 +162,10 @@ const global = {
             });
     },
 
-    request: (method, url, headers, payload) => {
+    request: (method, url, headers, payload, timeout) => {
         return new Promise((resolve, reject) => {
             var xhr = new XMLHttpRequest();
-            xhr.timeout = 3000; // 3 seconds.
+            xhr.timeout = timeout || 3000; // 3 seconds by default.
             xhr.open(method, url);
             xhr.addEventListener("load", function() {
                 if (this.status >= 200 && this.status <= 299) {
@@ -904,126 +905,142 @@ function main() {
                 layoutTemplates.body.clearChildren();
                 layoutTemplates.body.appendChildren(templates.map(template => new Template(template)));
             });
+    };
 
-        global.getJson("/ui/inbox/entries?from=" + global.inboxOffset)
-            .then(entries => {
-                global.inboxOffset += entries.length;
-
-                let failures = [];
-                for (let i = 0; i < 5; ++i) {
-                    for (const entry of entries) {
-                        try {
-                            var child, definition, template;
-                            switch (entry.type) {
-                            case "DEFINITION":
-                                child = (entry.definition || {});
-                                if (child.acceptance) {
-                                    definition = child.acceptance;
-                                    definition.type = "acceptance";
-                                    global.negotiationById(entry.id)
-                                        .signedAcceptance = definition;
-                                }
-                                else if (child.offer) {
-                                    definition = child.offer;
-                                    definition.type = "offer";
-                                    if (entry.id > 0) {
-                                        global.negotiationById(entry.id)
-                                            .signedOffers
-                                            .push(definition);
-                                    }
-                                }
-                                else if (child.rejection) {
-                                    definition = child.rejection;
-                                    definition.type = "rejection";
-                                    global.negotiationById(entry.id)
-                                        .signedRejection = definition;
-                                }
-                                else {
-                                    console.log("Received empty or unrecognized type of definition entry", entry);
-                                    break;
-                                }
-                                if (Array.isArray(child.hashes)) {
-                                    definition.hashes = child.hashes.map(hash => hash.algorithm + ":" + hash.sum);
-                                    for (const hash of definition.hashes) {
-                                        global.definitions.set(hash, definition);
-                                    }
-                                }
-                                else {
-                                    console.log("Received definition entry contains no hashes", entry);
-                                }
-                                continue;
-
-                            case "OFFER_ACCEPT":
-                                global.negotiationById(entry.id)
-                                    .trustedOffers
-                                    .push(entry.offer);
-                                child = new AcceptReceived(entry.id, entry.offer, entry.offer.receiverName);
-
-                                template = global.templateByName(entry.offer.contracts[0].templateName);
-                                layoutContracts.body.prependChild(new Contract(entry.id, template.label, entry.offer.contracts[0].arguments, template.text, [
-                                    global.partyByName(entry.offer.receiverName).label,
-                                    global.partyByName(entry.offer.offerorName).label,
-                                ]));
-                                break;
-                            case "OFFER_REJECT":
-                                global.negotiationById(entry.id)
-                                    .trustedOffers
-                                    .push(entry.offer);
-                                child = new RejectReceived(entry.id, entry.offer, entry.offer.receiverName);
-                                break;
-                            case "OFFER_SUBMIT":
+    const receiveInboxEntries = entries => {
+
+        let failures = [];
+        for (let i = 0; i < 5; ++i) {
+            for (const entry of entries) {
+                try {
+                    var child, definition, template;
+                    switch (entry.type) {
+                    case "DEFINITION":
+                        child = (entry.definition || {});
+                        if (child.acceptance) {
+                            definition = child.acceptance;
+                            definition.type = "acceptance";
+                            global.negotiationById(entry.id)
+                                .signedAcceptance = definition;
+                        }
+                        else if (child.offer) {
+                            definition = child.offer;
+                            definition.type = "offer";
+                            if (entry.id > 0) {
                                 global.negotiationById(entry.id)
-                                    .trustedOffers
-                                    .push(entry.offer);
-                                child = new OfferReceived(entry.id, entry.offer, entry.offer.offerorName);
-                                break;
-
-                            case "OFFER_FAULT":
-                                child = layoutInbox.body.getFirstChildMatching(child => {
-                                    return child instanceof Widget && child.id === entry.id;
-                                });
-                                if (child) {
-                                    child.status.setError(entry.error);
-                                }
-                                continue;
-                            case "OFFER_EXPIRY":
-                                // Ignored.
-                                continue;
-
-                            default:
-                                console.log("Received entry with unexpected type", entry);
-                                continue;
-                            }
-                            if (entry.id) {
-                                layoutInbox.body.removeFirstChildMatching(child => {
-                                    return child instanceof Widget && child.id === entry.id;
-                                });
+                                    .signedOffers
+                                    .push(definition);
                             }
-                            layoutInbox.body.prependChild(child);
                         }
-                        catch (error) {
-                            if (i < 2) {
-                                failures.push(entry);
-                            }
-                            else {
-                                console.log(error);
+                        else if (child.rejection) {
+                            definition = child.rejection;
+                            definition.type = "rejection";
+                            global.negotiationById(entry.id)
+                                .signedRejection = definition;
+                        }
+                        else {
+                            console.log("Received empty or unrecognized type of definition entry", entry);
+                            break;
+                        }
+                        if (Array.isArray(child.hashes)) {
+                            definition.hashes = child.hashes.map(hash => hash.algorithm + ":" + hash.sum);
+                            for (const hash of definition.hashes) {
+                                global.definitions.set(hash, definition);
                             }
                         }
+                        else {
+                            console.log("Received definition entry contains no hashes", entry);
+                        }
+                        continue;
+
+                    case "OFFER_ACCEPT":
+                        global.negotiationById(entry.id)
+                            .trustedOffers
+                            .push(entry.offer);
+                        child = new AcceptReceived(entry.id, entry.offer, entry.offer.receiverName);
+
+                        template = global.templateByName(entry.offer.contracts[0].templateName);
+                        layoutContracts.body.prependChild(new Contract(entry.id, template.label, entry.offer.contracts[0].arguments, template.text, [
+                            global.partyByName(entry.offer.receiverName).label,
+                            global.partyByName(entry.offer.offerorName).label,
+                        ]));
+                        break;
+                    case "OFFER_REJECT":
+                        global.negotiationById(entry.id)
+                            .trustedOffers
+                            .push(entry.offer);
+                        child = new RejectReceived(entry.id, entry.offer, entry.offer.receiverName);
+                        break;
+                    case "OFFER_SUBMIT":
+                        global.negotiationById(entry.id)
+                            .trustedOffers
+                            .push(entry.offer);
+                        child = new OfferReceived(entry.id, entry.offer, entry.offer.offerorName);
+                        break;
+
+                    case "OFFER_FAULT":
+                        child = layoutInbox.body.getFirstChildMatching(child => {
+                            return child instanceof Widget && child.id === entry.id;
+                        });
+                        if (child) {
+                            child.status.setError(entry.error);
+                        }
+                        continue;
+                    case "OFFER_EXPIRY":
+                        // Ignored.
+                        continue;
+
+                    default:
+                        console.log("Received entry with unexpected type", entry);
+                        continue;
                     }
-                    if (failures.length > 0) {
-                        entries = failures;
-                        failures = [];
+                    if (entry.id) {
+                        layoutInbox.body.removeFirstChildMatching(child => {
+                            return child instanceof Widget && child.id === entry.id;
+                        });
+                    }
+                    layoutInbox.body.prependChild(child);
+                }
+                catch (error) {
+                    if (i < 2) {
+                        failures.push(entry);
                     }
                     else {
-                        return;
+                        console.log(error);
                     }
                 }
+            }
+            if (failures.length > 0) {
+                entries = failures;
+                failures = [];
+            }
+            else {
+                return;
+            }
+        }
+    };
+
+    // Entries are long-polled, which means that the server holds each
+    // request until new entries are available or the wait time expires.
+    // Each response contains at most one page of entries, as well as a
+    // cursor to use when requesting the next page.
+    const pollInbox = () => {
+        global.getJson("/ui/inbox/entries?from=" + global.inboxOffset + "&wait=" + global.inboxWait, {}, global.inboxWait + 5000)
+            .then(page => {
+                if (page) {
+                    global.inboxOffset = page.next;
+                    receiveInboxEntries(page.entries);
+                }
+                pollInbox();
+            })
+            .catch(error => {
+                console.log("Failed to poll inbox; retrying in 5 seconds", error);
+                setTimeout(pollInbox, 5000);
             });
     };
+
     refresh();
-    //const rid = setInterval(refresh, 10000);
-    //document.getElementById("stop")
-    //    .addEventListener("click", () => clearInterval(rid));
+    pollInbox();
 
     document.getElementById("refresh")
         .addEventListener("click", () => global.publish("refresh"));
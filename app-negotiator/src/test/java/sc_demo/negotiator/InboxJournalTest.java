@@ -0,0 +1,121 @@
+package sc_demo.negotiator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InboxJournalTest {
+    static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 1 + 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldDiscardTornRecordAtEndOfLastSegment() throws IOException {
+        write(directory, Long.MAX_VALUE, 0, 3);
+        final var segments = segmentsIn(directory);
+        assertEquals(1, segments.size());
+        truncate(segments.get(0), 3);
+
+        try (final var journal = open(directory, Long.MAX_VALUE)) {
+            assertEquals(List.of("0", "1"), replay(journal));
+            journal.append(2, System.currentTimeMillis(), ClientInboxEntry.Type.OFFER_SUBMIT, 2, payloadOf(2));
+        }
+        try (final var journal = open(directory, Long.MAX_VALUE)) {
+            assertEquals(List.of("0", "1", "2"), replay(journal));
+        }
+    }
+
+    @Test
+    void shouldContinueWithNextSegmentAfterDamagedRecord() throws IOException {
+        write(directory, 1, 0, 4);
+        final var segments = segmentsIn(directory);
+        assertEquals(4, segments.size());
+        corrupt(segments.get(1), HEADER_SIZE);
+
+        try (final var journal = open(directory, 1)) {
+            assertEquals(List.of("0", "2", "3"), replay(journal));
+        }
+        assertEquals(0, Files.size(segments.get(1)));
+    }
+
+    @Test
+    void shouldDiscardRecordWithDamagedHeader() throws IOException {
+        write(directory, Long.MAX_VALUE, 0, 2);
+        final var segment = segmentsIn(directory).get(0);
+
+        // Corrupts the least significant byte of the negotiation identifier
+        // of the second record, which is covered by its checksum.
+        corrupt(segment, HEADER_SIZE + payloadOf(0).length + HEADER_SIZE - 1);
+
+        try (final var journal = open(directory, Long.MAX_VALUE)) {
+            assertEquals(List.of("0"), replay(journal));
+        }
+    }
+
+    static InboxJournal open(final Path directory, final long segmentSize) {
+        return new InboxJournal(directory, segmentSize, InboxJournal.FsyncPolicy.NEVER, Duration.ZERO);
+    }
+
+    static void write(final Path directory, final long segmentSize, final long first, final long count) throws IOException {
+        try (final var journal = open(directory, segmentSize)) {
+            journal.replay((sequence, appendedAt, type, id, payload) -> {});
+            final var now = System.currentTimeMillis();
+            for (var sequence = first; sequence < first + count; ++sequence) {
+                journal.append(sequence, now, ClientInboxEntry.Type.OFFER_SUBMIT, sequence, payloadOf(sequence));
+            }
+        }
+    }
+
+    static byte[] payloadOf(final long sequence) {
+        return ("{\"sequence\":" + sequence + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static List<Path> segmentsIn(final Path directory) throws IOException {
+        try (final var paths = Files.list(directory)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+
+    static void truncate(final Path segment, final int bytes) throws IOException {
+        try (final var channel = FileChannel.open(segment, WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+
+    static void corrupt(final Path segment, final int offset) throws IOException {
+        try (final var channel = FileChannel.open(segment, READ, WRITE)) {
+            final var buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, offset);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0xFF)).rewind();
+            channel.write(buffer, offset);
+        }
+    }
+
+    private static List<String> replay(final InboxJournal journal) {
+        final var sequences = new ArrayList<String>();
+        journal.replay((sequence, appendedAt, type, id, payload) -> {
+            assertEquals(sequence, id);
+            final var bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            assertEquals(new String(payloadOf(sequence), StandardCharsets.UTF_8),
+                new String(bytes, StandardCharsets.UTF_8));
+            sequences.add(Long.toString(sequence));
+        });
+        return sequences;
+    }
+}
@@ -0,0 +1,85 @@
+package sc_demo.negotiator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static sc_demo.negotiator.InboxJournalTest.HEADER_SIZE;
+import static sc_demo.negotiator.InboxJournalTest.corrupt;
+import static sc_demo.negotiator.InboxJournalTest.open;
+import static sc_demo.negotiator.InboxJournalTest.segmentsIn;
+import static sc_demo.negotiator.InboxJournalTest.truncate;
+import static sc_demo.negotiator.InboxJournalTest.write;
+
+public class InboxLogTest {
+    @TempDir
+    Path directory;
+
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void shouldResumeAfterTornRecord() throws IOException {
+        write(directory, Long.MAX_VALUE, 0, 3);
+        truncate(segmentsIn(directory).get(0), 1);
+
+        try (final var journal = open(directory, Long.MAX_VALUE)) {
+            final var log = new InboxLog(new InboxRetention(100, null, null), scheduler, journal);
+            assertEquals(0, log.firstSequence());
+            assertEquals(2, log.nextSequence());
+            assertPage("{\"entries\":[{\"sequence\":0},{\"sequence\":1}],\"next\":2}", 2, log.readPage(0, 10));
+            assertPage("{\"entries\":[],\"next\":2}", 0, log.readPage(2, 10));
+        }
+    }
+
+    @Test
+    void shouldSkipSequenceGapLeftByDamagedSegment() throws IOException {
+        write(directory, 1, 0, 5);
+        corrupt(segmentsIn(directory).get(2), HEADER_SIZE);
+
+        try (final var journal = open(directory, 1)) {
+            final var log = new InboxLog(new InboxRetention(100, null, null), scheduler, journal);
+            assertEquals(0, log.firstSequence());
+            assertEquals(5, log.nextSequence());
+            assertPage("{\"entries\":[{\"sequence\":0},{\"sequence\":1}],\"next\":3}", 2, log.readPage(0, 2));
+            assertPage("{\"entries\":[{\"sequence\":3},{\"sequence\":4}],\"next\":5}", 2, log.readPage(2, 10));
+            assertPage("{\"entries\":[{\"sequence\":4}],\"next\":5}", 1, log.readPage(4, 10));
+        }
+    }
+
+    @Test
+    void shouldRetainOnlyLastEntriesAcrossSequenceGap() throws IOException {
+        write(directory, 1, 0, 6);
+        corrupt(segmentsIn(directory).get(3), HEADER_SIZE);
+
+        try (final var journal = open(directory, 1)) {
+            final var log = new InboxLog(new InboxRetention(3, null, null), scheduler, journal);
+            assertEquals(2, log.firstSequence());
+            assertEquals(6, log.nextSequence());
+            assertPage("{\"entries\":[{\"sequence\":2},{\"sequence\":4},{\"sequence\":5}],\"next\":6}", 3,
+                log.readPage(0, 10));
+        }
+    }
+
+    private static void assertPage(final String expectedBody, final int expectedCount, final InboxLog.Page page) {
+        assertEquals(expectedBody, new String(page.body(), StandardCharsets.UTF_8));
+        assertEquals(expectedCount, page.count());
+    }
+}
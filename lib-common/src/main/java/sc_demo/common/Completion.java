@@ -0,0 +1,134 @@
+package sc_demo.common;
+
+import se.arkalix.util.Result;
+import se.arkalix.util.concurrent.Future;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Future} that is completed explicitly, by calling either {@link
+ * #complete(Object)} or {@link #fail(Throwable)}.
+ * <p>
+ * Unlike most other futures, any number of result consumers may be
+ * registered with the same completion, which makes it possible to share one
+ * pending result among several waiting parties. Parties that may cancel
+ * their waiting should be given their own {@link #fork() forks}, as
+ * cancelling a completion drops all of its consumers.
+ *
+ * @param <V> Type of value completion is completed with.
+ */
+public class Completion<V> implements Future<V> {
+    private final List<Consumer<Result<V>>> consumers = new ArrayList<>(1);
+
+    private Result<V> result = null;
+    private boolean isCancelled = false;
+    private Runnable onCancel = null;
+
+    /**
+     * Completes this completion with given value, unless it has already been
+     * completed or cancelled.
+     *
+     * @param value Value to complete with.
+     * @return {@code true} only if this call completed the completion.
+     */
+    public boolean complete(final V value) {
+        return completeWith(Result.success(value));
+    }
+
+    /**
+     * Completes this completion with given fault, unless it has already been
+     * completed or cancelled.
+     *
+     * @param fault Fault to complete with.
+     * @return {@code true} only if this call completed the completion.
+     */
+    public boolean fail(final Throwable fault) {
+        return completeWith(Result.failure(fault));
+    }
+
+    /**
+     * Sets function to call if this completion is cancelled before being
+     * completed.
+     *
+     * @param onCancel Function to call.
+     * @return This completion.
+     */
+    public synchronized Completion<V> onCancel(final Runnable onCancel) {
+        this.onCancel = onCancel;
+        return this;
+    }
+
+    /**
+     * Creates new completion that is completed with the result of this
+     * completion. Cancelling the fork only detaches it from this completion,
+     * which means that other parties waiting for this completion, or for
+     * other forks of it, are unaffected.
+     *
+     * @return New completion.
+     */
+    public Completion<V> fork() {
+        final var fork = new Completion<V>();
+        final Consumer<Result<V>> consumer = fork::completeWith;
+        fork.onCancel(() -> {
+            synchronized (this) {
+                consumers.remove(consumer);
+            }
+        });
+        onResult(consumer);
+        return fork;
+    }
+
+    public synchronized boolean isDone() {
+        return result != null || isCancelled;
+    }
+
+    @Override
+    public void onResult(final Consumer<Result<V>> consumer) {
+        final Result<V> result;
+        synchronized (this) {
+            if (isCancelled) {
+                return;
+            }
+            if (this.result == null) {
+                consumers.add(consumer);
+                return;
+            }
+            result = this.result;
+        }
+        consumer.accept(result);
+    }
+
+    @Override
+    public void cancel(final boolean mayInterruptIfRunning) {
+        final Runnable onCancel;
+        synchronized (this) {
+            if (result != null || isCancelled) {
+                return;
+            }
+            isCancelled = true;
+            consumers.clear();
+            onCancel = this.onCancel;
+        }
+        if (onCancel != null) {
+            onCancel.run();
+        }
+    }
+
+    private boolean completeWith(final Result<V> result) {
+        final List<Consumer<Result<V>>> consumers;
+        synchronized (this) {
+            if (this.result != null || isCancelled) {
+                return false;
+            }
+            this.result = result;
+            consumers = new ArrayList<>(this.consumers);
+            this.consumers.clear();
+        }
+        for (final var consumer : consumers) {
+            consumer.accept(result);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package sc_demo.common;
+
+import se.arkalix.dto.DtoWritable;
+import se.arkalix.dto.binary.BinaryWriter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable byte buffer into which DTOs can be written as JSON.
+ * <p>
+ * Buffers can be {@link #clear() cleared} and reused, which makes it
+ * possible to avoid allocating new buffers when encoding many DTOs.
+ */
+public class JsonBuffer implements BinaryWriter {
+    private byte[] bytes;
+    private int offset = 0;
+    private int size = 0;
+
+    public JsonBuffer(final int initialCapacity) {
+        bytes = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * Encodes given DTO as JSON.
+     *
+     * @param dto DTO to encode.
+     * @return Byte array containing encoded DTO.
+     */
+    public static byte[] encode(final DtoWritable dto) {
+        final var buffer = new JsonBuffer(256);
+        buffer.writeDto(dto);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Encodes given DTOs as a JSON array.
+     *
+     * @param dtos DTOs to encode.
+     * @return Byte array containing encoded DTOs.
+     */
+    public static byte[] encode(final List<? extends DtoWritable> dtos) {
+        final var buffer = new JsonBuffer(256 * Math.max(dtos.size(), 1));
+        buffer.write((byte) '[');
+        for (var i = 0; i < dtos.size(); ++i) {
+            if (i > 0) {
+                buffer.write((byte) ',');
+            }
+            buffer.writeDto(dtos.get(i));
+        }
+        buffer.write((byte) ']');
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes given DTO as JSON to the end of this buffer.
+     *
+     * @param dto DTO to write.
+     */
+    public void writeDto(final DtoWritable dto) {
+        try {
+            dto.writeJson(this);
+        }
+        catch (final Exception exception) {
+            throw new IllegalStateException("Failed to encode " + dto + " as JSON", exception);
+        }
+    }
+
+    /**
+     * @return Number of bytes written to this buffer.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all bytes written to this buffer, without releasing its memory.
+     */
+    public void clear() {
+        offset = 0;
+        size = 0;
+    }
+
+    /**
+     * @return Copy of all bytes written to this buffer.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    @Override
+    public int writeOffset() {
+        return offset;
+    }
+
+    @Override
+    public void writeOffset(final int offset) {
+        if (offset < 0 || offset > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.offset = offset;
+    }
+
+    @Override
+    public int writableBytes() {
+        return Integer.MAX_VALUE - offset;
+    }
+
+    @Override
+    public void write(final byte b) {
+        reserve(1);
+        bytes[offset++] = b;
+        size = Math.max(size, offset);
+    }
+
+    @Override
+    public void write(final byte[] bytes) {
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, this.bytes, offset, bytes.length);
+        offset += bytes.length;
+        size = Math.max(size, offset);
+    }
+
+    private void reserve(final int length) {
+        final var required = offset + length;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package sc_demo.common;
+
+import java.util.Arrays;
+
+/**
+ * Records durations of one kind of operation, from which percentiles can
+ * later be computed.
+ * <p>
+ * All recorded durations are kept in a growable primitive array, which is
+ * only sorted when percentiles are requested. This is acceptable for the
+ * number of operations of one load test run, while avoiding the
+ * approximations of histogram-based recorders.
+ */
+public class LatencyRecorder {
+    private long[] nanos = new long[1024];
+    private int size = 0;
+
+    public synchronized void record(final long durationNanos) {
+        if (size == nanos.length) {
+            nanos = Arrays.copyOf(nanos, size * 2);
+        }
+        nanos[size++] = durationNanos;
+    }
+
+    public synchronized int count() {
+        return size;
+    }
+
+    /**
+     * Computes given percentiles of all recorded durations.
+     *
+     * @param percentiles Percentiles to compute, each in the range
+     *                    {@code [0, 100]}.
+     * @return Durations, in nanoseconds, at each given percentile, or all
+     * zeroes if no durations have been recorded.
+     */
+    public long[] percentiles(final double... percentiles) {
+        final long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(nanos, size);
+        }
+        Arrays.sort(sorted);
+        final var result = new long[percentiles.length];
+        if (sorted.length == 0) {
+            return result;
+        }
+        for (var i = 0; i < percentiles.length; ++i) {
+            final var rank = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length) - 1;
+            result[i] = sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+        }
+        return result;
+    }
+}
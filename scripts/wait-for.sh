@@ -1,13 +1,38 @@
 #!/usr/bin/env bash
 
+# Usage: wait-for.sh <host> <port> <sleep-seconds> [<http-path>]
+#
+# Waits until a TCP connection can be established to <host>:<port>. If an
+# HTTP path is given, it instead waits until a GET request for that path is
+# answered with status 200, and exits with an error if it is ever answered
+# with status 500, which signals that the awaited system has failed.
+
 SLEEP_SECONDS=$3
+HTTP_PATH=$4
 
-echo "Waiting for $1:$2 ..."
+echo "Waiting for $1:$2${HTTP_PATH} ..."
 
-until (echo > "/dev/tcp/$1/$2") >/dev/null 2>&1; do
-  sleep 1
-done
+if [ -z "${HTTP_PATH}" ]; then
+  until (echo > "/dev/tcp/$1/$2") >/dev/null 2>&1; do
+    sleep 1
+  done
+else
+  while true; do
+    STATUS=$( (exec 3<>"/dev/tcp/$1/$2" \
+      && printf 'GET %s HTTP/1.0\r\nHost: %s\r\n\r\n' "${HTTP_PATH}" "$1" >&3 \
+      && read -r _ CODE _ <&3 \
+      && echo "${CODE}") 2>/dev/null)
+    if [ "${STATUS}" = "200" ]; then
+      break
+    fi
+    if [ "${STATUS}" = "500" ]; then
+      echo "$1 reports failure at ${HTTP_PATH}, giving up" >&2
+      exit 1
+    fi
+    sleep 1
+  done
+fi
 
 echo "$1 is up, waiting ${SLEEP_SECONDS} seconds before starting ..."
 sleep "${SLEEP_SECONDS}"
-echo "Done waiting for $1, starting ..."
\ No newline at end of file
+echo "Done waiting for $1, starting ..."